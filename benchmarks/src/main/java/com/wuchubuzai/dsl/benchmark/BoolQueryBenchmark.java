@@ -0,0 +1,62 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.QueryBuilder;
+
+/**
+ * Builds, renders and hashes bool query trees of increasing depth and width.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoolQueryBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int depth;
+
+    @Param({"2", "4", "8"})
+    public int width;
+
+    private QueryBuilder built;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        built = Queries.bool(depth, width);
+        out = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public QueryBuilder build() {
+        return Queries.bool(depth, width);
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        return Queries.render(built, out);
+    }
+
+    @Benchmark
+    public int hashCodeOfTree() {
+        return built.hashCode();
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.JsonXContentParser;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+
+/**
+ * Parses and renders the searches of a {@link QueryCorpus}, one search per operation in
+ * turn, read from a memory mapped {@link CorpusFile}. Without a <code>corpus</code> file a
+ * corpus of <code>count</code> searches is generated into a temporary file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CorpusBenchmark {
+
+    @Param({""})
+    public String corpus;
+
+    @Param({"10000"})
+    public int count;
+
+    @Param({"42"})
+    public long seed;
+
+    private CorpusFile file;
+    private SearchSourceBuilder[] sources;
+    private int next;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+
+    @Setup
+    public void setup() throws IOException {
+        Path path;
+        if (corpus.isEmpty()) {
+            path = Files.createTempFile("corpus", ".ndjson");
+            path.toFile().deleteOnExit();
+            QueryCorpus.builder().seed(seed).build().writeTo(path, count);
+        } else {
+            path = Paths.get(corpus);
+        }
+        file = CorpusFile.open(path);
+        sources = new SearchSourceBuilder[file.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = SearchSourceBuilder.fromXContent(new JsonXContentParser(file.line(i)));
+        }
+    }
+
+    private int next() {
+        int index = next;
+        next = index + 1 == sources.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public SearchSourceBuilder parse() throws IOException {
+        return SearchSourceBuilder.fromXContent(new JsonXContentParser(file.line(next())));
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        out.reset();
+        sources[next()].writeTo(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int canonical() throws IOException {
+        out.reset();
+        sources[next()].writeTo(out, true);
+        return out.size();
+    }
+
+}
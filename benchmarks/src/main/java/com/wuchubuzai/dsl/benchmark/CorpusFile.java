@@ -0,0 +1,86 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A newline delimited json corpus written by {@link QueryCorpus#writeTo(Path, int)}, memory
+ * mapped so that benchmarks read the searches straight from the page cache without
+ * loading them onto the heap. Only the offsets of the lines are kept, empty lines are skipped.
+ */
+public final class CorpusFile {
+
+    private final MappedByteBuffer bytes;
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int size;
+
+    private CorpusFile(MappedByteBuffer bytes) {
+        this.bytes = bytes;
+        int start = 0;
+        for (int i = 0, limit = bytes.limit(); i < limit; i++) {
+            if (bytes.get(i) == '\n') {
+                addLine(start, i);
+                start = i + 1;
+            }
+        }
+        // a last line without a newline
+        addLine(start, bytes.limit());
+    }
+
+    private void addLine(int start, int end) {
+        if (end == start) {
+            return;
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Maps the file, which has to be smaller than 2gb.
+     */
+    public static CorpusFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("corpus [" + file + "] of [" + channel.size()
+                        + "] bytes is larger than 2gb");
+            }
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CorpusFile(bytes);
+        }
+    }
+
+    /**
+     * Number of searches in the corpus.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the json of the search at the index, without the newline, as a buffer sharing
+     * the mapped bytes.
+     */
+    public ByteBuffer line(int index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("line [" + index + "] out of range [0, " + size + ")");
+        }
+        ByteBuffer line = bytes.duplicate();
+        // through Buffer, ByteBuffer overrides these methods from java 9 on
+        ((Buffer) line).limit(ends[index]).position(starts[index]);
+        return line;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.IdsQueryBuilder;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+import com.wuchubuzai.dsl.XContentType;
+
+/**
+ * Adds 100k ids to an ids query and renders them. Run with <code>-prof gc</code> to see
+ * the bytes allocated per id.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdsQueryBenchmark {
+
+    private String[] ids;
+    private SearchSourceBuilder source;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(2 * 1024 * 1024);
+
+    @Setup
+    public void setup() {
+        ids = new String[100000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "order-2018-" + (7000000 + i * 13);
+        }
+        source = new SearchSourceBuilder().query(new IdsQueryBuilder().addIds(ids));
+    }
+
+    @Benchmark
+    public int build() {
+        return new IdsQueryBuilder().addIds(ids).ids().size();
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        out.reset();
+        source.writeTo(out, XContentType.JSON);
+        return out.size();
+    }
+
+}
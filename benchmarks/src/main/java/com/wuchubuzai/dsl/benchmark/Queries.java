@@ -0,0 +1,119 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.wuchubuzai.dsl.BoolQueryBuilder;
+import com.wuchubuzai.dsl.MultiMatchQueryBuilder;
+import com.wuchubuzai.dsl.Operator;
+import com.wuchubuzai.dsl.QueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+import com.wuchubuzai.dsl.XContentBuilder;
+
+/**
+ * The queries the benchmarks build and render.
+ */
+final class Queries {
+
+    private Queries() {
+    }
+
+    static QueryBuilder build(String kind) {
+        switch (kind) {
+            case "term":
+                return QueryBuilders.termQuery("status", "published");
+            case "range":
+                return QueryBuilders.rangeQuery("timestamp").gte(1514764800000L).lt(1546300800000L);
+            case "query_string":
+                return QueryBuilders.queryStringQuery("title:(quick brown) AND body:fox*")
+                        .defaultOperator(Operator.AND).field("title", 2.0f).field("body");
+            case "multi_match":
+                return QueryBuilders.multiMatchQuery("elasticsearch query dsl", "title^2", "body", "tags")
+                        .type(MultiMatchQueryBuilder.Type.BEST_FIELDS).operator(Operator.OR);
+            default:
+                throw new IllegalArgumentException("unknown query [" + kind + "]");
+        }
+    }
+
+    /**
+     * A bool query of the given depth where every bool query has the given number of
+     * clauses, spread over must, filter, should and must_not.
+     */
+    static QueryBuilder bool(int depth, int width) {
+        if (depth == 0) {
+            return QueryBuilders.termQuery("field", "value");
+        }
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        for (int i = 0; i < width; i++) {
+            QueryBuilder clause = bool(depth - 1, width);
+            switch (i & 3) {
+                case 0:
+                    bool.must(clause);
+                    break;
+                case 1:
+                    bool.filter(clause);
+                    break;
+                case 2:
+                    bool.should(clause);
+                    break;
+                default:
+                    bool.mustNot(clause);
+                    break;
+            }
+        }
+        return bool;
+    }
+
+    /**
+     * A search of the kind of a typical listing page: full text on two fields, filters and paging.
+     */
+    static SearchSourceBuilder search() {
+        return new SearchSourceBuilder().from(40).size(20)
+                .query(QueryBuilders.boolQuery()
+                        .must(QueryBuilders.matchQuery("title", "quick brown fox").operator(Operator.AND))
+                        .must(QueryBuilders.multiMatchQuery("elasticsearch query dsl", "title", "body"))
+                        .mustNot(QueryBuilders.termQuery("status", "deleted"))
+                        .should(QueryBuilders.wildcardQuery("tags", "search*"))
+                        .filter(QueryBuilders.rangeQuery("timestamp").gte(1514764800000L).lt(1546300800000L))
+                        .filter(QueryBuilders.termsQuery("category", "books", "music", "film"))
+                        .filter(QueryBuilders.idsQuery().addIds("1", "2", "3")));
+    }
+
+    /**
+     * The listing search, a search for 1000 numeric ids or a search filtering on two ranges.
+     */
+    static SearchSourceBuilder search(String kind) {
+        switch (kind) {
+            case "listing":
+                return search();
+            case "terms":
+                long[] ids = new long[1000];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = 1500000000000L + i * 7919L;
+                }
+                return new SearchSourceBuilder().size(1000).query(QueryBuilders.termsQuery("user_id", ids));
+            case "range":
+                return new SearchSourceBuilder().from(0).size(20)
+                        .query(QueryBuilders.boolQuery()
+                                .filter(QueryBuilders.rangeQuery("timestamp").gte(1514764800000L).lt(1546300800000L))
+                                .filter(QueryBuilders.rangeQuery("price").gte(10.5d).lte(99.99d)));
+            default:
+                throw new IllegalArgumentException("unknown search [" + kind + "]");
+        }
+    }
+
+    /**
+     * Renders the query as the body of a search into the stream.
+     */
+    static int render(QueryBuilder query, ByteArrayOutputStream out) throws IOException {
+        out.reset();
+        XContentBuilder builder = XContentBuilder.jsonBuilder(out);
+        builder.startObject();
+        query.toXContent(builder);
+        builder.endObject();
+        builder.flush();
+        return out.size();
+    }
+
+}
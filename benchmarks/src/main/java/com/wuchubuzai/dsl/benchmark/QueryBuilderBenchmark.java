@@ -0,0 +1,58 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.QueryBuilder;
+
+/**
+ * Builds and renders single leaf queries.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBuilderBenchmark {
+
+    @Param({"term", "range", "query_string", "multi_match"})
+    public String query;
+
+    private QueryBuilder built;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+    @Setup
+    public void setup() {
+        built = Queries.build(query);
+    }
+
+    @Benchmark
+    public QueryBuilder build() {
+        return Queries.build(query);
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        return Queries.render(built, out);
+    }
+
+    @Benchmark
+    public String renderString() {
+        return built.toString();
+    }
+
+}
@@ -0,0 +1,395 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.wuchubuzai.dsl.BoolQueryBuilder;
+import com.wuchubuzai.dsl.Operator;
+import com.wuchubuzai.dsl.QueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+import com.wuchubuzai.dsl.XContentType;
+
+/**
+ * Generates random but realistic searches: <code>bool</code> trees over the fields of a
+ * product index, keyword filters, numeric ranges, full text on ASCII and CJK text and the
+ * occasional wildcard or <code>query_string</code>. Values are drawn from fixed
+ * vocabularies, skewed towards the first entries the way real traffic repeats popular
+ * values. The same seed and settings always generate the same searches.
+ * <p>
+ * A corpus dumped with {@link #writeTo(Path, int)} is read back by {@link CorpusFile}.
+ * Generate one with
+ * <code>java -cp target/benchmarks.jar com.wuchubuzai.dsl.benchmark.QueryCorpus corpus.ndjson 100000 [seed]</code>.
+ */
+public final class QueryCorpus {
+
+    /**
+     * The leaf queries of the trees.
+     */
+    public enum Leaf {
+        TERM, TERMS, RANGE, MATCH, WILDCARD, QUERY_STRING
+    }
+
+    private static final String[] STATUSES = {"published", "draft", "archived", "deleted", "pending"};
+
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "zen", "dar", "bel",
+            "cor", "fin", "gal", "hex", "jun", "pra", "qui", "ster", "wen"};
+
+    private static final long TIMESTAMP_FROM = 1514764800000L;
+    private static final long TIMESTAMP_TO = 1609459200000L;
+
+    private final Random random;
+    private final int maxDepth;
+    private final int maxClauses;
+    private final Leaf[] leaves;
+    private final int[] cumulativeWeights;
+    private final int maxTermsCount;
+    private final int cardinality;
+    private final double cjkRatio;
+
+    private final String[] words;
+    private final String[] cjkWords;
+    private final String[] categories;
+
+    private QueryCorpus(Builder builder) {
+        this.random = new Random(builder.seed);
+        this.maxDepth = builder.maxDepth;
+        this.maxClauses = builder.maxClauses;
+        this.maxTermsCount = builder.maxTermsCount;
+        this.cardinality = builder.cardinality;
+        this.cjkRatio = builder.cjkRatio;
+
+        int total = 0;
+        int count = 0;
+        for (int weight : builder.weights.values()) {
+            if (weight > 0) {
+                count++;
+            }
+        }
+        this.leaves = new Leaf[count];
+        this.cumulativeWeights = new int[count];
+        int i = 0;
+        for (Map.Entry<Leaf, Integer> entry : builder.weights.entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                leaves[i] = entry.getKey();
+                cumulativeWeights[i++] = total;
+            }
+        }
+
+        // the vocabularies come from their own random so they do not depend on the settings
+        Random vocabulary = new Random(builder.seed ^ 0x5DEECE66DL);
+        this.words = asciiWords(vocabulary, builder.vocabularySize);
+        this.cjkWords = cjkWords(vocabulary, builder.vocabularySize);
+        this.categories = asciiWords(vocabulary, 50);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the next search: a listing page of 10 to 50 hits filtered by a <code>bool</code> query.
+     */
+    public SearchSourceBuilder next() {
+        int size = 10 + 10 * random.nextInt(5);
+        return new SearchSourceBuilder()
+                .from(size * skewed(20))
+                .size(size)
+                .query(bool(1));
+    }
+
+    /**
+     * Returns the next query, a <code>bool</code> query as deep as {@link Builder#maxDepth(int)}.
+     */
+    public QueryBuilder nextQuery() {
+        return bool(1);
+    }
+
+    /**
+     * Writes the next searches to the file as newline delimited json, one search per line.
+     */
+    public void writeTo(Path file, int count) throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("[count] cannot be negative, found [" + count + "]");
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            for (int i = 0; i < count; i++) {
+                next().writeTo(out, XContentType.JSON);
+                out.write('\n');
+            }
+        }
+    }
+
+    private BoolQueryBuilder bool(int depth) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        int clauses = 1 + random.nextInt(maxClauses);
+        for (int i = 0; i < clauses; i++) {
+            // deeper levels are less likely to nest again
+            QueryBuilder clause = depth < maxDepth && random.nextInt(depth + 3) == 0 ? bool(depth + 1) : leaf();
+            int occur = random.nextInt(10);
+            if (occur < 3) {
+                bool.must(clause);
+            } else if (occur < 7) {
+                bool.filter(clause);
+            } else if (occur < 9) {
+                bool.should(clause);
+            } else {
+                bool.mustNot(clause);
+            }
+        }
+        if (bool.should().size() > 1 && random.nextBoolean()) {
+            bool.minimumShouldMatch(1);
+        }
+        return bool;
+    }
+
+    private QueryBuilder leaf() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (pick >= cumulativeWeights[i]) {
+            i++;
+        }
+        switch (leaves[i]) {
+            case TERM:
+                switch (random.nextInt(4)) {
+                    case 0:
+                        return QueryBuilders.termQuery("status", STATUSES[skewed(STATUSES.length)]);
+                    case 1:
+                        return QueryBuilders.termQuery("category", categories[skewed(categories.length)]);
+                    case 2:
+                        return QueryBuilders.termQuery("tags", word());
+                    default:
+                        return QueryBuilders.termQuery("user_id", (long) skewed(cardinality));
+                }
+            case TERMS:
+                int count = 1 + skewed(maxTermsCount);
+                if (random.nextBoolean()) {
+                    long[] ids = new long[count];
+                    for (int j = 0; j < count; j++) {
+                        ids[j] = skewed(cardinality);
+                    }
+                    return QueryBuilders.termsQuery("user_id", ids);
+                }
+                Set<String> tags = new LinkedHashSet<>();
+                for (int j = 0; j < count; j++) {
+                    tags.add(random.nextBoolean() ? categories[skewed(categories.length)] : word());
+                }
+                return QueryBuilders.termsQuery(random.nextBoolean() ? "category" : "tags", tags);
+            case RANGE:
+                if (random.nextBoolean()) {
+                    int from = 10 * skewed(1000);
+                    return random.nextInt(4) == 0 ? QueryBuilders.rangeQuery("price").gte(from)
+                            : QueryBuilders.rangeQuery("price").gte(from).lt(from + 10 * (1 + random.nextInt(100)));
+                }
+                long from = TIMESTAMP_FROM + (long) (random.nextDouble() * (TIMESTAMP_TO - TIMESTAMP_FROM));
+                return random.nextInt(4) == 0 ? QueryBuilders.rangeQuery("timestamp").gte(from)
+                        : QueryBuilders.rangeQuery("timestamp").gte(from).lt(from + 86400000L * (1 + random.nextInt(90)));
+            case MATCH:
+                return QueryBuilders.matchQuery(random.nextBoolean() ? "title" : "body", text(1 + random.nextInt(4)))
+                        .operator(random.nextInt(3) == 0 ? Operator.AND : Operator.OR);
+            case WILDCARD:
+                String word = words[skewed(words.length)];
+                return QueryBuilders.wildcardQuery("tags", word.substring(0, Math.max(1, word.length() - 2)) + "*");
+            default:
+                return QueryBuilders.queryStringQuery("title:(" + text(2) + ") AND body:" + words[skewed(words.length)] + "*")
+                        .defaultOperator(random.nextBoolean() ? Operator.AND : Operator.OR);
+        }
+    }
+
+    /**
+     * Words separated by spaces, CJK text is not separated.
+     */
+    private String text(int words) {
+        boolean cjk = random.nextDouble() < cjkRatio;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0 && !cjk) {
+                text.append(' ');
+            }
+            text.append(cjk ? cjkWords[skewed(cjkWords.length)] : this.words[skewed(this.words.length)]);
+        }
+        return text.toString();
+    }
+
+    private String word() {
+        return random.nextDouble() < cjkRatio ? cjkWords[skewed(cjkWords.length)] : words[skewed(words.length)];
+    }
+
+    /**
+     * A value between 0 and bound, exclusive, the lower the more likely.
+     */
+    private int skewed(int bound) {
+        double value = random.nextDouble();
+        return (int) (bound * value * value * value);
+    }
+
+    private static String[] asciiWords(Random random, int count) {
+        Set<String> words = new HashSet<>();
+        String[] result = new String[count];
+        for (int i = 0; i < count; ) {
+            StringBuilder word = new StringBuilder();
+            for (int syllables = 1 + random.nextInt(4); syllables > 0; syllables--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            // repeat words once most of the distinct syllable combinations are taken
+            if (words.add(word.toString()) || words.size() > 100000) {
+                result[i++] = word.toString();
+            }
+        }
+        return result;
+    }
+
+    private static String[] cjkWords(Random random, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            char[] word = new char[2 + random.nextInt(3)];
+            for (int j = 0; j < word.length; j++) {
+                // the common ideographs of the CJK unified ideographs block
+                word[j] = (char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00));
+            }
+            result[i] = new String(word);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: QueryCorpus <file> <count> [seed]");
+            System.exit(1);
+        }
+        Builder builder = builder();
+        if (args.length > 2) {
+            builder.seed(Long.parseLong(args[2]));
+        }
+        Path file = Paths.get(args[0]);
+        builder.build().writeTo(file, Integer.parseInt(args[1]));
+        System.out.println("wrote " + args[1] + " searches, " + Files.size(file) + " bytes to " + file);
+    }
+
+    public static final class Builder {
+
+        private long seed = 42;
+        private int maxDepth = 3;
+        private int maxClauses = 8;
+        private final Map<Leaf, Integer> weights = new EnumMap<>(Leaf.class);
+        private int maxTermsCount = 100;
+        private int cardinality = 1000000;
+        private int vocabularySize = 10000;
+        private double cjkRatio = 0.2;
+
+        private Builder() {
+            weights.put(Leaf.TERM, 30);
+            weights.put(Leaf.TERMS, 15);
+            weights.put(Leaf.RANGE, 20);
+            weights.put(Leaf.MATCH, 20);
+            weights.put(Leaf.WILDCARD, 5);
+            weights.put(Leaf.QUERY_STRING, 10);
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Maximum number of nested <code>bool</code> queries, 3 by default.
+         */
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth < 1) {
+                throw new IllegalArgumentException("[max_depth] must be positive, found [" + maxDepth + "]");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Maximum number of clauses of a <code>bool</code> query, 8 by default.
+         */
+        public Builder maxClauses(int maxClauses) {
+            if (maxClauses < 1) {
+                throw new IllegalArgumentException("[max_clauses] must be positive, found [" + maxClauses + "]");
+            }
+            this.maxClauses = maxClauses;
+            return this;
+        }
+
+        /**
+         * Relative weight of the leaf among the leaves, 0 to leave it out.
+         */
+        public Builder leafWeight(Leaf leaf, int weight) {
+            if (leaf == null) {
+                throw new IllegalArgumentException("leaf cannot be null");
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("[weight] cannot be negative, found [" + weight + "]");
+            }
+            weights.put(leaf, weight);
+            return this;
+        }
+
+        /**
+         * Maximum number of values of a <code>terms</code> query, 100 by default.
+         */
+        public Builder maxTermsCount(int maxTermsCount) {
+            if (maxTermsCount < 1) {
+                throw new IllegalArgumentException("[max_terms_count] must be positive, found [" + maxTermsCount + "]");
+            }
+            this.maxTermsCount = maxTermsCount;
+            return this;
+        }
+
+        /**
+         * Number of distinct numeric ids, 1000000 by default.
+         */
+        public Builder cardinality(int cardinality) {
+            if (cardinality < 1) {
+                throw new IllegalArgumentException("[cardinality] must be positive, found [" + cardinality + "]");
+            }
+            this.cardinality = cardinality;
+            return this;
+        }
+
+        /**
+         * Number of distinct words of the ASCII and of the CJK vocabulary, 10000 by default.
+         */
+        public Builder vocabularySize(int vocabularySize) {
+            if (vocabularySize < 1) {
+                throw new IllegalArgumentException("[vocabulary_size] must be positive, found [" + vocabularySize + "]");
+            }
+            this.vocabularySize = vocabularySize;
+            return this;
+        }
+
+        /**
+         * Share of the text and tags drawn from the CJK vocabulary, 0.2 by default.
+         */
+        public Builder cjkRatio(double cjkRatio) {
+            if (!(cjkRatio >= 0 && cjkRatio <= 1)) {
+                throw new IllegalArgumentException("[cjk_ratio] must be between 0 and 1, found [" + cjkRatio + "]");
+            }
+            this.cjkRatio = cjkRatio;
+            return this;
+        }
+
+        public QueryCorpus build() {
+            for (int weight : weights.values()) {
+                if (weight > 0) {
+                    return new QueryCorpus(this);
+                }
+            }
+            throw new IllegalArgumentException("at least one leaf needs a positive weight");
+        }
+    }
+
+}
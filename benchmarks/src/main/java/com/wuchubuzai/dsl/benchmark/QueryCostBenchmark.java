@@ -0,0 +1,72 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.BoolQueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.QueryCost;
+import com.wuchubuzai.dsl.QueryStringQueryBuilder;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+
+/**
+ * Estimates the cost of a typical search and of a search that trips the guardrails, to
+ * make sure {@link QueryCost} can run on every request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryCostBenchmark {
+
+    @Param({"typical", "abusive"})
+    public String search;
+
+    private SearchSourceBuilder source;
+
+    @Setup
+    public void setup() {
+        switch (search) {
+            case "typical":
+                BoolQueryBuilder typical = QueryBuilders.boolQuery()
+                        .must(QueryBuilders.multiMatchQuery("quick brown fox", "title", "body"))
+                        .filter(QueryBuilders.termQuery("tenant_id", 42))
+                        .filter(QueryBuilders.rangeQuery("timestamp").gte("now-7d"))
+                        .mustNot(QueryBuilders.termQuery("status", "deleted"));
+                for (int facet = 0; facet < 8; facet++) {
+                    typical.filter(QueryBuilders.termsQuery("facet_" + facet, "a", "b", "c"));
+                }
+                source = new SearchSourceBuilder().query(typical).size(20);
+                break;
+            case "abusive":
+                BoolQueryBuilder abusive = QueryBuilders.boolQuery()
+                        .must(new QueryStringQueryBuilder("*phone~ AND (case OR cover*) /gr[ae]y/").fuzzyMaxExpansions(1000));
+                for (int i = 0; i < 2000; i++) {
+                    abusive.should(QueryBuilders.termQuery("sku", "sku-" + i));
+                }
+                source = new SearchSourceBuilder().query(abusive).from(9990).size(100);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown search [" + search + "]");
+        }
+    }
+
+    @Benchmark
+    public long estimate() {
+        return QueryCost.DEFAULT.estimate(source).cost();
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.BoolQueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.QueryOptimizer;
+
+/**
+ * Optimizes a query tree shaped like the output of our query generators, and renders the
+ * generated and the optimized tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryOptimizerBenchmark {
+
+    @Param({"generated", "optimized"})
+    public String tree;
+
+    private final QueryOptimizer optimizer = QueryOptimizer.builder().singleValued("price", "timestamp").build();
+    private QueryBuilder generated;
+    private QueryBuilder rendered;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+
+    @Setup
+    public void setup() {
+        generated = generated();
+        rendered = "optimized".equals(tree) ? optimizer.optimize(generated) : generated;
+    }
+
+    /**
+     * Every facet selection wraps its terms in a bool of its own, every criterion adds a
+     * match_all placeholder and the tenant filter, and every widget adds its own range filter.
+     */
+    private static QueryBuilder generated() {
+        BoolQueryBuilder generated = QueryBuilders.boolQuery().must(QueryBuilders.matchAllQuery());
+        for (int facet = 0; facet < 8; facet++) {
+            BoolQueryBuilder selection = QueryBuilders.boolQuery();
+            for (int value = 0; value < 6; value++) {
+                selection.should(QueryBuilders.termQuery("facet_" + facet, "value_" + value));
+            }
+            generated.filter(QueryBuilders.boolQuery()
+                    .must(QueryBuilders.matchAllQuery())
+                    .filter(QueryBuilders.termQuery("tenant_id", 42))
+                    .filter(QueryBuilders.boolQuery().must(selection)));
+        }
+        generated.must(QueryBuilders.boolQuery().must(QueryBuilders.matchQuery("title", "quick brown fox")));
+        generated.filter(QueryBuilders.wildcardQuery("sku", "ABC-*"));
+        generated.filter(QueryBuilders.wildcardQuery("brand", "*"));
+        generated.should(QueryBuilders.wildcardQuery("name", "*jack*"));
+        generated.filter(QueryBuilders.rangeQuery("price").gte(10));
+        generated.filter(QueryBuilders.rangeQuery("price").lt(500));
+        generated.filter(QueryBuilders.rangeQuery("timestamp").gte("now-30d"));
+        generated.filter(QueryBuilders.rangeQuery("timestamp").gte("now-7d").lt("now"));
+        generated.mustNot(QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery("status", "deleted"))
+                .should(QueryBuilders.termQuery("status", "hidden")));
+        return generated;
+    }
+
+    @Benchmark
+    public QueryBuilder optimize() {
+        return optimizer.optimize(generated);
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        return Queries.render(rendered, out);
+    }
+
+}
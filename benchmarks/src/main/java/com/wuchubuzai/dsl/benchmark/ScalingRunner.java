@@ -0,0 +1,56 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the render benchmarks with 1, 2, 4 and so on up to all cores, with the GC profiler,
+ * and prints the throughput and allocation rate per thread count. Rendering shares no state
+ * between threads, so throughput should grow with the threads until the cores or the
+ * allocation rate run out.
+ * Run with <code>java -cp target/benchmarks.jar com.wuchubuzai.dsl.benchmark.ScalingRunner [benchmark regex]</code>.
+ */
+public class ScalingRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "SearchSourceBenchmark.render|TermsQueryBenchmark.render";
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threads = new ArrayList<>();
+        for (int t = 1; t < cores; t <<= 1) {
+            threads.add(t);
+        }
+        threads.add(cores);
+
+        List<String> lines = new ArrayList<>();
+        for (int t : threads) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .param("path", "json")
+                    .param("count", "10000")
+                    .param("values", "long[]")
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                String rate = result.getSecondaryResults().containsKey("gc.alloc.rate")
+                        ? String.format("%10.1f MB/s", result.getSecondaryResults().get("gc.alloc.rate").getScore())
+                        : "";
+                lines.add(String.format("%-40s threads %3d %14.1f ops/s %s", result.getParams().getBenchmark(), t,
+                        result.getPrimaryResult().getScore(), rate));
+            }
+        }
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.SearchResultCache;
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+
+/**
+ * Reads a {@link SearchResultCache} shared by all threads with a stand-in backend: hits on
+ * a hot set of dashboard panels, and a dashboard workload of panels requested with a skewed
+ * distribution mixed with a scan over one-off requests. The panel queries are frozen, so
+ * rendering their cache key reuses the json cached on the query.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchResultCacheBenchmark {
+
+    private static final int RESPONSE_BYTES = 4096;
+
+    private static final SearchResultCache.Backend<byte[]> BACKEND = source -> new byte[RESPONSE_BYTES];
+
+    private SearchResultCache<byte[]> cache;
+    private SearchSourceBuilder[] hot;
+    private final AtomicInteger page = new AtomicInteger();
+
+    @Setup
+    public void setup() throws IOException {
+        cache = SearchResultCache.<byte[]>builder()
+                .maximumWeight(256 * RESPONSE_BYTES)
+                .weigher(body -> body.length)
+                .expireAfterWrite(60, TimeUnit.SECONDS)
+                .build();
+        hot = new SearchSourceBuilder[200];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = new SearchSourceBuilder().size(20).query(QueryBuilders.boolQuery()
+                    .filter(QueryBuilders.termQuery("tenant_id", 42))
+                    .filter(QueryBuilders.termQuery("panel", i))
+                    .freeze());
+            cache.get(hot[i], BACKEND);
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] hit() {
+        return cache.getIfPresent(hot[ThreadLocalRandom.current().nextInt(32)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] hotAndScan() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(4) == 0) {
+            // the pages wrap long after they are evicted, so the scan never hits
+            int from = (page.getAndIncrement() & 0xFFFFF) * 20;
+            return cache.get(new SearchSourceBuilder().from(from).size(20)
+                    .query(QueryBuilders.matchAllQuery()), BACKEND);
+        }
+        int panel = (int) Math.min(hot.length - 1, Math.abs(random.nextGaussian()) * hot.length / 3);
+        return cache.get(hot[panel], BACKEND);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.SearchSourceBuilder;
+import com.wuchubuzai.dsl.XContentType;
+
+/**
+ * Renders searches through each of the render paths of {@link SearchSourceBuilder}:
+ * streaming json, smile and cbor, canonical json and the pretty printed string. The
+ * searches are a typical listing page, a terms query of 1000 numeric ids and two numeric
+ * range filters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchSourceBenchmark {
+
+    @Param({"json", "smile", "cbor", "canonical", "string"})
+    public String path;
+
+    @Param({"listing", "terms", "range"})
+    public String search;
+
+    private SearchSourceBuilder source;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+
+    @Setup
+    public void setup() {
+        source = Queries.search(search);
+    }
+
+    @Benchmark
+    public SearchSourceBuilder build() {
+        return Queries.search();
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        out.reset();
+        switch (path) {
+            case "json":
+                source.writeTo(out, XContentType.JSON);
+                break;
+            case "smile":
+                source.writeTo(out, XContentType.SMILE);
+                break;
+            case "cbor":
+                source.writeTo(out, XContentType.CBOR);
+                break;
+            case "canonical":
+                source.writeTo(out, true);
+                break;
+            default:
+                return source.toString().length();
+        }
+        return out.size();
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.QueryBuilder;
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.TermsCompressor;
+
+/**
+ * Compresses 240k mostly contiguous ids between 1000 and 250000, and renders them as a
+ * terms query and as the ranges and terms {@link TermsCompressor} builds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TermsCompressorBenchmark {
+
+    @Param({"terms", "ranges"})
+    public String query;
+
+    private int[] ids;
+    private QueryBuilder rendered;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(2 * 1024 * 1024);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int[] values = new int[249001];
+        int count = 0;
+        for (int id = 1000; id <= 250000; id++) {
+            // gaps of a few ids every now and then
+            if (random.nextInt(1000) == 0) {
+                id += random.nextInt(20);
+            } else {
+                values[count++] = id;
+            }
+        }
+        ids = Arrays.copyOf(values, count);
+        rendered = "ranges".equals(query) ? TermsCompressor.DEFAULT.compress("id", ids) : QueryBuilders.termsQuery("id", ids);
+    }
+
+    @Benchmark
+    public QueryBuilder compress() {
+        return TermsCompressor.DEFAULT.compress("id", ids);
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        return Queries.render(rendered, out);
+    }
+
+}
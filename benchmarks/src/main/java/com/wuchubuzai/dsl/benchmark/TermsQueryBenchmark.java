@@ -0,0 +1,84 @@
+package com.wuchubuzai.dsl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wuchubuzai.dsl.QueryBuilders;
+import com.wuchubuzai.dsl.TermsQueryBuilder;
+
+/**
+ * Builds, renders and hashes terms queries of numeric ids held in a primitive array, of
+ * the same ids boxed in a list and of string ids.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TermsQueryBenchmark {
+
+    @Param({"10", "10000", "100000"})
+    public int count;
+
+    @Param({"long[]", "boxed", "string"})
+    public String values;
+
+    private long[] longs;
+    private List<Object> boxed;
+    private String[] strings;
+    private TermsQueryBuilder built;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        longs = new long[count];
+        boxed = new ArrayList<>(count);
+        strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            longs[i] = 1500000000000L + i * 7919L;
+            boxed.add(longs[i]);
+            strings[i] = Long.toString(longs[i], 36);
+        }
+        built = build();
+        out = new ByteArrayOutputStream(count * 16 + 256);
+    }
+
+    @Benchmark
+    public TermsQueryBuilder build() {
+        switch (values) {
+            case "long[]":
+                return QueryBuilders.termsQuery("id", longs);
+            case "boxed":
+                return QueryBuilders.termsQuery("id", boxed);
+            default:
+                return QueryBuilders.termsQuery("id", strings);
+        }
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        return Queries.render(built, out);
+    }
+
+    @Benchmark
+    public long structuralHash() {
+        return built.structuralHash();
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffer handling and UTF-8 encoding shared by the binary {@link XContentGenerator}s.
+ * Binary formats have no pretty printed form, {@link #usePrettyPrint()} is ignored.
+ */
+abstract class AbstractBinaryXContentGenerator implements XContentGenerator {
+
+    private final OutputStream out;
+
+    protected final byte[] buffer;
+
+    protected int position;
+
+    /** bytes handed to the stream */
+    private long flushed;
+
+    /** open objects and arrays */
+    protected int depth;
+
+    protected AbstractBinaryXContentGenerator(OutputStream out, byte[] buffer) {
+        if (out == null) {
+            throw new IllegalArgumentException("output stream cannot be null");
+        }
+        if (buffer == null || buffer.length < 64) {
+            throw new IllegalArgumentException("buffer must hold at least 64 bytes");
+        }
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void usePrettyPrint() {
+    }
+
+    @Override
+    public boolean isPrettyPrint() {
+        return false;
+    }
+
+    @Override
+    public void writeRawValue(byte[] value, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(value, offset, length);
+                flushed += length;
+                return;
+            }
+        }
+        System.arraycopy(value, offset, buffer, position, length);
+        position += length;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return flushed + position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    protected void push() {
+        depth++;
+    }
+
+    protected void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("no object or array to close");
+        }
+        depth--;
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeUtf8(String)} writes for the value.
+     */
+    protected static int utf8Length(String value) {
+        final int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // four bytes for the two chars of the pair
+                    bytes += 2;
+                    i++;
+                } else if (Character.isSurrogate(c) == false) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    protected void writeUtf8(String value) throws IOException {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeByte((byte) c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement the JDK encoder uses
+                writeByte((byte) '?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    protected void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    protected void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        writeRawValue(bytes, offset, length);
+    }
+
+    protected void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        flushed += position;
+        position = 0;
+    }
+
+}
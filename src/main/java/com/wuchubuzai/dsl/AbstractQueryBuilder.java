@@ -1,11 +1,13 @@
 package com.wuchubuzai.dsl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-
-import com.alibaba.fastjson.JSON;
+import java.util.Set;
 
 
 public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>> implements QueryBuilder {
@@ -17,6 +19,18 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
     
 	protected String queryName;
 	protected float boost = DEFAULT_BOOST;
+
+	private volatile boolean frozen;
+
+	/** {@link #structuralHash()} computed once the query is frozen */
+	private long structuralHash;
+
+	/** compact json of the query body once frozen, default and canonical rendering */
+	private volatile byte[] json;
+	private volatile byte[] canonicalJson;
+
+	/** the queries nested in the cached json by name, replayed to {@link RenderInstrumentation} when the json is reused */
+	private volatile Map<String, Integer> renderedQueries;
 	
 	
 	protected AbstractQueryBuilder() {
@@ -29,6 +43,7 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
     @SuppressWarnings("unchecked")
     @Override
     public final QB queryName(String queryName) {
+        ensureNotFrozen();
         this.queryName = queryName;
         return (QB) this;
     }
@@ -56,16 +71,82 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
     @SuppressWarnings("unchecked")
     @Override
     public final QB boost(float boost) {
+        ensureNotFrozen();
         this.boost = boost;
         return (QB) this;
     }
     
+    /**
+     * Makes this query and its inner queries immutable, setters throw an
+     * {@link IllegalStateException} afterwards. Frozen queries can be shared between
+     * threads, remember their rendered json (see {@link QueryInterner}) and their
+     * {@link #structuralHash()}, which makes them cheap cache keys.
+     */
+    @SuppressWarnings("unchecked")
+    public final QB freeze() {
+        if (frozen == false) {
+            doFreeze();
+            // inner queries are frozen, so this only reads their cached hashes
+            structuralHash = computeStructuralHash();
+            frozen = true;
+        }
+        return (QB) this;
+    }
+
+    public final boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Freezes the inner queries, called once by {@link #freeze()}.
+     */
+    protected void doFreeze() {
+    }
+
+    protected final void ensureNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("[" + getName() + "] query is frozen and cannot be modified");
+        }
+    }
+
+    static void freeze(QueryBuilder query) {
+        if (!(query instanceof AbstractQueryBuilder<?>)) {
+            throw new IllegalArgumentException("[" + query.getName() + "] query cannot be frozen");
+        }
+        ((AbstractQueryBuilder<?>) query).freeze();
+    }
+
     @Override
     public abstract String getName();
     protected abstract int doHashCode();
+
+    /**
+     * 64 bit counterpart of {@link #doHashCode()}, usually {@link #hash64(Object...)} of the
+     * same fields. Inner queries contribute their own {@link #structuralHash()}.
+     */
+    protected long doStructuralHash() {
+        return doHashCode();
+    }
     
     protected abstract boolean doEquals(QB other);
+
+    /**
+     * Returns a 64 bit hash of the query tree, equal queries have equal hashes. Each node
+     * hashes its own fields and the structural hashes of its inner queries, so once the
+     * tree is {@link #freeze() frozen} this is a field read, otherwise it walks the tree.
+     */
+    public final long structuralHash() {
+        return frozen ? structuralHash : computeStructuralHash();
+    }
+
+    private long computeStructuralHash() {
+        return hash64(getClass().getName(), queryName, boost, doStructuralHash());
+    }
     
+    /**
+     * Frozen queries compare their structural hashes first, so unequal trees are usually
+     * rejected without walking them.
+     */
     @Override
     public final boolean equals(Object obj) {
         if (this == obj) {
@@ -76,6 +157,9 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
         }
         @SuppressWarnings("unchecked")
         QB other = (QB) obj;
+        if (frozen && other.isFrozen() && structuralHash != ((AbstractQueryBuilder<?>) other).structuralHash) {
+            return false;
+        }
         return Objects.equals(queryName, other.queryName) &&
                 Objects.equals(boost, other.boost) &&
                 doEquals(other);
@@ -83,8 +167,80 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
 
 	 @Override
 	 public final int hashCode() {
-	        return Objects.hash(getClass(), queryName, boost, doHashCode());
+	        long hash = structuralHash();
+	        return (int) (hash ^ (hash >>> 32));
 	 }
+
+	/**
+	 * Hashes the values in order into 64 bits, consistent with their {@link Object#equals(Object)}:
+	 * queries contribute their {@link #structuralHash()}, lists, sets, maps and arrays are
+	 * hashed by content and strings and numbers by value.
+	 */
+	protected static long hash64(Object... values) {
+		long hash = 1;
+		for (Object value : values) {
+			hash = mix(hash * 31 + hash64(value));
+		}
+		return hash;
+	}
+
+	private static long hash64(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof AbstractQueryBuilder<?>) {
+			return ((AbstractQueryBuilder<?>) value).structuralHash();
+		} else if (value instanceof String) {
+			String string = (String) value;
+			long hash = 0xCBF29CE484222325L;
+			for (int i = 0; i < string.length(); i++) {
+				hash = (hash ^ string.charAt(i)) * 0x100000001B3L;
+			}
+			return hash;
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return mix(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			return mix(Double.doubleToLongBits((Double) value));
+		} else if (value instanceof Float) {
+			return mix(Float.floatToIntBits((Float) value));
+		} else if (value instanceof Enum<?>) {
+			return hash64(((Enum<?>) value).name());
+		} else if (value instanceof PrimitiveTerms) {
+			return ((PrimitiveTerms) value).hash64();
+		} else if (value instanceof List<?>) {
+			return hash64(((List<?>) value).toArray());
+		} else if (value instanceof Set<?>) {
+			return hashUnordered((Set<?>) value);
+		} else if (value instanceof Map<?, ?>) {
+			long hash = 0;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				hash += mix(hash64(entry.getKey()) ^ hash64(entry.getValue()));
+			}
+			return hash;
+		} else if (value instanceof Object[]) {
+			return hash64((Object[]) value);
+		}
+		return mix(value.hashCode());
+	}
+
+	private static long hashUnordered(Collection<?> values) {
+		long hash = 0;
+		for (Object value : values) {
+			hash += mix(hash64(value));
+		}
+		return hash;
+	}
+
+	/**
+	 * The 64 bit finalizer of MurmurHash3.
+	 */
+	static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
 	 
 	 protected void printBoostAndQueryName(Map<String,Object> builder) throws IOException {
         builder.put(BOOST_FIELD.getPreferredName(), boost);
@@ -92,7 +248,25 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
             builder.put(NAME_FIELD.getPreferredName(), queryName);
         }
     }
+
+	 protected void printBoostAndQueryName(XContentBuilder builder) throws IOException {
+        builder.field(BOOST_FIELD.getPreferredName(), boost);
+        if (queryName != null) {
+            builder.field(NAME_FIELD.getPreferredName(), queryName);
+        }
+    }
 	 
+	/**
+	 * Fails when a single field query names a second field.
+	 */
+	protected static void throwParsingExceptionOnMultipleFields(String queryName, XContentParser parser,
+			String processedFieldName, String currentFieldName) {
+		if (processedFieldName != null) {
+			throw new ParsingException(parser, "[" + queryName + "] query doesn't support multiple fields, found ["
+					+ processedFieldName + "] and [" + currentFieldName + "]");
+		}
+	}
+
 	protected final void checkNegativeBoost(float boost) {
 	        if (Float.compare(boost, 0.0F) < 0) {
 //	            deprecationLogger.deprecatedAndMaybeLog("negative boost", "setting a negative [boost] on a query is deprecated and will throw an error in the next major version. You can use a value between 0 and 1 to deboost.", new Object[0]);
@@ -107,19 +281,106 @@ public abstract class AbstractQueryBuilder<QB extends AbstractQueryBuilder<QB>>
 	}
 	 
 	 protected abstract Map<String,Object> getXContent(Map<String,Object> builder) throws IOException;
+
+	/**
+	 * Frozen queries render compact json only once and copy the bytes afterwards.
+	 */
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+		if (RenderInstrumentation.ENABLED) {
+			builder.countQuery(getName());
+			RenderInstrumentation.LISTENER.onQuery(getName());
+		}
+		if (frozen && builder.contentType() == XContentType.JSON && builder.isPrettyPrint() == false
+				&& builder.isRecording() == false) {
+			byte[] body = builder.isCanonical() ? canonicalJson : json;
+			boolean cached = body != null;
+			if (body == null) {
+				body = renderJson(builder.isCanonical());
+				if (builder.isCanonical()) {
+					canonicalJson = body;
+				} else {
+					json = body;
+				}
+			}
+			if (RenderInstrumentation.ENABLED) {
+				countRenderedQueries(builder, cached);
+			}
+			builder.field(getName()).rawValue(body, 0, body.length);
+		} else {
+			doXContent(builder);
+		}
+		return builder;
+	}
+
+	/**
+	 * Renders the value of the <code>"name" : {...}</code> entry written by {@link #doXContent(XContentBuilder)}.
+	 */
+	private byte[] renderJson(boolean canonical) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XContentBuilder builder = XContentBuilder.jsonBuilder(out);
+		if (canonical) {
+			builder.canonical();
+		}
+		if (RenderInstrumentation.ENABLED) {
+			builder.countQueriesByName();
+		}
+		builder.startObject();
+		doXContent(builder);
+		builder.endObject();
+		builder.flush();
+		if (RenderInstrumentation.ENABLED) {
+			// written before the json, so whoever reads the json also reads the counts
+			renderedQueries = builder.queryCounts();
+		}
+		byte[] bytes = out.toByteArray();
+		// strip the enclosing {"name": and }
+		return Arrays.copyOfRange(bytes, getName().length() + 4, bytes.length - 1);
+	}
+
+	/**
+	 * Adds the queries nested in the cached json to the count of the builder. Rendering the
+	 * json already reported them to the listener, reusing it reports them again.
+	 */
+	private void countRenderedQueries(XContentBuilder builder, boolean cached) {
+		for (Map.Entry<String, Integer> entry : renderedQueries.entrySet()) {
+			for (int i = 0; i < entry.getValue(); i++) {
+				builder.countQuery(entry.getKey());
+				if (cached) {
+					RenderInstrumentation.LISTENER.onQuery(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streams the <code>"name" : {...}</code> entry of this query into the builder,
+	 * mirroring {@link #getXContent(Map)}.
+	 */
+	protected abstract void doXContent(XContentBuilder builder) throws IOException;
 	 
 	 @Override
 	 public final String toString(){
 		 try {
-			 Map<String,Object> builder = new HashMap<String,Object>();
-			 getXContent(builder);
-			return JSON.toJSONString(builder,true);
+			 long start = RenderInstrumentation.ENABLED ? System.nanoTime() : 0L;
+			 XContentBuilder builder = XContentBuilder.jsonBuilder().prettyPrint();
+			 builder.startObject();
+			 toXContent(builder);
+			 builder.endObject();
+			 String string = builder.string();
+			 if (RenderInstrumentation.ENABLED) {
+				 RenderInstrumentation.LISTENER.onRender(getName(), this, builder.queryCount(),
+						 builder.generator().bytesWritten(), System.nanoTime() - start);
+			 }
+			return string;
 		} catch (IOException e) {
 			try {
-				Map<String,Object> builder = new HashMap<String,Object>();
-                builder.put("error", "error building toString out of XContent: " + e.getMessage());
-                builder.put("stack_trace", ExceptionsHelper.stackTrace(e));
-                return JSON.toJSONString(builder,true);
+				XContentBuilder builder = XContentBuilder.jsonBuilder().prettyPrint();
+				builder.startObject();
+                builder.field("error", "error building toString out of XContent: " + e.getMessage());
+                builder.field("stack_trace", ExceptionsHelper.stackTrace(e));
+                builder.endObject();
+                return builder.string();
             } catch (Exception e2) {
                 throw new RuntimeException("cannot generate error message for deserialization", e);
             }
@@ -121,12 +121,27 @@ public abstract class BaseTermQueryBuilder<QB extends BaseTermQueryBuilder<QB>>
 		builder.put(getName(), nestMap);
 		return builder;
     }
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(getName());
+        builder.startObject(fieldName);
+        builder.field(VALUE_FIELD.getPreferredName(), this.value);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+        builder.endObject();
+    }
     
     @Override
     protected final int doHashCode() {
         return Objects.hash(fieldName, value);
     }
 
+    @Override
+    protected final long doStructuralHash() {
+        return hash64(fieldName, value);
+    }
+
     @Override
     protected final boolean doEquals(BaseTermQueryBuilder other) {
         return Objects.equals(fieldName, other.fieldName) &&
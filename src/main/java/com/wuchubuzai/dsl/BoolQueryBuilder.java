@@ -2,6 +2,7 @@ package com.wuchubuzai.dsl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -23,6 +24,13 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
             .withAllDeprecated("disable_coord has been removed");
     private static final ParseField MINIMUM_SHOULD_MATCH = new ParseField("minimum_should_match");
     private static final ParseField ADJUST_PURE_NEGATIVE = new ParseField("adjust_pure_negative");
+    private static final ParseField MUST_FIELD = new ParseField(MUST);
+    private static final ParseField MUST_NOT_FIELD = new ParseField(MUST_NOT, MUSTNOT);
+    private static final ParseField FILTER_FIELD = new ParseField(FILTER);
+    private static final ParseField SHOULD_FIELD = new ParseField(SHOULD);
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(MUST_FIELD, MUST_NOT_FIELD, FILTER_FIELD,
+            SHOULD_FIELD, DISABLE_COORD_FIELD, MINIMUM_SHOULD_MATCH, ADJUST_PURE_NEGATIVE,
+            AbstractQueryBuilder.BOOST_FIELD, AbstractQueryBuilder.NAME_FIELD);
 
     private final List<QueryBuilder> mustClauses = new ArrayList<>();
 
@@ -47,6 +55,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * contribute to scoring. No <tt>null</tt> value allowed.
      */
     public BoolQueryBuilder must(QueryBuilder queryBuilder) {
+        ensureNotFrozen();
         if (queryBuilder == null) {
             throw new IllegalArgumentException("inner bool query clause cannot be null");
         }
@@ -58,7 +67,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * Gets the queries that <b>must</b> appear in the matching documents.
      */
     public List<QueryBuilder> must() {
-        return this.mustClauses;
+        return isFrozen() ? Collections.unmodifiableList(this.mustClauses) : this.mustClauses;
     }
 
     /**
@@ -66,6 +75,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * not contribute to scoring. No <tt>null</tt> value allowed.
      */
     public BoolQueryBuilder filter(QueryBuilder queryBuilder) {
+        ensureNotFrozen();
         if (queryBuilder == null) {
             throw new IllegalArgumentException("inner bool query clause cannot be null");
         }
@@ -77,7 +87,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * Gets the queries that <b>must</b> appear in the matching documents but don't contribute to scoring
      */
     public List<QueryBuilder> filter() {
-        return this.filterClauses;
+        return isFrozen() ? Collections.unmodifiableList(this.filterClauses) : this.filterClauses;
     }
 
     /**
@@ -85,6 +95,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * No <tt>null</tt> value allowed.
      */
     public BoolQueryBuilder mustNot(QueryBuilder queryBuilder) {
+        ensureNotFrozen();
         if (queryBuilder == null) {
             throw new IllegalArgumentException("inner bool query clause cannot be null");
         }
@@ -96,7 +107,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * Gets the queries that <b>must not</b> appear in the matching documents.
      */
     public List<QueryBuilder> mustNot() {
-        return this.mustNotClauses;
+        return isFrozen() ? Collections.unmodifiableList(this.mustNotClauses) : this.mustNotClauses;
     }
 
     /**
@@ -107,6 +118,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * @see #minimumShouldMatch(int)
      */
     public BoolQueryBuilder should(QueryBuilder queryBuilder) {
+        ensureNotFrozen();
         if (queryBuilder == null) {
             throw new IllegalArgumentException("inner bool query clause cannot be null");
         }
@@ -121,7 +133,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      *  @see #minimumShouldMatch(int)
      */
     public List<QueryBuilder> should() {
-        return this.shouldClauses;
+        return isFrozen() ? Collections.unmodifiableList(this.shouldClauses) : this.shouldClauses;
     }
 
     /**
@@ -136,6 +148,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * @see BoolQueryBuilder#minimumShouldMatch(int)
      */
     public BoolQueryBuilder minimumShouldMatch(String minimumShouldMatch) {
+        ensureNotFrozen();
         this.minimumShouldMatch = minimumShouldMatch;
         return this;
     }
@@ -154,6 +167,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * @param minimumShouldMatch the number of optional clauses that must match
      */
     public BoolQueryBuilder minimumShouldMatch(int minimumShouldMatch) {
+        ensureNotFrozen();
         this.minimumShouldMatch = Integer.toString(minimumShouldMatch);
         return this;
     }
@@ -172,6 +186,7 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
      * as a pure exclude. The default is <code>true</code>.
      */
     public BoolQueryBuilder adjustPureNegative(boolean adjustPureNegative) {
+        ensureNotFrozen();
         this.adjustPureNegative = adjustPureNegative;
         return this;
     }
@@ -183,17 +198,119 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
         return this.adjustPureNegative;
     }
 
+    public static BoolQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        return fromXContent(parser, QueryParserRegistry.DEFAULT);
+    }
+
+    /**
+     * Parses a bool query, using the registry to parse the inner clauses.
+     */
+    public static BoolQueryBuilder fromXContent(XContentParser parser, QueryParserRegistry registry) throws IOException {
+        boolean adjustPureNegative = BoolQueryBuilder.ADJUST_PURE_NEGATIVE_DEFAULT;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String minimumShouldMatch = null;
+
+        final List<QueryBuilder> mustClauses = new ArrayList<>();
+        final List<QueryBuilder> mustNotClauses = new ArrayList<>();
+        final List<QueryBuilder> shouldClauses = new ArrayList<>();
+        final List<QueryBuilder> filterClauses = new ArrayList<>();
+        String queryName = null;
+
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                clauses(field, parser, mustClauses, mustNotClauses, shouldClauses, filterClauses)
+                        .add(registry.parseInnerQueryBuilder(parser));
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                List<QueryBuilder> clauses = clauses(field, parser, mustClauses, mustNotClauses, shouldClauses, filterClauses);
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    clauses.add(registry.parseInnerQueryBuilder(parser));
+                }
+            } else if (token.isValue()) {
+                if (field == DISABLE_COORD_FIELD) {
+                    // ignore, deprecated setting
+                } else if (field == MINIMUM_SHOULD_MATCH) {
+                    minimumShouldMatch = parser.text();
+                } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    boost = parser.floatValue();
+                } else if (field == ADJUST_PURE_NEGATIVE) {
+                    adjustPureNegative = parser.booleanValue();
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            }
+        }
+        BoolQueryBuilder boolQuery = new BoolQueryBuilder();
+        for (QueryBuilder queryBuilder : mustClauses) {
+            boolQuery.must(queryBuilder);
+        }
+        for (QueryBuilder queryBuilder : mustNotClauses) {
+            boolQuery.mustNot(queryBuilder);
+        }
+        for (QueryBuilder queryBuilder : shouldClauses) {
+            boolQuery.should(queryBuilder);
+        }
+        for (QueryBuilder queryBuilder : filterClauses) {
+            boolQuery.filter(queryBuilder);
+        }
+        boolQuery.boost(boost);
+        boolQuery.adjustPureNegative(adjustPureNegative);
+        boolQuery.minimumShouldMatch(minimumShouldMatch);
+        boolQuery.queryName(queryName);
+        return boolQuery;
+    }
+
+    private static List<QueryBuilder> clauses(ParseField field, XContentParser parser, List<QueryBuilder> mustClauses,
+            List<QueryBuilder> mustNotClauses, List<QueryBuilder> shouldClauses, List<QueryBuilder> filterClauses)
+            throws IOException {
+        if (field == MUST_FIELD) {
+            return mustClauses;
+        } else if (field == SHOULD_FIELD) {
+            return shouldClauses;
+        } else if (field == FILTER_FIELD) {
+            return filterClauses;
+        } else if (field == MUST_NOT_FIELD) {
+            return mustNotClauses;
+        }
+        throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+    }
+
 	@Override
 	public String getName() {
 		return NAME;
 	}
 
+	@Override
+	protected void doFreeze() {
+		freezeAll(mustClauses);
+		freezeAll(filterClauses);
+		freezeAll(mustNotClauses);
+		freezeAll(shouldClauses);
+	}
+
+	private static void freezeAll(List<QueryBuilder> clauses) {
+		for (QueryBuilder clause : clauses) {
+			freeze(clause);
+		}
+	}
+
 	@Override
 	protected int doHashCode() {
 		return Objects.hash(adjustPureNegative, minimumShouldMatch, mustClauses, shouldClauses, mustNotClauses,
 				filterClauses);
 	}
 
+	@Override
+	protected long doStructuralHash() {
+		return hash64(adjustPureNegative, minimumShouldMatch, mustClauses, shouldClauses, mustNotClauses,
+				filterClauses);
+	}
+
 	@Override
 	protected boolean doEquals(BoolQueryBuilder other) {
 		return Objects.equals(adjustPureNegative, other.adjustPureNegative)
@@ -223,6 +340,21 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
 	        
 	        
 	        
+	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		doXArrayContent(MUST, mustClauses, builder);
+		doXArrayContent(FILTER, filterClauses, builder);
+		doXArrayContent(MUST_NOT, mustNotClauses, builder);
+		doXArrayContent(SHOULD, shouldClauses, builder);
+		builder.field(ADJUST_PURE_NEGATIVE.getPreferredName(), adjustPureNegative);
+		if (minimumShouldMatch != null) {
+			builder.field(MINIMUM_SHOULD_MATCH.getPreferredName(), minimumShouldMatch);
+		}
+		printBoostAndQueryName(builder);
+		builder.endObject();
 	}
 
 	private void doXArrayContent(String field, List<QueryBuilder> clauses, Map<String, Object> builder)  throws IOException {
@@ -240,4 +372,17 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
 		builder.put(field, list);
 	}
 
+	private void doXArrayContent(String field, List<QueryBuilder> clauses, XContentBuilder builder) throws IOException {
+		if (clauses.isEmpty()) {
+			return;
+		}
+		builder.startArray(field);
+		for (QueryBuilder clause : clauses) {
+			builder.startObject();
+			clause.toXContent(builder);
+			builder.endObject();
+		}
+		builder.endArray();
+	}
+
 }
@@ -0,0 +1,87 @@
+package com.wuchubuzai.dsl;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A bounded pool of fixed size {@link ByteBuffer} chunks, either on heap or direct.
+ * Chunks are handed out by {@link #acquire()} and recycled by {@link #release(ByteBuffer)},
+ * once the pool is full released chunks are simply dropped.
+ */
+public final class ByteBufferPool {
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private final int chunkSize;
+
+    private final boolean direct;
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    /**
+     * Creates a pool of heap chunks with the default chunk size and bound.
+     */
+    public ByteBufferPool() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_MAX_POOLED, false);
+    }
+
+    /**
+     * @param chunkSize the size in bytes of every chunk
+     * @param maxPooled the maximum number of idle chunks kept by the pool
+     * @param direct    whether to allocate direct instead of heap buffers
+     */
+    public ByteBufferPool(int chunkSize, int maxPooled, boolean direct) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("[chunkSize] must be positive, found [" + chunkSize + "]");
+        }
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("[maxPooled] must be positive, found [" + maxPooled + "]");
+        }
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Returns a cleared chunk, recycled if one is available.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+        }
+        // through Buffer, the covariant ByteBuffer overrides do not exist on Java 8
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    /**
+     * Gives a chunk back to the pool. Buffers that were not created by this pool are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != chunkSize || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        ((Buffer) buffer).clear();
+        free.offer(buffer);
+    }
+
+    public int chunkSize() {
+        return this.chunkSize;
+    }
+
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+    /**
+     * Returns the number of idle chunks currently held by the pool.
+     */
+    public int pooled() {
+        return free.size();
+    }
+
+}
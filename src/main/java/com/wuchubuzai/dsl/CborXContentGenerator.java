@@ -0,0 +1,214 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * {@link XContentGenerator} writing CBOR (RFC 7049). Objects and arrays are written with
+ * indefinite lengths so tokens can be streamed without knowing the number of entries,
+ * which is also what Elasticsearch's own CBOR generator does. Floats are always written
+ * in 32 or 64 bits, so bodies of mostly strings are not smaller than json, see
+ * {@link XContentType}.
+ */
+public class CborXContentGenerator extends AbstractBinaryXContentGenerator {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1 << 5;
+    private static final int MAJOR_BYTES = 2 << 5;
+    private static final int MAJOR_TEXT = 3 << 5;
+    private static final int MAJOR_ARRAY = 4 << 5;
+    private static final int MAJOR_TAG = 6 << 5;
+
+    private static final int START_INDEFINITE_ARRAY = 0x9F;
+    private static final int START_INDEFINITE_MAP = 0xBF;
+    private static final int BREAK = 0xFF;
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int FLOAT_32 = 0xFA;
+    private static final int FLOAT_64 = 0xFB;
+
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+
+    private static final BigInteger MINUS_ONE = BigInteger.ONE.negate();
+
+    public CborXContentGenerator(OutputStream out) {
+        this(out, new byte[JsonXContentGenerator.DEFAULT_BUFFER_SIZE]);
+    }
+
+    public CborXContentGenerator(OutputStream out, byte[] buffer) {
+        super(out, buffer);
+    }
+
+    @Override
+    public XContentType contentType() {
+        return XContentType.CBOR;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writeByte(START_INDEFINITE_MAP);
+        push();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        pop();
+        writeByte(BREAK);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        writeByte(START_INDEFINITE_ARRAY);
+        push();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        pop();
+        writeByte(BREAK);
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        writeText(name);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        writeByte(NULL);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        writeNumber((long) value);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        if (value >= 0) {
+            writeHead(MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        int bits = Float.floatToIntBits(value);
+        ensureCapacity(5);
+        buffer[position++] = (byte) FLOAT_32;
+        buffer[position++] = (byte) (bits >> 24);
+        buffer[position++] = (byte) (bits >> 16);
+        buffer[position++] = (byte) (bits >> 8);
+        buffer[position++] = (byte) bits;
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(9);
+        buffer[position++] = (byte) FLOAT_64;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >> shift);
+        }
+    }
+
+    /**
+     * Integral values become integers or bignums (tags 2 and 3), others decimal
+     * fractions (tag 4).
+     */
+    @Override
+    public void writeNumber(String value) throws IOException {
+        BigDecimal decimal = new BigDecimal(value);
+        if (decimal.scale() <= 0) {
+            writeInteger(decimal.toBigIntegerExact());
+        } else {
+            writeHead(MAJOR_TAG, TAG_DECIMAL_FRACTION);
+            writeHead(MAJOR_ARRAY, 2);
+            writeNumber(-(long) decimal.scale());
+            writeInteger(decimal.unscaledValue());
+        }
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        writeText(value);
+    }
+
+    private void writeInteger(BigInteger value) throws IOException {
+        if (value.bitLength() < 64) {
+            writeNumber(value.longValue());
+        } else if (value.signum() > 0 && value.bitLength() == 64) {
+            writeHead(MAJOR_UNSIGNED, value.longValue());
+        } else if (value.signum() < 0 && value.bitLength() <= 64) {
+            writeHead(MAJOR_NEGATIVE, MINUS_ONE.subtract(value).longValue());
+        } else if (value.signum() > 0) {
+            writeHead(MAJOR_TAG, TAG_POSITIVE_BIGNUM);
+            writeByteString(value.toByteArray());
+        } else {
+            // Jackson, and so Elasticsearch, reads a negative bignum as -n rather than -1 - n
+            writeHead(MAJOR_TAG, TAG_NEGATIVE_BIGNUM);
+            writeByteString(value.negate().toByteArray());
+        }
+    }
+
+    /**
+     * Writes a bignum's bytes. The leading sign byte of {@link BigInteger#toByteArray()} is
+     * kept, it does not change the unsigned value and Jackson reads the bytes as signed.
+     */
+    private void writeByteString(byte[] bytes) throws IOException {
+        writeHead(MAJOR_BYTES, bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeText(String value) throws IOException {
+        writeHead(MAJOR_TEXT, utf8Length(value));
+        writeUtf8(value);
+    }
+
+    /**
+     * Writes the initial byte of a data item followed by its argument in the shortest form,
+     * the argument is read as unsigned.
+     */
+    private void writeHead(int major, long argument) throws IOException {
+        ensureCapacity(9);
+        if (argument < 0) {
+            writeHead8(major, argument);
+        } else if (argument < 24) {
+            buffer[position++] = (byte) (major | argument);
+        } else if (argument <= 0xFF) {
+            buffer[position++] = (byte) (major | 24);
+            buffer[position++] = (byte) argument;
+        } else if (argument <= 0xFFFF) {
+            buffer[position++] = (byte) (major | 25);
+            buffer[position++] = (byte) (argument >> 8);
+            buffer[position++] = (byte) argument;
+        } else if (argument <= 0xFFFFFFFFL) {
+            buffer[position++] = (byte) (major | 26);
+            buffer[position++] = (byte) (argument >> 24);
+            buffer[position++] = (byte) (argument >> 16);
+            buffer[position++] = (byte) (argument >> 8);
+            buffer[position++] = (byte) argument;
+        } else {
+            writeHead8(major, argument);
+        }
+    }
+
+    private void writeHead8(int major, long argument) {
+        buffer[position++] = (byte) (major | 27);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (argument >> shift);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Constructs a query that only match on documents that the field has a value in them.
+ */
+public class ExistsQueryBuilder extends AbstractQueryBuilder<ExistsQueryBuilder> {
+
+    public static final String NAME = "exists";
+
+    public static final ParseField FIELD_FIELD = new ParseField("field");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(FIELD_FIELD,
+            AbstractQueryBuilder.BOOST_FIELD, AbstractQueryBuilder.NAME_FIELD);
+
+    private final String fieldName;
+
+    public ExistsQueryBuilder(String fieldName) {
+        if (Strings.isEmpty(fieldName)) {
+            throw new IllegalArgumentException("field name is null or empty");
+        }
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * @return the field name that has to exist for this query to match
+     */
+    public String fieldName() {
+        return this.fieldName;
+    }
+
+    public static ExistsQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldPattern = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token.isValue()) {
+                if (field == FIELD_FIELD) {
+                    fieldPattern = parser.text();
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    queryName = parser.text();
+                } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    boost = parser.floatValue();
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+            }
+        }
+
+        if (fieldPattern == null) {
+            throw new ParsingException(parser, "[" + NAME + "] must be provided with a [field]");
+        }
+        return new ExistsQueryBuilder(fieldPattern)
+                .boost(boost)
+                .queryName(queryName);
+    }
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	protected int doHashCode() {
+		return Objects.hash(fieldName);
+	}
+
+	@Override
+	protected long doStructuralHash() {
+		return hash64(fieldName);
+	}
+
+	@Override
+	protected boolean doEquals(ExistsQueryBuilder other) {
+		return Objects.equals(fieldName, other.fieldName);
+	}
+
+	@Override
+	protected Map<String, Object> getXContent(Map<String, Object> builder) throws IOException {
+		Map<String, Object> fieldMap = new HashMap<String, Object>();
+		fieldMap.put(FIELD_FIELD.getPreferredName(), fieldName);
+		printBoostAndQueryName(fieldMap);
+		builder.put(NAME, fieldMap);
+		return builder;
+	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		builder.field(FIELD_FIELD.getPreferredName(), fieldName);
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.wuchubuzai.dsl;
+
+/**
+ * Count-min sketch of 4 bit counters estimating how often keys were seen recently, the
+ * admission filter of TinyLFU. Counters are halved once the number of increments reaches
+ * ten times the table width, so old popularity fades. Not thread safe.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL,
+            0xCBF29CE484222325L };
+
+    /** clears the bit each counter loses when all counters are shifted right by one */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table;
+
+    private int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        resize(expectedEntries);
+    }
+
+    /**
+     * Grows the sketch so it can tell apart about <code>entries</code> keys, forgetting the
+     * counts gathered so far.
+     */
+    void ensureCapacity(int entries) {
+        if (entries > table.length) {
+            resize(entries);
+        }
+    }
+
+    private void resize(int entries) {
+        int length = Integer.highestOneBit(Math.max(16, Math.min(entries, 1 << 30) - 1) << 1);
+        table = new long[length];
+        sampleSize = 10 * length;
+        additions = 0;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key, at most 15.
+     */
+    int frequency(int keyHash) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(keyHash, i);
+            frequency = Math.min(frequency, (int) ((table[index(hash)] >>> offset(hash)) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(int keyHash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(keyHash, i);
+            int index = index(hash);
+            int offset = offset(hash);
+            if (((table[index] >>> offset) & 0xF) != 0xF) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+    }
+
+    private static long hash(int keyHash, int i) {
+        long hash = (keyHash + SEEDS[i]) * SEEDS[i];
+        return hash + (hash >>> 32);
+    }
+
+    private int index(long hash) {
+        return (int) hash & (table.length - 1);
+    }
+
+    /** bit offset of one of the 16 counters packed into a table slot */
+    private static int offset(long hash) {
+        return ((int) (hash >>> 40) & 0xF) << 2;
+    }
+
+}
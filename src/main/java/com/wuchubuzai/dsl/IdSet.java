@@ -0,0 +1,428 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only set of the ids of an {@link IdsQueryBuilder}, held as sorted, front coded bytes:
+ * each id stores only the bytes that differ from the id before it, and every
+ * {@value #BLOCK_SIZE}th id is stored whole so that lookups can binary search. Ids that
+ * share long prefixes, like most generated ids do, take a few bytes each instead of a
+ * {@link String} and a hash set entry.
+ * <p>
+ * Added ids are appended to a buffer and sorted into the set, dropping duplicates, the
+ * next time the set is read. Chars are encoded one by one, with surrogates encoded
+ * separately, so that the order of the bytes is the order of
+ * {@link String#compareTo(String)} and iteration yields the ids in
+ * {@link XContentBuilder#canonical() canonical} order.
+ */
+final class IdSet extends AbstractSet<String> {
+
+    static final int BLOCK_SIZE = 16;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // the sorted ids, front coded as the length shared with the previous id, the length of the rest and the rest
+    private byte[] data = EMPTY;
+    private int dataLength;
+    // offset of the first id of each block
+    private int[] blocks = new int[0];
+    private int size;
+    private int hash;
+
+    // ids added since the last read, in the order they were added
+    private byte[] pending = EMPTY;
+    private int pendingLength;
+    private int[] pendingStarts = new int[0];
+    private int pendingCount;
+
+    // whether all ids are ascii without quotes, backslashes and control characters
+    private boolean plain = true;
+
+    void append(String id) {
+        if (pendingCount == pendingStarts.length) {
+            pendingStarts = Arrays.copyOf(pendingStarts, Math.max(16, pendingCount + (pendingCount >> 1)));
+        }
+        if (pendingLength + id.length() * 3 > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pendingLength + id.length() * 3,
+                    Math.max(64, pending.length + (pending.length >> 1))));
+        }
+        pendingStarts[pendingCount++] = pendingLength;
+        for (int i = 0; i < id.length() && plain; i++) {
+            char c = id.charAt(i);
+            plain = c >= 0x20 && c < 0x80 && c != '"' && c != '\\';
+        }
+        pendingLength = encode(id, pending, pendingLength);
+    }
+
+    /**
+     * Encodes the id at the offset, returning the offset after it.
+     */
+    private static int encode(String id, byte[] bytes, int offset) {
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < 0x80) {
+                bytes[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[offset++] = (byte) (0xC0 | (c >> 6));
+                bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[offset++] = (byte) (0xE0 | (c >> 12));
+                bytes[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Sorts the added ids into the set.
+     */
+    void seal() {
+        if (pendingCount == 0) {
+            return;
+        }
+        int[] order = new int[pendingCount];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sort(order, new int[order.length], 0, order.length);
+
+        Writer writer = new Writer(dataLength + pendingLength + pendingCount * 2);
+        Reader reader = new Reader();
+        boolean old = reader.next();
+        int next = 0;
+        while (old || next < order.length) {
+            if (old == false || (next < order.length && compare(order[next], reader.term, 0, reader.length) < 0)) {
+                int start = pendingStarts[order[next]];
+                writer.add(pending, start, end(order[next]) - start);
+                next++;
+            } else {
+                writer.add(reader.term, 0, reader.length);
+                old = reader.next();
+            }
+        }
+        data = Arrays.copyOf(writer.out, writer.length);
+        dataLength = writer.length;
+        blocks = Arrays.copyOf(writer.blocks, (writer.count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        size = writer.count;
+        hash = 0;
+        pending = EMPTY;
+        pendingLength = 0;
+        pendingStarts = new int[0];
+        pendingCount = 0;
+    }
+
+    /**
+     * Writes the ids as an array in sorted order, which is also their canonical order.
+     */
+    void writeTo(XContentBuilder builder) throws IOException {
+        seal();
+        builder.startArray();
+        Reader reader = new Reader();
+        if (plain && builder.contentType() == XContentType.JSON) {
+            // the ids need no escaping, copy them between quotes
+            byte[] quoted = new byte[16];
+            while (reader.next()) {
+                if (reader.length + 2 > quoted.length) {
+                    quoted = new byte[Math.max(reader.length + 2, quoted.length * 2)];
+                }
+                quoted[0] = '"';
+                System.arraycopy(reader.term, 0, quoted, 1, reader.length);
+                quoted[reader.length + 1] = '"';
+                builder.rawValue(quoted, 0, reader.length + 2);
+            }
+        } else {
+            while (reader.next()) {
+                builder.value(reader.string());
+            }
+        }
+        builder.endArray();
+    }
+
+    @Override
+    public int size() {
+        seal();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0 && pendingCount == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        seal();
+        String id = (String) o;
+        byte[] key = new byte[id.length() * 3];
+        int keyLength = encode(id, key, 0);
+        // the last block starting at or before the key
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Reader head = new Reader();
+            head.seek(mid);
+            head.next();
+            int cmp = compare(head.term, 0, head.length, key, 0, keyLength);
+            if (cmp == 0) {
+                return true;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0) {
+            return false;
+        }
+        Reader reader = new Reader();
+        reader.seek(high);
+        for (int i = 0; i < BLOCK_SIZE && reader.next(); i++) {
+            int cmp = compare(reader.term, 0, reader.length, key, 0, keyLength);
+            if (cmp >= 0) {
+                return cmp == 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        seal();
+        Reader reader = new Reader();
+        return new Iterator<String>() {
+            private boolean advanced;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (advanced == false) {
+                    hasNext = reader.next();
+                    advanced = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public String next() {
+                if (hasNext() == false) {
+                    throw new NoSuchElementException();
+                }
+                advanced = false;
+                return reader.string();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IdSet) {
+            IdSet other = (IdSet) o;
+            seal();
+            other.seal();
+            // sorted ids encode to the same bytes
+            return size == other.size && Arrays.equals(Arrays.copyOf(data, dataLength),
+                    Arrays.copyOf(other.data, other.dataLength));
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        seal();
+        if (hash == 0) {
+            hash = super.hashCode();
+        }
+        return hash;
+    }
+
+    private int end(int index) {
+        return index + 1 < pendingCount ? pendingStarts[index + 1] : pendingLength;
+    }
+
+    /**
+     * Compares the added id at the index with the bytes.
+     */
+    private int compare(int index, byte[] term, int offset, int length) {
+        int start = pendingStarts[index];
+        return compare(pending, start, end(index) - start, term, offset, length);
+    }
+
+    private static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Merge sorts the indexes of added ids by their bytes.
+     */
+    private void sort(int[] order, int[] scratch, int from, int to) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int index = order[i];
+                int j = i - 1;
+                for (; j >= from && compareAdded(order[j], index) > 0; j--) {
+                    order[j + 1] = order[j];
+                }
+                order[j + 1] = index;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(order, scratch, from, mid);
+        sort(order, scratch, mid, to);
+        if (compareAdded(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        for (int i = from, left = from, right = mid; i < to; i++) {
+            if (right == to || (left < mid && compareAdded(scratch[left], scratch[right]) <= 0)) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private int compareAdded(int index, int other) {
+        int start = pendingStarts[other];
+        return compare(index, pending, start, end(other) - start);
+    }
+
+    /**
+     * Decodes the ids one after the other.
+     */
+    private final class Reader {
+
+        private final byte[] bytes = data;
+        private final int count = size;
+        private int offset;
+        private int index;
+        private byte[] term = new byte[16];
+        private int length;
+
+        void seek(int block) {
+            offset = blocks[block];
+            index = block * BLOCK_SIZE;
+        }
+
+        boolean next() {
+            if (index == count) {
+                return false;
+            }
+            int shared = readVInt();
+            int suffix = readVInt();
+            if (shared + suffix > term.length) {
+                term = Arrays.copyOf(term, Math.max(shared + suffix, term.length * 2));
+            }
+            System.arraycopy(bytes, offset, term, shared, suffix);
+            offset += suffix;
+            length = shared + suffix;
+            index++;
+            return true;
+        }
+
+        private int readVInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String string() {
+            char[] chars = new char[length];
+            int count = 0;
+            for (int i = 0; i < length; ) {
+                int b = term[i] & 0xFF;
+                if (b < 0x80) {
+                    chars[count++] = (char) b;
+                    i++;
+                } else if (b < 0xE0) {
+                    chars[count++] = (char) (((b & 0x1F) << 6) | (term[i + 1] & 0x3F));
+                    i += 2;
+                } else {
+                    chars[count++] = (char) (((b & 0x0F) << 12) | ((term[i + 1] & 0x3F) << 6) | (term[i + 2] & 0x3F));
+                    i += 3;
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    }
+
+    /**
+     * Front codes sorted ids, dropping duplicates.
+     */
+    private static final class Writer {
+
+        private byte[] out;
+        private int length;
+        private int[] blocks = new int[16];
+        private int count;
+        private byte[] last = new byte[16];
+        private int lastLength;
+
+        Writer(int capacity) {
+            this.out = new byte[Math.max(16, capacity)];
+        }
+
+        void add(byte[] term, int offset, int termLength) {
+            if (count > 0 && compare(last, 0, lastLength, term, offset, termLength) == 0) {
+                return;
+            }
+            int shared = 0;
+            if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (block == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, block * 2);
+                }
+                blocks[block] = length;
+            } else {
+                int max = Math.min(lastLength, termLength);
+                while (shared < max && last[shared] == term[offset + shared]) {
+                    shared++;
+                }
+            }
+            int suffix = termLength - shared;
+            if (length + suffix + 10 > out.length) {
+                out = Arrays.copyOf(out, Math.max(length + suffix + 10, out.length + (out.length >> 1)));
+            }
+            writeVInt(shared);
+            writeVInt(suffix);
+            System.arraycopy(term, offset + shared, out, length, suffix);
+            length += suffix;
+            if (termLength > last.length) {
+                last = Arrays.copyOf(last, Math.max(termLength, last.length * 2));
+            }
+            System.arraycopy(term, offset + shared, last, shared, suffix);
+            lastLength = termLength;
+            count++;
+        }
+
+        private void writeVInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                out[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[length++] = (byte) value;
+        }
+    }
+
+}
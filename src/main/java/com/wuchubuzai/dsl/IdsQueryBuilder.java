@@ -1,25 +1,29 @@
 package com.wuchubuzai.dsl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 /**
- * A query that will return only documents matching specific ids (and a type).
+ * A query that will return only documents matching specific ids (and a type). The ids are
+ * kept sorted and front coded, see {@link IdSet}, and rendered in sorted order.
  */
 public class IdsQueryBuilder extends AbstractQueryBuilder<IdsQueryBuilder> {
 
 	public static final String NAME = "ids";
 
-	private static final ParseField TYPE_FIELD = new ParseField("type");
+	private static final ParseField TYPE_FIELD = new ParseField("type", "types", "_type");
 	private static final ParseField VALUES_FIELD = new ParseField("values");
+	private static final ParseFieldTable FIELDS = new ParseFieldTable(TYPE_FIELD, VALUES_FIELD,
+			AbstractQueryBuilder.BOOST_FIELD, AbstractQueryBuilder.NAME_FIELD);
 
-	private final Set<String> ids = new HashSet<>();
+	private final IdSet ids = new IdSet();
 
 	private String[] types = Strings.EMPTY_ARRAY;
 
@@ -34,6 +38,7 @@ public class IdsQueryBuilder extends AbstractQueryBuilder<IdsQueryBuilder> {
      * Add types to query
      */
     public IdsQueryBuilder types(String... types) {
+        ensureNotFrozen();
         if (types == null) {
             throw new IllegalArgumentException("[" + NAME + "] types cannot be null");
         }
@@ -45,22 +50,29 @@ public class IdsQueryBuilder extends AbstractQueryBuilder<IdsQueryBuilder> {
      * Returns the types used in this query
      */
     public String[] types() {
-        return this.types;
+        return isFrozen() ? this.types.clone() : this.types;
     }
 
     /**
      * Adds ids to the query.
      */
     public IdsQueryBuilder addIds(String... ids) {
+        ensureNotFrozen();
         if (ids == null) {
             throw new IllegalArgumentException("[" + NAME + "] ids cannot be null");
         }
-        Collections.addAll(this.ids, ids);
+        for (String id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("[" + NAME + "] ids cannot contain null");
+            }
+            this.ids.append(id);
+        }
         return this;
     }
     
     /**
-     * Returns the ids for the query.
+     * Returns the ids for the query in sorted order. The set is read-only, add ids with
+     * {@link #addIds(String...)}.
      */
     public Set<String> ids() {
         return this.ids;
@@ -75,17 +87,86 @@ public class IdsQueryBuilder extends AbstractQueryBuilder<IdsQueryBuilder> {
         builder.put(NAME, valueMap);
         return builder;
     }
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(NAME);
+        ids.writeTo(builder.field(VALUES_FIELD.getPreferredName()));
+        builder.field(TYPE_FIELD.getPreferredName(), types);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
 	
+    public static IdsQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        IdsQueryBuilder query = new IdsQueryBuilder();
+        List<String> types = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if (field == VALUES_FIELD) {
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        query.addIds(parseString(parser, field));
+                    }
+                } else if (field == TYPE_FIELD) {
+                    types = new ArrayList<>();
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        types.add(parseString(parser, field));
+                    }
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else if (token.isValue()) {
+                if (field == TYPE_FIELD) {
+                    types = Collections.singletonList(parseString(parser, field));
+                } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    query.boost(parser.floatValue());
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    query.queryName(parser.text());
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+            }
+        }
+        if (types != null) {
+            query.types(types.toArray(new String[types.size()]));
+        }
+        return query;
+    }
+
+    private static String parseString(XContentParser parser, ParseField field) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        if (token == XContentParser.Token.VALUE_STRING || token == XContentParser.Token.VALUE_NUMBER) {
+            return parser.text();
+        }
+        throw new ParsingException(parser, "[" + NAME + "] [" + field + "] expects strings but found [" + token + "]");
+    }
+
     @Override
     public String getName() {
         return NAME;
     }
 	
+    @Override
+    protected void doFreeze() {
+        // sort the ids now, reads must not modify a frozen query shared between threads
+        ids.seal();
+    }
+
     @Override
     protected int doHashCode() {
         return Objects.hash(ids, Arrays.hashCode(types));
     }
 
+    @Override
+    protected long doStructuralHash() {
+        return hash64(ids, types);
+    }
+
     @Override
     protected boolean doEquals(IdsQueryBuilder other) {
         return Objects.equals(ids, other.ids) &&
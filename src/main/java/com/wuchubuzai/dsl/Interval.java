@@ -0,0 +1,537 @@
+package com.wuchubuzai.dsl;
+
+import java.math.BigDecimal;
+
+/**
+ * Interval of field values, the set of values a range query accepts, with the comparisons
+ * needed to reason about it. Values are first turned into keys by {@link Order#key(Object)};
+ * keys that cannot be ordered against each other compare as {@link #INCOMPARABLE}, and
+ * every check answers conservatively for them.
+ */
+final class Interval {
+
+    /** result of {@link #compare(Object, Object)} when the order of two keys is not known */
+    static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    /**
+     * How the values of a field are ordered.
+     */
+    enum Order {
+        /** numbers, and strings that parse as numbers */
+        NUMERIC,
+        /**
+         * strings by code point, the order of keyword fields and ISO 8601 dates. Strings that
+         * look like numbers are only ordered where numeric and text order agree, since the
+         * field may be numeric, and a string is not ordered against its own prefixes, since
+         * <code>lte 2018-01</code> on a date field also accepts <code>2018-01-15</code>.
+         * Date times with a zone designator, such as <code>2020-01-01T10:00:00+05:00</code>,
+         * are only ordered against date times with the same designator.
+         */
+        TEXT,
+        /** strings by code point, numbers are compared as their string form */
+        KEYWORD;
+
+        /**
+         * Returns the order of a field from the values it is queried with: numeric if one
+         * of them is a java number, otherwise text.
+         */
+        static Order of(Iterable<?> values) {
+            for (Object value : values) {
+                if (value instanceof Number) {
+                    return NUMERIC;
+                }
+            }
+            return TEXT;
+        }
+
+        /**
+         * Returns the key of a term or range bound, or null if its position is not known:
+         * prepared query parameters, malformed date math and strings that are not numbers on
+         * numeric fields. Numeric keys are {@link BigDecimal}s, compared at full precision,
+         * date math is a {@link DateMath}, all others strings.
+         */
+        Object key(Object value) {
+            if (value == null || value instanceof PreparedQuery.Parameter) {
+                return null;
+            }
+            if (value instanceof Boolean) {
+                return value.toString();
+            }
+            if (this != KEYWORD && value instanceof String && DateMath.isDateMath((String) value)) {
+                return DateMath.parse((String) value);
+            }
+            if (this == NUMERIC) {
+                return number(value);
+            }
+            return value.toString();
+        }
+
+        private static BigDecimal number(Object value) {
+            if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                return Double.isNaN(d) || Double.isInfinite(d) ? null : BigDecimal.valueOf(d);
+            }
+            if (value instanceof BigDecimal) {
+                return (BigDecimal) value;
+            }
+            if (value instanceof Number) {
+                return BigDecimal.valueOf(((Number) value).longValue());
+            }
+            return parse(value.toString());
+        }
+
+        /**
+         * Compares two keys of this order, returning {@link #INCOMPARABLE} if they have no known order.
+         */
+        int compare(Object a, Object b) {
+            if (a instanceof DateMath || b instanceof DateMath) {
+                return a instanceof DateMath && b instanceof DateMath ? ((DateMath) a).compare((DateMath) b)
+                        : INCOMPARABLE;
+            }
+            if (this == NUMERIC) {
+                return Integer.signum(((BigDecimal) a).compareTo((BigDecimal) b));
+            }
+            if (this == TEXT) {
+                String x = (String) a;
+                String y = (String) b;
+                int zoneX = zoneStart(x);
+                int zoneY = zoneStart(y);
+                if (zoneX >= 0 || zoneY >= 0) {
+                    // the text order of date times only holds within one zone
+                    if (zoneX < 0 || zoneY < 0 || x.substring(zoneX).equals(y.substring(zoneY)) == false) {
+                        return INCOMPARABLE;
+                    }
+                    return compare(x.substring(0, zoneX), y.substring(0, zoneY));
+                }
+            }
+            int text = Integer.signum(compareText((String) a, (String) b));
+            if (this == TEXT) {
+                if (text != 0 && (((String) a).startsWith((String) b) || ((String) b).startsWith((String) a))) {
+                    return INCOMPARABLE;
+                }
+                BigDecimal x = parse((String) a);
+                BigDecimal y = x == null ? null : parse((String) b);
+                if (y != null && Integer.signum(x.compareTo(y)) != text) {
+                    return INCOMPARABLE;
+                }
+            }
+            return text;
+        }
+
+        /**
+         * Returns the index of the zone designator of an ISO 8601 date time, <code>Z</code> or
+         * an offset such as <code>+05:00</code> following the time, or -1 if there is none.
+         */
+        private static int zoneStart(String value) {
+            int time = value.indexOf('T');
+            if (time < 1 || Character.isDigit(value.charAt(time - 1)) == false) {
+                return -1;
+            }
+            int last = value.length() - 1;
+            if (last > time && value.charAt(last) == 'Z') {
+                return last;
+            }
+            for (int i = last; i > time; i--) {
+                char c = value.charAt(i);
+                if (c == '+' || c == '-') {
+                    return i;
+                }
+                if (Character.isDigit(c) == false && c != ':') {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Date math such as <code>now-1d</code> or <code>2018-01-01||+1M/d</code>. Elasticsearch
+     * resolves <code>now</code> once per request, so expressions on the same anchor that only
+     * add units of fixed length are ordered by their offset. Expressions that round or add
+     * months or years are only known to equal themselves.
+     */
+    static final class DateMath {
+
+        private final String expression;
+        private final String anchor;
+        private final long offset;
+        private final boolean fixed;
+
+        private DateMath(String expression, String anchor, long offset, boolean fixed) {
+            this.expression = expression;
+            this.anchor = anchor;
+            this.offset = offset;
+            this.fixed = fixed;
+        }
+
+        static boolean isDateMath(String value) {
+            return value.startsWith("now") || value.contains("||");
+        }
+
+        /**
+         * Parses the expression, returning null if it is not valid date math.
+         */
+        static DateMath parse(String expression) {
+            String anchor;
+            String math;
+            if (expression.startsWith("now")) {
+                anchor = "now";
+                math = expression.substring(3);
+            } else {
+                int separator = expression.indexOf("||");
+                anchor = expression.substring(0, separator);
+                math = expression.substring(separator + 2);
+            }
+            long offset = 0;
+            boolean fixed = true;
+            int i = 0;
+            while (i < math.length()) {
+                char op = math.charAt(i++);
+                if (op == '/') {
+                    if (i == math.length() || unitMillis(math.charAt(i++)) == 0) {
+                        return null;
+                    }
+                    fixed = false;
+                } else if (op == '+' || op == '-') {
+                    long amount = 0;
+                    int start = i;
+                    while (i < math.length() && Character.isDigit(math.charAt(i))) {
+                        amount = amount * 10 + (math.charAt(i++) - '0');
+                        if (amount > Integer.MAX_VALUE) {
+                            return null;
+                        }
+                    }
+                    if (i == start) {
+                        amount = 1;
+                    }
+                    long unit = i < math.length() ? unitMillis(math.charAt(i++)) : 0;
+                    if (unit == 0) {
+                        return null;
+                    } else if (unit < 0) {
+                        fixed = false;
+                    } else {
+                        offset += (op == '+' ? amount : -amount) * unit;
+                    }
+                } else {
+                    return null;
+                }
+            }
+            return new DateMath(expression, anchor, offset, fixed);
+        }
+
+        /**
+         * Returns the length of the unit in milliseconds, -1 for months and years and 0 if it is not a unit.
+         */
+        private static long unitMillis(char unit) {
+            switch (unit) {
+            case 'y':
+            case 'M':
+                return -1;
+            case 'w':
+                return 7 * 24 * 3600_000L;
+            case 'd':
+                return 24 * 3600_000L;
+            case 'h':
+            case 'H':
+                return 3600_000L;
+            case 'm':
+                return 60_000L;
+            case 's':
+                return 1000L;
+            default:
+                return 0;
+            }
+        }
+
+        int compare(DateMath other) {
+            if (expression.equals(other.expression)) {
+                return 0;
+            }
+            if (fixed && other.fixed && anchor.equals(other.anchor)) {
+                return Long.compare(offset, other.offset);
+            }
+            return INCOMPARABLE;
+        }
+
+        @Override
+        public String toString() {
+            return expression;
+        }
+    }
+
+    final Order order;
+    /** the lower bound as given to the range query, null when unbounded */
+    final Object lowerValue;
+    /** key of the lower bound, null when unbounded or not known */
+    final Object lower;
+    final boolean includeLower;
+    /** the upper bound as given to the range query, null when unbounded */
+    final Object upperValue;
+    /** key of the upper bound, null when unbounded or not known */
+    final Object upper;
+    final boolean includeUpper;
+
+    private Interval(Order order, Object lowerValue, Object lower, boolean includeLower, Object upperValue,
+            Object upper, boolean includeUpper) {
+        this.order = order;
+        this.lowerValue = lowerValue;
+        this.lower = lower;
+        this.includeLower = lowerValue == null || includeLower;
+        this.upperValue = upperValue;
+        this.upper = upper;
+        this.includeUpper = upperValue == null || includeUpper;
+    }
+
+    /**
+     * Returns the values accepted by the range query. Bounds whose key is not known are kept
+     * but take no part in the checks, so the interval may seem wider than the query but never
+     * narrower.
+     */
+    static Interval of(RangeQueryBuilder range, Order order) {
+        return new Interval(order, range.from(), order.key(range.from()), range.includeLower(), range.to(),
+                order.key(range.to()), range.includeUpper());
+    }
+
+    /**
+     * Whether the bounds of the range query all have known keys.
+     */
+    static boolean isExact(RangeQueryBuilder range, Order order) {
+        return (range.from() == null || order.key(range.from()) != null)
+                && (range.to() == null || order.key(range.to()) != null);
+    }
+
+    /**
+     * Whether both bounds have known keys, so the checks see exactly the values of the range query.
+     */
+    boolean isExact() {
+        return (lowerValue == null || lower != null) && (upperValue == null || upper != null);
+    }
+
+    /**
+     * Whether the interval is known to hold a single value.
+     */
+    boolean isPoint() {
+        return lower != null && upper != null && includeLower && includeUpper && compare(lower, upper) == 0;
+    }
+
+    /**
+     * Returns a range query on the field accepting the values of this interval.
+     */
+    RangeQueryBuilder toRangeQuery(String fieldName) {
+        return new RangeQueryBuilder(fieldName).from(lowerValue, includeLower).to(upperValue, includeUpper);
+    }
+
+    int compare(Object a, Object b) {
+        return order.compare(a, b);
+    }
+
+    /**
+     * Whether the interval is known to contain no value.
+     */
+    boolean isEmpty() {
+        if (lower == null || upper == null) {
+            return false;
+        }
+        int c = compare(lower, upper);
+        return c != INCOMPARABLE && (c > 0 || (c == 0 && (includeLower == false || includeUpper == false)));
+    }
+
+    /**
+     * Whether the key is known to lie inside the interval.
+     */
+    boolean contains(Object key) {
+        return aboveLower(key) && belowUpper(key);
+    }
+
+    /**
+     * Whether the key is known to lie outside the interval.
+     */
+    boolean excludes(Object key) {
+        if (lower != null) {
+            int c = compare(key, lower);
+            if (c != INCOMPARABLE && (c < 0 || (c == 0 && includeLower == false))) {
+                return true;
+            }
+        }
+        if (upper != null) {
+            int c = compare(key, upper);
+            return c != INCOMPARABLE && (c > 0 || (c == 0 && includeUpper == false));
+        }
+        return false;
+    }
+
+    private boolean aboveLower(Object key) {
+        if (lower == null) {
+            return lowerValue == null;
+        }
+        int c = compare(key, lower);
+        return c != INCOMPARABLE && (c > 0 || (c == 0 && includeLower));
+    }
+
+    private boolean belowUpper(Object key) {
+        if (upper == null) {
+            return upperValue == null;
+        }
+        int c = compare(key, upper);
+        return c != INCOMPARABLE && (c < 0 || (c == 0 && includeUpper));
+    }
+
+    /**
+     * Whether every value of this interval is known to lie inside the other one.
+     */
+    boolean within(Interval other) {
+        if (other.isExact() == false) {
+            return false;
+        }
+        if (other.lower != null) {
+            if (lower == null) {
+                return false;
+            }
+            int c = compare(lower, other.lower);
+            if (c == INCOMPARABLE || c < 0 || (c == 0 && includeLower && other.includeLower == false)) {
+                return false;
+            }
+        }
+        if (other.upper != null) {
+            if (upper == null) {
+                return false;
+            }
+            int c = compare(upper, other.upper);
+            return c != INCOMPARABLE && (c < 0 || (c == 0 && (includeUpper == false || other.includeUpper)));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values in both intervals, or null if the bounds cannot be ordered.
+     */
+    Interval intersect(Interval other) {
+        Interval lowest = this;
+        boolean includeLower = this.includeLower;
+        if (other.lowerValue != null) {
+            int c = lowerValue == null ? -1 : compareBounds(lower, other.lower);
+            if (c == INCOMPARABLE) {
+                return null;
+            }
+            if (c < 0) {
+                lowest = other;
+                includeLower = other.includeLower;
+            } else if (c == 0) {
+                includeLower &= other.includeLower;
+            }
+        }
+        Interval highest = this;
+        boolean includeUpper = this.includeUpper;
+        if (other.upperValue != null) {
+            int c = upperValue == null ? 1 : compareBounds(upper, other.upper);
+            if (c == INCOMPARABLE) {
+                return null;
+            }
+            if (c > 0) {
+                highest = other;
+                includeUpper = other.includeUpper;
+            } else if (c == 0) {
+                includeUpper &= other.includeUpper;
+            }
+        }
+        return new Interval(order, lowest.lowerValue, lowest.lower, includeLower, highest.upperValue, highest.upper,
+                includeUpper);
+    }
+
+    /**
+     * Returns the values in either interval if they overlap or touch, so that together they
+     * form one interval, or null if there may be a gap between them.
+     */
+    Interval union(Interval other) {
+        if (isExact() == false || other.isExact() == false || reaches(this, other) == false
+                || reaches(other, this) == false) {
+            return null;
+        }
+        Interval lowest = this;
+        boolean includeLower = this.includeLower;
+        if (lowerValue != null) {
+            int c = other.lowerValue == null ? 1 : compare(lower, other.lower);
+            if (c == INCOMPARABLE) {
+                return null;
+            }
+            if (c > 0) {
+                lowest = other;
+                includeLower = other.includeLower;
+            } else if (c == 0) {
+                includeLower |= other.includeLower;
+            }
+        }
+        Interval highest = this;
+        boolean includeUpper = this.includeUpper;
+        if (upperValue != null) {
+            int c = other.upperValue == null ? -1 : compare(upper, other.upper);
+            if (c == INCOMPARABLE) {
+                return null;
+            }
+            if (c < 0) {
+                highest = other;
+                includeUpper = other.includeUpper;
+            } else if (c == 0) {
+                includeUpper |= other.includeUpper;
+            }
+        }
+        return new Interval(order, lowest.lowerValue, lowest.lower, includeLower, highest.upperValue, highest.upper,
+                includeUpper);
+    }
+
+    /**
+     * Whether the values up to the upper bound of the first interval reach the lower bound of
+     * the second one, leaving no gap.
+     */
+    private static boolean reaches(Interval below, Interval above) {
+        if (below.upper == null || above.lower == null) {
+            return true;
+        }
+        int c = below.compare(below.upper, above.lower);
+        return c != INCOMPARABLE && (c > 0 || (c == 0 && (below.includeUpper || above.includeLower)));
+    }
+
+    private int compareBounds(Object a, Object b) {
+        return a == null || b == null ? INCOMPARABLE : compare(a, b);
+    }
+
+    /**
+     * Compares by code point, the order of the utf-8 bytes lucene sorts terms by.
+     */
+    private static int compareText(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    /**
+     * Parses plain decimal numbers, returning null for anything else.
+     */
+    private static BigDecimal parse(String text) {
+        int length = text.length();
+        if (length == 0 || length > 64) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                return null;
+            }
+        }
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
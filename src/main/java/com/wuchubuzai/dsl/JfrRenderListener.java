@@ -0,0 +1,30 @@
+package com.wuchubuzai.dsl;
+
+/**
+ * A {@link RenderListener} recording renders slower than a threshold as JDK Flight
+ * Recorder events, see the Java 11 version of this class. Flight Recorder events need
+ * Java 11, on Java 8 this version of the class is loaded, which records nothing.
+ */
+public final class JfrRenderListener implements RenderListener {
+
+    public static final String THRESHOLD_PROPERTY = "wuchubuzai.dsl.jfr.threshold";
+
+    public JfrRenderListener() {
+    }
+
+    /**
+     * Whether renders are recorded, false before Java 11.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    @Override
+    public void onQuery(String name) {
+    }
+
+    @Override
+    public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+    }
+
+}
@@ -0,0 +1,435 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * {@link XContentGenerator} that encodes JSON straight to UTF-8 bytes. Strings are
+ * escaped and encoded character by character and integral numbers are written digit
+ * by digit, so rendering does not go through intermediate {@link String}s.
+ */
+public class JsonXContentGenerator implements XContentGenerator {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<byte[]> RECYCLED_BUFFER = new ThreadLocal<>();
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] MIN_LONG = {'-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4', '7', '7', '5', '8', '0', '8'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    /** tens and ones digit of each number below 100 */
+    private static final byte[] DIGIT_TENS = new byte[100];
+    private static final byte[] DIGIT_ONES = new byte[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    /** bytes handed to the stream */
+    private long flushed;
+
+    private boolean prettyPrint;
+
+    /** number of entries written so far per nesting level, index 0 is the root */
+    private int[] counts = new int[16];
+
+    private int depth;
+
+    private boolean afterFieldName;
+
+    public JsonXContentGenerator(OutputStream out) {
+        this(out, new byte[DEFAULT_BUFFER_SIZE]);
+    }
+
+    /**
+     * Creates a generator that uses the given scratch buffer, which must not be shared
+     * with another generator while this one is in use.
+     */
+    public JsonXContentGenerator(OutputStream out, byte[] buffer) {
+        if (out == null) {
+            throw new IllegalArgumentException("output stream cannot be null");
+        }
+        if (buffer == null || buffer.length < 64) {
+            throw new IllegalArgumentException("buffer must hold at least 64 bytes");
+        }
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Borrows this thread's recycled scratch buffer, nested borrows get a fresh one. Give
+     * it back with {@link #recycleBuffer(byte[])} once the generator using it is done.
+     */
+    static byte[] borrowBuffer() {
+        byte[] buffer = RECYCLED_BUFFER.get();
+        if (buffer == null) {
+            return new byte[DEFAULT_BUFFER_SIZE];
+        }
+        RECYCLED_BUFFER.set(null);
+        return buffer;
+    }
+
+    static void recycleBuffer(byte[] buffer) {
+        RECYCLED_BUFFER.set(buffer);
+    }
+
+    @Override
+    public XContentType contentType() {
+        return XContentType.JSON;
+    }
+
+    @Override
+    public void usePrettyPrint() {
+        this.prettyPrint = true;
+    }
+
+    @Override
+    public boolean isPrettyPrint() {
+        return this.prettyPrint;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        beforeValue();
+        writeByte((byte) '{');
+        push();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        pop();
+        writeByte((byte) '}');
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        beforeValue();
+        writeByte((byte) '[');
+        push();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        pop();
+        writeByte((byte) ']');
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        beforeEntry();
+        writeQuoted(name);
+        writeByte((byte) ':');
+        afterFieldName = true;
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        beforeValue();
+        writeLong(value);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        beforeValue();
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeBytes(NULL);
+        } else if (isSmallIntegral(value)) {
+            writeIntegral((long) value);
+        } else {
+            writeAscii(Float.toString(value));
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeBytes(NULL);
+        } else if (isSmallIntegral(value)) {
+            writeIntegral((long) value);
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    @Override
+    public void writeNumber(String value) throws IOException {
+        beforeValue();
+        writeAscii(value);
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        beforeValue();
+        writeQuoted(value);
+    }
+
+    @Override
+    public void writeRawValue(byte[] value, int offset, int length) throws IOException {
+        beforeValue();
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(value, offset, length);
+                flushed += length;
+                return;
+            }
+        }
+        System.arraycopy(value, offset, buffer, position, length);
+        position += length;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return flushed + position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void push() {
+        depth++;
+        if (depth == counts.length) {
+            counts = Arrays.copyOf(counts, counts.length << 1);
+        }
+        counts[depth] = 0;
+    }
+
+    private void pop() throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("no object or array to close");
+        }
+        if (prettyPrint && counts[depth] > 0) {
+            newLine(depth - 1);
+        }
+        depth--;
+    }
+
+    /**
+     * Writes the separator in front of a value, unless the value belongs to a field name.
+     */
+    private void beforeValue() throws IOException {
+        if (afterFieldName) {
+            afterFieldName = false;
+            return;
+        }
+        beforeEntry();
+    }
+
+    private void beforeEntry() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        if (counts[depth]++ > 0) {
+            writeByte((byte) ',');
+        }
+        if (prettyPrint) {
+            newLine(depth);
+        }
+    }
+
+    private void newLine(int indent) throws IOException {
+        writeByte((byte) '\n');
+        for (int i = 0; i < indent; i++) {
+            writeByte((byte) '\t');
+        }
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        writeByte((byte) '"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c < 0x20 || c == '"' || c == '\\') {
+                    writeEscaped(c);
+                } else {
+                    writeByte((byte) c);
+                }
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement the JDK encoder uses
+                writeByte((byte) '?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte((byte) '"');
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        ensureCapacity(6);
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+                buffer[position++] = '"';
+                break;
+            case '\\':
+                buffer[position++] = '\\';
+                break;
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        int i = end;
+        // two digits per division, ints divide faster once the value fits
+        while (value >= Integer.MAX_VALUE) {
+            int pair = (int) (value % 100);
+            value /= 100;
+            buffer[--i] = DIGIT_ONES[pair];
+            buffer[--i] = DIGIT_TENS[pair];
+        }
+        int remaining = (int) value;
+        while (remaining >= 100) {
+            int pair = remaining % 100;
+            remaining /= 100;
+            buffer[--i] = DIGIT_ONES[pair];
+            buffer[--i] = DIGIT_TENS[pair];
+        }
+        buffer[--i] = DIGIT_ONES[remaining];
+        if (remaining >= 10) {
+            buffer[--i] = DIGIT_TENS[remaining];
+        }
+        position = end;
+    }
+
+    /**
+     * Whether {@link Double#toString(double)} prints the value as <code>digits.0</code>, which
+     * is the case for integral values below 10^7 except negative zero. Boosts are almost
+     * always such values, so they are written without going through a string.
+     */
+    private static boolean isSmallIntegral(double value) {
+        return value == (long) value && Math.abs(value) < 1e7 && (value != 0 || 1 / value > 0);
+    }
+
+    private void writeIntegral(long value) throws IOException {
+        writeLong(value);
+        ensureCapacity(2);
+        buffer[position++] = '.';
+        buffer[position++] = '0';
+    }
+
+    private void writeAscii(String value) throws IOException {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            writeByte((byte) value.charAt(i));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(byte b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = b;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        flushed += position;
+        position = 0;
+    }
+
+}
@@ -0,0 +1,649 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streaming json tokenizer. Input is read in chunks and tokens are produced one at a
+ * time, no document tree is built. Field names and string values are collected in
+ * reusable buffers and only turned into {@link String}s when asked for.
+ */
+public class JsonXContentParser implements XContentParser {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+
+    private final ByteBuffer bytes;
+
+    private final CharsetDecoder decoder;
+
+    /** set once all bytes went through the decoder */
+    private boolean decoded;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private int line = 1;
+
+    private int lineStart;
+
+    /** chars consumed by previous buffer fills, used to compute columns */
+    private int consumed;
+
+    private Token token;
+
+    /** per nesting level: whether it is an object, the number of entries and the current field name */
+    private boolean[] objects = new boolean[16];
+
+    private int[] counts = new int[16];
+
+    private char[][] names = new char[16][];
+
+    private int[] nameLengths = new int[16];
+
+    private String[] nameStrings = new String[16];
+
+    private int depth;
+
+    /** text of the current value token */
+    private char[] text = new char[64];
+
+    private int textLength;
+
+    private String textString;
+
+    private boolean numberIsIntegral;
+
+    public JsonXContentParser(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader cannot be null");
+        }
+        this.reader = reader;
+        this.bytes = null;
+        this.decoder = null;
+    }
+
+    /**
+     * Parses UTF-8 encoded json from the remaining bytes of the buffer.
+     */
+    public JsonXContentParser(ByteBuffer bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("buffer cannot be null");
+        }
+        this.reader = null;
+        this.bytes = bytes;
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public JsonXContentParser(String content) {
+        this(new StringReader(content));
+    }
+
+    public JsonXContentParser(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Token nextToken() throws IOException {
+        int c = skipWhitespace();
+        if (depth > 0 && objects[depth] && token != Token.FIELD_NAME) {
+            if (c == '}') {
+                position++;
+                depth--;
+                return token = Token.END_OBJECT;
+            }
+            if (counts[depth] > 0) {
+                expect(c, ',');
+                c = skipWhitespace();
+            }
+            expect(c, '"');
+            readString();
+            setName(depth);
+            expect(skipWhitespace(), ':');
+            counts[depth]++;
+            return token = Token.FIELD_NAME;
+        }
+        if (depth > 0 && objects[depth] == false) {
+            if (c == ']') {
+                position++;
+                depth--;
+                return token = Token.END_ARRAY;
+            }
+            if (counts[depth] > 0) {
+                expect(c, ',');
+                c = skipWhitespace();
+            }
+            counts[depth]++;
+        }
+        switch (c) {
+            case EOF:
+                if (depth > 0) {
+                    throw new ParsingException(this, "unexpected end of input, object or array not closed");
+                }
+                return token = null;
+            case '{':
+                position++;
+                push(true);
+                return token = Token.START_OBJECT;
+            case '[':
+                position++;
+                push(false);
+                return token = Token.START_ARRAY;
+            case '"':
+                position++;
+                readString();
+                return token = Token.VALUE_STRING;
+            case 't':
+                readLiteral("true");
+                return token = Token.VALUE_BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                return token = Token.VALUE_BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                return token = Token.VALUE_NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber();
+                    return token = Token.VALUE_NUMBER;
+                }
+                throw new ParsingException(this, "unexpected character [" + (char) c + "]");
+        }
+    }
+
+    @Override
+    public Token currentToken() {
+        return token;
+    }
+
+    @Override
+    public String currentName() {
+        int level = depth;
+        if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+            level--;
+        }
+        if (level <= 0 || objects[level] == false) {
+            return null;
+        }
+        if (nameStrings[level] == null) {
+            nameStrings[level] = new String(names[level], 0, nameLengths[level]);
+        }
+        return nameStrings[level];
+    }
+
+    @Override
+    public ParseField currentField(ParseFieldTable table) {
+        int level = depth;
+        if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+            level--;
+        }
+        if (level <= 0 || objects[level] == false) {
+            return null;
+        }
+        return table.get(names[level], 0, nameLengths[level]);
+    }
+
+    /**
+     * Returns the characters of the current field name, valid until the next token. Use
+     * together with {@link #currentNameLength()} to look names up without creating strings.
+     */
+    public char[] currentNameChars() {
+        int level = depth;
+        if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+            level--;
+        }
+        return level <= 0 || objects[level] == false ? null : names[level];
+    }
+
+    public int currentNameLength() {
+        int level = depth;
+        if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+            level--;
+        }
+        return level <= 0 || objects[level] == false ? 0 : nameLengths[level];
+    }
+
+    @Override
+    public String text() {
+        if (token == Token.FIELD_NAME) {
+            return currentName();
+        }
+        if (token == null || token.isValue() == false || token == Token.VALUE_NULL) {
+            throw new ParsingException(this, "current token [" + token + "] has no text");
+        }
+        if (textString == null) {
+            textString = new String(text, 0, textLength);
+        }
+        return textString;
+    }
+
+    @Override
+    public Object objectText() {
+        if (token == Token.VALUE_NULL) {
+            return null;
+        } else if (token == Token.VALUE_NUMBER) {
+            return numberValue();
+        } else if (token == Token.VALUE_BOOLEAN) {
+            return booleanValue();
+        }
+        return text();
+    }
+
+    @Override
+    public Number numberValue() {
+        if (token == Token.VALUE_NUMBER) {
+            if (numberIsIntegral) {
+                if (textLength < 19) {
+                    long value = parseLong();
+                    if (value == (int) value) {
+                        return (int) value;
+                    }
+                    return value;
+                }
+                BigInteger value = new BigInteger(text());
+                return value.bitLength() < 64 ? (Number) value.longValue() : value;
+            }
+            return Double.parseDouble(text());
+        }
+        if (token == Token.VALUE_STRING) {
+            try {
+                String value = text();
+                if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+                    return Long.parseLong(value);
+                }
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new ParsingException(this, "cannot parse [" + text() + "] as a number", e);
+            }
+        }
+        throw new ParsingException(this, "current token [" + token + "] is not a number");
+    }
+
+    @Override
+    public int intValue() {
+        if (token == Token.VALUE_NUMBER && numberIsIntegral && textLength < 19) {
+            long value = parseLong();
+            if (value != (int) value) {
+                throw new ParsingException(this, "numeric value [" + text() + "] out of range of int");
+            }
+            return (int) value;
+        }
+        Number number = numberValue();
+        double value = number.doubleValue();
+        if (value != (int) value) {
+            throw new ParsingException(this, "value [" + text() + "] is not an int");
+        }
+        return (int) value;
+    }
+
+    @Override
+    public long longValue() {
+        if (token == Token.VALUE_NUMBER && numberIsIntegral && textLength < 19) {
+            return parseLong();
+        }
+        Number number = numberValue();
+        if (number instanceof BigInteger) {
+            throw new ParsingException(this, "numeric value [" + text() + "] out of range of long");
+        }
+        return number.longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        if (token == Token.VALUE_NUMBER && numberIsIntegral && textLength < 16) {
+            return parseLong();
+        }
+        return numberValue().doubleValue();
+    }
+
+    @Override
+    public boolean booleanValue() {
+        if (token == Token.VALUE_BOOLEAN) {
+            return text[0] == 't';
+        }
+        if (token == Token.VALUE_STRING) {
+            String value = text();
+            if ("true".equals(value)) {
+                return true;
+            } else if ("false".equals(value)) {
+                return false;
+            }
+        }
+        throw new ParsingException(this, "failed to parse value [" + (token == null ? null : objectTextOrNull())
+                + "] as only [true] or [false] are allowed");
+    }
+
+    @Override
+    public void skipChildren() throws IOException {
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) {
+            return;
+        }
+        int target = depth - 1;
+        while (depth > target) {
+            if (nextToken() == null) {
+                throw new ParsingException(this, "unexpected end of input");
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> map() throws IOException {
+        if (token != Token.START_OBJECT) {
+            throw new ParsingException(this, "expected [START_OBJECT] but found [" + token + "]");
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (nextToken() != Token.END_OBJECT) {
+            String name = currentName();
+            nextToken();
+            map.put(name, readValue());
+        }
+        return map;
+    }
+
+    @Override
+    public List<Object> list() throws IOException {
+        if (token != Token.START_ARRAY) {
+            throw new ParsingException(this, "expected [START_ARRAY] but found [" + token + "]");
+        }
+        List<Object> list = new ArrayList<>();
+        while (nextToken() != Token.END_ARRAY) {
+            list.add(readValue());
+        }
+        return list;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return line;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return consumed + position - lineStart + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private Object readValue() throws IOException {
+        if (token == Token.START_OBJECT) {
+            return map();
+        } else if (token == Token.START_ARRAY) {
+            return list();
+        } else if (token == null) {
+            throw new ParsingException(this, "unexpected end of input");
+        }
+        return objectText();
+    }
+
+    private Object objectTextOrNull() {
+        return token.isValue() && token != Token.VALUE_NULL ? text() : token;
+    }
+
+    private void push(boolean object) {
+        depth++;
+        if (depth == objects.length) {
+            int size = objects.length << 1;
+            objects = Arrays.copyOf(objects, size);
+            counts = Arrays.copyOf(counts, size);
+            names = Arrays.copyOf(names, size);
+            nameLengths = Arrays.copyOf(nameLengths, size);
+            nameStrings = Arrays.copyOf(nameStrings, size);
+        }
+        objects[depth] = object;
+        counts[depth] = 0;
+        nameLengths[depth] = 0;
+        nameStrings[depth] = null;
+    }
+
+    private void setName(int level) {
+        char[] name = names[level];
+        if (name == null || name.length < textLength) {
+            name = new char[Math.max(textLength, 32)];
+            names[level] = name;
+        }
+        System.arraycopy(text, 0, name, 0, textLength);
+        nameLengths[level] = textLength;
+        nameStrings[level] = null;
+    }
+
+    private long parseLong() {
+        int i = 0;
+        boolean negative = text[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < textLength; i++) {
+            value = value * 10 + (text[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private void readString() throws IOException {
+        textLength = 0;
+        textString = null;
+        while (true) {
+            if (position == limit && fill() == false) {
+                throw new ParsingException(this, "unexpected end of input in string");
+            }
+            char c = buffer[position++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                appendText(readEscape());
+            } else if (c < 0x20) {
+                throw new ParsingException(this, "illegal unquoted control character in string");
+            } else {
+                appendText(c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new ParsingException(this, "illegal unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw new ParsingException(this, "unrecognized escape character [" + (char) c + "]");
+        }
+    }
+
+    private void readNumber() throws IOException {
+        textLength = 0;
+        textString = null;
+        numberIsIntegral = true;
+        int c = peek();
+        if (c == '-') {
+            appendText((char) read());
+            c = peek();
+        }
+        if (c < '0' || c > '9') {
+            throw new ParsingException(this, "invalid number, expected a digit");
+        }
+        int start = textLength;
+        if (readDigits() > 1 && text[start] == '0') {
+            throw new ParsingException(this, "invalid number, leading zeros are not allowed");
+        }
+        c = peek();
+        if (c == '.') {
+            numberIsIntegral = false;
+            appendText((char) read());
+            if (readDigits() == 0) {
+                throw new ParsingException(this, "invalid number, expected a digit after the decimal point");
+            }
+            c = peek();
+        }
+        if (c == 'e' || c == 'E') {
+            numberIsIntegral = false;
+            appendText((char) read());
+            c = peek();
+            if (c == '+' || c == '-') {
+                appendText((char) read());
+            }
+            if (readDigits() == 0) {
+                throw new ParsingException(this, "invalid number, expected a digit in the exponent");
+            }
+        }
+    }
+
+    private int readDigits() throws IOException {
+        int count = 0;
+        for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+            appendText((char) read());
+            count++;
+        }
+        return count;
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        textLength = 0;
+        textString = null;
+        for (int i = 0; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                throw new ParsingException(this, "unrecognized token, expected [" + literal + "]");
+            }
+            appendText((char) c);
+        }
+        int next = peek();
+        if (Character.isLetterOrDigit(next)) {
+            throw new ParsingException(this, "unrecognized token, expected [" + literal + "]");
+        }
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, text.length << 1);
+        }
+        text[textLength++] = c;
+    }
+
+    private void expect(int c, char expected) {
+        if (c != expected) {
+            throw new ParsingException(this, "expected [" + expected + "] but found ["
+                    + (c == EOF ? "end of input" : String.valueOf((char) c)) + "]");
+        }
+        position++;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && fill() == false) {
+                return EOF;
+            }
+            char c = buffer[position];
+            if (c == '\n') {
+                position++;
+                line++;
+                lineStart = consumed + position;
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                position++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && fill() == false) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && fill() == false) {
+            return EOF;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        if (reader != null) {
+            int n = reader.read(buffer, 0, buffer.length);
+            if (n > 0) {
+                limit = n;
+            }
+        } else if (decoded == false) {
+            CharBuffer target = CharBuffer.wrap(buffer);
+            CoderResult result = decoder.decode(bytes, target, true);
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException e) {
+                    throw new ParsingException(this, "invalid UTF-8 input", e);
+                }
+            }
+            if (bytes.hasRemaining() == false && decoder.flush(target).isUnderflow()) {
+                decoded = true;
+            }
+            limit = target.position();
+        }
+        return limit > 0;
+    }
+
+}
@@ -11,6 +11,9 @@ public class MatchAllQueryBuilder extends AbstractQueryBuilder<MatchAllQueryBuil
 
 	public static final String NAME = "match_all";
 
+	private static final ParseFieldTable FIELDS = new ParseFieldTable(AbstractQueryBuilder.BOOST_FIELD,
+			AbstractQueryBuilder.NAME_FIELD);
+
 	@Override
 	protected boolean doEquals(MatchAllQueryBuilder other) {
 		return true;
@@ -20,7 +23,30 @@ public class MatchAllQueryBuilder extends AbstractQueryBuilder<MatchAllQueryBuil
 	protected int doHashCode() {
 		return 0;
 	}
+
+	@Override
+	protected long doStructuralHash() {
+		return 0;
+	}
 	
+	public static MatchAllQueryBuilder fromXContent(XContentParser parser) throws IOException {
+		MatchAllQueryBuilder query = new MatchAllQueryBuilder();
+		ParseField field = null;
+		XContentParser.Token token;
+		while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+			if (token == XContentParser.Token.FIELD_NAME) {
+				field = parser.currentField(FIELDS);
+			} else if (token.isValue() && field == AbstractQueryBuilder.BOOST_FIELD) {
+				query.boost(parser.floatValue());
+			} else if (token.isValue() && field == AbstractQueryBuilder.NAME_FIELD) {
+				query.queryName(parser.text());
+			} else {
+				throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+			}
+		}
+		return query;
+	}
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -34,4 +60,11 @@ public class MatchAllQueryBuilder extends AbstractQueryBuilder<MatchAllQueryBuil
 		return builder;
 	}
 
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
+
 }
@@ -12,6 +12,9 @@ import java.util.Objects;
 public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPhrasePrefixQueryBuilder> 	{
 
 	public static final String NAME = "match_phrase_prefix";
+	private static final ParseFieldTable FIELDS = new ParseFieldTable(MatchQueryBuilder.QUERY_FIELD,
+			MatchQueryBuilder.ANALYZER_FIELD, AbstractQueryBuilder.BOOST_FIELD,
+			MatchPhraseQueryBuilder.SLOP_FIELD, AbstractQueryBuilder.NAME_FIELD);
 
     private final String fieldName;
 
@@ -49,6 +52,7 @@ public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPh
      * config for the field, or, if not set, the default search analyzer.
      */
     public MatchPhrasePrefixQueryBuilder analyzer(String analyzer) {
+        ensureNotFrozen();
         this.analyzer = analyzer;
         return this;
     }
@@ -60,6 +64,7 @@ public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPh
 
     /** Sets a slop factor for phrase queries */
     public MatchPhrasePrefixQueryBuilder slop(int slop) {
+        ensureNotFrozen();
         if (slop < 0) {
             throw new IllegalArgumentException("No negative slop allowed.");
         }
@@ -72,6 +77,58 @@ public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPh
         return this.slop;
     }
     
+    public static MatchPhrasePrefixQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        Object value = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String analyzer = null;
+        int slop = MatchQuery.DEFAULT_PHRASE_SLOP;
+        String queryName = null;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == MatchQueryBuilder.QUERY_FIELD) {
+                            value = parser.objectText();
+                        } else if (field == MatchQueryBuilder.ANALYZER_FIELD) {
+                            analyzer = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == MatchPhraseQueryBuilder.SLOP_FIELD) {
+                            slop = parser.intValue();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.objectText();
+            }
+        }
+
+        MatchPhrasePrefixQueryBuilder query = new MatchPhrasePrefixQueryBuilder(fieldName, value);
+        query.analyzer(analyzer);
+        query.slop(slop);
+        query.queryName(queryName);
+        query.boost(boost);
+        return query;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -91,6 +148,20 @@ public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPh
    		builder.put(NAME, fieldMap);
    		return builder;
    	}
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(NAME);
+        builder.startObject(fieldName);
+        builder.field(MatchQueryBuilder.QUERY_FIELD.getPreferredName(), value);
+        if (analyzer != null) {
+            builder.field(MatchQueryBuilder.ANALYZER_FIELD.getPreferredName(), analyzer);
+        }
+        builder.field(MatchPhraseQueryBuilder.SLOP_FIELD.getPreferredName(), slop);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+        builder.endObject();
+    }
 	
     @Override
     protected boolean doEquals(MatchPhrasePrefixQueryBuilder other) {
@@ -105,6 +176,11 @@ public class MatchPhrasePrefixQueryBuilder  extends AbstractQueryBuilder<MatchPh
         return Objects.hash(fieldName, value, analyzer, slop);
     }
 
+    @Override
+    protected long doStructuralHash() {
+        return hash64(fieldName, value, analyzer, slop);
+    }
+
 	
 	
 	
@@ -13,6 +13,9 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
 
     public static final String NAME = "match_phrase";
     public static final ParseField SLOP_FIELD = new ParseField("slop");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(MatchQueryBuilder.QUERY_FIELD,
+            MatchQueryBuilder.ANALYZER_FIELD, AbstractQueryBuilder.BOOST_FIELD, SLOP_FIELD,
+            AbstractQueryBuilder.NAME_FIELD);
 	
     private final String fieldName;
 
@@ -48,6 +51,7 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
      * config for the field, or, if not set, the default search analyzer.
      */
     public MatchPhraseQueryBuilder analyzer(String analyzer) {
+        ensureNotFrozen();
         this.analyzer = analyzer;
         return this;
     }
@@ -59,6 +63,7 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
 
     /** Sets a slop factor for phrase queries */
     public MatchPhraseQueryBuilder slop(int slop) {
+        ensureNotFrozen();
         if (slop < 0) {
             throw new IllegalArgumentException("No negative slop allowed.");
         }
@@ -71,6 +76,58 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
         return this.slop;
     }
 
+    public static MatchPhraseQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        Object value = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String analyzer = null;
+        int slop = MatchQuery.DEFAULT_PHRASE_SLOP;
+        String queryName = null;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == MatchQueryBuilder.QUERY_FIELD) {
+                            value = parser.objectText();
+                        } else if (field == MatchQueryBuilder.ANALYZER_FIELD) {
+                            analyzer = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == SLOP_FIELD) {
+                            slop = parser.intValue();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.objectText();
+            }
+        }
+
+        MatchPhraseQueryBuilder query = new MatchPhraseQueryBuilder(fieldName, value);
+        query.analyzer(analyzer);
+        query.slop(slop);
+        query.queryName(queryName);
+        query.boost(boost);
+        return query;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -90,6 +147,20 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
 		builder.put(NAME, fieldMap);
 		return builder;
 	}
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(NAME);
+        builder.startObject(fieldName);
+        builder.field(MatchQueryBuilder.QUERY_FIELD.getPreferredName(), value);
+        if (analyzer != null) {
+            builder.field(MatchQueryBuilder.ANALYZER_FIELD.getPreferredName(), analyzer);
+        }
+        builder.field(SLOP_FIELD.getPreferredName(), slop);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+        builder.endObject();
+    }
     
     @Override
     protected boolean doEquals(MatchPhraseQueryBuilder other) {
@@ -102,6 +173,11 @@ public class MatchPhraseQueryBuilder extends AbstractQueryBuilder<MatchPhraseQue
         return Objects.hash(fieldName, value, analyzer, slop);
     }
 
+    @Override
+    protected long doStructuralHash() {
+        return hash64(fieldName, value, analyzer, slop);
+    }
+
 	
 	
 }
@@ -17,6 +17,9 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
 	public static final ParseField ANALYZER_FIELD = new ParseField("analyzer");
 	public static final ParseField QUERY_FIELD = new ParseField("query");
 	public static final ParseField GENERATE_SYNONYMS_PHRASE_QUERY = new ParseField("auto_generate_synonyms_phrase_query");
+	private static final ParseFieldTable FIELDS = new ParseFieldTable(QUERY_FIELD, ANALYZER_FIELD,
+			AbstractQueryBuilder.BOOST_FIELD, OPERATOR_FIELD, MINIMUM_SHOULD_MATCH_FIELD,
+			ZERO_TERMS_QUERY_FIELD, GENERATE_SYNONYMS_PHRASE_QUERY, AbstractQueryBuilder.NAME_FIELD);
 
 	 /** The name for the match query */
     public static final String NAME = "match";
@@ -65,6 +68,7 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
 
     /** Sets the operator to use when using a boolean query. Defaults to <tt>OR</tt>. */
     public MatchQueryBuilder operator(Operator operator) {
+        ensureNotFrozen();
         if (operator == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires operator to be non-null");
         }
@@ -82,6 +86,7 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
      * set, the default search analyzer.
      */
     public MatchQueryBuilder analyzer(String analyzer) {
+        ensureNotFrozen();
         this.analyzer = analyzer;
         return this;
     }
@@ -93,6 +98,7 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
     
     /** Sets optional minimumShouldMatch value to apply to the query */
     public MatchQueryBuilder minimumShouldMatch(String minimumShouldMatch) {
+        ensureNotFrozen();
         this.minimumShouldMatch = minimumShouldMatch;
         return this;
     }
@@ -108,6 +114,7 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
      * {@link MatchQuery.ZeroTermsQuery#ALL} instead.
      */
     public MatchQueryBuilder zeroTermsQuery(MatchQuery.ZeroTermsQuery zeroTermsQuery) {
+        ensureNotFrozen();
         if (zeroTermsQuery == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires zeroTermsQuery to be non-null");
         }
@@ -123,6 +130,7 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
     }
 
     public MatchQueryBuilder autoGenerateSynonymsPhraseQuery(boolean enable) {
+        ensureNotFrozen();
         this.autoGenerateSynonymsPhraseQuery = enable;
         return this;
     }
@@ -151,7 +159,103 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
         return Objects.hash(fieldName, value, operator, analyzer, minimumShouldMatch,
                  zeroTermsQuery, autoGenerateSynonymsPhraseQuery);
     }
+
+    @Override
+    protected long doStructuralHash() {
+        return hash64(fieldName, value, operator, analyzer, minimumShouldMatch,
+                 zeroTermsQuery, autoGenerateSynonymsPhraseQuery);
+    }
 	
+    public static MatchQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        Object value = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String minimumShouldMatch = null;
+        String analyzer = null;
+        Operator operator = null;
+        MatchQuery.ZeroTermsQuery zeroTermsQuery = null;
+        boolean autoGenerateSynonymsPhraseQuery = true;
+        String queryName = null;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == QUERY_FIELD) {
+                            value = parser.objectText();
+                        } else if (field == ANALYZER_FIELD) {
+                            analyzer = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == OPERATOR_FIELD) {
+                            operator = parseOperator(parser);
+                        } else if (field == MINIMUM_SHOULD_MATCH_FIELD) {
+                            minimumShouldMatch = parser.text();
+                        } else if (field == ZERO_TERMS_QUERY_FIELD) {
+                            zeroTermsQuery = parseZeroTermsQuery(parser);
+                        } else if (field == GENERATE_SYNONYMS_PHRASE_QUERY) {
+                            autoGenerateSynonymsPhraseQuery = parser.booleanValue();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.objectText();
+            }
+        }
+
+        if (value == null) {
+            throw new ParsingException(parser, "No text specified for text query");
+        }
+
+        MatchQueryBuilder matchQuery = new MatchQueryBuilder(fieldName, value);
+        if (operator != null) {
+            matchQuery.operator(operator);
+        }
+        matchQuery.analyzer(analyzer);
+        matchQuery.minimumShouldMatch(minimumShouldMatch);
+        if (zeroTermsQuery != null) {
+            matchQuery.zeroTermsQuery(zeroTermsQuery);
+        }
+        matchQuery.autoGenerateSynonymsPhraseQuery(autoGenerateSynonymsPhraseQuery);
+        matchQuery.queryName(queryName);
+        matchQuery.boost(boost);
+        return matchQuery;
+    }
+
+    static Operator parseOperator(XContentParser parser) throws IOException {
+        try {
+            return Operator.fromString(parser.text());
+        } catch (IllegalArgumentException e) {
+            throw new ParsingException(parser, "unknown operator [" + parser.text() + "]", e);
+        }
+    }
+
+    static MatchQuery.ZeroTermsQuery parseZeroTermsQuery(XContentParser parser) throws IOException {
+        String zeroTermsValue = parser.text();
+        if ("none".equalsIgnoreCase(zeroTermsValue)) {
+            return MatchQuery.ZeroTermsQuery.NONE;
+        } else if ("all".equalsIgnoreCase(zeroTermsValue)) {
+            return MatchQuery.ZeroTermsQuery.ALL;
+        }
+        throw new ParsingException(parser, "Unsupported zero_terms_query value [" + zeroTermsValue + "]");
+    }
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -181,6 +285,29 @@ public class MatchQueryBuilder extends AbstractQueryBuilder<MatchQueryBuilder>{
 		builder.put(NAME, fieldMap);
 		return builder;
 	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		builder.startObject(fieldName);
+		builder.field(QUERY_FIELD.getPreferredName(), value);
+		if (operator != null) {
+			builder.field(OPERATOR_FIELD.getPreferredName(), operator.toString());
+		}
+		if (analyzer != null) {
+			builder.field(ANALYZER_FIELD.getPreferredName(), analyzer);
+		}
+		if (minimumShouldMatch != null) {
+			builder.field(MINIMUM_SHOULD_MATCH_FIELD.getPreferredName(), minimumShouldMatch);
+		}
+		if (zeroTermsQuery != null) {
+			builder.field(ZERO_TERMS_QUERY_FIELD.getPreferredName(), zeroTermsQuery.toString());
+		}
+		builder.field(GENERATE_SYNONYMS_PHRASE_QUERY.getPreferredName(), autoGenerateSynonymsPhraseQuery);
+		printBoostAndQueryName(builder);
+		builder.endObject();
+		builder.endObject();
+	}
     
 	
     
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
@@ -31,6 +32,10 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
     private static final ParseField QUERY_FIELD = new ParseField("query");
     private static final ParseField FIELDS_FIELD = new ParseField("fields");
     private static final ParseField GENERATE_SYNONYMS_PHRASE_QUERY = new ParseField("auto_generate_synonyms_phrase_query");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(FIELDS_FIELD, QUERY_FIELD, TYPE_FIELD,
+            ANALYZER_FIELD, AbstractQueryBuilder.BOOST_FIELD, SLOP_FIELD, OPERATOR_FIELD,
+            MINIMUM_SHOULD_MATCH_FIELD, USE_DIS_MAX_FIELD, ZERO_TERMS_QUERY_FIELD,
+            GENERATE_SYNONYMS_PHRASE_QUERY, AbstractQueryBuilder.NAME_FIELD);
 
     private final Object value;
     private final Map<String, Float> fieldsBoosts;
@@ -99,19 +104,24 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
             return parseField;
         }
 
-        public static Type parse(String value) {
-            Type[] values = Type.values();
-            Type type = null;
-            for (Type t : values) {
-                if (t.parseField().match(value)) {
-                    type = t;
-                    break;
-                }
+        private static final Type[] VALUES = values();
+
+        private static final ParseFieldTable TABLE;
+
+        static {
+            ParseField[] fields = new ParseField[VALUES.length];
+            for (int i = 0; i < VALUES.length; i++) {
+                fields[i] = VALUES[i].parseField;
             }
-            if (type == null) {
-                throw new RuntimeException("failed to parse " + NAME + " query type " + value +". unknown type.");
+            TABLE = new ParseFieldTable(fields);
+        }
+
+        public static Type parse(String value) {
+            int id = TABLE.indexOf(value);
+            if (id == -1) {
+                throw new IllegalArgumentException("failed to parse " + NAME + " query type " + value +". unknown type.");
             }
-            return type;
+            return VALUES[id];
         }
 
     }
@@ -149,6 +159,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Adds a field to run the multi match against.
      */
     public MultiMatchQueryBuilder field(String field) {
+        ensureNotFrozen();
         if (Strings.isEmpty(field)) {
             throw new IllegalArgumentException("supplied field is null or empty.");
         }
@@ -160,6 +171,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Adds a field to run the multi match against with a specific boost.
      */
     public MultiMatchQueryBuilder field(String field, float boost) {
+        ensureNotFrozen();
         if (Strings.isEmpty(field)) {
             throw new IllegalArgumentException("supplied field is null or empty.");
         }
@@ -171,18 +183,20 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Add several fields to run the query against with a specific boost.
      */
     public MultiMatchQueryBuilder fields(Map<String, Float> fields) {
+        ensureNotFrozen();
         this.fieldsBoosts.putAll(fields);
         return this;
     }
     
     public Map<String, Float> fields() {
-        return fieldsBoosts;
+        return isFrozen() ? Collections.unmodifiableMap(fieldsBoosts) : fieldsBoosts;
     }
 
     /**
      * Sets the type of the text query.
      */
     public MultiMatchQueryBuilder type(Type type) {
+        ensureNotFrozen();
         if (type == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires type to be non-null");
         }
@@ -194,6 +208,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Sets the type of the text query.
      */
     public MultiMatchQueryBuilder type(Object type) {
+        ensureNotFrozen();
         if (type == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires type to be non-null");
         }
@@ -209,6 +224,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Sets the operator to use when using a boolean query. Defaults to <tt>OR</tt>.
      */
     public MultiMatchQueryBuilder operator(Operator operator) {
+        ensureNotFrozen();
         if (operator == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires operator to be non-null");
         }
@@ -225,6 +241,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * set, the default search analyzer.
      */
     public MultiMatchQueryBuilder analyzer(String analyzer) {
+        ensureNotFrozen();
         this.analyzer = analyzer;
         return this;
     }
@@ -237,6 +254,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      * Set the phrase slop if evaluated to a phrase query type.
      */
     public MultiMatchQueryBuilder slop(int slop) {
+        ensureNotFrozen();
         if (slop < 0) {
             throw new IllegalArgumentException("No negative slop allowed.");
         }
@@ -248,6 +266,12 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
         return slop;
     }
 
+    public MultiMatchQueryBuilder minimumShouldMatch(String minimumShouldMatch) {
+        ensureNotFrozen();
+        this.minimumShouldMatch = minimumShouldMatch;
+        return this;
+    }
+
     public String minimumShouldMatch() {
         return minimumShouldMatch;
     }
@@ -259,6 +283,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
      */
     @Deprecated
     public MultiMatchQueryBuilder useDisMax(Boolean useDisMax) {
+        ensureNotFrozen();
         this.useDisMax = useDisMax;
         return this;
     }
@@ -268,6 +293,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
     }
     
     public MultiMatchQueryBuilder zeroTermsQuery(MatchQuery.ZeroTermsQuery zeroTermsQuery) {
+        ensureNotFrozen();
         if (zeroTermsQuery == null) {
             throw new IllegalArgumentException("[" + NAME + "] requires zero terms query to be non-null");
         }
@@ -280,6 +306,7 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
     }
 
     public MultiMatchQueryBuilder autoGenerateSynonymsPhraseQuery(boolean enable) {
+        ensureNotFrozen();
         this.autoGenerateSynonymsPhraseQuery = enable;
         return this;
     }
@@ -292,6 +319,105 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
         return autoGenerateSynonymsPhraseQuery;
     }
 
+    public static MultiMatchQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        Object value = null;
+        Map<String, Float> fieldsBoosts = new HashMap<>();
+        MultiMatchQueryBuilder.Type type = DEFAULT_TYPE;
+        String analyzer = null;
+        int slop = DEFAULT_PHRASE_SLOP;
+        Operator operator = DEFAULT_OPERATOR;
+        String minimumShouldMatch = null;
+        Boolean useDisMax = null;
+        MatchQuery.ZeroTermsQuery zeroTermsQuery = DEFAULT_ZERO_TERMS_QUERY;
+        boolean autoGenerateSynonymsPhraseQuery = true;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String queryName = null;
+
+        XContentParser.Token token;
+        ParseField field = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (field == FIELDS_FIELD) {
+                if (token == XContentParser.Token.START_ARRAY) {
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        parseFieldAndBoost(parser, fieldsBoosts);
+                    }
+                } else if (token.isValue()) {
+                    parseFieldAndBoost(parser, fieldsBoosts);
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else if (token.isValue()) {
+                if (field == QUERY_FIELD) {
+                    value = parser.objectText();
+                } else if (field == TYPE_FIELD) {
+                    type = MultiMatchQueryBuilder.Type.parse(parser.text());
+                } else if (field == ANALYZER_FIELD) {
+                    analyzer = parser.text();
+                } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    boost = parser.floatValue();
+                } else if (field == SLOP_FIELD) {
+                    slop = parser.intValue();
+                } else if (field == OPERATOR_FIELD) {
+                    operator = MatchQueryBuilder.parseOperator(parser);
+                } else if (field == MINIMUM_SHOULD_MATCH_FIELD) {
+                    minimumShouldMatch = parser.text();
+                } else if (field == USE_DIS_MAX_FIELD) {
+                    useDisMax = parser.booleanValue();
+                } else if (field == ZERO_TERMS_QUERY_FIELD) {
+                    zeroTermsQuery = MatchQueryBuilder.parseZeroTermsQuery(parser);
+                } else if (field == GENERATE_SYNONYMS_PHRASE_QUERY) {
+                    autoGenerateSynonymsPhraseQuery = parser.booleanValue();
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+            }
+        }
+
+        if (value == null) {
+            throw new ParsingException(parser, "No text specified for multi_match query");
+        }
+
+        return new MultiMatchQueryBuilder(value)
+                .fields(fieldsBoosts)
+                .type(type)
+                .analyzer(analyzer)
+                .slop(slop)
+                .operator(operator)
+                .minimumShouldMatch(minimumShouldMatch)
+                .useDisMax(useDisMax)
+                .zeroTermsQuery(zeroTermsQuery)
+                .autoGenerateSynonymsPhraseQuery(autoGenerateSynonymsPhraseQuery)
+                .boost(boost)
+                .queryName(queryName);
+    }
+
+    /**
+     * Parses a <code>name^boost</code> field entry.
+     */
+    static void parseFieldAndBoost(XContentParser parser, Map<String, Float> fieldsBoosts) throws IOException {
+        String fField = null;
+        Float fBoost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String text = parser.text();
+        int boostIndex = text.indexOf('^');
+        if (boostIndex != -1) {
+            fField = text.substring(0, boostIndex);
+            try {
+                fBoost = Float.parseFloat(text.substring(boostIndex + 1));
+            } catch (NumberFormatException e) {
+                throw new ParsingException(parser, "invalid boost in field [" + text + "]", e);
+            }
+        } else {
+            fField = text;
+        }
+        fieldsBoosts.put(fField, fBoost);
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -324,6 +450,33 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
 	    builder.put(NAME, queryMap);
 		return builder;
 	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		builder.field(QUERY_FIELD.getPreferredName(), value);
+		builder.startArray(FIELDS_FIELD.getPreferredName());
+		for (Map.Entry<String, Float> fieldEntry : this.fieldsBoosts.entrySet()) {
+			builder.value(fieldEntry.getKey() + "^" + fieldEntry.getValue());
+		}
+		builder.endArray();
+		builder.field(TYPE_FIELD.getPreferredName(), type.toString().toLowerCase(Locale.ENGLISH));
+		builder.field(OPERATOR_FIELD.getPreferredName(), operator.toString());
+		if (analyzer != null) {
+			builder.field(ANALYZER_FIELD.getPreferredName(), analyzer);
+		}
+		builder.field(SLOP_FIELD.getPreferredName(), slop);
+		if (minimumShouldMatch != null) {
+			builder.field(MINIMUM_SHOULD_MATCH_FIELD.getPreferredName(), minimumShouldMatch);
+		}
+		if (useDisMax != null) {
+			builder.field(USE_DIS_MAX_FIELD.getPreferredName(), useDisMax);
+		}
+		builder.field(ZERO_TERMS_QUERY_FIELD.getPreferredName(), zeroTermsQuery.toString());
+		builder.field(GENERATE_SYNONYMS_PHRASE_QUERY.getPreferredName(), autoGenerateSynonymsPhraseQuery);
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
     
     @Override
     protected int doHashCode() {
@@ -331,6 +484,13 @@ public class MultiMatchQueryBuilder extends AbstractQueryBuilder<MultiMatchQuery
                  minimumShouldMatch, useDisMax,
                  zeroTermsQuery, autoGenerateSynonymsPhraseQuery);
     }
+
+    @Override
+    protected long doStructuralHash() {
+        return hash64(value, fieldsBoosts, type, operator, analyzer, slop,
+                 minimumShouldMatch, useDisMax,
+                 zeroTermsQuery, autoGenerateSynonymsPhraseQuery);
+    }
     
     @Override
     protected boolean doEquals(MultiMatchQueryBuilder other) {
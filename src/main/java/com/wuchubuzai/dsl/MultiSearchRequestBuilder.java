@@ -0,0 +1,355 @@
+package com.wuchubuzai.dsl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Renders searches into <code>_msearch</code> bodies: a compact json header line with the
+ * index, routing and preference of the search followed by a line with its body, for each
+ * search. Searches are rendered straight into the buffer of the body as they are added, and
+ * equal headers are rendered once.
+ * <p>
+ * A body holds at most {@link #maxItems(int)} searches and {@link #maxBytes(long)} bytes,
+ * searches that do not fit start a new batch. Each batch is sent as one request with the
+ * {@link #MEDIA_TYPE} content type, and its responses are the items of
+ * {@link #itemCount(int)} searches in the order they were added.
+ *
+ * <pre>
+ * MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().maxItems(100);
+ * for (SearchSourceBuilder source : sources) {
+ *     msearch.add("orders", source);
+ * }
+ * for (int batch = 0; batch &lt; msearch.numberOfBatches(); batch++) {
+ *     client.msearch(msearch.toBytes(batch));
+ * }
+ * </pre>
+ */
+public final class MultiSearchRequestBuilder {
+
+    /**
+     * Content type of the bodies, newline delimited json.
+     */
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private static final ParseField INDEX_FIELD = new ParseField("index");
+    private static final ParseField ROUTING_FIELD = new ParseField("routing");
+    private static final ParseField PREFERENCE_FIELD = new ParseField("preference");
+
+    private int maxItems = Integer.MAX_VALUE;
+    private long maxBytes = 100L * 1024 * 1024;
+
+    private final Map<Header, byte[]> headers = new HashMap<>();
+    private final List<Batch> batches = new ArrayList<>();
+    private int numberOfItems;
+
+    public MultiSearchRequestBuilder() {
+    }
+
+    /**
+     * Sets the maximum number of searches per body, unlimited by default.
+     */
+    public MultiSearchRequestBuilder maxItems(int maxItems) {
+        ensureEmpty();
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("[max_items] must be positive, found [" + maxItems + "]");
+        }
+        this.maxItems = maxItems;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes per body, <code>http.max_content_length</code> by
+     * default 100mb.
+     */
+    public MultiSearchRequestBuilder maxBytes(long maxBytes) {
+        ensureEmpty();
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("[max_bytes] must be positive, found [" + maxBytes + "]");
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Adds a search on the indices of the request path.
+     */
+    public MultiSearchRequestBuilder add(SearchSourceBuilder source) {
+        return add(Header.EMPTY, source);
+    }
+
+    /**
+     * Adds a search on the index.
+     */
+    public MultiSearchRequestBuilder add(String index, SearchSourceBuilder source) {
+        return add(Header.builder().indices(index).build(), source);
+    }
+
+    /**
+     * Adds a search with the header. The body is left as it was if the search cannot be
+     * added, such as when it cannot be rendered.
+     *
+     * @throws IllegalArgumentException if the search alone is larger than {@link #maxBytes(long)}
+     */
+    public MultiSearchRequestBuilder add(Header header, SearchSourceBuilder source) {
+        if (header == null) {
+            throw new IllegalArgumentException("header cannot be null");
+        }
+        if (source == null) {
+            throw new IllegalArgumentException("search source cannot be null");
+        }
+        byte[] line = headers.get(header);
+        if (line == null) {
+            line = header.toBytes();
+            headers.put(header, line);
+        }
+        Batch batch = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+        if (batch == null || batch.items == maxItems) {
+            batch = new Batch();
+            batches.add(batch);
+        }
+        int mark = batch.size();
+        boolean written = false;
+        try {
+            batch.write(line);
+            batch.write('\n');
+            source.writeTo(batch);
+            batch.write('\n');
+            written = true;
+        } catch (IOException e) {
+            // the batch is an in-memory stream
+            throw new IllegalStateException("cannot render search", e);
+        } finally {
+            if (written == false) {
+                // such as an unbound prepared query parameter, leave no header without a body
+                discard(batch, mark);
+            }
+        }
+        long bytes = batch.size() - mark;
+        if (bytes > maxBytes) {
+            discard(batch, mark);
+            throw new IllegalArgumentException("search of [" + bytes + "] bytes exceeds the maximum of [" + maxBytes
+                    + "] bytes per body");
+        }
+        if (batch.size() > maxBytes) {
+            // move the search that does not fit into a new batch
+            Batch next = new Batch();
+            next.write(batch.buffer(), mark, (int) bytes);
+            batch.truncate(mark);
+            batches.add(next);
+            batch = next;
+        }
+        batch.items++;
+        numberOfItems++;
+        return this;
+    }
+
+    /**
+     * Drops what was written to the last batch from the mark on, and the batch if it holds no search.
+     */
+    private void discard(Batch batch, int mark) {
+        batch.truncate(mark);
+        if (batch.items == 0) {
+            batches.remove(batches.size() - 1);
+        }
+    }
+
+    public int numberOfItems() {
+        return numberOfItems;
+    }
+
+    public int numberOfBatches() {
+        return batches.size();
+    }
+
+    /**
+     * Number of searches in the batch, which follow those of the batches before it.
+     */
+    public int itemCount(int batch) {
+        return batch(batch).items;
+    }
+
+    /**
+     * Number of bytes of the body of the batch.
+     */
+    public int size(int batch) {
+        return batch(batch).size();
+    }
+
+    /**
+     * Writes the body of the batch.
+     */
+    public void writeTo(int batch, OutputStream out) throws IOException {
+        batch(batch).writeTo(out);
+    }
+
+    /**
+     * Returns the body of the batch.
+     */
+    public byte[] toBytes(int batch) {
+        return batch(batch).toByteArray();
+    }
+
+    private Batch batch(int batch) {
+        if (batch < 0 || batch >= batches.size()) {
+            throw new IllegalArgumentException("batch [" + batch + "] out of range [0, " + batches.size() + ")");
+        }
+        return batches.get(batch);
+    }
+
+    private void ensureEmpty() {
+        if (numberOfItems > 0) {
+            throw new IllegalStateException("limits cannot be changed once searches are added");
+        }
+    }
+
+    /**
+     * The body of a batch.
+     */
+    private static final class Batch extends ByteArrayOutputStream {
+
+        private int items;
+
+        Batch() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+
+    /**
+     * The header line of a search, the target indices, routing and preference. Equal
+     * headers are rendered once per {@link MultiSearchRequestBuilder}.
+     */
+    public static final class Header {
+
+        static final Header EMPTY = builder().build();
+
+        private final String[] indices;
+        private final String routing;
+        private final String preference;
+
+        private Header(Builder builder) {
+            this.indices = builder.indices;
+            this.routing = builder.routing;
+            this.preference = builder.preference;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public String[] indices() {
+            return indices.clone();
+        }
+
+        public String routing() {
+            return routing;
+        }
+
+        public String preference() {
+            return preference;
+        }
+
+        byte[] toBytes() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+            try {
+                XContentBuilder builder = XContentBuilder.jsonBuilder(out);
+                builder.startObject();
+                if (indices.length == 1) {
+                    builder.field(INDEX_FIELD.getPreferredName(), indices[0]);
+                } else if (indices.length > 1) {
+                    builder.field(INDEX_FIELD.getPreferredName(), indices);
+                }
+                if (routing != null) {
+                    builder.field(ROUTING_FIELD.getPreferredName(), routing);
+                }
+                if (preference != null) {
+                    builder.field(PREFERENCE_FIELD.getPreferredName(), preference);
+                }
+                builder.endObject();
+                builder.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot render msearch header", e);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Header other = (Header) o;
+            return Arrays.equals(indices, other.indices) && Objects.equals(routing, other.routing)
+                    && Objects.equals(preference, other.preference);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(Arrays.hashCode(indices), routing, preference);
+        }
+
+        @Override
+        public String toString() {
+            return new String(toBytes(), StandardCharsets.UTF_8);
+        }
+
+        public static final class Builder {
+
+            private String[] indices = Strings.EMPTY_ARRAY;
+            private String routing;
+            private String preference;
+
+            private Builder() {
+            }
+
+            /**
+             * The indices to search, the indices of the request path if none are set.
+             */
+            public Builder indices(String... indices) {
+                if (indices == null) {
+                    throw new IllegalArgumentException("indices cannot be null");
+                }
+                for (String index : indices) {
+                    if (Strings.isEmpty(index)) {
+                        throw new IllegalArgumentException("index cannot be null or empty");
+                    }
+                }
+                this.indices = indices.clone();
+                return this;
+            }
+
+            public Builder routing(String routing) {
+                this.routing = routing;
+                return this;
+            }
+
+            public Builder preference(String preference) {
+                this.preference = preference;
+                return this;
+            }
+
+            public Header build() {
+                return new Header(this);
+            }
+        }
+    }
+
+}
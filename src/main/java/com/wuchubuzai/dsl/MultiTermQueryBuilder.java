@@ -1,6 +1,14 @@
 package com.wuchubuzai.dsl;
 
+/**
+ * A query that is rewritten into the terms of a field it matches, such as wildcard, prefix
+ * and range queries.
+ */
 public interface MultiTermQueryBuilder extends QueryBuilder {
 
-}
+    /**
+     * Get the field name for this query.
+     */
+    String fieldName();
 
+}
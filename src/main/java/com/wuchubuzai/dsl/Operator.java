@@ -1,5 +1,11 @@
 package com.wuchubuzai.dsl;
 
+import java.util.Locale;
+
 public enum Operator {
 	 OR, AND;
+
+	public static Operator fromString(String op) {
+		return valueOf(op.toUpperCase(Locale.ROOT));
+	}
 }
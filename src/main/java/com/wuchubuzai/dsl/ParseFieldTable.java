@@ -0,0 +1,119 @@
+package com.wuchubuzai.dsl;
+
+/**
+ * A fixed set of {@link ParseField}s resolved by name through an open addressing hash
+ * table, covering preferred and deprecated names. Lookups cost one hash and usually one
+ * comparison instead of a {@link ParseField#match(String)} per candidate, and names can
+ * be looked up straight from a parser's char buffer without creating strings.
+ * Instances are immutable and shared by all parsers of a query type.
+ */
+public final class ParseFieldTable {
+
+    private final ParseField[] fields;
+
+    /** slot to name, <code>null</code> for empty slots */
+    private final String[] names;
+
+    /** slot to the index of the field in {@link #fields} */
+    private final int[] ids;
+
+    private final int mask;
+
+    public ParseFieldTable(ParseField... fields) {
+        if (fields == null) {
+            throw new IllegalArgumentException("fields cannot be null");
+        }
+        int count = 0;
+        for (ParseField field : fields) {
+            count += field.getAllNamesIncludedDeprecated().length;
+        }
+        // keep the load factor at or below 0.5 so probe sequences stay short
+        int size = Integer.highestOneBit(Math.max(count, 1)) << 2;
+        this.fields = fields.clone();
+        this.names = new String[size];
+        this.ids = new int[size];
+        this.mask = size - 1;
+        for (int id = 0; id < fields.length; id++) {
+            for (String name : fields[id].getAllNamesIncludedDeprecated()) {
+                int slot = name.hashCode() & mask;
+                while (names[slot] != null) {
+                    if (names[slot].equals(name)) {
+                        throw new IllegalArgumentException("[" + name + "] is used by both [" + fields[ids[slot]]
+                                + "] and [" + fields[id] + "]");
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = name;
+                ids[slot] = id;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the field accepting the given name, or <code>-1</code>.
+     */
+    public int indexOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        for (int slot = name.hashCode() & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (names[slot].equals(name)) {
+                return ids[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as {@link #indexOf(String)} for the name held in <code>chars[offset, offset + length)</code>.
+     */
+    public int indexOf(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (regionEquals(names[slot], chars, offset, length)) {
+                return ids[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the field accepting the given name, or <code>null</code>.
+     */
+    public ParseField get(String name) {
+        int id = indexOf(name);
+        return id == -1 ? null : fields[id];
+    }
+
+    public ParseField get(char[] chars, int offset, int length) {
+        int id = indexOf(chars, offset, length);
+        return id == -1 ? null : fields[id];
+    }
+
+    /**
+     * Returns the field at the given index, the order is the one of the constructor.
+     */
+    public ParseField field(int id) {
+        return fields[id];
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    private static boolean regionEquals(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.wuchubuzai.dsl;
+
+/**
+ * Thrown when XContent can not be parsed into queries, carries the position of the
+ * offending token.
+ */
+public class ParsingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    private final int columnNumber;
+
+    public ParsingException(XContentParser parser, String msg) {
+        this(parser, msg, null);
+    }
+
+    public ParsingException(XContentParser parser, String msg, Throwable cause) {
+        this(parser == null ? -1 : parser.getLineNumber(), parser == null ? -1 : parser.getColumnNumber(), msg, cause);
+    }
+
+    public ParsingException(int lineNumber, int columnNumber, String msg, Throwable cause) {
+        super(lineNumber < 0 ? msg : msg + " at [" + lineNumber + ":" + columnNumber + "]", cause);
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+    }
+
+    /**
+     * Line number of the location of the error, -1 if unknown.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Column number of the location of the error, -1 if unknown.
+     */
+    public int getColumnNumber() {
+        return columnNumber;
+    }
+
+}
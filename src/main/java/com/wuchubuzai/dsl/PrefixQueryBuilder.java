@@ -0,0 +1,159 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A Query that matches documents containing terms with a specified prefix.
+ */
+public class PrefixQueryBuilder extends AbstractQueryBuilder<PrefixQueryBuilder> implements MultiTermQueryBuilder {
+
+    public static final String NAME = "prefix";
+
+    private static final ParseField PREFIX_FIELD = new ParseField("value", "prefix");
+    private static final ParseField REWRITE_FIELD = new ParseField("rewrite");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(PREFIX_FIELD, REWRITE_FIELD,
+            AbstractQueryBuilder.BOOST_FIELD, AbstractQueryBuilder.NAME_FIELD);
+
+    private final String fieldName;
+
+    private final String value;
+
+    private String rewrite;
+
+    /**
+     * A Query that matches documents containing terms with a specified prefix.
+     *
+     * @param fieldName The name of the field
+     * @param value The prefix query
+     */
+    public PrefixQueryBuilder(String fieldName, String value) {
+        if (Strings.isEmpty(fieldName)) {
+            throw new IllegalArgumentException("field name is null or empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+        this.fieldName = fieldName;
+        this.value = value;
+    }
+
+    @Override
+    public String fieldName() {
+        return this.fieldName;
+    }
+
+    public String value() {
+        return this.value;
+    }
+
+    public PrefixQueryBuilder rewrite(String rewrite) {
+        ensureNotFrozen();
+        this.rewrite = rewrite;
+        return this;
+    }
+
+    public String rewrite() {
+        return this.rewrite;
+    }
+
+    public static PrefixQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        String value = null;
+        String rewrite = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == PREFIX_FIELD) {
+                            value = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == REWRITE_FIELD) {
+                            rewrite = parser.text();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.text();
+            }
+        }
+
+        return new PrefixQueryBuilder(fieldName, value)
+                .rewrite(rewrite)
+                .boost(boost)
+                .queryName(queryName);
+    }
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	protected int doHashCode() {
+		return Objects.hash(fieldName, value, rewrite);
+	}
+
+	@Override
+	protected long doStructuralHash() {
+		return hash64(fieldName, value, rewrite);
+	}
+
+	@Override
+	protected boolean doEquals(PrefixQueryBuilder other) {
+		return Objects.equals(fieldName, other.fieldName) && Objects.equals(value, other.value)
+				&& Objects.equals(rewrite, other.rewrite);
+	}
+
+	@Override
+	protected Map<String, Object> getXContent(Map<String, Object> builder) throws IOException {
+		Map<String, Object> fieldMap = new HashMap<String, Object>();
+		fieldMap.put(PREFIX_FIELD.getPreferredName(), value);
+		if (rewrite != null) {
+			fieldMap.put(REWRITE_FIELD.getPreferredName(), rewrite);
+		}
+		printBoostAndQueryName(fieldMap);
+
+		Map<String, Object> nameMap = new HashMap<String, Object>();
+		nameMap.put(fieldName, fieldMap);
+
+		builder.put(NAME, nameMap);
+		return builder;
+	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		builder.startObject(fieldName);
+		builder.field(PREFIX_FIELD.getPreferredName(), value);
+		if (rewrite != null) {
+			builder.field(REWRITE_FIELD.getPreferredName(), rewrite);
+		}
+		printBoostAndQueryName(builder);
+		builder.endObject();
+		builder.endObject();
+	}
+
+}
@@ -0,0 +1,333 @@
+package com.wuchubuzai.dsl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A query shape compiled once into static json segments with typed slots in between.
+ * Build the tree with {@link #param(String)} placeholders wherever a value goes (term
+ * values, range bounds, match texts, ...), {@link #compile(SearchSourceBuilder) compile}
+ * it and then render requests by binding values:
+ *
+ * <pre>
+ * PreparedQuery prepared = PreparedQuery.compile(new SearchSourceBuilder().query(
+ *         QueryBuilders.boolQuery()
+ *             .filter(QueryBuilders.termQuery("tenant_id", PreparedQuery.param("tenant", Long.class)))
+ *             .filter(QueryBuilders.rangeQuery("timestamp").gte(PreparedQuery.param("since")))));
+ * prepared.writeTo(out, 42L, "now-1d");
+ * </pre>
+ *
+ * Rendering only copies the static segments and encodes the bound values. A terms query
+ * whose only value is a parameter takes the whole collection of terms from the binding,
+ * which has to be an {@link Iterable} or an array.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class PreparedQuery {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** the static parts, segment i spans template[offsets[i]] to template[offsets[i + 1]] */
+    private final byte[] template;
+
+    private final int[] offsets;
+
+    /** index into {@link #parameters} of the slot following segment i */
+    private final int[] slots;
+
+    private final Parameter[] parameters;
+
+    /** whether the parameter stands for a whole array, such as the terms of a terms query */
+    private final boolean[] arrays;
+
+    private PreparedQuery(byte[] template, int[] offsets, int[] slots, Parameter[] parameters, boolean[] arrays) {
+        this.template = template;
+        this.offsets = offsets;
+        this.slots = slots;
+        this.parameters = parameters;
+        this.arrays = arrays;
+    }
+
+    /**
+     * Creates a placeholder accepting values of any type.
+     */
+    public static Parameter param(String name) {
+        return new Parameter(name, Object.class);
+    }
+
+    /**
+     * Creates a placeholder only accepting values of the given type.
+     */
+    public static Parameter param(String name, Class<?> type) {
+        return new Parameter(name, type);
+    }
+
+    /**
+     * Compiles a whole search request body.
+     */
+    public static PreparedQuery compile(SearchSourceBuilder source) {
+        if (source == null) {
+            throw new IllegalArgumentException("search source cannot be null");
+        }
+        Recorder recorder = new Recorder();
+        try {
+            source.toXContent(recorder.builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot compile search source", e);
+        }
+        return recorder.build();
+    }
+
+    /**
+     * Compiles a query into a <code>{"name" : {...}}</code> object, the same shape as
+     * {@link QueryBuilder#toString()}.
+     */
+    public static PreparedQuery compile(QueryBuilder query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        Recorder recorder = new Recorder();
+        try {
+            recorder.builder.startObject();
+            query.toXContent(recorder.builder);
+            recorder.builder.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot compile query [" + query.getName() + "]", e);
+        }
+        return recorder.build();
+    }
+
+    /**
+     * Returns the parameter names in the order {@link #writeTo(OutputStream, Object...)}
+     * expects their values.
+     */
+    public List<String> parameterNames() {
+        List<String> names = new ArrayList<>(parameters.length);
+        for (Parameter parameter : parameters) {
+            names.add(parameter.name());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Renders compact json binding the values positionally, in {@link #parameterNames()} order.
+     */
+    public void writeTo(OutputStream out, Object... values) throws IOException {
+        if (values == null || values.length != parameters.length) {
+            throw new IllegalArgumentException("expected [" + parameters.length + "] parameter values but got ["
+                    + (values == null ? 0 : values.length) + "]");
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            checkArray(i, parameters[i].check(values[i]));
+        }
+        render(out, values);
+    }
+
+    /**
+     * Renders compact json binding the values by parameter name.
+     */
+    public void writeTo(OutputStream out, Map<String, ?> bindings) throws IOException {
+        if (bindings == null) {
+            throw new IllegalArgumentException("bindings cannot be null");
+        }
+        Object[] values = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            String name = parameters[i].name();
+            if (bindings.containsKey(name) == false) {
+                throw new IllegalArgumentException("no value bound for parameter [" + name + "]");
+            }
+            values[i] = checkArray(i, parameters[i].check(bindings.get(name)));
+        }
+        render(out, values);
+    }
+
+    /**
+     * Renders the bound request as a string, mostly useful for debugging.
+     */
+    public String render(Object... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(template.length + 64);
+        try {
+            writeTo(out, values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Object checkArray(int parameter, Object value) {
+        if (arrays[parameter] && (value == null || (value instanceof Iterable<?> == false && value.getClass().isArray() == false))) {
+            throw new IllegalArgumentException("parameter [" + parameters[parameter].name()
+                    + "] stands for an array of values and expects an Iterable or an array but got ["
+                    + (value == null ? "null" : value.getClass().getName()) + "]");
+        }
+        return value;
+    }
+
+    private void render(OutputStream out, Object[] values) throws IOException {
+        byte[] scratch = JsonXContentGenerator.borrowBuffer();
+        try {
+            // every write happens at the root level, so the generator adds no separators
+            XContentBuilder builder = new XContentBuilder(new JsonXContentGenerator(out, scratch), out);
+            for (int i = 0; i < slots.length; i++) {
+                builder.rawValue(template, offsets[i], offsets[i + 1] - offsets[i]);
+                builder.value(values[slots[i]]);
+            }
+            builder.rawValue(template, offsets[slots.length], template.length - offsets[slots.length]);
+            builder.flush();
+        } finally {
+            JsonXContentGenerator.recycleBuffer(scratch);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(new String(template, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+            sb.append(parameters[slots[i]]);
+        }
+        sb.append(new String(template, offsets[slots.length], template.length - offsets[slots.length], StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    /**
+     * A named, optionally typed placeholder for a value of a query.
+     */
+    public static final class Parameter {
+
+        private final String name;
+
+        private final Class<?> type;
+
+        private Parameter(String name, Class<?> type) {
+            if (Strings.isEmpty(name)) {
+                throw new IllegalArgumentException("parameter name is null or empty");
+            }
+            if (type == null) {
+                throw new IllegalArgumentException("[" + name + "] parameter type cannot be null");
+            }
+            this.name = name;
+            this.type = type;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public Class<?> type() {
+            return this.type;
+        }
+
+        private Object check(Object value) {
+            if (value != null && type.isInstance(value) == false) {
+                throw new IllegalArgumentException("parameter [" + name + "] expects a value of type ["
+                        + type.getName() + "] but got [" + value.getClass().getName() + "]");
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Parameter other = (Parameter) obj;
+            return name.equals(other.name) && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, type);
+        }
+
+        @Override
+        public String toString() {
+            return "{{" + name + "}}";
+        }
+    }
+
+    /**
+     * Collects the static segments and slots while a tree is rendered.
+     */
+    static final class Recorder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private final XContentBuilder builder = XContentBuilder.jsonBuilder(out);
+
+        private final List<Parameter> parameters = new ArrayList<>();
+
+        private final List<Boolean> arrays = new ArrayList<>();
+
+        private int[] offsets = new int[8];
+
+        private int[] slots = new int[8];
+
+        private int slotCount;
+
+        Recorder() {
+            builder.recorder(this);
+        }
+
+        /**
+         * Ends the current segment with a slot for the parameter, which stands for a whole
+         * array of values if array is set.
+         */
+        void slot(XContentBuilder builder, Parameter parameter, boolean array) throws IOException {
+            // writes the separator that belongs in front of the value, then closes the segment
+            builder.rawValue(EMPTY, 0, 0);
+            builder.flush();
+            int index = -1;
+            for (int i = 0; i < parameters.size(); i++) {
+                Parameter existing = parameters.get(i);
+                if (existing.name().equals(parameter.name())) {
+                    if (existing.equals(parameter) == false) {
+                        throw new IllegalArgumentException("parameter [" + parameter.name() + "] is used with different types");
+                    }
+                    index = i;
+                    if (array) {
+                        arrays.set(i, true);
+                    }
+                    break;
+                }
+            }
+            if (index == -1) {
+                index = parameters.size();
+                parameters.add(parameter);
+                arrays.add(array);
+            }
+            if (slotCount + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length << 1);
+                slots = Arrays.copyOf(slots, slots.length << 1);
+            }
+            offsets[slotCount + 1] = out.size();
+            slots[slotCount++] = index;
+        }
+
+        PreparedQuery build() {
+            try {
+                builder.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            boolean[] arrays = new boolean[this.arrays.size()];
+            for (int i = 0; i < arrays.length; i++) {
+                arrays[i] = this.arrays.get(i);
+            }
+            return new PreparedQuery(out.toByteArray(), Arrays.copyOf(offsets, slotCount + 1),
+                    Arrays.copyOf(slots, slotCount), parameters.toArray(new Parameter[0]), arrays);
+        }
+    }
+
+}
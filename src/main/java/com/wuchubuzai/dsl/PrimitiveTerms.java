@@ -0,0 +1,288 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Terms of a {@link TermsQueryBuilder} backed by a primitive array. Rendering, equality and
+ * hashing read the array directly, the values are only boxed when read through the
+ * {@link java.util.List} interface. Equal to any list holding the same boxed numbers, as
+ * the list contract requires. The array is not copied.
+ */
+abstract class PrimitiveTerms extends AbstractList<Object> implements RandomAccess {
+
+    /**
+     * Writes the values as an array, see {@link XContentBuilder#valueSet(java.util.Collection)}.
+     */
+    abstract void writeTo(XContentBuilder builder) throws IOException;
+
+    /**
+     * Same as {@link AbstractQueryBuilder#hash64(Object...)} of the boxed values.
+     */
+    abstract long hash64();
+
+    /**
+     * Returns a copy of the values between from, inclusive, and to, exclusive.
+     */
+    abstract PrimitiveTerms copyOfRange(int from, int to);
+
+    /**
+     * Number of bytes the value at the index takes in json.
+     */
+    abstract int jsonLength(int index);
+
+    /**
+     * Number of bytes the integer takes in json.
+     */
+    static int numberLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        long magnitude = value < 0 ? -(value + 1) : value;
+        for (long bound = 10; length < 20 && magnitude >= bound; bound *= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    static final class Ints extends PrimitiveTerms {
+
+        private final int[] values;
+
+        Ints(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        void writeTo(XContentBuilder builder) throws IOException {
+            builder.valueSet(values);
+        }
+
+        @Override
+        PrimitiveTerms copyOfRange(int from, int to) {
+            return new Ints(Arrays.copyOfRange(values, from, to));
+        }
+
+        @Override
+        int jsonLength(int index) {
+            return numberLength(values[index]);
+        }
+
+        @Override
+        long hash64() {
+            long hash = 1;
+            for (int value : values) {
+                hash = AbstractQueryBuilder.mix(hash * 31 + AbstractQueryBuilder.mix(value));
+            }
+            return hash;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (int value : values) {
+                hash = 31 * hash + Integer.hashCode(value);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Ints) {
+                return Arrays.equals(values, ((Ints) o).values);
+            }
+            return super.equals(o);
+        }
+    }
+
+    static final class Longs extends PrimitiveTerms {
+
+        private final long[] values;
+
+        Longs(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        void writeTo(XContentBuilder builder) throws IOException {
+            builder.valueSet(values);
+        }
+
+        @Override
+        PrimitiveTerms copyOfRange(int from, int to) {
+            return new Longs(Arrays.copyOfRange(values, from, to));
+        }
+
+        @Override
+        int jsonLength(int index) {
+            return numberLength(values[index]);
+        }
+
+        @Override
+        long hash64() {
+            long hash = 1;
+            for (long value : values) {
+                hash = AbstractQueryBuilder.mix(hash * 31 + AbstractQueryBuilder.mix(value));
+            }
+            return hash;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (long value : values) {
+                hash = 31 * hash + Long.hashCode(value);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Longs) {
+                return Arrays.equals(values, ((Longs) o).values);
+            }
+            return super.equals(o);
+        }
+    }
+
+    static final class Floats extends PrimitiveTerms {
+
+        private final float[] values;
+
+        Floats(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        void writeTo(XContentBuilder builder) throws IOException {
+            builder.valueSet(values);
+        }
+
+        @Override
+        PrimitiveTerms copyOfRange(int from, int to) {
+            return new Floats(Arrays.copyOfRange(values, from, to));
+        }
+
+        @Override
+        int jsonLength(int index) {
+            return Float.toString(values[index]).length();
+        }
+
+        @Override
+        long hash64() {
+            long hash = 1;
+            for (float value : values) {
+                hash = AbstractQueryBuilder.mix(hash * 31 + AbstractQueryBuilder.mix(Float.floatToIntBits(value)));
+            }
+            return hash;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (float value : values) {
+                hash = 31 * hash + Float.hashCode(value);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Floats) {
+                return Arrays.equals(values, ((Floats) o).values);
+            }
+            return super.equals(o);
+        }
+    }
+
+    static final class Doubles extends PrimitiveTerms {
+
+        private final double[] values;
+
+        Doubles(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        void writeTo(XContentBuilder builder) throws IOException {
+            builder.valueSet(values);
+        }
+
+        @Override
+        PrimitiveTerms copyOfRange(int from, int to) {
+            return new Doubles(Arrays.copyOfRange(values, from, to));
+        }
+
+        @Override
+        int jsonLength(int index) {
+            return Double.toString(values[index]).length();
+        }
+
+        @Override
+        long hash64() {
+            long hash = 1;
+            for (double value : values) {
+                hash = AbstractQueryBuilder.mix(hash * 31 + AbstractQueryBuilder.mix(Double.doubleToLongBits(value)));
+            }
+            return hash;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (double value : values) {
+                hash = 31 * hash + Double.hashCode(value);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Doubles) {
+                return Arrays.equals(values, ((Doubles) o).values);
+            }
+            return super.equals(o);
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+package com.wuchubuzai.dsl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proves that a query matches no document, or every document, without asking the cluster,
+ * so such searches can skip the network call. Contradictions are found in bool trees of
+ * term, terms, range, ids and match_all queries: empty ranges, terms and ids queries,
+ * required values that are also excluded, and required values or ranges of one field that
+ * no single value satisfies.
+ * <p>
+ * The analysis is sound: {@link Result#MATCH_NONE} and {@link Result#MATCH_ALL} are only
+ * returned when they hold for every index, anything else is {@link Result#UNKNOWN}. Fields
+ * are treated as multi-valued unless declared {@link Builder#singleValued(String...) single
+ * valued}, a document with the values 3 and 20 matches both <code>gt 10</code> and
+ * <code>lt 5</code>. Fields given Java numbers are assumed to be numeric and other fields
+ * to sort their values as text, as keyword fields and ISO 8601 dates do; numeric looking
+ * strings are only ordered where both orders agree. Fields holding numbers as keywords
+ * have to be {@link Builder#keyword(String...) declared}.
+ *
+ * <pre>
+ * QueryAnalyzer analyzer = QueryAnalyzer.builder().singleValued("status", "price").build();
+ * if (analyzer.analyze(query) == QueryAnalyzer.Result.MATCH_NONE) {
+ *     return emptyResponse;
+ * }
+ * </pre>
+ */
+public final class QueryAnalyzer {
+
+    /** treats every field as multi-valued and orders values by their java type */
+    public static final QueryAnalyzer DEFAULT = builder().build();
+
+    private static final String ID_FIELD = "_id";
+
+    public enum Result {
+        /** no document can match */
+        MATCH_NONE,
+        /** every document matches */
+        MATCH_ALL,
+        /** the outcome depends on the documents */
+        UNKNOWN
+    }
+
+    private final Set<String> singleValued;
+
+    private final Set<String> keyword;
+
+    private QueryAnalyzer(Builder builder) {
+        this.singleValued = Collections.unmodifiableSet(new HashSet<>(builder.singleValued));
+        this.keyword = Collections.unmodifiableSet(new HashSet<>(builder.keyword));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Analyzes the query of the search, a search without query matches all documents.
+     */
+    public Result analyze(SearchSourceBuilder source) {
+        if (source == null) {
+            throw new IllegalArgumentException("search source cannot be null");
+        }
+        return source.query() == null ? Result.MATCH_ALL : analyze(source.query());
+    }
+
+    public Result analyze(QueryBuilder query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        if (query instanceof BoolQueryBuilder) {
+            return analyzeBool((BoolQueryBuilder) query);
+        }
+        if (query instanceof MatchAllQueryBuilder) {
+            return Result.MATCH_ALL;
+        }
+        if (query instanceof IdsQueryBuilder) {
+            return ((IdsQueryBuilder) query).ids().isEmpty() ? Result.MATCH_NONE : Result.UNKNOWN;
+        }
+        if (query instanceof TermsQueryBuilder) {
+            return ((TermsQueryBuilder) query).values().isEmpty() ? Result.MATCH_NONE : Result.UNKNOWN;
+        }
+        if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            return Interval.of(range, order(range.fieldName(), Arrays.asList(range.from(), range.to()))).isEmpty()
+                    ? Result.MATCH_NONE : Result.UNKNOWN;
+        }
+        return Result.UNKNOWN;
+    }
+
+    private Result analyzeBool(BoolQueryBuilder bool) {
+        boolean required = bool.must().isEmpty() == false || bool.filter().isEmpty() == false;
+        boolean allRequired = true;
+        for (QueryBuilder clause : concat(bool.must(), bool.filter())) {
+            Result result = analyze(clause);
+            if (result == Result.MATCH_NONE) {
+                return Result.MATCH_NONE;
+            }
+            allRequired &= result == Result.MATCH_ALL;
+        }
+        boolean noneExcluded = true;
+        for (QueryBuilder clause : bool.mustNot()) {
+            Result result = analyze(clause);
+            if (result == Result.MATCH_ALL) {
+                return Result.MATCH_NONE;
+            }
+            noneExcluded &= result == Result.MATCH_NONE;
+        }
+        boolean anyShould = false;
+        boolean allShouldNone = true;
+        for (QueryBuilder clause : bool.should()) {
+            Result result = analyze(clause);
+            anyShould |= result == Result.MATCH_ALL;
+            allShouldNone &= result == Result.MATCH_NONE;
+        }
+        String minimumShouldMatch = bool.minimumShouldMatch();
+        boolean shouldMatched;
+        if (bool.should().isEmpty()) {
+            if (required == false && bool.mustNot().isEmpty() == false && bool.adjustPureNegative() == false) {
+                // lucene matches nothing with prohibited clauses only
+                return Result.MATCH_NONE;
+            }
+            shouldMatched = true;
+        } else if (required == false && minimumShouldMatch == null) {
+            if (allShouldNone) {
+                return Result.MATCH_NONE;
+            }
+            shouldMatched = anyShould;
+        } else {
+            // optional, or required in filter context, or counted by minimum_should_match
+            shouldMatched = anyShould && (minimumShouldMatch == null || "1".equals(minimumShouldMatch));
+        }
+        if (contradicts(bool)) {
+            return Result.MATCH_NONE;
+        }
+        return allRequired && noneExcluded && shouldMatched ? Result.MATCH_ALL : Result.UNKNOWN;
+    }
+
+    /**
+     * Whether the term, terms, range and ids clauses the bool requires and excludes, its own
+     * and those of the bools it requires, leave no value for some field.
+     */
+    private boolean contradicts(BoolQueryBuilder bool) {
+        Map<String, Constraints> fields = new LinkedHashMap<>();
+        collect(bool, fields);
+        for (Map.Entry<String, Constraints> entry : fields.entrySet()) {
+            Constraints constraints = entry.getValue();
+            if (constraints.required() && constraints.contradicts(entry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collect(BoolQueryBuilder bool, Map<String, Constraints> fields) {
+        for (QueryBuilder clause : concat(bool.must(), bool.filter())) {
+            if (clause instanceof BoolQueryBuilder) {
+                // must and filter clauses are required whatever the should clauses do
+                collect((BoolQueryBuilder) clause, fields);
+            } else {
+                constrain(clause, fields, true);
+            }
+        }
+        for (QueryBuilder clause : bool.mustNot()) {
+            if (clause instanceof BoolQueryBuilder) {
+                BoolQueryBuilder inner = (BoolQueryBuilder) clause;
+                // not (a or b) excludes both
+                if (inner.must().isEmpty() && inner.filter().isEmpty() && inner.mustNot().isEmpty()
+                        && inner.minimumShouldMatch() == null) {
+                    for (QueryBuilder should : inner.should()) {
+                        if (!(should instanceof BoolQueryBuilder)) {
+                            constrain(should, fields, false);
+                        }
+                    }
+                }
+            } else {
+                constrain(clause, fields, false);
+            }
+        }
+    }
+
+    private void constrain(QueryBuilder clause, Map<String, Constraints> fields, boolean required) {
+        String field;
+        Object constraint;
+        if (clause instanceof TermQueryBuilder) {
+            field = ((TermQueryBuilder) clause).fieldName();
+            constraint = Collections.singletonList(((TermQueryBuilder) clause).value());
+        } else if (clause instanceof TermsQueryBuilder) {
+            field = ((TermsQueryBuilder) clause).fieldName();
+            constraint = ((TermsQueryBuilder) clause).values();
+        } else if (clause instanceof IdsQueryBuilder) {
+            field = ID_FIELD;
+            constraint = new ArrayList<Object>(((IdsQueryBuilder) clause).ids());
+        } else if (clause instanceof RangeQueryBuilder) {
+            field = ((RangeQueryBuilder) clause).fieldName();
+            constraint = clause;
+        } else {
+            return;
+        }
+        Constraints constraints = fields.get(field);
+        if (constraints == null) {
+            constraints = new Constraints();
+            fields.put(field, constraints);
+        }
+        if (constraint instanceof RangeQueryBuilder) {
+            (required ? constraints.ranges : constraints.excludedRanges).add((RangeQueryBuilder) constraint);
+        } else {
+            (required ? constraints.values : constraints.excludedValues).add((List<?>) constraint);
+        }
+    }
+
+    private Interval.Order order(String field, Collection<?> values) {
+        if (keyword.contains(field) || ID_FIELD.equals(field)) {
+            return Interval.Order.KEYWORD;
+        }
+        return Interval.Order.of(values);
+    }
+
+    private static List<QueryBuilder> concat(List<QueryBuilder> a, List<QueryBuilder> b) {
+        if (b.isEmpty()) {
+            return a;
+        }
+        if (a.isEmpty()) {
+            return b;
+        }
+        List<QueryBuilder> all = new ArrayList<>(a.size() + b.size());
+        all.addAll(a);
+        all.addAll(b);
+        return all;
+    }
+
+    /**
+     * The term, terms and range clauses on one field, each a set of values or an interval.
+     */
+    private final class Constraints {
+
+        private final List<List<?>> values = new ArrayList<>(2);
+        private final List<RangeQueryBuilder> ranges = new ArrayList<>(2);
+        private final List<List<?>> excludedValues = new ArrayList<>(2);
+        private final List<RangeQueryBuilder> excludedRanges = new ArrayList<>(2);
+
+        /** order of the field values, known once {@link #contradicts(String)} looked at them */
+        private Interval.Order order;
+
+        boolean required() {
+            return values.isEmpty() == false || ranges.isEmpty() == false;
+        }
+
+        boolean contradicts(String field) {
+            List<Object> all = new ArrayList<>();
+            for (List<?> list : values) {
+                all.addAll(list);
+            }
+            for (List<?> list : excludedValues) {
+                all.addAll(list);
+            }
+            for (RangeQueryBuilder range : ranges) {
+                all.add(range.from());
+                all.add(range.to());
+            }
+            for (RangeQueryBuilder range : excludedRanges) {
+                all.add(range.from());
+                all.add(range.to());
+            }
+            order = order(field, all);
+
+            // unknown keys are dropped from exclusions and make value sets unconstrained
+            List<List<Object>> sets = new ArrayList<>(values.size());
+            for (List<?> list : values) {
+                List<Object> keys = keys(list);
+                if (keys != null) {
+                    sets.add(keys);
+                }
+            }
+            List<Object> excluded = new ArrayList<>();
+            for (List<?> list : excludedValues) {
+                for (Object value : list) {
+                    Object key = order.key(value);
+                    if (key != null) {
+                        excluded.add(key);
+                    }
+                }
+            }
+            List<Interval> intervals = new ArrayList<>(ranges.size());
+            for (RangeQueryBuilder range : ranges) {
+                intervals.add(Interval.of(range, order));
+            }
+            List<Interval> excludedIntervals = new ArrayList<>(excludedRanges.size());
+            for (RangeQueryBuilder range : excludedRanges) {
+                if (Interval.isExact(range, order)) {
+                    excludedIntervals.add(Interval.of(range, order));
+                }
+            }
+
+            if (ID_FIELD.equals(field) || singleValued.contains(field)) {
+                return contradictsSingleValue(sets, intervals, excluded, excludedIntervals);
+            }
+            // each clause may be satisfied by another value of the field
+            for (List<Object> set : sets) {
+                if (feasible(set, Collections.<List<Object>>emptyList(), Collections.<Interval>emptyList(),
+                        excluded, excludedIntervals).isEmpty()) {
+                    return true;
+                }
+            }
+            for (Interval interval : intervals) {
+                if (interval.isEmpty() || excludedBy(interval, excludedIntervals)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Every clause has to be satisfied by the one value of the field.
+         */
+        private boolean contradictsSingleValue(List<List<Object>> sets, List<Interval> intervals, List<Object> excluded,
+                List<Interval> excludedIntervals) {
+            Interval interval = null;
+            for (Interval next : intervals) {
+                if (next.isEmpty()) {
+                    return true;
+                }
+                if (interval == null) {
+                    interval = next;
+                } else {
+                    Interval intersection = interval.intersect(next);
+                    if (intersection == null) {
+                        // bounds cannot be ordered, check the intervals one by one
+                        interval = null;
+                        break;
+                    }
+                    interval = intersection;
+                }
+            }
+            List<Interval> required = interval != null ? Collections.singletonList(interval) : intervals;
+            if (sets.isEmpty() == false) {
+                return feasible(sets.get(0), sets.subList(1, sets.size()), required, excluded, excludedIntervals)
+                        .isEmpty();
+            }
+            for (Interval next : required) {
+                if (next.isEmpty() || excludedBy(next, excludedIntervals)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the keys of the candidates that may lie in all other sets and intervals and
+         * are not known to be excluded.
+         */
+        private List<Object> feasible(List<Object> candidates, List<List<Object>> sets, List<Interval> intervals,
+                List<Object> excluded, List<Interval> excludedIntervals) {
+            List<Object> feasible = new ArrayList<>(candidates.size());
+            Interval anyOrder = intervals.isEmpty() ? null : intervals.get(0);
+            for (Object candidate : candidates) {
+                boolean possible = true;
+                for (List<Object> set : sets) {
+                    possible &= mayContain(set, candidate);
+                }
+                for (Interval interval : intervals) {
+                    possible &= interval.excludes(candidate) == false;
+                }
+                for (Object key : excluded) {
+                    possible &= equal(key, candidate) == false;
+                }
+                for (Interval interval : excludedIntervals) {
+                    possible &= interval.contains(candidate) == false;
+                }
+                if (possible) {
+                    feasible.add(candidate);
+                }
+            }
+            return feasible;
+        }
+
+        private boolean excludedBy(Interval interval, List<Interval> excludedIntervals) {
+            for (Interval excluded : excludedIntervals) {
+                if (interval.within(excluded)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean mayContain(List<Object> set, Object key) {
+            for (Object value : set) {
+                if (compare(value, key) == 0 || compare(value, key) == Interval.INCOMPARABLE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean equal(Object a, Object b) {
+            return compare(a, b) == 0;
+        }
+
+        private int compare(Object a, Object b) {
+            return order.compare(a, b);
+        }
+
+        /**
+         * Returns the keys of the values, or null if one of them has no known key.
+         */
+        private List<Object> keys(List<?> list) {
+            List<Object> keys = new ArrayList<>(list.size());
+            for (Object value : list) {
+                Object key = order.key(value);
+                if (key == null) {
+                    return null;
+                }
+                keys.add(key);
+            }
+            return keys;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Set<String> singleValued = new HashSet<>();
+
+        private final Set<String> keyword = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Declares fields that hold at most one value per document, which lets clauses on
+         * them contradict each other. Declaring a multi-valued field makes the analysis
+         * unsound, and so does declaring a field that normalizes or rounds its values, since
+         * values are compared as given.
+         */
+        public Builder singleValued(String... fields) {
+            for (String field : fields) {
+                if (Strings.isEmpty(field)) {
+                    throw new IllegalArgumentException("field name is null or empty");
+                }
+                singleValued.add(field);
+            }
+            return this;
+        }
+
+        /**
+         * Declares keyword fields that are queried with java numbers, so their values are
+         * ordered as text.
+         */
+        public Builder keyword(String... fields) {
+            for (String field : fields) {
+                if (Strings.isEmpty(field)) {
+                    throw new IllegalArgumentException("field name is null or empty");
+                }
+                keyword.add(field);
+            }
+            return this;
+        }
+
+        public QueryAnalyzer build() {
+            return new QueryAnalyzer(this);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.wuchubuzai.dsl;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 public interface QueryBuilder {
@@ -36,6 +37,18 @@ public interface QueryBuilder {
 
     
     public Map<String,Object> toXContent(Map<String,Object> builder) throws IOException;
+
+    /**
+     * Streams the query as a named entry (<code>"name" : {...}</code>) into the current
+     * object of the given builder. This is the rendering path used by {@link #toString()},
+     * the {@link Map} based variant is only kept for compatibility.
+     */
+    default XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+        for (Map.Entry<String, Object> entry : toXContent(new HashMap<String, Object>()).entrySet()) {
+            builder.field(entry.getKey(), entry.getValue());
+        }
+        return builder;
+    }
 	
 	
 	
@@ -242,6 +242,25 @@ public final class QueryBuilders {
         return new WildcardQueryBuilder(name, query);
     }
 
+    /**
+     * A Query that matches documents containing terms with a specified prefix.
+     *
+     * @param name   The name of the field
+     * @param prefix The prefix query
+     */
+    public static PrefixQueryBuilder prefixQuery(String name, String prefix) {
+        return new PrefixQueryBuilder(name, prefix);
+    }
+
+    /**
+     * A filter to filter only documents where a field exists in them.
+     *
+     * @param name The name of the field
+     */
+    public static ExistsQueryBuilder existsQuery(String name) {
+        return new ExistsQueryBuilder(name);
+    }
+
     /**
      * A Query that matches documents matching boolean combinations of other queries.
      */
@@ -0,0 +1,785 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates what a search costs the cluster and checks it against guardrails before it is
+ * sent, so that a single query cannot take a cluster down: bools beyond
+ * <code>max_clause_count</code>, terms queries beyond <code>max_terms_count</code>, deep
+ * pagination, leading wildcards, regular expressions and fuzzy queries expanding to too
+ * many terms. Each {@link Check} has an {@link Action}: violations are only reported,
+ * reject the search, or are rewritten where a rewrite exists.
+ * <p>
+ * The cost is in rough units of terms looked up: a term query costs one, a terms query one
+ * per value, a range query costs a few BKD tree visits and wildcards and fuzzy queries cost
+ * the terms they may expand to. It is meant to compare queries and to catch outliers, not
+ * to predict latencies. The estimate walks the tree once without touching the cluster and
+ * takes microseconds, so it can run on every request.
+ *
+ * <pre>
+ * QueryCost guard = QueryCost.builder()
+ *         .maxResultWindow(1000)
+ *         .action(QueryCost.Check.RESULT_WINDOW, QueryCost.Action.REWRITE)
+ *         .action(QueryCost.Check.LEADING_WILDCARD, QueryCost.Action.REJECT)
+ *         .build();
+ * SearchSourceBuilder checked = guard.enforce(source);
+ * </pre>
+ */
+public final class QueryCost {
+
+    /** elasticsearch limits with the default actions */
+    public static final QueryCost DEFAULT = builder().build();
+
+    static final long TERM_COST = 1;
+    static final long EXISTS_COST = 2;
+    static final long RANGE_COST = 4;
+    static final long PREFIX_COST = 16;
+    static final long WILDCARD_COST = 64;
+    static final long REGEXP_COST = 256;
+    /** a leading wildcard enumerates every term of the field */
+    static final long LEADING_WILDCARD_COST = 4096;
+    /** fields a field pattern such as <code>*</code> is assumed to expand to */
+    static final int PATTERN_FIELDS = 16;
+    /** terms the last term of a phrase prefix expands to by default */
+    static final int PHRASE_PREFIX_EXPANSIONS = 50;
+
+    public enum Check {
+        /** more clauses in the bools of the query than <code>max_clause_count</code> */
+        CLAUSE_COUNT(true),
+        /** more values in a terms or ids query than <code>max_terms_count</code> */
+        TERMS_COUNT(false),
+        /** <code>from + size</code> beyond <code>max_result_window</code> */
+        RESULT_WINDOW(true),
+        /** wildcard starting with <code>*</code> or <code>?</code>, which enumerates all terms of the field */
+        LEADING_WILDCARD(false),
+        /** any wildcard query or wildcard term of a query string */
+        WILDCARD(false),
+        /** regular expression in a query string */
+        REGEXP(false),
+        /** fuzzy term in a query string */
+        FUZZY(false),
+        /** fuzzy or wildcard expansions, or automaton states of a regular expression, beyond their limit */
+        EXPANSIONS(true),
+        /** estimated cost beyond the maximum */
+        COST(false);
+
+        private final boolean rewritable;
+
+        Check(boolean rewritable) {
+            this.rewritable = rewritable;
+        }
+
+        /**
+         * Whether {@link Action#REWRITE} is supported: the clause count is reduced with
+         * {@link QueryOptimizer}, the size is cut to the result window and expansion limits
+         * are lowered to the maximum.
+         */
+        public boolean rewritable() {
+            return rewritable;
+        }
+    }
+
+    public enum Action {
+        /** the violation is only reported */
+        REPORT,
+        /** the search is rejected */
+        REJECT,
+        /** the search is rewritten to stay within the limit, and rejected if it still does not */
+        REWRITE
+    }
+
+    private final int maxClauseCount;
+    private final int maxTermsCount;
+    private final int maxResultWindow;
+    private final int maxExpansions;
+    private final int maxDeterminizedStates;
+    private final long maxCost;
+    private final EnumMap<Check, Action> actions;
+
+    private QueryCost(Builder builder) {
+        this.maxClauseCount = builder.maxClauseCount;
+        this.maxTermsCount = builder.maxTermsCount;
+        this.maxResultWindow = builder.maxResultWindow;
+        this.maxExpansions = builder.maxExpansions;
+        this.maxDeterminizedStates = builder.maxDeterminizedStates;
+        this.maxCost = builder.maxCost;
+        this.actions = new EnumMap<>(builder.actions);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Action action(Check check) {
+        return actions.get(check);
+    }
+
+    /**
+     * Estimates the cost of the search and collects its violations.
+     */
+    public Report estimate(SearchSourceBuilder source) {
+        if (source == null) {
+            throw new IllegalArgumentException("search source cannot be null");
+        }
+        Walk walk = new Walk();
+        if (source.query() != null) {
+            walk(source.query(), walk);
+        }
+        // every shard collects from + size hits
+        long window = (long) Math.max(source.from(), 0) + (source.size() < 0 ? 10 : source.size());
+        walk.cost += window / 10;
+        if (window > maxResultWindow) {
+            walk.violation(Check.RESULT_WINDOW, null, "result window is too large, from + size must be less than or "
+                    + "equal to [" + maxResultWindow + "] but was [" + window + "]");
+        }
+        return walk.finish();
+    }
+
+    /**
+     * Estimates the cost of the query and collects its violations.
+     */
+    public Report estimate(QueryBuilder query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        Walk walk = new Walk();
+        walk(query, walk);
+        return walk.finish();
+    }
+
+    /**
+     * Returns the search if it passes all rejecting checks, a rewritten copy if it had to be
+     * rewritten, and throws otherwise. The search itself is not modified.
+     *
+     * @throws IllegalArgumentException listing the violations if the search is rejected
+     */
+    public SearchSourceBuilder enforce(SearchSourceBuilder source) {
+        Report report = estimate(source);
+        if (report.has(Action.REJECT)) {
+            throw rejection(report, false);
+        }
+        if (report.has(Action.REWRITE) == false) {
+            return source;
+        }
+        QueryBuilder query = source.query() == null ? null : rewrite(source.query(), report);
+        SearchSourceBuilder rewritten = new SearchSourceBuilder().query(query);
+        if (source.from() >= 0) {
+            rewritten.from(source.from());
+        }
+        int size = source.size();
+        if (report.has(Check.RESULT_WINDOW) && action(Check.RESULT_WINDOW) == Action.REWRITE) {
+            size = Math.max(maxResultWindow - Math.max(source.from(), 0), 0);
+        }
+        if (size >= 0) {
+            rewritten.size(size);
+        }
+        rejectRemaining(estimate(rewritten));
+        return rewritten;
+    }
+
+    /**
+     * Returns the query if it passes all rejecting checks, a rewritten copy if it had to be
+     * rewritten, and throws otherwise. The query itself is not modified.
+     *
+     * @throws IllegalArgumentException listing the violations if the query is rejected
+     */
+    public QueryBuilder enforce(QueryBuilder query) {
+        Report report = estimate(query);
+        if (report.has(Action.REJECT)) {
+            throw rejection(report, false);
+        }
+        if (report.has(Action.REWRITE) == false) {
+            return query;
+        }
+        QueryBuilder rewritten = rewrite(query, report);
+        rejectRemaining(estimate(rewritten));
+        return rewritten;
+    }
+
+    /**
+     * Rejects what is left after a rewrite, such as clauses the optimizer could not merge.
+     */
+    private void rejectRemaining(Report report) {
+        if (report.has(Action.REJECT) || report.has(Action.REWRITE)) {
+            throw rejection(report, true);
+        }
+    }
+
+    private IllegalArgumentException rejection(Report report, boolean rewritten) {
+        StringBuilder message = new StringBuilder(rewritten ? "search rejected after rewrite:" : "search rejected:");
+        for (Violation violation : report.violations()) {
+            if (violation.action() != Action.REPORT) {
+                message.append(" [").append(violation.check()).append("] ").append(violation.message()).append(';');
+            }
+        }
+        message.setLength(message.length() - 1);
+        return new IllegalArgumentException(message.toString());
+    }
+
+    private void walk(QueryBuilder query, Walk walk) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            int clauses = bool.must().size() + bool.filter().size() + bool.mustNot().size() + bool.should().size();
+            walk.clauses += clauses;
+            walk.cost += clauses;
+            for (QueryBuilder clause : bool.must()) {
+                walk(clause, walk);
+            }
+            for (QueryBuilder clause : bool.filter()) {
+                walk(clause, walk);
+            }
+            for (QueryBuilder clause : bool.mustNot()) {
+                walk(clause, walk);
+            }
+            for (QueryBuilder clause : bool.should()) {
+                walk(clause, walk);
+            }
+        } else if (query instanceof TermQueryBuilder) {
+            walk.cost += TERM_COST;
+        } else if (query instanceof TermsQueryBuilder) {
+            termsCount(query, ((TermsQueryBuilder) query).values().size(), walk);
+        } else if (query instanceof IdsQueryBuilder) {
+            termsCount(query, ((IdsQueryBuilder) query).ids().size(), walk);
+        } else if (query instanceof RangeQueryBuilder) {
+            walk.cost += RANGE_COST;
+        } else if (query instanceof ExistsQueryBuilder) {
+            walk.cost += EXISTS_COST;
+        } else if (query instanceof PrefixQueryBuilder) {
+            walk.cost += PREFIX_COST;
+        } else if (query instanceof WildcardQueryBuilder) {
+            wildcard((WildcardQueryBuilder) query, walk);
+        } else if (query instanceof MatchQueryBuilder) {
+            walk.cost += tokens(((MatchQueryBuilder) query).value()) * TERM_COST;
+        } else if (query instanceof MatchPhraseQueryBuilder) {
+            walk.cost += tokens(((MatchPhraseQueryBuilder) query).value()) * 2 * TERM_COST;
+        } else if (query instanceof MatchPhrasePrefixQueryBuilder) {
+            walk.cost += (tokens(((MatchPhrasePrefixQueryBuilder) query).value()) * 2 + PHRASE_PREFIX_EXPANSIONS)
+                    * TERM_COST;
+        } else if (query instanceof MultiMatchQueryBuilder) {
+            MultiMatchQueryBuilder multiMatch = (MultiMatchQueryBuilder) query;
+            walk.cost += tokens(multiMatch.value()) * fields(multiMatch.fields(), null) * TERM_COST;
+        } else if (query instanceof QueryStringQueryBuilder) {
+            queryString((QueryStringQueryBuilder) query, walk);
+        } else {
+            // match_all and queries of unknown type
+            walk.cost += TERM_COST;
+        }
+    }
+
+    private void termsCount(QueryBuilder query, int count, Walk walk) {
+        walk.cost += count * TERM_COST;
+        if (count > maxTermsCount) {
+            walk.violation(Check.TERMS_COUNT, query, "[" + query.getName() + "] has [" + count
+                    + "] values, more than the [max_terms_count] of [" + maxTermsCount + "]");
+        }
+    }
+
+    private void wildcard(WildcardQueryBuilder wildcard, Walk walk) {
+        String pattern = wildcard.value();
+        boolean leading = pattern.length() > 1 && (pattern.charAt(0) == '*' || pattern.charAt(0) == '?');
+        walk.cost += leading ? LEADING_WILDCARD_COST : WILDCARD_COST;
+        if (leading) {
+            walk.violation(Check.LEADING_WILDCARD, wildcard, "[wildcard] on [" + wildcard.fieldName()
+                    + "] starts with a wildcard: [" + pattern + "]");
+        }
+        walk.violation(Check.WILDCARD, wildcard, "[wildcard] on [" + wildcard.fieldName() + "]: [" + pattern + "]");
+        int topTerms = topTerms(wildcard.rewrite());
+        if (topTerms > maxExpansions) {
+            walk.violation(Check.EXPANSIONS, wildcard, "[wildcard] on [" + wildcard.fieldName() + "] rewrites to ["
+                    + topTerms + "] terms, more than [" + maxExpansions + "]");
+        }
+    }
+
+    /**
+     * Returns the N of a <code>top_terms_N</code> rewrite, or 0.
+     */
+    private static int topTerms(String rewrite) {
+        String prefix = topTermsPrefix(rewrite);
+        if (prefix == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(rewrite.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the <code>top_terms_</code>, <code>top_terms_boost_</code> or
+     * <code>top_terms_blended_freqs_</code> prefix of the rewrite, or null.
+     */
+    private static String topTermsPrefix(String rewrite) {
+        if (rewrite == null) {
+            return null;
+        }
+        return rewrite.startsWith("top_terms_boost_") ? "top_terms_boost_"
+                : rewrite.startsWith("top_terms_blended_freqs_") ? "top_terms_blended_freqs_"
+                : rewrite.startsWith("top_terms_") ? "top_terms_" : null;
+    }
+
+    /**
+     * Scans the query string for its terms and their kinds in one pass, following the syntax
+     * of the lucene query parser closely enough for an estimate: quoted phrases, escapes,
+     * <code>/regular expressions/</code>, wildcards and <code>~</code> fuzzy markers.
+     */
+    private void queryString(QueryStringQueryBuilder query, Walk walk) {
+        String text = query.queryString();
+        int terms = 0;
+        int wildcards = 0;
+        int leadingWildcards = 0;
+        int regexps = 0;
+        int fuzzy = 0;
+        boolean termStart = true;
+        boolean afterPhrase = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+                terms += termStart ? 1 : 0;
+                termStart = false;
+            } else if (c == '"') {
+                int end = close(text, i + 1, '"');
+                terms++;
+                i = end;
+                termStart = false;
+                afterPhrase = true;
+                continue;
+            } else if (c == '/' && termStart) {
+                i = close(text, i + 1, '/');
+                regexps++;
+                termStart = false;
+            } else if (c == '*' || c == '?') {
+                wildcards++;
+                if (termStart) {
+                    terms++;
+                    // a lone * is an exists query
+                    if (i + 1 < text.length() && isBoundary(text.charAt(i + 1)) == false) {
+                        leadingWildcards++;
+                    }
+                }
+                termStart = false;
+            } else if (c == '~') {
+                // proximity after a phrase, fuzziness after a term
+                fuzzy += afterPhrase ? 0 : 1;
+                while (i + 1 < text.length() && isBoundary(text.charAt(i + 1)) == false) {
+                    i++;
+                }
+            } else if (isBoundary(c)) {
+                termStart = true;
+            } else {
+                terms += termStart ? 1 : 0;
+                termStart = false;
+            }
+            afterPhrase = false;
+        }
+
+        int fields = fields(query.fields(), query.defaultField());
+        int fuzzyExpansions = query.fuzzyMaxExpansions();
+        walk.cost += (terms * TERM_COST + wildcards * WILDCARD_COST + leadingWildcards * LEADING_WILDCARD_COST
+                + regexps * REGEXP_COST + fuzzy * (long) fuzzyExpansions * TERM_COST) * fields;
+        if (leadingWildcards > 0) {
+            walk.violation(Check.LEADING_WILDCARD, query, "[query_string] has [" + leadingWildcards
+                    + "] terms starting with a wildcard");
+        }
+        if (wildcards > 0) {
+            walk.violation(Check.WILDCARD, query, "[query_string] has [" + wildcards + "] wildcards");
+        }
+        if (regexps > 0) {
+            walk.violation(Check.REGEXP, query, "[query_string] has [" + regexps + "] regular expressions");
+            if (query.maxDeterminizedStates() > maxDeterminizedStates) {
+                walk.violation(Check.EXPANSIONS, query, "[query_string] allows [" + query.maxDeterminizedStates()
+                        + "] determinized states, more than [" + maxDeterminizedStates + "]");
+            }
+        }
+        if (fuzzy > 0) {
+            walk.violation(Check.FUZZY, query, "[query_string] has [" + fuzzy + "] fuzzy terms");
+            if (fuzzyExpansions > maxExpansions) {
+                walk.violation(Check.EXPANSIONS, query, "[query_string] expands fuzzy terms to [" + fuzzyExpansions
+                        + "] terms, more than [" + maxExpansions + "]");
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the closing quote or slash, or the end of the text.
+     */
+    private static int close(String text, int from, char quote) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static boolean isBoundary(char c) {
+        switch (c) {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\r':
+        case '(':
+        case ')':
+        case '[':
+        case ']':
+        case '{':
+        case '}':
+        case ':':
+        case '+':
+        case '-':
+        case '!':
+        case '^':
+        case '&':
+        case '|':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static int fields(Map<String, Float> fields, String defaultField) {
+        if (fields.isEmpty()) {
+            return defaultField == null || Regex.isSimpleMatchPattern(defaultField) ? PATTERN_FIELDS : 1;
+        }
+        int count = 0;
+        for (String field : fields.keySet()) {
+            count += Regex.isSimpleMatchPattern(field) ? PATTERN_FIELDS : 1;
+        }
+        return count;
+    }
+
+    private static int tokens(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        String text = value.toString();
+        int tokens = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean whitespace = Character.isWhitespace(text.charAt(i));
+            tokens += whitespace == false && inToken == false ? 1 : 0;
+            inToken = whitespace == false;
+        }
+        return Math.max(tokens, 1);
+    }
+
+    /**
+     * Rewrites the violations whose action is {@link Action#REWRITE}, except the result
+     * window which belongs to the search.
+     */
+    private QueryBuilder rewrite(QueryBuilder query, Report report) {
+        if (report.has(Check.EXPANSIONS) && action(Check.EXPANSIONS) == Action.REWRITE) {
+            query = lowerExpansions(query);
+        }
+        if (report.has(Check.CLAUSE_COUNT) && action(Check.CLAUSE_COUNT) == Action.REWRITE) {
+            query = QueryOptimizer.DEFAULT.optimize(query);
+        }
+        return query;
+    }
+
+    /**
+     * Lowers the expansion limits in the tree, returning the query itself if nothing was over.
+     */
+    private QueryBuilder lowerExpansions(QueryBuilder query) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            List<QueryBuilder> must = lowerExpansions(bool.must());
+            List<QueryBuilder> filter = lowerExpansions(bool.filter());
+            List<QueryBuilder> mustNot = lowerExpansions(bool.mustNot());
+            List<QueryBuilder> should = lowerExpansions(bool.should());
+            if (must == bool.must() && filter == bool.filter() && mustNot == bool.mustNot() && should == bool.should()) {
+                return bool;
+            }
+            BoolQueryBuilder copy = new BoolQueryBuilder()
+                    .adjustPureNegative(bool.adjustPureNegative())
+                    .minimumShouldMatch(bool.minimumShouldMatch())
+                    .boost(bool.boost())
+                    .queryName(bool.queryName());
+            copy.must().addAll(must);
+            copy.filter().addAll(filter);
+            copy.mustNot().addAll(mustNot);
+            copy.should().addAll(should);
+            return copy;
+        }
+        if (query instanceof WildcardQueryBuilder) {
+            WildcardQueryBuilder wildcard = (WildcardQueryBuilder) query;
+            int topTerms = topTerms(wildcard.rewrite());
+            if (topTerms > maxExpansions) {
+                return new WildcardQueryBuilder(wildcard.fieldName(), wildcard.value())
+                        .rewrite(topTermsPrefix(wildcard.rewrite()) + maxExpansions)
+                        .boost(wildcard.boost()).queryName(wildcard.queryName());
+            }
+        }
+        if (query instanceof QueryStringQueryBuilder) {
+            QueryStringQueryBuilder queryString = (QueryStringQueryBuilder) query;
+            if (queryString.fuzzyMaxExpansions() > maxExpansions
+                    || queryString.maxDeterminizedStates() > maxDeterminizedStates) {
+                QueryStringQueryBuilder copy = copy(queryString);
+                copy.fuzzyMaxExpansions(Math.min(queryString.fuzzyMaxExpansions(), maxExpansions));
+                copy.maxDeterminizedStates(Math.min(queryString.maxDeterminizedStates(), maxDeterminizedStates));
+                return copy;
+            }
+        }
+        return query;
+    }
+
+    private List<QueryBuilder> lowerExpansions(List<QueryBuilder> clauses) {
+        List<QueryBuilder> rewritten = null;
+        for (int i = 0; i < clauses.size(); i++) {
+            QueryBuilder clause = lowerExpansions(clauses.get(i));
+            if (clause != clauses.get(i) && rewritten == null) {
+                rewritten = new ArrayList<>(clauses);
+            }
+            if (rewritten != null) {
+                rewritten.set(i, clause);
+            }
+        }
+        return rewritten == null ? clauses : rewritten;
+    }
+
+    /**
+     * Copies the query string query through its json form, it has too many options to copy by hand.
+     */
+    private static QueryStringQueryBuilder copy(QueryStringQueryBuilder query) {
+        try {
+            return (QueryStringQueryBuilder) QueryParserRegistry.DEFAULT.parseQuery(query.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A check the search failed.
+     */
+    public static final class Violation {
+
+        private final Check check;
+        private final Action action;
+        private final QueryBuilder query;
+        private final String message;
+
+        Violation(Check check, Action action, QueryBuilder query, String message) {
+            this.check = check;
+            this.action = action;
+            this.query = query;
+            this.message = message;
+        }
+
+        public Check check() {
+            return check;
+        }
+
+        public Action action() {
+            return action;
+        }
+
+        /**
+         * The query that failed the check, null for checks of the whole search.
+         */
+        public QueryBuilder query() {
+            return query;
+        }
+
+        public String message() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + check + "] " + message;
+        }
+    }
+
+    /**
+     * The estimated cost of a search and the checks it failed.
+     */
+    public static final class Report {
+
+        private final long cost;
+        private final int clauses;
+        private final List<Violation> violations;
+
+        Report(long cost, int clauses, List<Violation> violations) {
+            this.cost = cost;
+            this.clauses = clauses;
+            this.violations = violations;
+        }
+
+        public long cost() {
+            return cost;
+        }
+
+        /**
+         * Number of clauses in all bools of the query, the count <code>max_clause_count</code> limits.
+         */
+        public int clauseCount() {
+            return clauses;
+        }
+
+        public List<Violation> violations() {
+            return violations;
+        }
+
+        public boolean has(Check check) {
+            for (Violation violation : violations) {
+                if (violation.check() == check) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean has(Action action) {
+            for (Violation violation : violations) {
+                if (violation.action() == action) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "cost [" + cost + "], clauses [" + clauses + "], violations " + violations;
+        }
+    }
+
+    /**
+     * State of one estimate, violations are only allocated when there are some.
+     */
+    private final class Walk {
+
+        private long cost;
+        private int clauses;
+        private List<Violation> violations;
+
+        void violation(Check check, QueryBuilder query, String message) {
+            if (violations == null) {
+                violations = new ArrayList<>(2);
+            }
+            violations.add(new Violation(check, actions.get(check), query, message));
+        }
+
+        Report finish() {
+            if (clauses > maxClauseCount) {
+                violation(Check.CLAUSE_COUNT, null, "query has [" + clauses + "] clauses, more than the "
+                        + "[max_clause_count] of [" + maxClauseCount + "]");
+            }
+            if (cost > maxCost) {
+                violation(Check.COST, null, "estimated cost [" + cost + "] is more than [" + maxCost + "]");
+            }
+            return new Report(cost, clauses,
+                    violations == null ? Collections.<Violation>emptyList() : Collections.unmodifiableList(violations));
+        }
+    }
+
+    public static final class Builder {
+
+        private int maxClauseCount = 1024;
+        private int maxTermsCount = 65536;
+        private int maxResultWindow = 10000;
+        private int maxExpansions = 50;
+        private int maxDeterminizedStates = QueryStringQueryBuilder.DEFAULT_MAX_DETERMINED_STATES;
+        private long maxCost = Long.MAX_VALUE;
+        private final EnumMap<Check, Action> actions = new EnumMap<>(Check.class);
+
+        private Builder() {
+            for (Check check : Check.values()) {
+                actions.put(check, Action.REPORT);
+            }
+            // the cluster fails these searches anyway
+            actions.put(Check.CLAUSE_COUNT, Action.REJECT);
+            actions.put(Check.TERMS_COUNT, Action.REJECT);
+            actions.put(Check.RESULT_WINDOW, Action.REJECT);
+            actions.put(Check.COST, Action.REJECT);
+        }
+
+        /**
+         * Maximum number of clauses in all bools of a query, <code>indices.query.bool.max_clause_count</code>.
+         */
+        public Builder maxClauseCount(int maxClauseCount) {
+            this.maxClauseCount = positive("max_clause_count", maxClauseCount);
+            return this;
+        }
+
+        /**
+         * Maximum number of values of a terms or ids query, <code>index.max_terms_count</code>.
+         */
+        public Builder maxTermsCount(int maxTermsCount) {
+            this.maxTermsCount = positive("max_terms_count", maxTermsCount);
+            return this;
+        }
+
+        /**
+         * Maximum <code>from + size</code>, <code>index.max_result_window</code>.
+         */
+        public Builder maxResultWindow(int maxResultWindow) {
+            this.maxResultWindow = positive("max_result_window", maxResultWindow);
+            return this;
+        }
+
+        /**
+         * Maximum number of terms a fuzzy term or a <code>top_terms_N</code> rewrite may expand to.
+         */
+        public Builder maxExpansions(int maxExpansions) {
+            this.maxExpansions = positive("max_expansions", maxExpansions);
+            return this;
+        }
+
+        /**
+         * Maximum number of automaton states of a regular expression.
+         */
+        public Builder maxDeterminizedStates(int maxDeterminizedStates) {
+            this.maxDeterminizedStates = positive("max_determinized_states", maxDeterminizedStates);
+            return this;
+        }
+
+        /**
+         * Maximum estimated cost, unlimited by default.
+         */
+        public Builder maxCost(long maxCost) {
+            if (maxCost <= 0) {
+                throw new IllegalArgumentException("[max_cost] must be positive, got " + maxCost);
+            }
+            this.maxCost = maxCost;
+            return this;
+        }
+
+        /**
+         * Sets what happens to searches failing the check. Limits the cluster enforces
+         * anyway and the cost reject by default, the other checks only report.
+         */
+        public Builder action(Check check, Action action) {
+            if (check == null || action == null) {
+                throw new IllegalArgumentException("check and action cannot be null");
+            }
+            if (action == Action.REWRITE && check.rewritable() == false) {
+                throw new IllegalArgumentException("[" + check + "] cannot be rewritten");
+            }
+            actions.put(check, action);
+            return this;
+        }
+
+        private static int positive(String name, int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("[" + name + "] must be positive, got " + value);
+            }
+            return value;
+        }
+
+        public QueryCost build() {
+            return new QueryCost(this);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.wuchubuzai.dsl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in counterpart of {@link QueryBuilders} returning shared, {@link AbstractQueryBuilder#freeze() frozen}
+ * instances for structurally equal queries, so hot filters such as
+ * <code>term("tenant_id", x)</code> are allocated once and render their json once.
+ * <p>
+ * Interned queries are weakly referenced: an instance is dropped from the interner as soon
+ * as nobody else holds it. The interner is safe for concurrent use.
+ *
+ * <pre>
+ * QueryBuilder tenant = QueryInterner.DEFAULT.termQuery("tenant_id", tenantId);
+ * QueryBuilder live = QueryInterner.DEFAULT.termQuery("deleted", false);
+ * </pre>
+ */
+public final class QueryInterner {
+
+    public static final QueryInterner DEFAULT = new QueryInterner();
+
+    private final ConcurrentHashMap<Key, Key> queries = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<QueryBuilder> collected = new ReferenceQueue<>();
+
+    /**
+     * Returns the shared instance equal to the given query, freezing and registering the
+     * query itself if there is none yet. Clauses of bool queries are interned first so equal
+     * subtrees are shared as well. The query must not be modified by the caller afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public <QB extends QueryBuilder> QB intern(QB query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        expungeCollected();
+        QueryBuilder shared = lookup(query);
+        if (shared != null) {
+            return (QB) shared;
+        }
+        if (query instanceof BoolQueryBuilder && ((BoolQueryBuilder) query).isFrozen() == false) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            internAll(bool.must());
+            internAll(bool.filter());
+            internAll(bool.mustNot());
+            internAll(bool.should());
+        }
+        AbstractQueryBuilder.freeze(query);
+        while (true) {
+            Key key = new Key(query, collected);
+            Key existing = queries.putIfAbsent(key, key);
+            if (existing == null) {
+                return query;
+            }
+            shared = existing.get();
+            if (shared != null) {
+                return (QB) shared;
+            }
+            // collected between lookup and use
+            queries.remove(existing, existing);
+        }
+    }
+
+    private void internAll(List<QueryBuilder> clauses) {
+        for (int i = 0; i < clauses.size(); i++) {
+            clauses.set(i, intern(clauses.get(i)));
+        }
+    }
+
+    private QueryBuilder lookup(QueryBuilder query) {
+        Key existing = queries.get(new Key(query, null));
+        return existing == null ? null : existing.get();
+    }
+
+    public TermQueryBuilder termQuery(String name, String value) {
+        return intern(new TermQueryBuilder(name, value));
+    }
+
+    public TermQueryBuilder termQuery(String name, int value) {
+        return intern(new TermQueryBuilder(name, value));
+    }
+
+    public TermQueryBuilder termQuery(String name, long value) {
+        return intern(new TermQueryBuilder(name, value));
+    }
+
+    public TermQueryBuilder termQuery(String name, boolean value) {
+        return intern(new TermQueryBuilder(name, value));
+    }
+
+    public TermQueryBuilder termQuery(String name, Object value) {
+        return intern(new TermQueryBuilder(name, value));
+    }
+
+    public TermsQueryBuilder termsQuery(String name, String... values) {
+        return intern(new TermsQueryBuilder(name, values == null ? null : values.clone()));
+    }
+
+    public MatchAllQueryBuilder matchAllQuery() {
+        return intern(new MatchAllQueryBuilder());
+    }
+
+    public IdsQueryBuilder idsQuery(String... ids) {
+        return intern(new IdsQueryBuilder().addIds(ids == null ? null : ids.clone()));
+    }
+
+    /**
+     * Number of live interned queries.
+     */
+    public int size() {
+        expungeCollected();
+        return queries.size();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends QueryBuilder> ref;
+        while ((ref = collected.poll()) != null) {
+            queries.remove(ref, ref);
+        }
+    }
+
+    /**
+     * Weak reference to an interned query, equal to keys of equal queries. Cleared keys are
+     * only equal to themselves, which is what lets them be removed.
+     */
+    private static final class Key extends WeakReference<QueryBuilder> {
+
+        private final int hash;
+
+        Key(QueryBuilder query, ReferenceQueue<QueryBuilder> queue) {
+            super(query, queue);
+            this.hash = query.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key) || ((Key) obj).hash != hash) {
+                return false;
+            }
+            QueryBuilder query = get();
+            return query != null && query.equals(((Key) obj).get());
+        }
+    }
+
+}
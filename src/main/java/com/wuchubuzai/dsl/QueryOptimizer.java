@@ -0,0 +1,876 @@
+package com.wuchubuzai.dsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rewrites generated query trees into smaller equivalent ones: bools nested in bools are
+ * flattened, single clause bools are replaced by their clause, duplicate clauses and
+ * redundant <code>match_all</code> clauses are dropped and <code>term</code> queries on the
+ * same field are merged into a <code>terms</code> query. Wildcard queries are replaced by
+ * the cheapest equivalent <code>term</code>, <code>prefix</code> or <code>exists</code> query
+ * and boolean rewrites of multi term queries by constant score ones, wildcards starting with
+ * a wildcard are reported by {@link #leadingWildcards()}. Range clauses on one field are
+ * merged with {@link RangeAlgebra}: unioned where any of them may match and intersected
+ * where all of them must, which for fields holding more than one value per document only
+ * drops ranges wider than another one. The rules are applied bottom-up until a pass
+ * changes nothing.
+ * <p>
+ * Rewrites never change which documents match, the scores of the matching documents or the
+ * <code>_name</code>s reported back. Queries with a <code>_name</code> are never merged
+ * into or dropped, and rules that would change scores only fire where scores are ignored:
+ * in <code>filter</code> and <code>must_not</code> clauses, or everywhere for queries
+ * passed to {@link #optimizeFilter(QueryBuilder)}.
+ * <p>
+ * The given query is not modified, changed bools are copied and unchanged subtrees are
+ * shared with the result. Optimizers are safe for concurrent use and count how often each
+ * {@link Rule} fired.
+ *
+ * <pre>
+ * QueryBuilder query = QueryOptimizer.DEFAULT.optimize(generated);
+ * long merged = QueryOptimizer.DEFAULT.count(QueryOptimizer.Rule.MERGE_TERMS);
+ *
+ * QueryOptimizer optimizer = QueryOptimizer.builder().singleValued("timestamp", "price").build();
+ * </pre>
+ */
+public final class QueryOptimizer {
+
+    public static final QueryOptimizer DEFAULT = new QueryOptimizer();
+
+    /** bounds the number of passes over pathological trees, each pass shrinks the tree */
+    private static final int MAX_PASSES = 64;
+
+    /** clause count up to which duplicates are found by comparing all pairs instead of hashing */
+    private static final int PAIRWISE_LIMIT = 16;
+
+    private static final int MAX_REPORTED_WILDCARDS = 1000;
+
+    public enum Rule {
+        /** <code>bool</code> with a single clause replaced by the clause */
+        UNWRAP_SINGLE_CLAUSE,
+        /** clauses of a nested <code>bool</code> moved into the enclosing one */
+        FLATTEN_NESTED_BOOL,
+        /** clause dropped because an equal clause already requires or excludes the same documents */
+        DEDUPLICATE_CLAUSE,
+        /** <code>match_all</code> dropped next to another required clause */
+        DROP_MATCH_ALL,
+        /** <code>term</code> and <code>terms</code> clauses on one field merged into one <code>terms</code> query */
+        MERGE_TERMS,
+        /** <code>wildcard</code> without wildcards replaced by a <code>term</code> query */
+        WILDCARD_TO_TERM,
+        /** <code>wildcard</code> ending in its only wildcards, such as <code>abc*</code>, replaced by a <code>prefix</code> query */
+        WILDCARD_TO_PREFIX,
+        /** <code>wildcard</code> of <code>*</code>, empty <code>prefix</code> or unbounded <code>range</code> replaced by an <code>exists</code> query */
+        MULTI_TERM_TO_EXISTS,
+        /** boolean <code>rewrite</code> of a multi term query replaced by the default constant score rewrite */
+        REWRITE_MODE,
+        /** <code>top_terms_N</code> rewrite set on a scoring query starting with a wildcard */
+        TOP_TERMS_REWRITE,
+        /** required <code>range</code> clauses on a single valued field intersected into one, or a range dropped next to a narrower one */
+        INTERSECT_RANGES,
+        /** overlapping or adjacent optional or excluded <code>range</code> clauses on one field unioned into one */
+        UNION_RANGES,
+        /** <code>range</code> from and to the same number replaced by a <code>term</code> query */
+        RANGE_TO_TERM
+    }
+
+    private final EnumMap<Rule, LongAdder> counters = new EnumMap<>(Rule.class);
+
+    private final LongAdder optimized = new LongAdder();
+
+    private final LongAdder passes = new LongAdder();
+
+    private final ConcurrentHashMap<String, LongAdder> leadingWildcards = new ConcurrentHashMap<>();
+
+    private final int topTerms;
+
+    private final Set<String> singleValued;
+
+    private final Set<String> keyword;
+
+    public QueryOptimizer() {
+        this(builder());
+    }
+
+    private QueryOptimizer(Builder builder) {
+        this.topTerms = builder.topTerms;
+        this.singleValued = Collections.unmodifiableSet(new HashSet<>(builder.singleValued));
+        this.keyword = Collections.unmodifiableSet(new HashSet<>(builder.keyword));
+        for (Rule rule : Rule.values()) {
+            counters.put(rule, new LongAdder());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Optimizes a query whose scores matter, such as the main query of a search sorted by score.
+     */
+    public QueryBuilder optimize(QueryBuilder query) {
+        return optimize(query, true);
+    }
+
+    /**
+     * Optimizes a query whose scores are ignored, such as a <code>post_filter</code>, the query
+     * of a count or of a search sorted on fields only. This lets the score changing rules
+     * rewrite the top level clauses as well.
+     */
+    public QueryBuilder optimizeFilter(QueryBuilder query) {
+        return optimize(query, false);
+    }
+
+    private QueryBuilder optimize(QueryBuilder query, boolean scoring) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        Pass pass = new Pass();
+        int passCount = 0;
+        int fired;
+        do {
+            fired = pass.fired;
+            query = rewrite(query, scoring, pass);
+            passCount++;
+        } while (pass.fired != fired && passCount < MAX_PASSES);
+        for (Rule rule : Rule.values()) {
+            if (pass.counts[rule.ordinal()] > 0) {
+                counters.get(rule).add(pass.counts[rule.ordinal()]);
+            }
+        }
+        if (pass.leadingWildcards != null) {
+            for (String key : pass.leadingWildcards) {
+                reportLeadingWildcard(key);
+            }
+        }
+        optimized.increment();
+        passes.add(passCount);
+        return query;
+    }
+
+    /**
+     * Number of times the rule fired over all optimized queries.
+     */
+    public long count(Rule rule) {
+        return counters.get(rule).sum();
+    }
+
+    /**
+     * Snapshot of {@link #count(Rule)} for all rules.
+     */
+    public Map<Rule, Long> counters() {
+        EnumMap<Rule, Long> snapshot = new EnumMap<>(Rule.class);
+        for (Map.Entry<Rule, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Number of queries optimized so far.
+     */
+    public long optimizedCount() {
+        return optimized.sum();
+    }
+
+    /**
+     * Number of passes over the optimized queries, including the last pass of each
+     * query which found nothing left to rewrite.
+     */
+    public long passCount() {
+        return passes.sum();
+    }
+
+    /**
+     * Wildcard patterns starting with a wildcard seen by this optimizer, as
+     * <code>field:pattern</code>, with the number of times each was seen. These have to
+     * enumerate all terms of the field and cannot be rewritten into cheaper queries, the
+     * first {@value #MAX_REPORTED_WILDCARDS} distinct patterns are reported.
+     */
+    public Map<String, Long> leadingWildcards() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : leadingWildcards.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Rewrites the tree bottom-up, returning the query itself if no rule fired.
+     *
+     * @param scoring whether the scores of the query are used
+     */
+    private QueryBuilder rewrite(QueryBuilder query, boolean scoring, Pass pass) {
+        if (query instanceof RangeQueryBuilder) {
+            return rewriteRange((RangeQueryBuilder) query, scoring, pass);
+        }
+        if (query instanceof MultiTermQueryBuilder) {
+            return rewriteMultiTerm((MultiTermQueryBuilder) query, scoring, pass);
+        }
+        if (!(query instanceof BoolQueryBuilder)) {
+            return query;
+        }
+        BoolQueryBuilder bool = (BoolQueryBuilder) query;
+        int fired = pass.fired;
+        List<QueryBuilder> must = rewriteAll(bool.must(), scoring, pass);
+        List<QueryBuilder> filter = rewriteAll(bool.filter(), false, pass);
+        List<QueryBuilder> mustNot = rewriteAll(bool.mustNot(), false, pass);
+        List<QueryBuilder> should = rewriteAll(bool.should(), scoring, pass);
+        boolean countShould = bool.minimumShouldMatch() != null;
+
+        flatten(must, filter, mustNot, should, scoring, countShould, pass);
+        deduplicate(must, filter, mustNot, should, scoring, countShould, pass);
+        dropMatchAll(must, filter, scoring, pass);
+        if (scoring == false && countShould == false) {
+            mergeTerms(should, pass);
+        }
+        mergeTerms(mustNot, pass);
+        if (scoring == false) {
+            intersectRanges(must, pass);
+        }
+        intersectRanges(filter, pass);
+        if (scoring == false && countShould == false) {
+            unionRanges(should, pass);
+        }
+        unionRanges(mustNot, pass);
+
+        QueryBuilder single = singleClause(bool, must, filter, mustNot, should, scoring);
+        if (single != null) {
+            pass.fire(Rule.UNWRAP_SINGLE_CLAUSE);
+            return single;
+        }
+        if (pass.fired == fired) {
+            return bool;
+        }
+        BoolQueryBuilder copy = new BoolQueryBuilder()
+                .adjustPureNegative(bool.adjustPureNegative())
+                .minimumShouldMatch(bool.minimumShouldMatch())
+                .boost(bool.boost())
+                .queryName(bool.queryName());
+        copy.must().addAll(must);
+        copy.filter().addAll(filter);
+        copy.mustNot().addAll(mustNot);
+        copy.should().addAll(should);
+        return copy;
+    }
+
+    private List<QueryBuilder> rewriteAll(List<QueryBuilder> clauses, boolean scoring, Pass pass) {
+        List<QueryBuilder> rewritten = new ArrayList<>(clauses.size());
+        for (QueryBuilder clause : clauses) {
+            rewritten.add(rewrite(clause, scoring, pass));
+        }
+        return rewritten;
+    }
+
+    private QueryBuilder rewriteMultiTerm(MultiTermQueryBuilder query, boolean scoring, Pass pass) {
+        if (query instanceof WildcardQueryBuilder) {
+            return rewriteWildcard((WildcardQueryBuilder) query, scoring, pass);
+        }
+        if (query instanceof PrefixQueryBuilder) {
+            PrefixQueryBuilder prefix = (PrefixQueryBuilder) query;
+            if (prefix.value().isEmpty()) {
+                pass.fire(Rule.MULTI_TERM_TO_EXISTS);
+                return exists(prefix);
+            }
+            String rewrite = cheaperRewrite(prefix.rewrite(), scoring);
+            if (Objects.equals(rewrite, prefix.rewrite()) == false) {
+                pass.fire(Rule.REWRITE_MODE);
+                return new PrefixQueryBuilder(prefix.fieldName(), prefix.value()).rewrite(rewrite)
+                        .boost(prefix.boost()).queryName(prefix.queryName());
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Replaces the wildcard query with the cheapest query matching the same terms. Wildcard
+     * queries score every match alike, so a <code>term</code> query only replaces them where
+     * scores are ignored, while <code>prefix</code> and <code>exists</code> queries score the
+     * same way.
+     */
+    private QueryBuilder rewriteWildcard(WildcardQueryBuilder wildcard, boolean scoring, Pass pass) {
+        String pattern = wildcard.value();
+        StringBuilder literal = new StringBuilder(pattern.length());
+        boolean wildcards = false;
+        boolean questionMarks = false;
+        boolean trailing = true;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                wildcards = true;
+                questionMarks |= c == '?';
+                continue;
+            }
+            if (c == '\\' && i + 1 < pattern.length()) {
+                c = pattern.charAt(++i);
+            }
+            trailing &= wildcards == false;
+            literal.append(c);
+        }
+        String fieldName = wildcard.fieldName();
+        if (wildcards == false) {
+            if (scoring == false) {
+                pass.fire(Rule.WILDCARD_TO_TERM);
+                return new TermQueryBuilder(fieldName, literal.toString())
+                        .boost(wildcard.boost()).queryName(wildcard.queryName());
+            }
+        } else if (questionMarks == false && trailing) {
+            if (literal.length() == 0) {
+                pass.fire(Rule.MULTI_TERM_TO_EXISTS);
+                return exists(wildcard);
+            }
+            pass.fire(Rule.WILDCARD_TO_PREFIX);
+            return new PrefixQueryBuilder(fieldName, literal.toString())
+                    .rewrite(cheaperRewrite(wildcard.rewrite(), scoring))
+                    .boost(wildcard.boost()).queryName(wildcard.queryName());
+        } else if (pattern.charAt(0) == '*' || pattern.charAt(0) == '?') {
+            pass.leadingWildcard(fieldName + ":" + pattern);
+            if (topTerms > 0 && scoring && wildcard.rewrite() == null) {
+                pass.fire(Rule.TOP_TERMS_REWRITE);
+                return new WildcardQueryBuilder(fieldName, pattern).rewrite("top_terms_" + topTerms)
+                        .boost(wildcard.boost()).queryName(wildcard.queryName());
+            }
+        }
+        String rewrite = cheaperRewrite(wildcard.rewrite(), scoring);
+        if (Objects.equals(rewrite, wildcard.rewrite()) == false) {
+            pass.fire(Rule.REWRITE_MODE);
+            return new WildcardQueryBuilder(fieldName, pattern).rewrite(rewrite)
+                    .boost(wildcard.boost()).queryName(wildcard.queryName());
+        }
+        return wildcard;
+    }
+
+    /**
+     * Replaces a range without bounds by an <code>exists</code> query, both score every match
+     * alike, and a range from and to the same number by a <code>term</code> query where
+     * scores are ignored. Only numbers are taken as points, a date string as upper bound
+     * also accepts the rest of the day or month it names. On keyword fields the bounds are
+     * compared as text, <code>gte 5 lte 5.0</code> is no point there.
+     */
+    private QueryBuilder rewriteRange(RangeQueryBuilder range, boolean scoring, Pass pass) {
+        if (range.from() == null && range.to() == null) {
+            pass.fire(Rule.MULTI_TERM_TO_EXISTS);
+            return exists(range);
+        }
+        if (scoring == false && range.from() instanceof Number && range.to() instanceof Number
+                && Interval.of(range, order(range.fieldName(), Collections.singletonList(range))).isPoint()) {
+            pass.fire(Rule.RANGE_TO_TERM);
+            return new TermQueryBuilder(range.fieldName(), range.from())
+                    .boost(range.boost()).queryName(range.queryName());
+        }
+        return range;
+    }
+
+    private static ExistsQueryBuilder exists(MultiTermQueryBuilder query) {
+        return new ExistsQueryBuilder(query.fieldName()).boost(query.boost()).queryName(query.queryName());
+    }
+
+    /**
+     * Returns the rewrite to use instead of the given one. Boolean rewrites expand into one
+     * clause per term and fail beyond the max clause count: <code>constant_score_boolean</code>
+     * scores like the default <code>constant_score</code> rewrite, and
+     * <code>scoring_boolean</code> too where scores are ignored. Null stands for the default.
+     */
+    private static String cheaperRewrite(String rewrite, boolean scoring) {
+        if ("constant_score".equals(rewrite) || "constant_score_boolean".equals(rewrite)
+                || (scoring == false && "scoring_boolean".equals(rewrite))) {
+            return null;
+        }
+        return rewrite;
+    }
+
+    private void reportLeadingWildcard(String key) {
+        LongAdder count = leadingWildcards.get(key);
+        if (count == null) {
+            if (leadingWildcards.size() >= MAX_REPORTED_WILDCARDS) {
+                return;
+            }
+            count = leadingWildcards.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Moves the clauses of nested bools into this bool where the nesting is only a conjunction
+     * (<code>must</code> and <code>filter</code>) or a disjunction (<code>should</code>) of the
+     * same kind as its position, and splits negated disjunctions into <code>must_not</code>s.
+     */
+    private static void flatten(List<QueryBuilder> must, List<QueryBuilder> filter, List<QueryBuilder> mustNot,
+            List<QueryBuilder> should, boolean scoring, boolean countShould, Pass pass) {
+        for (int i = 0; i < must.size(); i++) {
+            BoolQueryBuilder inner = conjunction(must.get(i), scoring);
+            if (inner != null) {
+                must.remove(i);
+                must.addAll(i, inner.must());
+                filter.addAll(inner.filter());
+                mustNot.addAll(inner.mustNot());
+                i += inner.must().size() - 1;
+                pass.fire(Rule.FLATTEN_NESTED_BOOL);
+            }
+        }
+        for (int i = 0; i < filter.size(); i++) {
+            BoolQueryBuilder inner = conjunction(filter.get(i), false);
+            if (inner != null) {
+                filter.remove(i);
+                filter.addAll(i, inner.must());
+                filter.addAll(i + inner.must().size(), inner.filter());
+                mustNot.addAll(inner.mustNot());
+                i += inner.must().size() + inner.filter().size() - 1;
+                pass.fire(Rule.FLATTEN_NESTED_BOOL);
+            }
+        }
+        if (countShould == false) {
+            for (int i = 0; i < should.size(); i++) {
+                BoolQueryBuilder inner = disjunction(should.get(i), scoring);
+                if (inner != null) {
+                    should.remove(i);
+                    should.addAll(i, inner.should());
+                    i += inner.should().size() - 1;
+                    pass.fire(Rule.FLATTEN_NESTED_BOOL);
+                }
+            }
+        }
+        // not (a or b) is (not a) and (not b)
+        for (int i = 0; i < mustNot.size(); i++) {
+            BoolQueryBuilder inner = disjunction(mustNot.get(i), false);
+            if (inner != null) {
+                mustNot.remove(i);
+                mustNot.addAll(i, inner.should());
+                i += inner.should().size() - 1;
+                pass.fire(Rule.FLATTEN_NESTED_BOOL);
+            }
+        }
+    }
+
+    /**
+     * Returns the query as a bool that only requires and excludes documents, or null if it is
+     * anything else. It needs a positive clause, pure negative bools match all other documents
+     * and score them differently.
+     */
+    private static BoolQueryBuilder conjunction(QueryBuilder query, boolean scoring) {
+        BoolQueryBuilder bool = unnamedBool(query, scoring);
+        if (bool == null || bool.should().isEmpty() == false || bool.minimumShouldMatch() != null) {
+            return null;
+        }
+        return bool.must().isEmpty() && bool.filter().isEmpty() ? null : bool;
+    }
+
+    /**
+     * Returns the query as a bool that only has should clauses, or null if it is anything else.
+     */
+    private static BoolQueryBuilder disjunction(QueryBuilder query, boolean scoring) {
+        BoolQueryBuilder bool = unnamedBool(query, scoring);
+        if (bool == null || bool.should().isEmpty() || bool.minimumShouldMatch() != null) {
+            return null;
+        }
+        return bool.must().isEmpty() && bool.filter().isEmpty() && bool.mustNot().isEmpty() ? bool : null;
+    }
+
+    private static BoolQueryBuilder unnamedBool(QueryBuilder query, boolean scoring) {
+        if (!(query instanceof BoolQueryBuilder) || query.queryName() != null
+                || (scoring && query.boost() != AbstractQueryBuilder.DEFAULT_BOOST)) {
+            return null;
+        }
+        return (BoolQueryBuilder) query;
+    }
+
+    /**
+     * Drops clauses equal to an earlier clause of the same kind, and filters equal to a must
+     * clause. Repeated scoring clauses add up their scores, so they are only dropped where
+     * scores are ignored, and repeated should clauses count towards <code>minimum_should_match</code>.
+     */
+    private static void deduplicate(List<QueryBuilder> must, List<QueryBuilder> filter, List<QueryBuilder> mustNot,
+            List<QueryBuilder> should, boolean scoring, boolean countShould, Pass pass) {
+        if (scoring) {
+            removeDuplicates(filter, must, pass);
+        } else {
+            removeDuplicates(must, Collections.<QueryBuilder>emptyList(), pass);
+            removeDuplicates(filter, must, pass);
+        }
+        removeDuplicates(mustNot, Collections.<QueryBuilder>emptyList(), pass);
+        if (scoring == false && countShould == false) {
+            removeDuplicates(should, Collections.<QueryBuilder>emptyList(), pass);
+        }
+    }
+
+    /**
+     * Removes the clauses equal to an earlier clause or to one of the given other clauses.
+     * Hashing an unfrozen query walks its whole tree, so short lists are compared pairwise,
+     * which rejects clauses of different types without looking at them.
+     */
+    private static void removeDuplicates(List<QueryBuilder> clauses, List<QueryBuilder> others, Pass pass) {
+        int total = clauses.size() + others.size();
+        if (clauses.isEmpty() || total < 2) {
+            return;
+        }
+        if (total <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < clauses.size(); i++) {
+                QueryBuilder clause = clauses.get(i);
+                if (others.contains(clause) || clauses.subList(0, i).contains(clause)) {
+                    clauses.remove(i--);
+                    pass.fire(Rule.DEDUPLICATE_CLAUSE);
+                }
+            }
+            return;
+        }
+        Set<QueryBuilder> seen = new HashSet<>(others);
+        for (int i = 0; i < clauses.size(); i++) {
+            if (seen.add(clauses.get(i)) == false) {
+                clauses.remove(i--);
+                pass.fire(Rule.DEDUPLICATE_CLAUSE);
+            }
+        }
+    }
+
+    /**
+     * Drops unnamed <code>match_all</code> filters, and must clauses where scores are ignored,
+     * as long as another must or filter clause is left. Without one the should clauses would
+     * become required.
+     */
+    private static void dropMatchAll(List<QueryBuilder> must, List<QueryBuilder> filter, boolean scoring, Pass pass) {
+        if (scoring == false) {
+            for (int i = 0; i < must.size() && must.size() + filter.size() > 1; i++) {
+                if (isUnnamedMatchAll(must.get(i))) {
+                    must.remove(i--);
+                    pass.fire(Rule.DROP_MATCH_ALL);
+                }
+            }
+        }
+        for (int i = 0; i < filter.size() && must.size() + filter.size() > 1; i++) {
+            if (isUnnamedMatchAll(filter.get(i))) {
+                filter.remove(i--);
+                pass.fire(Rule.DROP_MATCH_ALL);
+            }
+        }
+    }
+
+    private static boolean isUnnamedMatchAll(QueryBuilder query) {
+        return query instanceof MatchAllQueryBuilder && query.queryName() == null;
+    }
+
+    /**
+     * Replaces the unnamed term and terms clauses of each field with a single terms query at
+     * the position of the first one. Only called for disjunctions where scores are ignored:
+     * terms queries score every match alike.
+     */
+    private static void mergeTerms(List<QueryBuilder> clauses, Pass pass) {
+        if (clauses.size() < 2) {
+            return;
+        }
+        Map<String, Set<Object>> valuesByField = null;
+        Map<String, Integer> clausesByField = null;
+        for (QueryBuilder clause : clauses) {
+            String field = termsField(clause);
+            if (field == null) {
+                continue;
+            }
+            if (valuesByField == null) {
+                valuesByField = new LinkedHashMap<>();
+                clausesByField = new LinkedHashMap<>();
+            }
+            Set<Object> values = valuesByField.get(field);
+            if (values == null) {
+                values = new LinkedHashSet<>();
+                valuesByField.put(field, values);
+                clausesByField.put(field, 0);
+            }
+            if (clause instanceof TermQueryBuilder) {
+                values.add(((TermQueryBuilder) clause).value());
+            } else {
+                values.addAll(((TermsQueryBuilder) clause).values());
+            }
+            clausesByField.put(field, clausesByField.get(field) + 1);
+        }
+        if (valuesByField == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<Object>> entry : valuesByField.entrySet()) {
+            int merged = clausesByField.get(entry.getKey());
+            if (merged < 2) {
+                continue;
+            }
+            boolean first = true;
+            for (int i = 0; i < clauses.size(); i++) {
+                if (entry.getKey().equals(termsField(clauses.get(i)))) {
+                    if (first) {
+                        clauses.set(i, new TermsQueryBuilder(entry.getKey(), new ArrayList<>(entry.getValue())));
+                        first = false;
+                    } else {
+                        clauses.remove(i--);
+                    }
+                }
+            }
+            pass.fire(Rule.MERGE_TERMS, merged - 1);
+        }
+    }
+
+    /**
+     * Returns the field of an unnamed term or terms query that can be merged, or null.
+     * Prepared query parameters stand for the whole value and are left alone.
+     */
+    private static String termsField(QueryBuilder query) {
+        if (query.queryName() != null) {
+            return null;
+        }
+        if (query instanceof TermQueryBuilder) {
+            TermQueryBuilder term = (TermQueryBuilder) query;
+            return term.value() instanceof PreparedQuery.Parameter ? null : term.fieldName();
+        }
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            for (Object value : terms.values()) {
+                if (value instanceof PreparedQuery.Parameter) {
+                    return null;
+                }
+            }
+            return terms.fieldName();
+        }
+        return null;
+    }
+
+    /**
+     * Intersects the unnamed range clauses of each single valued field, which are all
+     * required, into one range at the position of the first one. On other fields each
+     * range may be satisfied by another value, so only ranges containing another range are
+     * dropped. Only called where scores are ignored, ranges score a constant each.
+     */
+    private void intersectRanges(List<QueryBuilder> clauses, Pass pass) {
+        Map<String, List<RangeQueryBuilder>> rangesByField = rangesByField(clauses);
+        if (rangesByField == null) {
+            return;
+        }
+        for (Map.Entry<String, List<RangeQueryBuilder>> entry : rangesByField.entrySet()) {
+            List<RangeQueryBuilder> ranges = entry.getValue();
+            if (ranges.size() < 2) {
+                continue;
+            }
+            Interval.Order order = order(entry.getKey(), ranges);
+            if (singleValued.contains(entry.getKey())) {
+                Interval intersection = RangeAlgebra.intersect(ranges, order);
+                if (intersection != null) {
+                    replaceRanges(clauses, ranges,
+                            Collections.singletonList(intersection.toRangeQuery(entry.getKey())));
+                    pass.fire(Rule.INTERSECT_RANGES, ranges.size() - 1);
+                }
+                continue;
+            }
+            List<RangeQueryBuilder> narrowest = new ArrayList<>(ranges);
+            for (int i = 0; i < narrowest.size(); i++) {
+                Interval interval = Interval.of(narrowest.get(i), order);
+                for (int j = 0; j < narrowest.size(); j++) {
+                    if (i != j && Interval.of(narrowest.get(j), order).within(interval)
+                            && (j < i || interval.within(Interval.of(narrowest.get(j), order)) == false)) {
+                        narrowest.remove(i--);
+                        break;
+                    }
+                }
+            }
+            if (narrowest.size() < ranges.size()) {
+                replaceRanges(clauses, ranges, narrowest);
+                pass.fire(Rule.INTERSECT_RANGES, ranges.size() - narrowest.size());
+            }
+        }
+    }
+
+    /**
+     * Unions the unnamed range clauses of each field that overlap or touch. Only called for
+     * excluded clauses and for disjunctions where scores are ignored.
+     */
+    private void unionRanges(List<QueryBuilder> clauses, Pass pass) {
+        Map<String, List<RangeQueryBuilder>> rangesByField = rangesByField(clauses);
+        if (rangesByField == null) {
+            return;
+        }
+        for (Map.Entry<String, List<RangeQueryBuilder>> entry : rangesByField.entrySet()) {
+            List<RangeQueryBuilder> ranges = entry.getValue();
+            if (ranges.size() < 2) {
+                continue;
+            }
+            List<RangeQueryBuilder> union = RangeAlgebra.union(ranges, order(entry.getKey(), ranges));
+            if (union.size() < ranges.size()) {
+                replaceRanges(clauses, ranges, union);
+                pass.fire(Rule.UNION_RANGES, ranges.size() - union.size());
+            }
+        }
+    }
+
+    /**
+     * Returns the unnamed range clauses grouped by field, or null if there are fewer than two.
+     */
+    private static Map<String, List<RangeQueryBuilder>> rangesByField(List<QueryBuilder> clauses) {
+        if (clauses.size() < 2) {
+            return null;
+        }
+        Map<String, List<RangeQueryBuilder>> rangesByField = null;
+        for (QueryBuilder clause : clauses) {
+            if (!(clause instanceof RangeQueryBuilder) || clause.queryName() != null) {
+                continue;
+            }
+            RangeQueryBuilder range = (RangeQueryBuilder) clause;
+            if (rangesByField == null) {
+                rangesByField = new LinkedHashMap<>();
+            }
+            List<RangeQueryBuilder> ranges = rangesByField.get(range.fieldName());
+            if (ranges == null) {
+                ranges = new ArrayList<>(2);
+                rangesByField.put(range.fieldName(), ranges);
+            }
+            ranges.add(range);
+        }
+        return rangesByField;
+    }
+
+    /**
+     * Puts the replacements at the positions of the first ranges and removes the others.
+     */
+    private static void replaceRanges(List<QueryBuilder> clauses, List<RangeQueryBuilder> ranges,
+            List<RangeQueryBuilder> replacements) {
+        int replaced = 0;
+        for (int i = 0; i < clauses.size(); i++) {
+            if (containsSame(ranges, clauses.get(i))) {
+                if (replaced < replacements.size()) {
+                    clauses.set(i, replacements.get(replaced++));
+                } else {
+                    clauses.remove(i--);
+                }
+            }
+        }
+    }
+
+    private static boolean containsSame(List<RangeQueryBuilder> ranges, QueryBuilder query) {
+        for (RangeQueryBuilder range : ranges) {
+            if (range == query) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Interval.Order order(String field, List<RangeQueryBuilder> ranges) {
+        return keyword.contains(field) ? Interval.Order.KEYWORD : RangeAlgebra.order(ranges);
+    }
+
+    /**
+     * Returns the only clause of the bool if the bool matches and scores exactly like it, or null.
+     */
+    private static QueryBuilder singleClause(BoolQueryBuilder bool, List<QueryBuilder> must, List<QueryBuilder> filter,
+            List<QueryBuilder> mustNot, List<QueryBuilder> should, boolean scoring) {
+        if (bool.queryName() != null || must.size() + filter.size() + mustNot.size() + should.size() != 1
+                || (scoring && bool.boost() != AbstractQueryBuilder.DEFAULT_BOOST)) {
+            return null;
+        }
+        if (must.size() == 1 && bool.minimumShouldMatch() == null) {
+            return must.get(0);
+        }
+        if (should.size() == 1 && (bool.minimumShouldMatch() == null || "1".equals(bool.minimumShouldMatch()))) {
+            return should.get(0);
+        }
+        // filters score zero
+        if (filter.size() == 1 && scoring == false && bool.minimumShouldMatch() == null) {
+            return filter.get(0);
+        }
+        return null;
+    }
+
+    public static final class Builder {
+
+        private int topTerms;
+
+        private final Set<String> singleValued = new HashSet<>();
+
+        private final Set<String> keyword = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the rewrite of scoring wildcard queries starting with a wildcard to
+         * <code>top_terms_N</code> when they have no rewrite of their own. Such queries then
+         * only match the documents of the N best scoring terms they expand to, which bounds
+         * their cost at the price of exactness.
+         *
+         * @param topTerms the N of <code>top_terms_N</code>, or 0 to leave these queries alone
+         */
+        public Builder topTermsRewrite(int topTerms) {
+            if (topTerms < 0) {
+                throw new IllegalArgumentException("[top_terms] must not be negative, got " + topTerms);
+            }
+            this.topTerms = topTerms;
+            return this;
+        }
+
+        /**
+         * Declares fields that hold at most one value per document, which lets required
+         * ranges on them be intersected into one. Declaring a multi-valued field changes
+         * which documents match.
+         */
+        public Builder singleValued(String... fields) {
+            for (String field : fields) {
+                if (Strings.isEmpty(field)) {
+                    throw new IllegalArgumentException("field name is null or empty");
+                }
+                singleValued.add(field);
+            }
+            return this;
+        }
+
+        /**
+         * Declares keyword fields that are queried with java numbers, so their range bounds
+         * are ordered as text.
+         */
+        public Builder keyword(String... fields) {
+            for (String field : fields) {
+                if (Strings.isEmpty(field)) {
+                    throw new IllegalArgumentException("field name is null or empty");
+                }
+                keyword.add(field);
+            }
+            return this;
+        }
+
+        public QueryOptimizer build() {
+            return new QueryOptimizer(this);
+        }
+    }
+
+    /**
+     * Rule counts and leading wildcards of a single {@link #optimize(QueryBuilder)} call.
+     */
+    private static final class Pass {
+
+        private final int[] counts = new int[Rule.values().length];
+
+        private int fired;
+
+        /** seen again by every pass, so collected as a set */
+        private Set<String> leadingWildcards;
+
+        void leadingWildcard(String key) {
+            if (leadingWildcards == null) {
+                leadingWildcards = new HashSet<>();
+            }
+            leadingWildcards.add(key);
+        }
+
+        void fire(Rule rule) {
+            fire(rule, 1);
+        }
+
+        void fire(Rule rule, int times) {
+            counts[rule.ordinal()] += times;
+            fired += times;
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps query names, as returned by {@link QueryBuilder#getName()}, to the parsers turning
+ * their XContent back into builders. {@link #DEFAULT} knows all queries of this package,
+ * custom queries can be added to a registry created with {@link #QueryParserRegistry()}.
+ */
+public class QueryParserRegistry {
+
+    /**
+     * Parses the body of a single query, the parser is positioned on the
+     * <code>START_OBJECT</code> following the query name and must be left on the
+     * matching <code>END_OBJECT</code>.
+     */
+    @FunctionalInterface
+    public interface QueryParser {
+        QueryBuilder fromXContent(XContentParser parser) throws IOException;
+    }
+
+    /**
+     * Registry of the built-in queries, it cannot be modified.
+     */
+    public static final QueryParserRegistry DEFAULT = new QueryParserRegistry(true);
+
+    private final Map<String, QueryParser> parsers = new HashMap<>();
+
+    private final boolean frozen;
+
+    /**
+     * Creates a registry holding the built-in queries, more can be added with
+     * {@link #register(String, QueryParser)}.
+     */
+    public QueryParserRegistry() {
+        this(false);
+    }
+
+    private QueryParserRegistry(boolean frozen) {
+        parsers.put(MatchAllQueryBuilder.NAME, MatchAllQueryBuilder::fromXContent);
+        parsers.put(TermQueryBuilder.NAME, TermQueryBuilder::fromXContent);
+        parsers.put(TermsQueryBuilder.NAME, TermsQueryBuilder::fromXContent);
+        parsers.put(IdsQueryBuilder.NAME, IdsQueryBuilder::fromXContent);
+        parsers.put(MatchQueryBuilder.NAME, MatchQueryBuilder::fromXContent);
+        parsers.put(MatchPhraseQueryBuilder.NAME, MatchPhraseQueryBuilder::fromXContent);
+        parsers.put(MatchPhrasePrefixQueryBuilder.NAME, MatchPhrasePrefixQueryBuilder::fromXContent);
+        parsers.put(MultiMatchQueryBuilder.NAME, MultiMatchQueryBuilder::fromXContent);
+        parsers.put(QueryStringQueryBuilder.NAME, QueryStringQueryBuilder::fromXContent);
+        parsers.put(RangeQueryBuilder.NAME, RangeQueryBuilder::fromXContent);
+        parsers.put(WildcardQueryBuilder.NAME, WildcardQueryBuilder::fromXContent);
+        parsers.put(PrefixQueryBuilder.NAME, PrefixQueryBuilder::fromXContent);
+        parsers.put(ExistsQueryBuilder.NAME, ExistsQueryBuilder::fromXContent);
+        parsers.put(BoolQueryBuilder.NAME, parser -> BoolQueryBuilder.fromXContent(parser, this));
+        this.frozen = frozen;
+    }
+
+    /**
+     * Registers the parser for a query name, replacing any previous parser of that name.
+     */
+    public QueryParserRegistry register(String name, QueryParser parser) {
+        if (frozen) {
+            throw new UnsupportedOperationException("the default registry cannot be modified");
+        }
+        if (Strings.isEmpty(name)) {
+            throw new IllegalArgumentException("query name is null or empty");
+        }
+        if (parser == null) {
+            throw new IllegalArgumentException("[" + name + "] parser cannot be null");
+        }
+        parsers.put(name, parser);
+        return this;
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(parsers.keySet());
+    }
+
+    /**
+     * Parses a <code>{"name" : {...}}</code> query object. The parser is either positioned
+     * on the <code>START_OBJECT</code> or before it, and is left on the matching
+     * <code>END_OBJECT</code>.
+     */
+    public QueryBuilder parseInnerQueryBuilder(XContentParser parser) throws IOException {
+        if (parser.currentToken() != XContentParser.Token.START_OBJECT) {
+            if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                throw new ParsingException(parser, "[_na] query malformed, must start with start_object");
+            }
+        }
+        if (parser.nextToken() == XContentParser.Token.END_OBJECT) {
+            throw new ParsingException(parser, "query malformed, empty clause found");
+        }
+        if (parser.currentToken() != XContentParser.Token.FIELD_NAME) {
+            throw new ParsingException(parser, "[_na] query malformed, no field after start_object");
+        }
+        String queryName = parser.currentName();
+        if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+            throw new ParsingException(parser, "[" + queryName + "] query malformed, no start_object after query name");
+        }
+        QueryParser queryParser = parsers.get(queryName);
+        if (queryParser == null) {
+            throw new ParsingException(parser, "no [query] registered for [" + queryName + "]");
+        }
+        QueryBuilder result;
+        try {
+            result = queryParser.fromXContent(parser);
+        } catch (IllegalArgumentException e) {
+            // rejected by the builder, such as a missing value or a negative slop
+            throw new ParsingException(parser, "[" + queryName + "] " + e.getMessage(), e);
+        }
+        if (parser.currentToken() != XContentParser.Token.END_OBJECT) {
+            throw new ParsingException(parser, "[" + queryName + "] malformed query, expected [END_OBJECT] but found ["
+                    + parser.currentToken() + "]");
+        }
+        if (parser.nextToken() != XContentParser.Token.END_OBJECT) {
+            throw new ParsingException(parser, "[" + queryName + "] malformed query, expected [END_OBJECT] but found ["
+                    + parser.currentToken() + "]");
+        }
+        return result;
+    }
+
+    public QueryBuilder parseQuery(String json) throws IOException {
+        return parseQuery(new JsonXContentParser(json));
+    }
+
+    public QueryBuilder parseQuery(Reader reader) throws IOException {
+        return parseQuery(new JsonXContentParser(reader));
+    }
+
+    /**
+     * Parses a query from the remaining UTF-8 encoded bytes of the buffer.
+     */
+    public QueryBuilder parseQuery(ByteBuffer bytes) throws IOException {
+        return parseQuery(new JsonXContentParser(bytes));
+    }
+
+    private QueryBuilder parseQuery(XContentParser parser) throws IOException {
+        try (XContentParser p = parser) {
+            QueryBuilder query = parseInnerQueryBuilder(p);
+            if (p.nextToken() != null) {
+                throw new ParsingException(p, "unexpected content after the query");
+            }
+            return query;
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -54,6 +55,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     private static final ParseField TYPE_FIELD;
     private static final ParseField GENERATE_SYNONYMS_PHRASE_QUERY;
     private static final ParseField FUZZY_TRANSPOSITIONS_FIELD;
+    private static final ParseFieldTable FIELDS;
     private final String queryString;
     private String defaultField;
     private final Map<String, Float> fieldsAndWeights = new TreeMap();
@@ -101,6 +103,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder defaultField(String defaultField) {
+        ensureNotFrozen();
         this.defaultField = defaultField;
         return this;
     }
@@ -112,6 +115,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     /** @deprecated */
     @Deprecated
     public QueryStringQueryBuilder useAllFields(Boolean useAllFields) {
+        ensureNotFrozen();
         if (useAllFields != null && useAllFields) {
             this.defaultField = "*";
         }
@@ -126,17 +130,20 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
     
     public QueryStringQueryBuilder field(String field) {
+        ensureNotFrozen();
         this.fieldsAndWeights.put(field, 1.0F);
         return this;
     }
 
     public QueryStringQueryBuilder field(String field, float boost) {
+        ensureNotFrozen();
         this.checkNegativeBoost(boost);
         this.fieldsAndWeights.put(field, boost);
         return this;
     }
 
     public QueryStringQueryBuilder fields(Map<String, Float> fields) {
+        ensureNotFrozen();
         Iterator var2 = fields.values().iterator();
         while(var2.hasNext()) {
             float fieldBoost = (Float)var2.next();
@@ -147,10 +154,11 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
     
     public Map<String, Float> fields() {
-        return this.fieldsAndWeights;
+        return isFrozen() ? Collections.unmodifiableMap(this.fieldsAndWeights) : this.fieldsAndWeights;
     }
 
     public QueryStringQueryBuilder type(Type type) {
+        ensureNotFrozen();
         this.type = type;
         return this;
     }
@@ -158,6 +166,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     /** @deprecated */
     @Deprecated
     public QueryStringQueryBuilder useDisMax(boolean useDisMax) {
+        ensureNotFrozen();
         return this;
     }
 
@@ -168,6 +177,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
     
     public QueryStringQueryBuilder tieBreaker(float tieBreaker) {
+        ensureNotFrozen();
         this.tieBreaker = tieBreaker;
         return this;
     }
@@ -177,6 +187,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder defaultOperator(Operator defaultOperator) {
+        ensureNotFrozen();
         this.defaultOperator = defaultOperator == null ? DEFAULT_OPERATOR : defaultOperator;
         return this;
     }
@@ -186,6 +197,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder analyzer(String analyzer) {
+        ensureNotFrozen();
         this.analyzer = analyzer;
         return this;
     }
@@ -199,6 +211,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder quoteAnalyzer(String quoteAnalyzer) {
+        ensureNotFrozen();
         this.quoteAnalyzer = quoteAnalyzer;
         return this;
     }
@@ -206,6 +219,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     /** @deprecated */
     @Deprecated
     public QueryStringQueryBuilder autoGeneratePhraseQueries(boolean autoGeneratePhraseQueries) {
+        ensureNotFrozen();
         return this;
     }
 
@@ -216,6 +230,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder maxDeterminizedStates(int maxDeterminizedStates) {
+        ensureNotFrozen();
         this.maxDeterminizedStates = maxDeterminizedStates;
         return this;
     }
@@ -225,6 +240,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder allowLeadingWildcard(Boolean allowLeadingWildcard) {
+        ensureNotFrozen();
         this.allowLeadingWildcard = allowLeadingWildcard;
         return this;
     }
@@ -234,6 +250,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder enablePositionIncrements(boolean enablePositionIncrements) {
+        ensureNotFrozen();
         this.enablePositionIncrements = enablePositionIncrements;
         return this;
     }
@@ -243,6 +260,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder fuzzyPrefixLength(int fuzzyPrefixLength) {
+        ensureNotFrozen();
         this.fuzzyPrefixLength = fuzzyPrefixLength;
         return this;
     }
@@ -252,6 +270,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder fuzzyMaxExpansions(int fuzzyMaxExpansions) {
+        ensureNotFrozen();
         this.fuzzyMaxExpansions = fuzzyMaxExpansions;
         return this;
     }
@@ -261,6 +280,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder fuzzyRewrite(String fuzzyRewrite) {
+        ensureNotFrozen();
         this.fuzzyRewrite = fuzzyRewrite;
         return this;
     }
@@ -270,6 +290,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder phraseSlop(int phraseSlop) {
+        ensureNotFrozen();
         this.phraseSlop = phraseSlop;
         return this;
     }
@@ -279,11 +300,13 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder rewrite(String rewrite) {
+        ensureNotFrozen();
         this.rewrite = rewrite;
         return this;
     }
 
     public QueryStringQueryBuilder analyzeWildcard(Boolean analyzeWildcard) {
+        ensureNotFrozen();
         this.analyzeWildcard = analyzeWildcard;
         return this;
     }
@@ -297,6 +320,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder minimumShouldMatch(String minimumShouldMatch) {
+        ensureNotFrozen();
         this.minimumShouldMatch = minimumShouldMatch;
         return this;
     }
@@ -306,6 +330,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder quoteFieldSuffix(String quoteFieldSuffix) {
+        ensureNotFrozen();
         this.quoteFieldSuffix = quoteFieldSuffix;
         return this;
     }
@@ -315,6 +340,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder lenient(Boolean lenient) {
+        ensureNotFrozen();
         this.lenient = lenient;
         return this;
     }
@@ -324,6 +350,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder escape(boolean escape) {
+        ensureNotFrozen();
         this.escape = escape;
         return this;
     }
@@ -335,6 +362,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     /** @deprecated */
     @Deprecated
     public QueryStringQueryBuilder splitOnWhitespace(boolean value) {
+        ensureNotFrozen();
         return this;
     }
 
@@ -345,6 +373,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder autoGenerateSynonymsPhraseQuery(boolean value) {
+        ensureNotFrozen();
         this.autoGenerateSynonymsPhraseQuery = value;
         return this;
     }
@@ -358,6 +387,7 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     }
 
     public QueryStringQueryBuilder fuzzyTranspositions(boolean fuzzyTranspositions) {
+        ensureNotFrozen();
         this.fuzzyTranspositions = fuzzyTranspositions;
         return this;
     }
@@ -371,7 +401,157 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
     protected int doHashCode() {
         return Objects.hash(new Object[]{this.queryString, this.defaultField, this.fieldsAndWeights, this.defaultOperator, this.analyzer, this.quoteAnalyzer, this.quoteFieldSuffix, this.allowLeadingWildcard, this.analyzeWildcard, this.enablePositionIncrements,  this.fuzzyPrefixLength, this.fuzzyMaxExpansions, this.fuzzyRewrite, this.phraseSlop, this.type, this.tieBreaker, this.rewrite, this.minimumShouldMatch, this.lenient, this.escape, this.maxDeterminizedStates, this.autoGenerateSynonymsPhraseQuery, this.fuzzyTranspositions});
     }
+
+    @Override
+    protected long doStructuralHash() {
+        return hash64(this.queryString, this.defaultField, this.fieldsAndWeights, this.defaultOperator, this.analyzer, this.quoteAnalyzer, this.quoteFieldSuffix, this.allowLeadingWildcard, this.analyzeWildcard, this.enablePositionIncrements,  this.fuzzyPrefixLength, this.fuzzyMaxExpansions, this.fuzzyRewrite, this.phraseSlop, this.type, this.tieBreaker, this.rewrite, this.minimumShouldMatch, this.lenient, this.escape, this.maxDeterminizedStates, this.autoGenerateSynonymsPhraseQuery, this.fuzzyTranspositions);
+    }
     
+    public static QueryStringQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        ParseField field = null;
+        XContentParser.Token token;
+        String queryString = null;
+        String defaultField = null;
+        String analyzer = null;
+        String quoteAnalyzer = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        int maxDeterminizedStates = DEFAULT_MAX_DETERMINED_STATES;
+        boolean enablePositionIncrements = DEFAULT_ENABLE_POSITION_INCREMENTS;
+        boolean escape = DEFAULT_ESCAPE;
+        int fuzzyPrefixLength = DEFAULT_FUZZY_PREFIX_LENGTH;
+        int fuzzyMaxExpansions = DEFAULT_FUZZY_MAX_EXPANSIONS;
+        int phraseSlop = DEFAULT_PHRASE_SLOP;
+        MultiMatchQueryBuilder.Type type = DEFAULT_TYPE;
+        Float tieBreaker = null;
+        Boolean analyzeWildcard = null;
+        Boolean allowLeadingWildcard = null;
+        String minimumShouldMatch = null;
+        String quoteFieldSuffix = null;
+        Boolean lenient = null;
+        Operator defaultOperator = DEFAULT_OPERATOR;
+        String rewrite = null;
+        String fuzzyRewrite = null;
+        Boolean useAllFields = null;
+        boolean autoGenerateSynonymsPhraseQuery = true;
+        boolean fuzzyTranspositions = DEFAULT_FUZZY_TRANSPOSITIONS;
+        Map<String, Float> fieldsAndWeights = new HashMap<>();
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if (field == FIELDS_FIELD) {
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        MultiMatchQueryBuilder.parseFieldAndBoost(parser, fieldsAndWeights);
+                    }
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else if (token.isValue()) {
+                if (field == QUERY_FIELD) {
+                    queryString = parser.text();
+                } else if (field == DEFAULT_FIELD_FIELD) {
+                    defaultField = parser.text();
+                } else if (field == DEFAULT_OPERATOR_FIELD) {
+                    defaultOperator = MatchQueryBuilder.parseOperator(parser);
+                } else if (field == ANALYZER_FIELD) {
+                    analyzer = parser.text();
+                } else if (field == QUOTE_ANALYZER_FIELD) {
+                    quoteAnalyzer = parser.text();
+                } else if (field == ALLOW_LEADING_WILDCARD_FIELD) {
+                    allowLeadingWildcard = parser.booleanValue();
+                } else if (field == AUTO_GENERATE_PHRASE_QUERIES_FIELD) {
+                    // ignore, deprecated setting
+                } else if (field == MAX_DETERMINIZED_STATES_FIELD) {
+                    maxDeterminizedStates = parser.intValue();
+                } else if (field == LOWERCASE_EXPANDED_TERMS_FIELD) {
+                    // ignore, deprecated setting
+                } else if (field == ENABLE_POSITION_INCREMENTS_FIELD) {
+                    enablePositionIncrements = parser.booleanValue();
+                } else if (field == ESCAPE_FIELD) {
+                    escape = parser.booleanValue();
+                } else if (field == USE_DIS_MAX_FIELD) {
+                    // ignore, deprecated setting
+                } else if (field == FUZZY_PREFIX_LENGTH_FIELD) {
+                    fuzzyPrefixLength = parser.intValue();
+                } else if (field == FUZZY_MAX_EXPANSIONS_FIELD) {
+                    fuzzyMaxExpansions = parser.intValue();
+                } else if (field == FUZZY_REWRITE_FIELD) {
+                    fuzzyRewrite = parser.text();
+                } else if (field == PHRASE_SLOP_FIELD) {
+                    phraseSlop = parser.intValue();
+                } else if (field == TIE_BREAKER_FIELD) {
+                    tieBreaker = parser.floatValue();
+                } else if (field == ANALYZE_WILDCARD_FIELD) {
+                    analyzeWildcard = parser.booleanValue();
+                } else if (field == REWRITE_FIELD) {
+                    rewrite = parser.text();
+                } else if (field == MINIMUM_SHOULD_MATCH_FIELD) {
+                    minimumShouldMatch = parser.text();
+                } else if (field == QUOTE_FIELD_SUFFIX_FIELD) {
+                    quoteFieldSuffix = parser.text();
+                } else if (field == LENIENT_FIELD) {
+                    lenient = parser.booleanValue();
+                } else if (field == LOCALE_FIELD) {
+                    // ignore, deprecated setting
+                } else if (field == ALL_FIELDS_FIELD) {
+                    useAllFields = parser.booleanValue();
+                } else if (field == SPLIT_ON_WHITESPACE) {
+                    // ignore, deprecated setting
+                } else if (field == TYPE_FIELD) {
+                    type = MultiMatchQueryBuilder.Type.parse(parser.text());
+                } else if (field == GENERATE_SYNONYMS_PHRASE_QUERY) {
+                    autoGenerateSynonymsPhraseQuery = parser.booleanValue();
+                } else if (field == FUZZY_TRANSPOSITIONS_FIELD) {
+                    fuzzyTranspositions = parser.booleanValue();
+                } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    boost = parser.floatValue();
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+            }
+        }
+        if (queryString == null) {
+            throw new ParsingException(parser, "[" + NAME + "] must be provided with a [query]");
+        }
+
+        QueryStringQueryBuilder queryStringQuery = new QueryStringQueryBuilder(queryString);
+        queryStringQuery.fields(fieldsAndWeights);
+        queryStringQuery.defaultField(defaultField);
+        queryStringQuery.defaultOperator(defaultOperator);
+        queryStringQuery.analyzer(analyzer);
+        queryStringQuery.quoteAnalyzer(quoteAnalyzer);
+        queryStringQuery.allowLeadingWildcard(allowLeadingWildcard);
+        queryStringQuery.maxDeterminizedStates(maxDeterminizedStates);
+        queryStringQuery.enablePositionIncrements(enablePositionIncrements);
+        queryStringQuery.escape(escape);
+        queryStringQuery.fuzzyPrefixLength(fuzzyPrefixLength);
+        queryStringQuery.fuzzyMaxExpansions(fuzzyMaxExpansions);
+        queryStringQuery.fuzzyRewrite(fuzzyRewrite);
+        queryStringQuery.phraseSlop(phraseSlop);
+        queryStringQuery.type(type);
+        if (tieBreaker != null) {
+            queryStringQuery.tieBreaker(tieBreaker);
+        }
+        queryStringQuery.analyzeWildcard(analyzeWildcard);
+        queryStringQuery.rewrite(rewrite);
+        queryStringQuery.minimumShouldMatch(minimumShouldMatch);
+        queryStringQuery.quoteFieldSuffix(quoteFieldSuffix);
+        queryStringQuery.lenient(lenient);
+        if (useAllFields != null) {
+            queryStringQuery.useAllFields(useAllFields);
+        }
+        queryStringQuery.autoGenerateSynonymsPhraseQuery(autoGenerateSynonymsPhraseQuery);
+        queryStringQuery.fuzzyTranspositions(fuzzyTranspositions);
+        queryStringQuery.boost(boost);
+        queryStringQuery.queryName(queryName);
+        return queryStringQuery;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -409,6 +589,16 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
         TYPE_FIELD = new ParseField("type", new String[0]);
         GENERATE_SYNONYMS_PHRASE_QUERY = new ParseField("auto_generate_synonyms_phrase_query", new String[0]);
         FUZZY_TRANSPOSITIONS_FIELD = new ParseField("fuzzy_transpositions", new String[0]);
+        FIELDS = new ParseFieldTable(FIELDS_FIELD, QUERY_FIELD, DEFAULT_FIELD_FIELD, DEFAULT_OPERATOR_FIELD,
+                ANALYZER_FIELD, QUOTE_ANALYZER_FIELD, ALLOW_LEADING_WILDCARD_FIELD,
+                AUTO_GENERATE_PHRASE_QUERIES_FIELD, MAX_DETERMINIZED_STATES_FIELD,
+                LOWERCASE_EXPANDED_TERMS_FIELD, ENABLE_POSITION_INCREMENTS_FIELD, ESCAPE_FIELD,
+                USE_DIS_MAX_FIELD, FUZZY_PREFIX_LENGTH_FIELD, FUZZY_MAX_EXPANSIONS_FIELD,
+                FUZZY_REWRITE_FIELD, PHRASE_SLOP_FIELD, TIE_BREAKER_FIELD, ANALYZE_WILDCARD_FIELD,
+                REWRITE_FIELD, MINIMUM_SHOULD_MATCH_FIELD, QUOTE_FIELD_SUFFIX_FIELD, LENIENT_FIELD,
+                LOCALE_FIELD, ALL_FIELDS_FIELD, SPLIT_ON_WHITESPACE, TYPE_FIELD,
+                GENERATE_SYNONYMS_PHRASE_QUERY, FUZZY_TRANSPOSITIONS_FIELD, AbstractQueryBuilder.BOOST_FIELD,
+                AbstractQueryBuilder.NAME_FIELD);
     }
     
     @Override
@@ -468,9 +658,67 @@ public class QueryStringQueryBuilder extends AbstractQueryBuilder<QueryStringQue
         queryMap.put(GENERATE_SYNONYMS_PHRASE_QUERY.getPreferredName(), this.autoGenerateSynonymsPhraseQuery);
         queryMap.put(FUZZY_TRANSPOSITIONS_FIELD.getPreferredName(), this.fuzzyTranspositions);
 		
-		this.printBoostAndQueryName(builder);
+		this.printBoostAndQueryName(queryMap);
 		builder.put(NAME, queryMap);
 		return builder;
     }
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(NAME);
+        builder.field(QUERY_FIELD.getPreferredName(), this.queryString);
+        if (this.defaultField != null) {
+            builder.field(DEFAULT_FIELD_FIELD.getPreferredName(), this.defaultField);
+        }
+        builder.startArray(FIELDS_FIELD.getPreferredName());
+        for (Entry<String, Float> fieldEntry : this.fieldsAndWeights.entrySet()) {
+            builder.value(fieldEntry.getKey() + "^" + fieldEntry.getValue());
+        }
+        builder.endArray();
+        if (this.type != null) {
+            builder.field(TYPE_FIELD.getPreferredName(), this.type.toString().toLowerCase(Locale.ENGLISH));
+        }
+        if (this.tieBreaker != null) {
+            builder.field(TIE_BREAKER_FIELD.getPreferredName(), this.tieBreaker);
+        }
+        builder.field(DEFAULT_OPERATOR_FIELD.getPreferredName(), this.defaultOperator.name().toLowerCase(Locale.ROOT));
+        if (this.analyzer != null) {
+            builder.field(ANALYZER_FIELD.getPreferredName(), this.analyzer);
+        }
+        if (this.quoteAnalyzer != null) {
+            builder.field(QUOTE_ANALYZER_FIELD.getPreferredName(), this.quoteAnalyzer);
+        }
+        builder.field(MAX_DETERMINIZED_STATES_FIELD.getPreferredName(), this.maxDeterminizedStates);
+        if (this.allowLeadingWildcard != null) {
+            builder.field(ALLOW_LEADING_WILDCARD_FIELD.getPreferredName(), this.allowLeadingWildcard);
+        }
+        builder.field(ENABLE_POSITION_INCREMENTS_FIELD.getPreferredName(), this.enablePositionIncrements);
+        builder.field(FUZZY_PREFIX_LENGTH_FIELD.getPreferredName(), this.fuzzyPrefixLength);
+        builder.field(FUZZY_MAX_EXPANSIONS_FIELD.getPreferredName(), this.fuzzyMaxExpansions);
+        if (this.fuzzyRewrite != null) {
+            builder.field(FUZZY_REWRITE_FIELD.getPreferredName(), this.fuzzyRewrite);
+        }
+        builder.field(PHRASE_SLOP_FIELD.getPreferredName(), this.phraseSlop);
+        if (this.analyzeWildcard != null) {
+            builder.field(ANALYZE_WILDCARD_FIELD.getPreferredName(), this.analyzeWildcard);
+        }
+        if (this.rewrite != null) {
+            builder.field(REWRITE_FIELD.getPreferredName(), this.rewrite);
+        }
+        if (this.minimumShouldMatch != null) {
+            builder.field(MINIMUM_SHOULD_MATCH_FIELD.getPreferredName(), this.minimumShouldMatch);
+        }
+        if (this.quoteFieldSuffix != null) {
+            builder.field(QUOTE_FIELD_SUFFIX_FIELD.getPreferredName(), this.quoteFieldSuffix);
+        }
+        if (this.lenient != null) {
+            builder.field(LENIENT_FIELD.getPreferredName(), this.lenient);
+        }
+        builder.field(ESCAPE_FIELD.getPreferredName(), this.escape);
+        builder.field(GENERATE_SYNONYMS_PHRASE_QUERY.getPreferredName(), this.autoGenerateSynonymsPhraseQuery);
+        builder.field(FUZZY_TRANSPOSITIONS_FIELD.getPreferredName(), this.fuzzyTranspositions);
+        this.printBoostAndQueryName(builder);
+        builder.endObject();
+    }
     
 }
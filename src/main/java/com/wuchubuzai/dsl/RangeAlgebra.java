@@ -0,0 +1,143 @@
+package com.wuchubuzai.dsl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Intersects and unions range queries on the same field, so that stacked range filters
+ * become a single range query and each range costs one BKD tree traversal less per shard.
+ * <p>
+ * Bounds are compared as in {@link QueryAnalyzer}: a field queried with a java number is
+ * numeric, other fields sort their values as text, as keyword fields and ISO 8601 dates
+ * do. Date math such as <code>now-1d</code> or <code>2018-01-01||+1d</code> is compared
+ * against date math on the same anchor that only adds weeks, days, hours, minutes or
+ * seconds; rounded date math and date math adding months or years only equals itself.
+ * Ranges whose bounds cannot be ordered, including prepared query parameters, are left
+ * alone. The results have the default boost and no <code>_name</code>.
+ *
+ * <pre>
+ * // price &gt;= 10 and price &lt; 50
+ * RangeQueryBuilder price = RangeAlgebra.intersect(
+ *         QueryBuilders.rangeQuery("price").gte(10), QueryBuilders.rangeQuery("price").lt(50));
+ * </pre>
+ */
+public final class RangeAlgebra {
+
+    private RangeAlgebra() {
+    }
+
+    /**
+     * Returns a range query matching the values that lie in all the ranges, or null if
+     * their bounds cannot be ordered. The result is equivalent to requiring all ranges only
+     * for fields holding a single value per document: a document with the values 3 and 20
+     * matches both <code>gt 10</code> and <code>lt 5</code>, but not their empty intersection.
+     *
+     * @throws IllegalArgumentException if no ranges are given or they are on different fields
+     */
+    public static RangeQueryBuilder intersect(RangeQueryBuilder... ranges) {
+        return intersect(Arrays.asList(ranges));
+    }
+
+    /**
+     * @see #intersect(RangeQueryBuilder...)
+     */
+    public static RangeQueryBuilder intersect(List<RangeQueryBuilder> ranges) {
+        String fieldName = fieldName(ranges);
+        Interval intersection = intersect(ranges, order(ranges));
+        return intersection == null ? null : intersection.toRangeQuery(fieldName);
+    }
+
+    /**
+     * Returns range queries matching the values that lie in any of the ranges, with ranges
+     * that overlap or touch merged into one at the position of the first of them. Ranges
+     * whose bounds cannot be ordered against the others are returned as they are. Unlike
+     * {@link #intersect(List)} this holds for multi-valued fields too.
+     *
+     * @throws IllegalArgumentException if no ranges are given or they are on different fields
+     */
+    public static List<RangeQueryBuilder> union(List<RangeQueryBuilder> ranges) {
+        fieldName(ranges);
+        return union(ranges, order(ranges));
+    }
+
+    /**
+     * Whether the range is known to match no value, such as <code>gt 5 lt 5</code>.
+     */
+    public static boolean isEmpty(RangeQueryBuilder range) {
+        if (range == null) {
+            throw new IllegalArgumentException("range cannot be null");
+        }
+        return Interval.of(range, order(Arrays.asList(range))).isEmpty();
+    }
+
+    static Interval intersect(List<RangeQueryBuilder> ranges, Interval.Order order) {
+        Interval intersection = null;
+        for (RangeQueryBuilder range : ranges) {
+            Interval interval = Interval.of(range, order);
+            if (interval.isExact() == false) {
+                return null;
+            }
+            intersection = intersection == null ? interval : intersection.intersect(interval);
+            if (intersection == null) {
+                return null;
+            }
+        }
+        return intersection;
+    }
+
+    static List<RangeQueryBuilder> union(List<RangeQueryBuilder> ranges, Interval.Order order) {
+        List<Interval> intervals = new ArrayList<>(ranges.size());
+        List<RangeQueryBuilder> union = new ArrayList<>(ranges);
+        for (RangeQueryBuilder range : ranges) {
+            intervals.add(Interval.of(range, order));
+        }
+        // merging two ranges may let the merged one reach a range it could not reach before
+        boolean merged;
+        do {
+            merged = false;
+            for (int i = 0; i < intervals.size(); i++) {
+                for (int j = i + 1; j < intervals.size(); j++) {
+                    Interval interval = intervals.get(i).union(intervals.get(j));
+                    if (interval != null) {
+                        intervals.set(i, interval);
+                        union.set(i, interval.toRangeQuery(union.get(i).fieldName()));
+                        intervals.remove(j);
+                        union.remove(j--);
+                        merged = true;
+                    }
+                }
+            }
+        } while (merged);
+        return union;
+    }
+
+    private static String fieldName(List<RangeQueryBuilder> ranges) {
+        if (ranges == null || ranges.isEmpty()) {
+            throw new IllegalArgumentException("no ranges specified");
+        }
+        String fieldName = null;
+        for (RangeQueryBuilder range : ranges) {
+            if (range == null) {
+                throw new IllegalArgumentException("range cannot be null");
+            }
+            if (fieldName == null) {
+                fieldName = range.fieldName();
+            } else if (fieldName.equals(range.fieldName()) == false) {
+                throw new IllegalArgumentException("ranges are on different fields [" + fieldName + "] and ["
+                        + range.fieldName() + "]");
+            }
+        }
+        return fieldName;
+    }
+
+    static Interval.Order order(List<RangeQueryBuilder> ranges) {
+        List<Object> bounds = new ArrayList<>(ranges.size() * 2);
+        for (RangeQueryBuilder range : ranges) {
+            bounds.add(range.from());
+            bounds.add(range.to());
+        }
+        return Interval.Order.of(bounds);
+    }
+
+}
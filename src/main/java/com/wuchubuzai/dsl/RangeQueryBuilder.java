@@ -25,6 +25,9 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
     private static final ParseField TIME_ZONE_FIELD = new ParseField("time_zone");
     private static final ParseField FORMAT_FIELD = new ParseField("format");
     private static final ParseField RELATION_FIELD = new ParseField("relation");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(FROM_FIELD, TO_FIELD,
+            INCLUDE_LOWER_FIELD, INCLUDE_UPPER_FIELD, AbstractQueryBuilder.BOOST_FIELD, GT_FIELD, GTE_FIELD,
+            LT_FIELD, LTE_FIELD, AbstractQueryBuilder.NAME_FIELD);
 
     private final String fieldName;
     
@@ -71,6 +74,7 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
      * of query to be equal regardless of whether it was created from XContent or via Java API.
      */
     public RangeQueryBuilder from(Object from, boolean includeLower) {
+        ensureNotFrozen();
         this.from = from;
         this.includeLower = includeLower;
         return this;
@@ -109,6 +113,7 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
      * The to part of the range query. Null indicates unbounded.
      */
     public RangeQueryBuilder to(Object to, boolean includeUpper) {
+        ensureNotFrozen();
         this.to = to;
         this.includeUpper = includeUpper;
         return this;
@@ -149,6 +154,7 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
      * Should the lower bound be included or not. Defaults to <tt>true</tt>.
      */
     public RangeQueryBuilder includeLower(boolean includeLower) {
+        ensureNotFrozen();
         this.includeLower = includeLower;
         return this;
     }
@@ -164,6 +170,7 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
      * Should the upper bound be included or not. Defaults to <tt>true</tt>.
      */
     public RangeQueryBuilder includeUpper(boolean includeUpper) {
+        ensureNotFrozen();
         this.includeUpper = includeUpper;
         return this;
     }
@@ -192,12 +199,16 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
     		builder.put(NAME, fieldMap);
     	
     		return builder;
-//        builder.startObject(NAME);
-//        builder.startObject(fieldName);
-//        builder.field(FROM_FIELD.getPreferredName(), this.from);
-//        builder.field(TO_FIELD.getPreferredName(), this.to);
-//        builder.field(INCLUDE_LOWER_FIELD.getPreferredName(), includeLower);
-//        builder.field(INCLUDE_UPPER_FIELD.getPreferredName(), includeUpper);
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder) throws IOException {
+        builder.startObject(NAME);
+        builder.startObject(fieldName);
+        builder.field(FROM_FIELD.getPreferredName(), this.from);
+        builder.field(TO_FIELD.getPreferredName(), this.to);
+        builder.field(INCLUDE_LOWER_FIELD.getPreferredName(), includeLower);
+        builder.field(INCLUDE_UPPER_FIELD.getPreferredName(), includeUpper);
 //        if (timeZone != null) {
 //            builder.field(TIME_ZONE_FIELD.getPreferredName(), timeZone.getID());
 //        }
@@ -207,11 +218,80 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
 //        if (relation != null) {
 //            builder.field(RELATION_FIELD.getPreferredName(), relation.getRelationName());
 //        }
-
-//        builder.endObject();
-//        builder.endObject();
+        printBoostAndQueryName(builder);
+        builder.endObject();
+        builder.endObject();
     }
     
+    public static RangeQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        Object from = null;
+        Object to = null;
+        boolean includeLower = RangeQueryBuilder.DEFAULT_INCLUDE_LOWER;
+        boolean includeUpper = RangeQueryBuilder.DEFAULT_INCLUDE_UPPER;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String queryName = null;
+
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == FROM_FIELD) {
+                            from = parser.objectText();
+                        } else if (field == TO_FIELD) {
+                            to = parser.objectText();
+                        } else if (field == INCLUDE_LOWER_FIELD) {
+                            includeLower = parser.booleanValue();
+                        } else if (field == INCLUDE_UPPER_FIELD) {
+                            includeUpper = parser.booleanValue();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == GT_FIELD) {
+                            from = parser.objectText();
+                            includeLower = false;
+                        } else if (field == GTE_FIELD) {
+                            from = parser.objectText();
+                            includeLower = true;
+                        } else if (field == LT_FIELD) {
+                            to = parser.objectText();
+                            includeUpper = false;
+                        } else if (field == LTE_FIELD) {
+                            to = parser.objectText();
+                            includeUpper = true;
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            // time_zone, format and relation are not supported by this builder yet
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] query does not support [" + currentFieldName + "]");
+            }
+        }
+
+        RangeQueryBuilder rangeQuery = new RangeQueryBuilder(fieldName);
+        rangeQuery.from(from);
+        rangeQuery.to(to);
+        rangeQuery.includeLower(includeLower);
+        rangeQuery.includeUpper(includeUpper);
+        rangeQuery.boost(boost);
+        rangeQuery.queryName(queryName);
+        return rangeQuery;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -225,6 +305,11 @@ public class RangeQueryBuilder extends AbstractQueryBuilder<RangeQueryBuilder> i
         return Objects.hash(fieldName, from, to, includeLower, includeUpper);
     }
 
+    @Override
+    protected long doStructuralHash() {
+        return hash64(fieldName, from, to, includeLower, includeUpper);
+    }
+
     @Override
     protected boolean doEquals(RangeQueryBuilder other) {
        
@@ -0,0 +1,195 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * An {@link OutputStream} that collects bytes into chunks borrowed from a
+ * {@link ByteBufferPool}. The output grows by chaining new chunks, written bytes are
+ * never copied around, and {@link #close()} hands every chunk back to the pool.
+ */
+public final class ReleasableBytesStreamOutput extends OutputStream {
+
+    private final ByteBufferPool pool;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+
+    private int chunkCount;
+
+    private ByteBuffer current;
+
+    private long size;
+
+    private boolean closed;
+
+    public ReleasableBytesStreamOutput(ByteBufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (current == null || !current.hasRemaining()) {
+            nextChunk();
+        }
+        current.put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len) < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Copies the written bytes into the given stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ensureOpen();
+        byte[] scratch = null;
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = chunks[i];
+            int length = chunk.position();
+            if (chunk.hasArray()) {
+                out.write(chunk.array(), chunk.arrayOffset(), length);
+            } else {
+                if (scratch == null) {
+                    scratch = new byte[Math.min(pool.chunkSize(), 8192)];
+                }
+                for (int offset = 0; offset < length; ) {
+                    int n = Math.min(scratch.length, length - offset);
+                    for (int j = 0; j < n; j++) {
+                        scratch[j] = chunk.get(offset + j);
+                    }
+                    out.write(scratch, 0, n);
+                    offset += n;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all bytes into the given channel, blocking until everything has been written.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ensureOpen();
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = chunks[i];
+            int length = chunk.position();
+            ((Buffer) chunk).flip();
+            try {
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            } finally {
+                ((Buffer) chunk).limit(chunk.capacity());
+                ((Buffer) chunk).position(length);
+            }
+        }
+    }
+
+    /**
+     * Copies all bytes into the target buffer.
+     *
+     * @throws BufferOverflowException if the target does not have enough room left
+     */
+    public void writeTo(ByteBuffer target) {
+        ensureOpen();
+        if (target.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = chunks[i];
+            int length = chunk.position();
+            ((Buffer) chunk).flip();
+            target.put(chunk);
+            ((Buffer) chunk).limit(chunk.capacity());
+            ((Buffer) chunk).position(length);
+        }
+    }
+
+    /**
+     * Copies the written bytes into a new array, mostly useful for debugging and tests.
+     */
+    public byte[] toByteArray() {
+        ensureOpen();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("output of [" + size + "] bytes does not fit into an array");
+        }
+        ByteBuffer target = ByteBuffer.allocate((int) size);
+        writeTo(target);
+        return target.array();
+    }
+
+    /**
+     * Releases all chunks but keeps the stream open for reuse.
+     */
+    public void reset() {
+        ensureOpen();
+        releaseChunks();
+    }
+
+    /**
+     * Releases all chunks back to the pool, the stream can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed == false) {
+            releaseChunks();
+            closed = true;
+        }
+    }
+
+    private void releaseChunks() {
+        for (int i = 0; i < chunkCount; i++) {
+            pool.release(chunks[i]);
+            chunks[i] = null;
+        }
+        chunkCount = 0;
+        current = null;
+        size = 0;
+    }
+
+    private void nextChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length << 1);
+        }
+        current = pool.acquire();
+        chunks[chunkCount++] = current;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("output has already been released");
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.wuchubuzai.dsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link RenderListener}s renders are reported to, fixed when this class is loaded:
+ * the comma separated classes named by the <code>wuchubuzai.dsl.render.listener</code>
+ * system property, followed by the listeners registered in
+ * <code>META-INF/services/com.wuchubuzai.dsl.RenderListener</code>. A listener that cannot
+ * be created, for instance a misspelled class name, is logged and left out, so that
+ * instrumentation cannot keep queries from rendering.
+ * <p>
+ * Without listeners the render paths only check a constant, which the JIT removes, so
+ * instrumentation costs nothing unless it is installed.
+ *
+ * <pre>
+ * java -Dwuchubuzai.dsl.render.listener=com.wuchubuzai.dsl.RenderStats ...
+ *
+ * Map&lt;String, RenderStats.Snapshot&gt; renders = RenderStats.installed().snapshot();
+ * </pre>
+ */
+public final class RenderInstrumentation {
+
+    public static final String LISTENER_PROPERTY = "wuchubuzai.dsl.render.listener";
+
+    private static final Logger LOGGER = Logger.getLogger(RenderInstrumentation.class.getName());
+
+    private static final List<RenderListener> LISTENERS = load(System.getProperty(LISTENER_PROPERTY));
+
+    static final RenderListener LISTENER = LISTENERS.isEmpty() ? new NoopListener()
+            : LISTENERS.size() == 1 ? LISTENERS.get(0) : new CompositeListener(LISTENERS);
+
+    static final boolean ENABLED = LISTENERS.isEmpty() == false;
+
+    private RenderInstrumentation() {
+    }
+
+    /**
+     * Whether any listener is installed.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * The installed listeners.
+     */
+    public static List<RenderListener> listeners() {
+        return LISTENERS;
+    }
+
+    /**
+     * Creates the listeners named by the comma separated class names, followed by the
+     * registered ones.
+     */
+    static List<RenderListener> load(String names) {
+        List<RenderListener> listeners = new ArrayList<>();
+        if (Strings.isEmpty(names) == false) {
+            for (String name : names.split(",")) {
+                name = name.trim();
+                try {
+                    Class<?> type = Class.forName(name, true, RenderListener.class.getClassLoader());
+                    listeners.add(type.asSubclass(RenderListener.class).getDeclaredConstructor().newInstance());
+                } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                    LOGGER.log(Level.WARNING, "cannot create render listener [" + name + "], renders are not reported to it", e);
+                }
+            }
+        }
+        Iterator<RenderListener> registered = ServiceLoader.load(RenderListener.class, RenderListener.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (registered.hasNext() == false) {
+                    break;
+                }
+            } catch (ServiceConfigurationError e) {
+                // the registrations cannot be read on, a retry may fail the same way
+                LOGGER.log(Level.WARNING, "cannot read the registered render listeners", e);
+                break;
+            }
+            try {
+                listeners.add(registered.next());
+            } catch (ServiceConfigurationError e) {
+                LOGGER.log(Level.WARNING, "cannot create a registered render listener, renders are not reported to it", e);
+            }
+        }
+        return Collections.unmodifiableList(listeners);
+    }
+
+    private static final class NoopListener implements RenderListener {
+
+        @Override
+        public void onQuery(String name) {
+        }
+
+        @Override
+        public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+        }
+    }
+
+    private static final class CompositeListener implements RenderListener {
+
+        private final RenderListener[] listeners;
+
+        CompositeListener(List<RenderListener> listeners) {
+            this.listeners = listeners.toArray(new RenderListener[0]);
+        }
+
+        @Override
+        public void onQuery(String name) {
+            for (RenderListener listener : listeners) {
+                listener.onQuery(name);
+            }
+        }
+
+        @Override
+        public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+            for (RenderListener listener : listeners) {
+                listener.onRender(type, query, queries, bytes, nanos);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.wuchubuzai.dsl;
+
+/**
+ * Receives the renders of request bodies and queries, installed once per JVM through
+ * {@link RenderInstrumentation}. Listeners are called on the rendering threads and have to
+ * be cheap and safe for concurrent use, {@link RenderStats} is the built-in one.
+ */
+public interface RenderListener {
+
+    /**
+     * Called for every query rendered, nested queries included. A frozen query rendering
+     * its cached bytes reports the queries nested in them as well.
+     */
+    void onQuery(String name);
+
+    /**
+     * Called once a search body, or a query rendered on its own through
+     * <code>toString()</code>, is rendered.
+     *
+     * @param type    {@link SearchSourceBuilder#RENDER_TYPE} for a search body, otherwise the name of the query
+     * @param query   the rendered query or the query of the search, null for a search without one
+     * @param queries number of queries rendered, see {@link #onQuery(String)}
+     * @param bytes   number of bytes rendered
+     * @param nanos   render time in nanoseconds
+     */
+    void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos);
+
+}
@@ -0,0 +1,223 @@
+package com.wuchubuzai.dsl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RenderListener} counting the queries rendered per query name and the renders,
+ * rendered bytes and queries per render type, with a histogram of the render times.
+ * Recording is lock-free: threads add to their own stripe of the counters, which
+ * {@link #snapshot()} sums up. Snapshots are cumulative, the difference of two snapshots
+ * covers the renders in between.
+ * <p>
+ * The histograms are log-linear, each power of two is split into 8 buckets, so
+ * percentiles are within 12.5% of the recorded times.
+ */
+public final class RenderStats implements RenderListener {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** times from 2^40 nanos, about 18 minutes, on go into the last bucket */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+    private static final int COUNT = 0;
+    private static final int BYTES = 1;
+    private static final int QUERIES = 2;
+    private static final int NANOS = 3;
+    private static final int FIRST_BUCKET = 4;
+    /** padded to whole cache lines so that stripes do not share one */
+    private static final int STRIPE_LENGTH = (FIRST_BUCKET + BUCKETS + 7) & ~7;
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 16) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final ConcurrentHashMap<String, LongAdder> queries = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Recorder> renders = new ConcurrentHashMap<>();
+
+    public RenderStats() {
+    }
+
+    /**
+     * Returns the first installed {@link RenderStats}, see {@link RenderInstrumentation}, or
+     * null if there is none.
+     */
+    public static RenderStats installed() {
+        for (RenderListener listener : RenderInstrumentation.listeners()) {
+            if (listener instanceof RenderStats) {
+                return (RenderStats) listener;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onQuery(String name) {
+        LongAdder count = queries.get(name);
+        if (count == null) {
+            count = queries.computeIfAbsent(name, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    @Override
+    public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+        Recorder recorder = renders.get(type);
+        if (recorder == null) {
+            recorder = renders.computeIfAbsent(type, k -> new Recorder());
+        }
+        recorder.record(queries, bytes, nanos);
+    }
+
+    /**
+     * Number of queries rendered per query name.
+     */
+    public Map<String, Long> queryCounts() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : queries.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * The renders per render type, see {@link RenderListener#onRender(String, QueryBuilder, int, long, long)}.
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Recorder> entry : renders.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS)
+                + (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * The smallest time of the bucket.
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Counters of one render type, a stripe per group of threads.
+     */
+    private static final class Recorder {
+
+        private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+        void record(int queries, long bytes, long nanos) {
+            int stripe = ((int) AbstractQueryBuilder.mix(Thread.currentThread().getId()) & (STRIPES - 1)) * STRIPE_LENGTH;
+            counters.incrementAndGet(stripe + COUNT);
+            counters.addAndGet(stripe + BYTES, bytes);
+            counters.addAndGet(stripe + QUERIES, queries);
+            counters.addAndGet(stripe + NANOS, nanos);
+            counters.incrementAndGet(stripe + FIRST_BUCKET + bucket(nanos));
+        }
+
+        Snapshot snapshot() {
+            long[] sums = new long[FIRST_BUCKET + BUCKETS];
+            for (int stripe = 0; stripe < STRIPES * STRIPE_LENGTH; stripe += STRIPE_LENGTH) {
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += counters.get(stripe + i);
+                }
+            }
+            return new Snapshot(sums);
+        }
+    }
+
+    /**
+     * The renders of one type up to the time of the snapshot. Counters are read one at a
+     * time while renders go on, so they may be off by the renders in flight.
+     */
+    public static final class Snapshot {
+
+        private final long[] counters;
+
+        private Snapshot(long[] counters) {
+            this.counters = counters;
+        }
+
+        public long count() {
+            return counters[COUNT];
+        }
+
+        public long bytes() {
+            return counters[BYTES];
+        }
+
+        public long queries() {
+            return counters[QUERIES];
+        }
+
+        public long totalNanos() {
+            return counters[NANOS];
+        }
+
+        public long meanNanos() {
+            return count() == 0 ? 0 : totalNanos() / count();
+        }
+
+        /**
+         * Returns the render time in nanoseconds the given share of renders took at most,
+         * as the upper bound of its histogram bucket.
+         *
+         * @param percentile between 0 and 100
+         */
+        public long percentileNanos(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("[percentile] must be between 0 and 100, found [" + percentile + "]");
+            }
+            long histogramCount = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                histogramCount += counters[FIRST_BUCKET + i];
+            }
+            if (histogramCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(histogramCount * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counters[FIRST_BUCKET + i];
+                if (seen >= rank) {
+                    return lowerBound(i + 1) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "count [" + count() + "], bytes [" + bytes() + "], queries [" + queries() + "], mean [" + meanNanos()
+                    + "ns], p50 [" + percentileNanos(50) + "ns], p99 [" + percentileNanos(99) + "ns]";
+        }
+    }
+
+}
@@ -0,0 +1,615 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Client side cache of search results keyed on the {@link SearchSourceBuilder#canonicalBytes() canonical body}
+ * of the request, so identical requests built by different threads or code paths share one
+ * round trip.
+ * <p>
+ * The cache is bounded by the total weight in bytes of its entries, as reported by a
+ * {@link Weigher}, and evicts with W-TinyLFU: new entries enter a small LRU window and are
+ * only admitted to the main segmented LRU if a frequency sketch says they are requested more
+ * often than the entry they would replace. One-off requests such as a scan over many pages
+ * therefore don't flush hot dashboard queries. Entries also expire a fixed time after they
+ * were written.
+ * <p>
+ * Reads are lock free: they look the entry up in a concurrent map and record the access in
+ * lossy per-thread-stripe buffers that are replayed into the eviction policy under a lock by
+ * whichever thread finds it free. Writes take that lock.
+ *
+ * <pre>
+ * SearchResultCache&lt;byte[]&gt; cache = SearchResultCache.&lt;byte[]&gt;builder()
+ *         .maximumWeight(64 * 1024 * 1024)
+ *         .weigher(body -&gt; body.length)
+ *         .expireAfterWrite(30, TimeUnit.SECONDS)
+ *         .build();
+ * byte[] response = cache.get(source, client::search);
+ * </pre>
+ */
+public final class SearchResultCache<R> {
+
+    /**
+     * Executes a search on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Backend<R> {
+        R search(SearchSourceBuilder source) throws IOException;
+    }
+
+    /**
+     * Returns the size in bytes a result is accounted with.
+     */
+    @FunctionalInterface
+    public interface Weigher<R> {
+        long weigh(R result);
+    }
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = 3;
+
+    /** reads recorded per stripe before the buffer is replayed */
+    private static final int READ_BUFFER_SIZE = 16;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final Weigher<? super R> weigher;
+    private final LongSupplier ticker;
+
+    private final ConcurrentHashMap<Key, Node<R>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<R>> loading = new ConcurrentHashMap<>();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicReferenceArray<Node<R>> readBuffer;
+    private final AtomicLongArray readCounts;
+    private final int stripeMask;
+
+    // guarded by evictionLock
+    private final AccessOrder<R> window = new AccessOrder<>();
+    private final AccessOrder<R> probation = new AccessOrder<>();
+    private final AccessOrder<R> protectedSegment = new AccessOrder<>();
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long protectedWeight;
+    private long weightedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private SearchResultCache(Builder<R> builder) {
+        this.maximumWeight = builder.maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 80 / 100;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.weigher = builder.weigher;
+        this.ticker = builder.ticker;
+        this.sketch = new FrequencySketch(256);
+        int stripes = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripeMask = stripes - 1;
+        this.readBuffer = new AtomicReferenceArray<>(stripes * READ_BUFFER_SIZE);
+        this.readCounts = new AtomicLongArray(stripes);
+    }
+
+    public static <R> Builder<R> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Returns the cached result for the request, or runs it on the backend and caches the
+     * result. Concurrent misses on the same request wait for a single backend call.
+     */
+    public R get(SearchSourceBuilder source, Backend<R> backend) throws IOException {
+        Key key = Key.of(source);
+        R result = getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+        CompletableFuture<R> load = new CompletableFuture<>();
+        CompletableFuture<R> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            result = backend.search(source);
+            if (result != null) {
+                put(key, result, expireAfterWriteNanos);
+            }
+            load.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /**
+     * Returns the cached result for the request, or <code>null</code>.
+     */
+    public R getIfPresent(SearchSourceBuilder source) {
+        return getIfPresent(Key.of(source));
+    }
+
+    public void put(SearchSourceBuilder source, R result) {
+        put(Key.of(source), result, expireAfterWriteNanos);
+    }
+
+    /**
+     * Caches a result with its own time to live instead of the default one.
+     */
+    public void put(SearchSourceBuilder source, R result, long timeToLive, TimeUnit unit) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("time to live must be positive but was [" + timeToLive + "]");
+        }
+        put(Key.of(source), result, unit.toNanos(timeToLive));
+    }
+
+    public void invalidate(SearchSourceBuilder source) {
+        Key key = Key.of(source);
+        evictionLock.lock();
+        try {
+            Node<R> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            for (Node<R> node : data.values()) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drops expired entries right away instead of when they are read or evicted.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            long now = ticker.getAsLong();
+            for (Iterator<Node<R>> it = data.values().iterator(); it.hasNext();) {
+                Node<R> node = it.next();
+                if (node.isExpired(now)) {
+                    remove(node);
+                    expirations.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of entries dropped to stay within {@link Builder#maximumWeight(long)}, including
+     * results rejected by the admission policy.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    private R getIfPresent(Key key) {
+        Node<R> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            misses.increment();
+            evictionLock.lock();
+            try {
+                if (node.queue != REMOVED) {
+                    remove(node);
+                    expirations.increment();
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        return node.value;
+    }
+
+    private void put(Key key, R result, long timeToLiveNanos) {
+        if (result == null) {
+            throw new IllegalArgumentException("result cannot be null");
+        }
+        long weight = key.bytes.length + weigher.weigh(result);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight cannot be negative but was [" + weight + "]");
+        }
+        long now = ticker.getAsLong();
+        long expiresAt = timeToLiveNanos == NEVER ? NEVER : now + timeToLiveNanos;
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            sketch.increment(key.hash);
+            Node<R> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+            if (weight > maximumWeight) {
+                evictions.increment();
+                return;
+            }
+            node = new Node<>(key, result, weight, expiresAt);
+            data.put(key, node);
+            sketch.ensureCapacity(data.size());
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowWeight += weight;
+            weightedSize += weight;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static <R> R await(CompletableFuture<R> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a concurrent search");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("concurrent search failed", cause);
+        }
+    }
+
+    private void recordRead(Node<R> node) {
+        int stripe = (Thread.currentThread().hashCode() * 0x9E3779B9 >>> 16) & stripeMask;
+        long count = readCounts.getAndIncrement(stripe);
+        readBuffer.lazySet(stripe * READ_BUFFER_SIZE + (int) (count & (READ_BUFFER_SIZE - 1)), node);
+        if ((count & (READ_BUFFER_SIZE - 1)) == READ_BUFFER_SIZE - 1 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays the buffered reads into the sketch and the access orders. Reads that were
+     * overwritten before being replayed are lost, the policy only needs a sample.
+     */
+    private void drainReadBuffer() {
+        for (int i = 0; i < readBuffer.length(); i++) {
+            Node<R> node = readBuffer.getAndSet(i, null);
+            if (node != null && node.queue != REMOVED) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<R> node) {
+        sketch.increment(node.key.hash);
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedSegment.addLast(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum) {
+                Node<R> demoted = protectedSegment.pollFirst();
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else if (node.queue == PROTECTED) {
+            protectedSegment.moveToLast(node);
+        }
+    }
+
+    /**
+     * Moves entries that fall out of the window to the probation segment, then, while the
+     * cache is too heavy, lets each of those candidates compete with the probation segment's
+     * least recently used entry; the one requested less often according to the sketch goes.
+     */
+    private void evict() {
+        Node<R> candidate = null;
+        while (windowWeight > windowMaximum) {
+            Node<R> node = window.pollFirst();
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        while (weightedSize > maximumWeight) {
+            Node<R> victim = probation.peekFirst();
+            if (victim != null && victim == candidate) {
+                // probation only holds new candidates, pit the oldest two against each other
+                candidate = candidate.next;
+            }
+            if (victim == null) {
+                victim = protectedSegment.peekFirst() != null ? protectedSegment.peekFirst() : window.peekFirst();
+                evict(victim);
+            } else if (candidate == null) {
+                evict(victim);
+            } else if (admit(candidate, victim)) {
+                evict(victim);
+            } else {
+                Node<R> next = candidate.next;
+                evict(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private boolean admit(Node<R> candidate, Node<R> victim) {
+        int candidateFrequency = sketch.frequency(candidate.key.hash);
+        int victimFrequency = sketch.frequency(victim.key.hash);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        // a warm candidate occasionally wins a tie or loss, so an attacker can't pin a victim
+        // by keeping its frequency artificially high
+        return candidateFrequency > 5 && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evict(Node<R> node) {
+        remove(node);
+        evictions.increment();
+    }
+
+    private void remove(Node<R> node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+            windowWeight -= node.weight;
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else if (node.queue == PROTECTED) {
+            protectedSegment.remove(node);
+            protectedWeight -= node.weight;
+        } else {
+            return;
+        }
+        node.queue = REMOVED;
+        weightedSize -= node.weight;
+        data.remove(node.key, node);
+    }
+
+    public static final class Builder<R> {
+
+        private long maximumWeight = -1;
+        private long expireAfterWriteNanos = NEVER;
+        private Weigher<? super R> weigher;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * The total weight in bytes the cache may hold, keys included.
+         */
+        public Builder<R> maximumWeight(long maximumWeight) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("maximum weight must be positive but was [" + maximumWeight + "]");
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        public Builder<R> weigher(Weigher<? super R> weigher) {
+            if (weigher == null) {
+                throw new IllegalArgumentException("weigher cannot be null");
+            }
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Default time to live of entries, they live until evicted otherwise.
+         */
+        public Builder<R> expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be positive but was [" + duration + "]");
+            }
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Source of nanosecond timestamps, {@link System#nanoTime()} by default.
+         */
+        public Builder<R> ticker(LongSupplier ticker) {
+            if (ticker == null) {
+                throw new IllegalArgumentException("ticker cannot be null");
+            }
+            this.ticker = ticker;
+            return this;
+        }
+
+        public SearchResultCache<R> build() {
+            if (maximumWeight == -1) {
+                throw new IllegalArgumentException("maximum weight must be set");
+            }
+            if (weigher == null) {
+                throw new IllegalArgumentException("weigher must be set");
+            }
+            return new SearchResultCache<>(this);
+        }
+    }
+
+    /**
+     * The canonical request body, equal for requests that render identically.
+     */
+    private static final class Key {
+
+        final byte[] bytes;
+        final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        static Key of(SearchSourceBuilder source) {
+            if (source == null) {
+                throw new IllegalArgumentException("search source cannot be null");
+            }
+            return new Key(source.canonicalBytes());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).hash == hash && Arrays.equals(((Key) obj).bytes, bytes);
+        }
+    }
+
+    private static final class Node<R> {
+
+        final Key key;
+        final R value;
+        final long weight;
+        final long expiresAt;
+
+        // guarded by the eviction lock, except for reads of queue
+        volatile int queue;
+        Node<R> prev;
+        Node<R> next;
+
+        Node(Key key, R value, long weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != NEVER && now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list from least to most recently used.
+     */
+    private static final class AccessOrder<R> {
+
+        private Node<R> first;
+        private Node<R> last;
+
+        Node<R> peekFirst() {
+            return first;
+        }
+
+        Node<R> pollFirst() {
+            Node<R> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void addLast(Node<R> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void moveToLast(Node<R> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<R> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+}
@@ -1,11 +1,15 @@
 package com.wuchubuzai.dsl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.alibaba.fastjson.JSON;
-
 public final class SearchSourceBuilder {
 	
 	public static final ParseField FROM_FIELD = new ParseField("from", new String[0]);
@@ -13,6 +17,9 @@ public final class SearchSourceBuilder {
     public static final ParseField QUERY_FIELD = new ParseField("query", new String[0]);
     public static final ParseField SORT_FIELD = new ParseField("sort", new String[0]);
     public static final ParseField HIGHLIGHT_FIELD = new ParseField("highlight", new String[0]);
+    /** render type of search bodies reported to {@link RenderListener#onRender(String, QueryBuilder, int, long, long)} */
+    public static final String RENDER_TYPE = "search";
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(FROM_FIELD, SIZE_FIELD, QUERY_FIELD);
     private QueryBuilder queryBuilder;
     private int from = -1;
     private int size = -1;
@@ -73,15 +80,221 @@ public final class SearchSourceBuilder {
     
     
     
+    /**
+     * Streams the body fields into the current object of the builder, the streaming
+     * counterpart of {@link #innerToXContent(Map)}. Reported to the {@link RenderInstrumentation}
+     * as a render of type {@value #RENDER_TYPE}.
+     */
+    public XContentBuilder innerToXContent(XContentBuilder builder) throws IOException {
+        if (RenderInstrumentation.ENABLED) {
+            long start = System.nanoTime();
+            long bytes = builder.generator().bytesWritten();
+            int queries = builder.queryCount();
+            doInnerToXContent(builder);
+            RenderInstrumentation.LISTENER.onRender(RENDER_TYPE, queryBuilder, builder.queryCount() - queries,
+                    builder.generator().bytesWritten() - bytes, System.nanoTime() - start);
+            return builder;
+        }
+        return doInnerToXContent(builder);
+    }
+
+    private XContentBuilder doInnerToXContent(XContentBuilder builder) throws IOException {
+        if (this.from != -1) {
+            builder.field(FROM_FIELD.getPreferredName(), this.from);
+        }
+
+        if (this.size != -1) {
+            builder.field(SIZE_FIELD.getPreferredName(), this.size);
+        }
+
+        if (this.queryBuilder != null) {
+            builder.startObject(QUERY_FIELD.getPreferredName());
+            this.queryBuilder.toXContent(builder);
+            builder.endObject();
+        }
+
+        return builder;
+    }
+
+    /**
+     * Streams the whole request body as an object into the builder.
+     */
+    public XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        innerToXContent(builder);
+        return builder.endObject();
+    }
+    
+    /**
+     * Writes the request body as compact UTF-8 json into the given stream. Combined with a
+     * {@link ReleasableBytesStreamOutput} this renders into pooled buffers without creating
+     * intermediate strings.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, false);
+    }
+
+    /**
+     * Same as {@link #writeTo(OutputStream)}, optionally using the canonical rendering of
+     * {@link XContentBuilder#canonical()} so that equal requests produce identical bytes.
+     */
+    public void writeTo(OutputStream out, boolean canonical) throws IOException {
+        writeTo(out, XContentType.JSON, canonical);
+    }
+
+    /**
+     * Writes the request body in the given format, to be sent with
+     * {@link XContentType#mediaType()} as content type. The binary formats only save bytes on
+     * number heavy bodies such as large terms lists of longs, string heavy bodies can come
+     * out larger than json, see {@link XContentType}.
+     */
+    public void writeTo(OutputStream out, XContentType type) throws IOException {
+        writeTo(out, type, false);
+    }
+
+    public void writeTo(OutputStream out, XContentType type, boolean canonical) throws IOException {
+        if (type == null) {
+            throw new IllegalArgumentException("content type cannot be null");
+        }
+        byte[] scratch = JsonXContentGenerator.borrowBuffer();
+        try {
+            XContentBuilder builder = new XContentBuilder(type.createGenerator(out, scratch), out);
+            if (canonical) {
+                builder.canonical();
+            }
+            toXContent(builder);
+            builder.flush();
+        } finally {
+            JsonXContentGenerator.recycleBuffer(scratch);
+        }
+    }
+
+    /**
+     * Writes the request body as compact UTF-8 json into the given buffer.
+     *
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the body does not fit into the remaining space, the
+     *         position of the buffer is then reset to where it was and no partial body is left
+     */
+    public int writeTo(ByteBuffer target) throws IOException {
+        int start = target.position();
+        try {
+            writeTo(new ByteBufferOutputStream(target));
+        } catch (BufferOverflowException e) {
+            // chunks flushed before the one that overflowed already advanced the position
+            ((Buffer) target).position(start);
+            throw e;
+        }
+        return target.position() - start;
+    }
+
+    /**
+     * Returns the request body rendered in the given format.
+     */
+    public byte[] toBytes(XContentType type) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out, type);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot render search source as [" + type + "]", e);
+        }
+    }
+
+    /**
+     * Returns the canonical compact json body, see {@link XContentBuilder#canonical()}.
+     */
+    public byte[] canonicalBytes() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out, true);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot render canonical search source", e);
+        }
+    }
+
+    public static SearchSourceBuilder fromXContent(XContentParser parser) throws IOException {
+        return fromXContent(parser, QueryParserRegistry.DEFAULT);
+    }
+
+    /**
+     * Parses a request body, the inverse of {@link #toXContent(XContentBuilder)}.
+     */
+    public static SearchSourceBuilder fromXContent(XContentParser parser, QueryParserRegistry registry) throws IOException {
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        XContentParser.Token token = parser.currentToken();
+        // a parser that has not been started yet holds nothing but the body
+        boolean root = token == null;
+        if (token != XContentParser.Token.START_OBJECT && (token = parser.nextToken()) != XContentParser.Token.START_OBJECT) {
+            throw new ParsingException(parser, "Expected [START_OBJECT] but found [" + token + "]");
+        }
+        ParseField field = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token.isValue()) {
+                if (field == FROM_FIELD) {
+                    int from = parser.intValue();
+                    try {
+                        builder.from(from);
+                    } catch (IllegalArgumentException e) {
+                        throw new ParsingException(parser, e.getMessage(), e);
+                    }
+                } else if (field == SIZE_FIELD) {
+                    int size = parser.intValue();
+                    try {
+                        builder.size(size);
+                    } catch (IllegalArgumentException e) {
+                        throw new ParsingException(parser, e.getMessage(), e);
+                    }
+                } else {
+                    throw new ParsingException(parser, "Unknown key for a " + token + " in [" + parser.currentName() + "].");
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (field == QUERY_FIELD) {
+                    builder.queryBuilder = registry.parseInnerQueryBuilder(parser);
+                } else {
+                    throw new ParsingException(parser, "Unknown key for a " + token + " in [" + parser.currentName() + "].");
+                }
+            } else {
+                throw new ParsingException(parser, "Unknown key for a " + token + " in [" + parser.currentName() + "].");
+            }
+        }
+        if (root && parser.nextToken() != null) {
+            throw new ParsingException(parser, "unexpected content after the search source");
+        }
+        return builder;
+    }
+
     public String toString() {
     	 try {
-			 Map<String,Object> builder = new HashMap<String,Object>();
-			 innerToXContent(builder);
-			return JSON.toJSONString(builder,true);
+			 XContentBuilder builder = XContentBuilder.jsonBuilder().prettyPrint();
+			 toXContent(builder);
+			return builder.string();
 		} catch (Exception e) {
             throw new RuntimeException("cannot generate error message for deserialization", e);
 
 		}
     }
 
+    private static final class ByteBufferOutputStream extends OutputStream {
+
+        private final ByteBuffer target;
+
+        ByteBufferOutputStream(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.put(b, off, len);
+        }
+    }
+
 }
@@ -0,0 +1,254 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * {@link XContentGenerator} writing Smile, the binary json format Elasticsearch accepts as
+ * <code>application/smile</code>. Back references to shared names and values are not
+ * used (the header flags say so), request bodies are small and rarely repeat strings
+ * beyond field names, and not tracking them keeps the generator allocation free. Without
+ * them bodies of mostly strings are not smaller than json, see {@link XContentType}.
+ */
+public class SmileXContentGenerator extends AbstractBinaryXContentGenerator {
+
+    /** ":)\n" followed by version 0 and no shared names, shared values or raw binary */
+    private static final byte[] HEADER = new byte[] { 0x3A, 0x29, 0x0A, 0x00 };
+
+    private static final int TOKEN_EMPTY_STRING = 0x20;
+    private static final int TOKEN_NULL = 0x21;
+    private static final int TOKEN_FALSE = 0x22;
+    private static final int TOKEN_TRUE = 0x23;
+    private static final int TOKEN_INT = 0x24;
+    private static final int TOKEN_LONG = 0x25;
+    private static final int TOKEN_BIG_INTEGER = 0x26;
+    private static final int TOKEN_FLOAT = 0x28;
+    private static final int TOKEN_DOUBLE = 0x29;
+    private static final int TOKEN_BIG_DECIMAL = 0x2A;
+    private static final int TOKEN_SMALL_INT = 0xC0;
+    private static final int TOKEN_TINY_ASCII = 0x40;
+    private static final int TOKEN_SHORT_ASCII = 0x60;
+    private static final int TOKEN_TINY_UNICODE = 0x80;
+    private static final int TOKEN_SHORT_UNICODE = 0xA0;
+    private static final int TOKEN_LONG_ASCII = 0xE0;
+    private static final int TOKEN_LONG_UNICODE = 0xE4;
+    private static final int TOKEN_START_ARRAY = 0xF8;
+    private static final int TOKEN_END_ARRAY = 0xF9;
+    private static final int TOKEN_START_OBJECT = 0xFA;
+    private static final int TOKEN_END_OBJECT = 0xFB;
+    private static final int END_OF_STRING = 0xFC;
+
+    private static final int KEY_EMPTY = 0x20;
+    private static final int KEY_LONG = 0x34;
+    private static final int KEY_SHORT_ASCII = 0x80;
+    private static final int KEY_SHORT_UNICODE = 0xC0;
+
+    private static final int MAX_SHORT_KEY_ASCII = 64;
+    private static final int MAX_SHORT_KEY_UNICODE = 56;
+    private static final int MAX_TINY_STRING = 32;
+    private static final int MAX_SHORT_STRING = 64;
+
+    public SmileXContentGenerator(OutputStream out) {
+        this(out, new byte[JsonXContentGenerator.DEFAULT_BUFFER_SIZE]);
+    }
+
+    public SmileXContentGenerator(OutputStream out, byte[] buffer) {
+        super(out, buffer);
+        System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+        position = HEADER.length;
+    }
+
+    @Override
+    public XContentType contentType() {
+        return XContentType.SMILE;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writeByte(TOKEN_START_OBJECT);
+        push();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        pop();
+        writeByte(TOKEN_END_OBJECT);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        writeByte(TOKEN_START_ARRAY);
+        push();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        pop();
+        writeByte(TOKEN_END_ARRAY);
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (name.isEmpty()) {
+            writeByte(KEY_EMPTY);
+            return;
+        }
+        int bytes = utf8Length(name);
+        if (bytes == name.length() && bytes <= MAX_SHORT_KEY_ASCII) {
+            writeByte(KEY_SHORT_ASCII + bytes - 1);
+            writeUtf8(name);
+        } else if (bytes != name.length() && bytes <= MAX_SHORT_KEY_UNICODE) {
+            writeByte(KEY_SHORT_UNICODE + bytes - 2);
+            writeUtf8(name);
+        } else {
+            writeByte(KEY_LONG);
+            writeUtf8(name);
+            writeByte(END_OF_STRING);
+        }
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        writeByte(TOKEN_NULL);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? TOKEN_TRUE : TOKEN_FALSE);
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        if (value >= -16 && value <= 15) {
+            writeByte(TOKEN_SMALL_INT + zigzag);
+        } else {
+            writeByte(TOKEN_INT);
+            writeVInt(zigzag & 0xFFFFFFFFL);
+        }
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            writeNumber((int) value);
+        } else {
+            writeByte(TOKEN_LONG);
+            writeVInt((value << 1) ^ (value >> 63));
+        }
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        int bits = Float.floatToIntBits(value);
+        ensureCapacity(6);
+        buffer[position++] = (byte) TOKEN_FLOAT;
+        // 32 bits as five 7 bit groups, the first one holding the top 4 bits
+        for (int shift = 28; shift >= 0; shift -= 7) {
+            buffer[position++] = (byte) ((bits >>> shift) & 0x7F);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(11);
+        buffer[position++] = (byte) TOKEN_DOUBLE;
+        // 64 bits as ten 7 bit groups, the first one holding the sign bit
+        for (int shift = 63; shift >= 0; shift -= 7) {
+            buffer[position++] = (byte) ((bits >>> shift) & 0x7F);
+        }
+    }
+
+    /**
+     * Integral values become ints, longs or big integers, others big decimals.
+     */
+    @Override
+    public void writeNumber(String value) throws IOException {
+        BigDecimal decimal = new BigDecimal(value);
+        if (decimal.scale() <= 0) {
+            BigInteger integer = decimal.toBigIntegerExact();
+            if (integer.bitLength() < 64) {
+                writeNumber(integer.longValue());
+            } else {
+                writeByte(TOKEN_BIG_INTEGER);
+                write7BitBinary(integer.toByteArray());
+            }
+        } else {
+            writeByte(TOKEN_BIG_DECIMAL);
+            int scale = decimal.scale();
+            writeVInt(((scale << 1) ^ (scale >> 31)) & 0xFFFFFFFFL);
+            write7BitBinary(decimal.unscaledValue().toByteArray());
+        }
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        if (value.isEmpty()) {
+            writeByte(TOKEN_EMPTY_STRING);
+            return;
+        }
+        int bytes = utf8Length(value);
+        if (bytes == value.length()) {
+            if (bytes <= MAX_TINY_STRING) {
+                writeByte(TOKEN_TINY_ASCII + bytes - 1);
+            } else if (bytes <= MAX_SHORT_STRING) {
+                writeByte(TOKEN_SHORT_ASCII + bytes - MAX_TINY_STRING - 1);
+            } else {
+                writeByte(TOKEN_LONG_ASCII);
+                writeUtf8(value);
+                writeByte(END_OF_STRING);
+                return;
+            }
+        } else {
+            if (bytes <= MAX_TINY_STRING + 1) {
+                writeByte(TOKEN_TINY_UNICODE + bytes - 2);
+            } else if (bytes <= MAX_SHORT_STRING) {
+                writeByte(TOKEN_SHORT_UNICODE + bytes - MAX_TINY_STRING - 2);
+            } else {
+                writeByte(TOKEN_LONG_UNICODE);
+                writeUtf8(value);
+                writeByte(END_OF_STRING);
+                return;
+            }
+        }
+        writeUtf8(value);
+    }
+
+    /**
+     * Writes an unsigned variable length integer: 7 bit groups, most significant first,
+     * and a last byte carrying the low 6 bits with its high bit set.
+     */
+    private void writeVInt(long value) throws IOException {
+        ensureCapacity(10);
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        for (int shift = (bits / 7 - 1) * 7 + 6; shift >= 6; shift -= 7) {
+            buffer[position++] = (byte) ((value >>> shift) & 0x7F);
+        }
+        buffer[position++] = (byte) (0x80 | (value & 0x3F));
+    }
+
+    /**
+     * Writes the raw length followed by the bytes as 7 bit groups, the last partial
+     * group right aligned, so no byte of the payload has its high bit set.
+     */
+    private void write7BitBinary(byte[] bytes) throws IOException {
+        writeVInt(bytes.length);
+        int acc = 0;
+        int bits = 0;
+        for (byte b : bytes) {
+            acc = (acc << 8) | (b & 0xFF);
+            bits += 8;
+            while (bits >= 7) {
+                bits -= 7;
+                writeByte((acc >> bits) & 0x7F);
+            }
+        }
+        if (bits > 0) {
+            writeByte(acc & ((1 << bits) - 1));
+        }
+    }
+
+}
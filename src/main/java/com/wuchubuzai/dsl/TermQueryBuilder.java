@@ -1,5 +1,7 @@
 package com.wuchubuzai.dsl;
 
+import java.io.IOException;
+
 /**
  * A Query that matches documents containing a term.
  */
@@ -9,6 +11,8 @@ public class TermQueryBuilder extends BaseTermQueryBuilder<TermQueryBuilder> {
 
     private static final ParseField TERM_FIELD = new ParseField("term");
     private static final ParseField VALUE_FIELD = new ParseField("value");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(TERM_FIELD, VALUE_FIELD,
+            AbstractQueryBuilder.NAME_FIELD, AbstractQueryBuilder.BOOST_FIELD);
 	
     /** @see BaseTermQueryBuilder#BaseTermQueryBuilder(String, String) */
     public TermQueryBuilder(String fieldName, String value) {
@@ -45,9 +49,56 @@ public class TermQueryBuilder extends BaseTermQueryBuilder<TermQueryBuilder> {
         super(fieldName, value);
     }
 
+    public static TermQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String queryName = null;
+        String fieldName = null;
+        Object value = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == TERM_FIELD || field == VALUE_FIELD) {
+                            value = parser.objectText();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else if (token.isValue()) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.objectText();
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                throw new ParsingException(parser, "[" + NAME + "] query does not support array of values");
+            }
+        }
+        TermQueryBuilder termQuery = new TermQueryBuilder(fieldName, value);
+        termQuery.boost(boost);
+        if (queryName != null) {
+            termQuery.queryName(queryName);
+        }
+        return termQuery;
+    }
+
 	@Override
 	public String getName() {
 		return NAME;
 	}
- 
+
 }
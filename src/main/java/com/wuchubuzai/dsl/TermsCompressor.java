@@ -0,0 +1,258 @@
+package com.wuchubuzai.dsl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Builds the query matching a set of integers, such as document ids, out of <code>range</code>
+ * queries for the runs of consecutive values and a single <code>terms</code> query for the
+ * values in between. A set like 1000 to 250000 with a few gaps renders in a few hundred
+ * bytes instead of megabytes, and each run is one scan of the BKD tree instead of a lookup
+ * per value.
+ * <p>
+ * A run becomes a range when that is cheaper both for the cluster, in {@link QueryCost}
+ * units, and in bytes of the request body. With more runs than a <code>bool</code> query may
+ * hold clauses, the runs saving the most bytes become ranges. Several clauses are combined
+ * as <code>should</code> clauses of a <code>bool</code> query, which a document holding
+ * several of the values matches several times, so use the query as a filter where scores
+ * matter.
+ * <p>
+ * The field has to be an integer field, of type <code>integer</code>, <code>long</code>,
+ * <code>short</code> or <code>byte</code>: a range on a <code>float</code> or
+ * <code>double</code> field also matches values such as 1.5 between the integers. <code>_id</code>
+ * is a keyword field that does not support range scans, so to compress an
+ * {@link IdsQueryBuilder} index the id in an integer field as well and query that one.
+ *
+ * <pre>
+ * QueryBuilder users = TermsCompressor.DEFAULT.compress("user_id", userIds);
+ * </pre>
+ */
+public final class TermsCompressor {
+
+    public static final TermsCompressor DEFAULT = builder().build();
+
+    // {"range":{"":{"from":,"to":,"include_lower":true,"include_upper":true,"boost":1.0}}},
+    private static final int RANGE_BYTES = 85;
+
+    private final int maxClauseCount;
+
+    private TermsCompressor(Builder builder) {
+        this.maxClauseCount = builder.maxClauseCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a query matching the values, which do not need to be sorted or distinct.
+     */
+    public QueryBuilder compress(String fieldName, int... values) {
+        if (values == null) {
+            throw new IllegalArgumentException("No value specified for terms query");
+        }
+        long[] sorted = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sorted[i] = values[i];
+        }
+        return compress(fieldName, runs(sorted), true);
+    }
+
+    /**
+     * Returns a query matching the values, which do not need to be sorted or distinct.
+     */
+    public QueryBuilder compress(String fieldName, long... values) {
+        if (values == null) {
+            throw new IllegalArgumentException("No value specified for terms query");
+        }
+        return compress(fieldName, runs(values.clone()), false);
+    }
+
+    /**
+     * Returns a query matching the indexes of the set bits.
+     */
+    public QueryBuilder compress(String fieldName, BitSet values) {
+        if (values == null) {
+            throw new IllegalArgumentException("No value specified for terms query");
+        }
+        Runs runs = new Runs();
+        for (int from = values.nextSetBit(0); from >= 0; ) {
+            int to = values.nextClearBit(from);
+            if (to < 0) {
+                // the bit at Integer.MAX_VALUE is set
+                runs.add(from, Integer.MAX_VALUE);
+                break;
+            }
+            runs.add(from, to - 1);
+            from = values.nextSetBit(to);
+        }
+        return compress(fieldName, runs, true);
+    }
+
+    private QueryBuilder compress(String fieldName, Runs runs, boolean ints) {
+        if (Strings.isEmpty(fieldName)) {
+            throw new IllegalArgumentException("field name cannot be null.");
+        }
+        // the bytes a run saves as a range, or 0 if it is not cheaper
+        long[] savings = new long[runs.size];
+        long residual = runs.count;
+        int ranges = 0;
+        for (int i = 0; i < runs.size; i++) {
+            long length = runs.to[i] - runs.from[i] + 1;
+            if (length * QueryCost.TERM_COST <= QueryCost.RANGE_COST) {
+                continue;
+            }
+            long termsBytes = termsBytes(runs.from[i], runs.to[i]);
+            long rangeBytes = RANGE_BYTES + fieldName.length() + PrimitiveTerms.numberLength(runs.from[i])
+                    + PrimitiveTerms.numberLength(runs.to[i]);
+            if (termsBytes > rangeBytes) {
+                savings[i] = termsBytes - rangeBytes;
+                residual -= length;
+                ranges++;
+            }
+        }
+        if (ranges + (residual > 0 ? 1 : 0) > maxClauseCount) {
+            // keep the runs saving the most and leave a clause for the terms query taking the others
+            int keep = maxClauseCount - 1;
+            long[] sorted = Arrays.copyOf(savings, runs.size);
+            Arrays.sort(sorted);
+            long threshold = keep == 0 ? Long.MAX_VALUE : sorted[sorted.length - keep];
+            int ties = 0;
+            for (int i = sorted.length - keep; i < sorted.length && sorted[i] == threshold; i++) {
+                ties++;
+            }
+            for (int i = 0; i < runs.size; i++) {
+                if (savings[i] > 0 && (savings[i] < threshold || (savings[i] == threshold && ties-- <= 0))) {
+                    residual += runs.to[i] - runs.from[i] + 1;
+                    savings[i] = 0;
+                }
+            }
+        }
+
+        BoolQueryBuilder bool = new BoolQueryBuilder();
+        long[] longs = ints ? null : new long[(int) residual];
+        int[] intValues = ints ? new int[(int) residual] : null;
+        int next = 0;
+        for (int i = 0; i < runs.size; i++) {
+            if (savings[i] > 0) {
+                bool.should(ints ? new RangeQueryBuilder(fieldName).gte((int) runs.from[i]).lte((int) runs.to[i])
+                        : new RangeQueryBuilder(fieldName).gte(runs.from[i]).lte(runs.to[i]));
+                continue;
+            }
+            for (long value = runs.from[i]; ; value++) {
+                if (ints) {
+                    intValues[next++] = (int) value;
+                } else {
+                    longs[next++] = value;
+                }
+                if (value == runs.to[i]) {
+                    break;
+                }
+            }
+        }
+        if (residual > 0 || bool.should().isEmpty()) {
+            bool.should(ints ? new TermsQueryBuilder(fieldName, intValues) : new TermsQueryBuilder(fieldName, longs));
+        }
+        return bool.should().size() == 1 ? bool.should().get(0) : bool;
+    }
+
+    /**
+     * Bytes the values from, to inclusive take in a terms query, each followed by a comma.
+     */
+    private static long termsBytes(long from, long to) {
+        if (to < 0) {
+            if (from == Long.MIN_VALUE) {
+                return PrimitiveTerms.numberLength(Long.MIN_VALUE) + 1 + (to == from ? 0 : termsBytes(from + 1, to));
+            }
+            // the minus signs and the digits of the negated values
+            return (to - from + 1) + termsBytes(-to, -from);
+        }
+        if (from < 0) {
+            return termsBytes(from, -1) + termsBytes(0, to);
+        }
+        long bytes = 0;
+        int length = PrimitiveTerms.numberLength(from);
+        long bound = 1;
+        for (int i = 0; i < length; i++) {
+            bound *= 10;
+        }
+        // count the values with the same number of digits at once
+        for (long value = from; ; length++, bound *= 10) {
+            long last = length >= 19 ? to : Math.min(to, bound - 1);
+            bytes += (last - value + 1) * (length + 1);
+            if (last == to) {
+                return bytes;
+            }
+            value = last + 1;
+        }
+    }
+
+    /**
+     * Sorts the values in place and returns their runs of consecutive values.
+     */
+    private static Runs runs(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[i - 1]) {
+                Arrays.sort(values);
+                break;
+            }
+        }
+        Runs runs = new Runs();
+        for (int i = 0; i < values.length; ) {
+            long from = values[i];
+            long to = from;
+            for (i++; i < values.length && (values[i] == to || values[i] == to + 1); i++) {
+                to = values[i];
+            }
+            runs.add(from, to);
+        }
+        return runs;
+    }
+
+    /**
+     * Runs of consecutive values, in ascending order.
+     */
+    private static final class Runs {
+
+        private long[] from = new long[8];
+        private long[] to = new long[8];
+        private int size;
+        private long count;
+
+        void add(long from, long to) {
+            if (size == this.from.length) {
+                this.from = Arrays.copyOf(this.from, size * 2);
+                this.to = Arrays.copyOf(this.to, size * 2);
+            }
+            this.from[size] = from;
+            this.to[size] = to;
+            size++;
+            count += to - from + 1;
+        }
+    }
+
+    public static final class Builder {
+
+        private int maxClauseCount = 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Maximum number of clauses of the query, a range per run and a terms query,
+         * <code>indices.query.bool.max_clause_count</code> by default 1024.
+         */
+        public Builder maxClauseCount(int maxClauseCount) {
+            if (maxClauseCount < 1) {
+                throw new IllegalArgumentException("[max_clause_count] must be positive, found [" + maxClauseCount + "]");
+            }
+            this.maxClauseCount = maxClauseCount;
+            return this;
+        }
+
+        public TermsCompressor build() {
+            return new TermsCompressor(this);
+        }
+    }
+
+}
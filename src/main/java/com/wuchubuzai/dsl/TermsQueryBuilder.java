@@ -3,20 +3,28 @@ package com.wuchubuzai.dsl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 /**
- * A filter for a field based on several terms matching on any of them.
+ * A filter for a field based on several terms matching on any of them. Terms given as an
+ * <code>int</code>, <code>long</code>, <code>float</code> or <code>double</code> array are
+ * kept in that array, which is not copied, and rendered, compared and hashed without boxing.
+ * {@link #freeze() Freezing} the query takes a copy of the terms, so a frozen query does
+ * not see later changes to the array or collection it was built from.
  */
 public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
 
 	public static final String NAME = "terms";
 
+	private static final ParseFieldTable FIELDS = new ParseFieldTable(AbstractQueryBuilder.BOOST_FIELD,
+			AbstractQueryBuilder.NAME_FIELD);
+
 	private final String fieldName;
-	private final List<?> values;
+	private List<?> values;
 	
 	 /**
      * A filter for a field based on several terms matching on any of them.
@@ -35,7 +43,7 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
      * @param values The terms
      */
     public TermsQueryBuilder(String fieldName, int... values) {
-        this(fieldName, values != null ? Arrays.asList(values) : (Iterable<?>) null);
+        this(fieldName, values != null ? new PrimitiveTerms.Ints(values) : null);
     }
 
     /**
@@ -45,7 +53,7 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
      * @param values The terms
      */
     public TermsQueryBuilder(String fieldName, long... values) {
-        this(fieldName, values != null ?  Arrays.asList(values) : (Iterable<?>) null);
+        this(fieldName, values != null ? new PrimitiveTerms.Longs(values) : null);
     }
 
     /**
@@ -55,7 +63,7 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
      * @param values The terms
      */
     public TermsQueryBuilder(String fieldName, float... values) {
-        this(fieldName, values != null ?  Arrays.asList(values) : (Iterable<?>) null);
+        this(fieldName, values != null ? new PrimitiveTerms.Floats(values) : null);
     }
 
     /**
@@ -65,7 +73,7 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
      * @param values The terms
      */
     public TermsQueryBuilder(String fieldName, double... values) {
-        this(fieldName, values != null ?  Arrays.asList(values) : (Iterable<?>) null);
+        this(fieldName, values != null ? new PrimitiveTerms.Doubles(values) : null);
     }
 
     /**
@@ -112,16 +120,96 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
         return list;
     }
 	
+    public String fieldName() {
+        return this.fieldName;
+    }
+
+    public List<Object> values() {
+        return Collections.unmodifiableList(this.values);
+    }
+
+    /**
+     * The values as given, possibly {@link PrimitiveTerms}.
+     */
+    List<?> terms() {
+        return this.values;
+    }
+
+    public static TermsQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        List<Object> values = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+
+        XContentParser.Token token;
+        ParseField field = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                field = parser.currentField(FIELDS);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if (fieldName != null) {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support multiple fields");
+                }
+                fieldName = parser.currentName();
+                values = parseValues(parser);
+            } else if (token.isValue()) {
+                if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                    boost = parser.floatValue();
+                } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                }
+            } else {
+                throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+            }
+        }
+
+        if (fieldName == null) {
+            throw new ParsingException(parser, "[" + NAME + "] query requires a field name, followed by array of terms");
+        }
+        return new TermsQueryBuilder(fieldName, values)
+                .boost(boost)
+                .queryName(queryName);
+    }
+
+    private static List<Object> parseValues(XContentParser parser) throws IOException {
+        List<Object> values = new ArrayList<>();
+        while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+            Object value = parser.objectText();
+            if (value == null) {
+                throw new ParsingException(parser, "No value specified for terms query");
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
 	@Override
 	public String getName() {
 		return NAME;
 	}
 
+	@Override
+	protected void doFreeze() {
+		// the caller may still hold the array or list, the hash must not go stale
+		if (values instanceof PrimitiveTerms) {
+			values = ((PrimitiveTerms) values).copyOfRange(0, values.size());
+		} else {
+			values = Collections.unmodifiableList(new ArrayList<>(values));
+		}
+	}
+
 	@Override
 	protected int doHashCode() {
 		return Objects.hash(fieldName, values);
 	}
 
+	@Override
+	protected long doStructuralHash() {
+		return hash64(fieldName, values);
+	}
+
 	@Override
 	protected boolean doEquals(TermsQueryBuilder other) {
 		return Objects.equals(fieldName, other.fieldName) && Objects.equals(values, other.values);
@@ -137,4 +225,19 @@ public class TermsQueryBuilder extends AbstractQueryBuilder<TermsQueryBuilder> {
 	   return builder;     
 	}
 
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		if (values.size() == 1 && values.get(0) instanceof PreparedQuery.Parameter) {
+			// the parameter is bound to the whole collection of terms
+			builder.field(fieldName).arrayParameter((PreparedQuery.Parameter) values.get(0));
+		} else if (values instanceof PrimitiveTerms) {
+			((PrimitiveTerms) values).writeTo(builder.field(fieldName));
+		} else {
+			builder.field(fieldName).valueSet(values);
+		}
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
+
 }
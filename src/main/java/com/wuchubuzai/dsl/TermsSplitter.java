@@ -0,0 +1,516 @@
+package com.wuchubuzai.dsl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Splits <code>terms</code> queries that are too large for the cluster, such as a filter on
+ * a few hundred thousand ids, instead of letting the request fail on
+ * <code>index.max_terms_count</code> or <code>http.max_content_length</code>.
+ * <p>
+ * {@link #split(QueryBuilder)} replaces every terms query holding more values, or more
+ * bytes, than a clause may hold with a <code>bool</code> query that has one
+ * <code>should</code> clause per chunk. A <code>terms</code> query gives all its matches
+ * the same score, but a document with several values in different chunks matches several
+ * clauses, so in a scoring context it scores once per chunk it matches.
+ * <p>
+ * {@link #split(SearchSourceBuilder)} additionally splits the request when its body would
+ * be larger than the request limit: the largest terms query that every hit has to match is
+ * partitioned so that each request stays under the limit. Every hit of the original
+ * request is a hit of at least one of the requests, but a document with values in several
+ * partitions is a hit of each of them, so the results have to be deduplicated when they are
+ * merged, as {@link #mergeHits(List, Comparator, Function, int, int)} does. Scores are those
+ * of the original request unless a partition is itself split into chunks.
+ * {@link #search(SearchSourceBuilder, SearchResultCache.Backend, Merger, Executor)} runs the
+ * requests in parallel and merges their results.
+ * <p>
+ * Sizes are estimated from the json rendering. Terms queries bound to a
+ * {@link PreparedQuery.Parameter} are not split.
+ *
+ * <pre>
+ * TermsSplitter splitter = TermsSplitter.builder()
+ *         .maxTermsCount(10000)
+ *         .maxRequestBytes(10 * 1024 * 1024)
+ *         .build();
+ * SearchResponse response = splitter.search(source, client::search, SearchResponse::merge, executor);
+ * </pre>
+ */
+public final class TermsSplitter {
+
+    /**
+     * Merges the results of the requests a request was split into. A document may be a
+     * hit of several of them and has to be kept once.
+     */
+    @FunctionalInterface
+    public interface Merger<R> {
+
+        /**
+         * @param results the results in the order of {@link TermsSplitter#split(SearchSourceBuilder)}
+         * @param from the offset of the first hit the original request asked for
+         * @param size the number of hits the original request asked for
+         */
+        R merge(List<R> results, int from, int size);
+    }
+
+    /**
+     * Splits with the cluster defaults: 65536 terms per clause, 1024 clauses per
+     * <code>bool</code> query and 100mb per request.
+     */
+    public static final TermsSplitter DEFAULT = builder().build();
+
+    private static final int DEFAULT_SIZE = 10;
+    private static final int SEPARATOR_BYTES = 1;
+    // {"terms":{"":[]}}, plus a boost and a _name copied from the original query
+    private static final int CLAUSE_BYTES = 48;
+    // {"bool":{"should":[]}}
+    private static final int BOOL_BYTES = 24;
+
+    private final int maxTermsCount;
+    private final long maxClauseBytes;
+    private final int maxClauseCount;
+    private final long maxRequestBytes;
+
+    private TermsSplitter(Builder builder) {
+        this.maxTermsCount = builder.maxTermsCount;
+        this.maxClauseBytes = builder.maxClauseBytes;
+        this.maxClauseCount = builder.maxClauseCount;
+        this.maxRequestBytes = builder.maxRequestBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the query with its oversized terms queries split into chunks, or the query
+     * itself if none is oversized.
+     *
+     * @throws IllegalArgumentException if a terms query needs more chunks than a bool query may hold
+     */
+    public QueryBuilder split(QueryBuilder query) {
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            List<List<?>> chunks = chunks(terms, maxTermsCount, maxClauseBytes);
+            if (chunks.size() == 1) {
+                return terms;
+            }
+            if (chunks.size() > maxClauseCount) {
+                throw new IllegalArgumentException("terms query on [" + terms.fieldName() + "] needs ["
+                        + chunks.size() + "] clauses, more than the maximum of [" + maxClauseCount + "]");
+            }
+            BoolQueryBuilder bool = new BoolQueryBuilder().boost(terms.boost()).queryName(terms.queryName());
+            for (List<?> chunk : chunks) {
+                bool.should(new TermsQueryBuilder(terms.fieldName(), chunk));
+            }
+            return bool;
+        }
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            List<QueryBuilder> must = splitAll(bool.must());
+            List<QueryBuilder> filter = splitAll(bool.filter());
+            List<QueryBuilder> mustNot = splitAll(bool.mustNot());
+            List<QueryBuilder> should = splitAll(bool.should());
+            if (must == bool.must() && filter == bool.filter() && mustNot == bool.mustNot() && should == bool.should()) {
+                return bool;
+            }
+            return copy(bool, must, filter, mustNot, should);
+        }
+        return query;
+    }
+
+    /**
+     * Returns the requests to run instead of the request: the request itself if it is
+     * small enough, a copy with its oversized terms queries split into chunks, or several
+     * requests if the body would still be larger than the request limit. Split requests
+     * start at the first hit and ask for <code>from + size</code> hits, so that merging
+     * the results sorted by score yields the page the original request asked for.
+     *
+     * @throws IllegalArgumentException if the request cannot be split within the limits
+     */
+    public List<SearchSourceBuilder> split(SearchSourceBuilder source) {
+        QueryBuilder query = source.query();
+        if (query == null) {
+            return Collections.singletonList(source);
+        }
+        long bytes = source.toBytes(XContentType.JSON).length;
+        if (bytes <= maxRequestBytes) {
+            QueryBuilder split = split(query);
+            return Collections.singletonList(split == query ? source : copy(source, split, false));
+        }
+        TermsQueryBuilder largest = largestRequired(query, null);
+        if (largest == null) {
+            throw new IllegalArgumentException("request of [" + bytes + "] bytes exceeds the maximum of ["
+                    + maxRequestBytes + "] bytes and has no terms query to split");
+        }
+        long termsBytes = 0;
+        List<?> values = largest.terms();
+        for (int i = 0; i < values.size(); i++) {
+            termsBytes += jsonLength(values, i) + SEPARATOR_BYTES;
+        }
+        // every request repeats the rest of the body
+        long budget = maxRequestBytes - (bytes - termsBytes);
+        long clauseBytes = largest.fieldName().length() + CLAUSE_BYTES;
+        if (budget <= BOOL_BYTES + clauseBytes) {
+            throw new IllegalArgumentException("request of [" + bytes + "] bytes cannot be split under the maximum of ["
+                    + maxRequestBytes + "] bytes, the rest of the body takes [" + (bytes - termsBytes) + "] bytes");
+        }
+        List<SearchSourceBuilder> requests = new ArrayList<>();
+        for (List<?> part : parts(values, budget, clauseBytes)) {
+            TermsQueryBuilder terms = new TermsQueryBuilder(largest.fieldName(), part)
+                    .boost(largest.boost()).queryName(largest.queryName());
+            requests.add(copy(source, split(replace(query, largest, terms)), true));
+        }
+        return requests;
+    }
+
+    /**
+     * Runs the requests the request {@link #split(SearchSourceBuilder) splits} into on the
+     * executor and merges their results, or runs the request on the calling thread if it
+     * does not need to be split into several requests.
+     */
+    public <R> R search(SearchSourceBuilder source, SearchResultCache.Backend<R> backend, Merger<R> merger,
+            Executor executor) throws IOException {
+        if (backend == null || merger == null || executor == null) {
+            throw new IllegalArgumentException("backend, merger and executor cannot be null");
+        }
+        List<SearchSourceBuilder> requests = split(source);
+        if (requests.size() == 1) {
+            return backend.search(requests.get(0));
+        }
+        List<CompletableFuture<R>> searches = new ArrayList<>(requests.size());
+        for (SearchSourceBuilder request : requests) {
+            CompletableFuture<R> search = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    search.complete(backend.search(request));
+                } catch (Throwable t) {
+                    search.completeExceptionally(t);
+                }
+            });
+            searches.add(search);
+        }
+        List<R> results = new ArrayList<>(searches.size());
+        for (CompletableFuture<R> search : searches) {
+            results.add(await(search));
+        }
+        return merger.merge(results, Math.max(source.from(), 0), source.size() < 0 ? DEFAULT_SIZE : source.size());
+    }
+
+    /**
+     * Merges the hits of split requests, each sorted by the comparator, into the requested
+     * page. A document may be a hit of several requests, only its first occurrence is kept.
+     */
+    public static <H> List<H> mergeHits(List<? extends List<H>> hits, Comparator<? super H> comparator,
+            Function<? super H, ?> id, int from, int size) {
+        List<H> all = new ArrayList<>();
+        for (List<H> page : hits) {
+            all.addAll(page);
+        }
+        all.sort(comparator);
+        List<H> merged = new ArrayList<>(Math.min(size, all.size()));
+        Set<Object> seen = new HashSet<>();
+        int skipped = 0;
+        for (H hit : all) {
+            if (merged.size() == size) {
+                break;
+            }
+            if (seen.add(id.apply(hit)) && skipped++ >= from) {
+                merged.add(hit);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Greedily cuts the values into chunks of at most the given number of values and bytes.
+     * A single value larger than the byte limit is a chunk of its own.
+     */
+    private static List<List<?>> chunks(TermsQueryBuilder terms, int maxCount, long maxBytes) {
+        List<?> values = terms.terms();
+        if (values.size() == 1 && values.get(0) instanceof PreparedQuery.Parameter) {
+            return Collections.singletonList(values);
+        }
+        List<List<?>> chunks = new ArrayList<>();
+        int start = 0;
+        long bytes = 0;
+        for (int i = 0; i < values.size(); i++) {
+            long length = jsonLength(values, i) + SEPARATOR_BYTES;
+            if (i > start && (i - start == maxCount || bytes + length > maxBytes)) {
+                chunks.add(slice(values, start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += length;
+        }
+        if (start == 0) {
+            return Collections.singletonList(values);
+        }
+        chunks.add(slice(values, start, values.size()));
+        return chunks;
+    }
+
+    /**
+     * Cuts the values into parts taking at most the budget in bytes once {@link #split(QueryBuilder)}
+     * has cut each of them into chunks, which costs the bytes of a bool query and of a
+     * terms query per chunk.
+     */
+    private List<List<?>> parts(List<?> values, long budget, long clauseBytes) {
+        List<List<?>> parts = new ArrayList<>();
+        int partStart = 0;
+        long partBytes = BOOL_BYTES + clauseBytes;
+        int clauses = 1;
+        int chunkStart = 0;
+        long chunkBytes = 0;
+        for (int i = 0; i < values.size(); i++) {
+            long length = jsonLength(values, i) + SEPARATOR_BYTES;
+            long extra = 0;
+            if (i > chunkStart && (i - chunkStart == maxTermsCount || chunkBytes + length > maxClauseBytes)) {
+                extra = clauseBytes;
+                chunkStart = i;
+                chunkBytes = 0;
+                clauses++;
+            }
+            if (i > partStart && (partBytes + extra + length > budget || clauses > maxClauseCount)) {
+                parts.add(slice(values, partStart, i));
+                partStart = i;
+                partBytes = BOOL_BYTES + clauseBytes;
+                clauses = 1;
+                chunkStart = i;
+                chunkBytes = 0;
+                extra = 0;
+            }
+            partBytes += extra + length;
+            chunkBytes += length;
+        }
+        parts.add(slice(values, partStart, values.size()));
+        return parts;
+    }
+
+    private static List<?> slice(List<?> values, int from, int to) {
+        if (values instanceof PrimitiveTerms) {
+            return ((PrimitiveTerms) values).copyOfRange(from, to);
+        }
+        return new ArrayList<>(values.subList(from, to));
+    }
+
+    private static int jsonLength(List<?> values, int index) {
+        if (values instanceof PrimitiveTerms) {
+            return ((PrimitiveTerms) values).jsonLength(index);
+        }
+        Object value = values.get(index);
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return PrimitiveTerms.numberLength(((Number) value).longValue());
+        }
+        if (value instanceof Number || value instanceof Boolean || value == null) {
+            return String.valueOf(value).length();
+        }
+        String text = value.toString();
+        int length = 2;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                length += 2;
+            } else if (c < 0x20) {
+                length += 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the terms query with the most values among those every match of the query
+     * has to match, that is reached through <code>must</code> and <code>filter</code>
+     * clauses only.
+     */
+    private static TermsQueryBuilder largestRequired(QueryBuilder query, TermsQueryBuilder largest) {
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            List<?> values = terms.terms();
+            if (values.size() > 1 && (largest == null || values.size() > largest.terms().size())) {
+                return terms;
+            }
+        } else if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            for (QueryBuilder clause : bool.must()) {
+                largest = largestRequired(clause, largest);
+            }
+            for (QueryBuilder clause : bool.filter()) {
+                largest = largestRequired(clause, largest);
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Returns the query with the clause, found by identity, replaced.
+     */
+    private static QueryBuilder replace(QueryBuilder query, QueryBuilder clause, QueryBuilder replacement) {
+        if (query == clause) {
+            return replacement;
+        }
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            List<QueryBuilder> must = replaceAll(bool.must(), clause, replacement);
+            List<QueryBuilder> filter = replaceAll(bool.filter(), clause, replacement);
+            if (must != bool.must() || filter != bool.filter()) {
+                return copy(bool, must, filter, bool.mustNot(), bool.should());
+            }
+        }
+        return query;
+    }
+
+    private static List<QueryBuilder> replaceAll(List<QueryBuilder> clauses, QueryBuilder clause,
+            QueryBuilder replacement) {
+        List<QueryBuilder> replaced = null;
+        for (int i = 0; i < clauses.size(); i++) {
+            QueryBuilder query = replace(clauses.get(i), clause, replacement);
+            if (query != clauses.get(i)) {
+                if (replaced == null) {
+                    replaced = new ArrayList<>(clauses);
+                }
+                replaced.set(i, query);
+            }
+        }
+        return replaced == null ? clauses : replaced;
+    }
+
+    private List<QueryBuilder> splitAll(List<QueryBuilder> clauses) {
+        List<QueryBuilder> split = null;
+        for (int i = 0; i < clauses.size(); i++) {
+            QueryBuilder query = split(clauses.get(i));
+            if (query != clauses.get(i)) {
+                if (split == null) {
+                    split = new ArrayList<>(clauses);
+                }
+                split.set(i, query);
+            }
+        }
+        return split == null ? clauses : split;
+    }
+
+    private static BoolQueryBuilder copy(BoolQueryBuilder bool, List<QueryBuilder> must, List<QueryBuilder> filter,
+            List<QueryBuilder> mustNot, List<QueryBuilder> should) {
+        BoolQueryBuilder copy = new BoolQueryBuilder()
+                .adjustPureNegative(bool.adjustPureNegative())
+                .minimumShouldMatch(bool.minimumShouldMatch())
+                .boost(bool.boost())
+                .queryName(bool.queryName());
+        copy.must().addAll(must);
+        copy.filter().addAll(filter);
+        copy.mustNot().addAll(mustNot);
+        copy.should().addAll(should);
+        return copy;
+    }
+
+    private static SearchSourceBuilder copy(SearchSourceBuilder source, QueryBuilder query, boolean firstPage) {
+        SearchSourceBuilder copy = new SearchSourceBuilder().query(query);
+        if (firstPage && source.from() > 0) {
+            copy.from(0).size(source.from() + (source.size() < 0 ? DEFAULT_SIZE : source.size()));
+        } else {
+            if (source.from() >= 0) {
+                copy.from(source.from());
+            }
+            if (source.size() >= 0) {
+                copy.size(source.size());
+            }
+        }
+        return copy;
+    }
+
+    private static <R> R await(CompletableFuture<R> search) throws IOException {
+        try {
+            return search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a split search");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("split search failed", cause);
+        }
+    }
+
+    public static final class Builder {
+
+        private int maxTermsCount = 65536;
+        private long maxClauseBytes = Long.MAX_VALUE;
+        private int maxClauseCount = 1024;
+        private long maxRequestBytes = 100L * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Maximum number of values per terms query, <code>index.max_terms_count</code> by default 65536.
+         */
+        public Builder maxTermsCount(int maxTermsCount) {
+            if (maxTermsCount < 1) {
+                throw new IllegalArgumentException("[max_terms_count] must be positive, found [" + maxTermsCount + "]");
+            }
+            this.maxTermsCount = maxTermsCount;
+            return this;
+        }
+
+        /**
+         * Maximum number of bytes the values of a terms query take in json, unlimited by default.
+         */
+        public Builder maxClauseBytes(long maxClauseBytes) {
+            if (maxClauseBytes < 1) {
+                throw new IllegalArgumentException("[max_clause_bytes] must be positive, found [" + maxClauseBytes + "]");
+            }
+            this.maxClauseBytes = maxClauseBytes;
+            return this;
+        }
+
+        /**
+         * Maximum number of chunks a terms query is split into,
+         * <code>indices.query.bool.max_clause_count</code> by default 1024.
+         */
+        public Builder maxClauseCount(int maxClauseCount) {
+            if (maxClauseCount < 1) {
+                throw new IllegalArgumentException("[max_clause_count] must be positive, found [" + maxClauseCount + "]");
+            }
+            this.maxClauseCount = maxClauseCount;
+            return this;
+        }
+
+        /**
+         * Maximum number of bytes of a request body in json,
+         * <code>http.max_content_length</code> by default 100mb.
+         */
+        public Builder maxRequestBytes(long maxRequestBytes) {
+            if (maxRequestBytes < 1) {
+                throw new IllegalArgumentException("[max_request_bytes] must be positive, found [" + maxRequestBytes + "]");
+            }
+            this.maxRequestBytes = maxRequestBytes;
+            return this;
+        }
+
+        public TermsSplitter build() {
+            return new TermsSplitter(this);
+        }
+    }
+
+}
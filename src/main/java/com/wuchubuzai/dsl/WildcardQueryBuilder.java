@@ -20,6 +20,8 @@ public class WildcardQueryBuilder extends AbstractQueryBuilder<WildcardQueryBuil
     private static final ParseField WILDCARD_FIELD = new ParseField("wildcard");
     private static final ParseField VALUE_FIELD = new ParseField("value");
     private static final ParseField REWRITE_FIELD = new ParseField("rewrite");
+    private static final ParseFieldTable FIELDS = new ParseFieldTable(WILDCARD_FIELD, VALUE_FIELD,
+            AbstractQueryBuilder.BOOST_FIELD, REWRITE_FIELD, AbstractQueryBuilder.NAME_FIELD);
 
     private final String fieldName;
 
@@ -58,6 +60,7 @@ public class WildcardQueryBuilder extends AbstractQueryBuilder<WildcardQueryBuil
     }
 
     public WildcardQueryBuilder rewrite(String rewrite) {
+        ensureNotFrozen();
         this.rewrite = rewrite;
         return this;
     }
@@ -67,6 +70,53 @@ public class WildcardQueryBuilder extends AbstractQueryBuilder<WildcardQueryBuil
     }
 	
 	
+    public static WildcardQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        String rewrite = null;
+        String value = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String queryName = null;
+        String currentFieldName = null;
+        ParseField field = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentField(FIELDS);
+                    } else if (token.isValue()) {
+                        if (field == WILDCARD_FIELD || field == VALUE_FIELD) {
+                            value = parser.text();
+                        } else if (field == AbstractQueryBuilder.BOOST_FIELD) {
+                            boost = parser.floatValue();
+                        } else if (field == REWRITE_FIELD) {
+                            rewrite = parser.text();
+                        } else if (field == AbstractQueryBuilder.NAME_FIELD) {
+                            queryName = parser.text();
+                        } else {
+                            throw new ParsingException(parser, "[" + NAME + "] query does not support [" + parser.currentName() + "]");
+                        }
+                    } else {
+                        throw new ParsingException(parser, "[" + NAME + "] unknown token [" + token + "] after [" + parser.currentName() + "]");
+                    }
+                }
+            } else {
+                throwParsingExceptionOnMultipleFields(NAME, parser, fieldName, currentFieldName);
+                fieldName = currentFieldName;
+                value = parser.text();
+            }
+        }
+
+        return new WildcardQueryBuilder(fieldName, value)
+                .rewrite(rewrite)
+                .boost(boost)
+                .queryName(queryName);
+    }
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -77,6 +127,11 @@ public class WildcardQueryBuilder extends AbstractQueryBuilder<WildcardQueryBuil
 		return Objects.hash(fieldName, value, rewrite);
 	}
 
+	@Override
+	protected long doStructuralHash() {
+		return hash64(fieldName, value, rewrite);
+	}
+
 	@Override
 	protected boolean doEquals(WildcardQueryBuilder other) {
 		return Objects.equals(fieldName, other.fieldName) && Objects.equals(value, other.value)
@@ -99,4 +154,17 @@ public class WildcardQueryBuilder extends AbstractQueryBuilder<WildcardQueryBuil
         return builder;
 	}
 
+	@Override
+	protected void doXContent(XContentBuilder builder) throws IOException {
+		builder.startObject(NAME);
+		builder.startObject(fieldName);
+		builder.field(WILDCARD_FIELD.getPreferredName(), value);
+		if (rewrite != null) {
+			builder.field(REWRITE_FIELD.getPreferredName(), rewrite);
+		}
+		printBoostAndQueryName(builder);
+		builder.endObject();
+		builder.endObject();
+	}
+
 }
@@ -0,0 +1,628 @@
+package com.wuchubuzai.dsl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A utility to build XContent (ie json) by streaming tokens into an {@link XContentGenerator}.
+ * This is the allocation free counterpart of the {@code Map} based
+ * {@link QueryBuilder#toXContent(Map)} rendering.
+ */
+public final class XContentBuilder implements Closeable, Flushable {
+
+    private final XContentGenerator generator;
+
+    private final OutputStream bos;
+
+    private boolean canonical;
+
+    private PreparedQuery.Recorder recorder;
+
+    /** queries rendered into this builder, only counted while {@link RenderInstrumentation} is enabled */
+    private int queryCount;
+
+    /** {@link #queryCount} by query name, only kept once {@link #countQueriesByName()} is called */
+    private Map<String, Integer> queryCounts;
+
+    /**
+     * Constructs a new json builder that writes to an internal buffer, use {@link #string()}
+     * to read the result.
+     */
+    public static XContentBuilder jsonBuilder() {
+        return jsonBuilder(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Constructs a new json builder that streams its output into the given stream.
+     */
+    public static XContentBuilder jsonBuilder(OutputStream os) {
+        return new XContentBuilder(new JsonXContentGenerator(os), os);
+    }
+
+    /**
+     * Constructs a new smile builder that writes to an internal buffer, use {@link #bytes()}
+     * to read the result.
+     */
+    public static XContentBuilder smileBuilder() {
+        return builder(XContentType.SMILE);
+    }
+
+    /**
+     * Constructs a new cbor builder that writes to an internal buffer, use {@link #bytes()}
+     * to read the result.
+     */
+    public static XContentBuilder cborBuilder() {
+        return builder(XContentType.CBOR);
+    }
+
+    public static XContentBuilder builder(XContentType type) {
+        return builder(type, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Constructs a new builder for the given format that streams its output into the given stream.
+     */
+    public static XContentBuilder builder(XContentType type, OutputStream os) {
+        if (type == null) {
+            throw new IllegalArgumentException("content type cannot be null");
+        }
+        return new XContentBuilder(type.createGenerator(os, new byte[JsonXContentGenerator.DEFAULT_BUFFER_SIZE]), os);
+    }
+
+    public XContentBuilder(XContentGenerator generator, OutputStream bos) {
+        if (generator == null) {
+            throw new IllegalArgumentException("generator cannot be null");
+        }
+        this.generator = generator;
+        this.bos = bos;
+    }
+
+    public XContentGenerator generator() {
+        return this.generator;
+    }
+
+    public OutputStream getOutputStream() {
+        return this.bos;
+    }
+
+    public XContentType contentType() {
+        return generator.contentType();
+    }
+
+    public XContentBuilder prettyPrint() {
+        generator.usePrettyPrint();
+        return this;
+    }
+
+    public boolean isPrettyPrint() {
+        return generator.isPrettyPrint();
+    }
+
+    /**
+     * Switches the builder to canonical rendering: map keys are written in sorted order,
+     * set-like values ({@link #valueSet(Collection)}, {@link Set}s) are sorted and
+     * deduplicated and negative zero is written as zero. Equal query trees then always
+     * render to identical bytes, which is what Elasticsearch's request cache keys on.
+     */
+    public XContentBuilder canonical() {
+        this.canonical = true;
+        return this;
+    }
+
+    public boolean isCanonical() {
+        return this.canonical;
+    }
+
+    public XContentBuilder startObject() throws IOException {
+        generator.writeStartObject();
+        return this;
+    }
+
+    public XContentBuilder startObject(String name) throws IOException {
+        return field(name).startObject();
+    }
+
+    public XContentBuilder endObject() throws IOException {
+        generator.writeEndObject();
+        return this;
+    }
+
+    public XContentBuilder startArray() throws IOException {
+        generator.writeStartArray();
+        return this;
+    }
+
+    public XContentBuilder startArray(String name) throws IOException {
+        return field(name).startArray();
+    }
+
+    public XContentBuilder endArray() throws IOException {
+        generator.writeEndArray();
+        return this;
+    }
+
+    public XContentBuilder field(String name) throws IOException {
+        if (name == null) {
+            throw new IllegalArgumentException("field name cannot be null");
+        }
+        generator.writeFieldName(name);
+        return this;
+    }
+
+    public XContentBuilder field(String name, String value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, int value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, long value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, float value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, double value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, boolean value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder field(String name, Object value) throws IOException {
+        return field(name).value(value);
+    }
+
+    public XContentBuilder nullField(String name) throws IOException {
+        return field(name).nullValue();
+    }
+
+    public XContentBuilder nullValue() throws IOException {
+        generator.writeNull();
+        return this;
+    }
+
+    public XContentBuilder value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        generator.writeString(value);
+        return this;
+    }
+
+    public XContentBuilder value(int value) throws IOException {
+        generator.writeNumber(value);
+        return this;
+    }
+
+    public XContentBuilder value(long value) throws IOException {
+        generator.writeNumber(value);
+        return this;
+    }
+
+    public XContentBuilder value(float value) throws IOException {
+        generator.writeNumber(canonical && value == 0 ? 0f : value);
+        return this;
+    }
+
+    public XContentBuilder value(double value) throws IOException {
+        generator.writeNumber(canonical && value == 0 ? 0d : value);
+        return this;
+    }
+
+    public XContentBuilder value(boolean value) throws IOException {
+        generator.writeBoolean(value);
+        return this;
+    }
+
+    /**
+     * Writes an arbitrary value, dispatching on its runtime type. Collections, arrays and
+     * maps are written as arrays and objects, values of unknown types as their
+     * {@link Object#toString()}.
+     */
+    public XContentBuilder value(Object value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            value(((Float) value).floatValue());
+        } else if (value instanceof Double) {
+            value(((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber(((BigDecimal) value).toPlainString());
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Number) {
+            value(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            generator.writeNumber(((Date) value).getTime());
+        } else if (value instanceof Enum<?>) {
+            generator.writeString(((Enum<?>) value).name());
+        } else if (value instanceof PreparedQuery.Parameter) {
+            if (recorder == null) {
+                throw new IllegalStateException("parameter [" + ((PreparedQuery.Parameter) value).name()
+                        + "] can only be rendered through PreparedQuery");
+            }
+            recorder.slot(this, (PreparedQuery.Parameter) value, false);
+        } else if (value instanceof Map<?, ?>) {
+            map((Map<?, ?>) value);
+        } else if (canonical && value instanceof Set<?>) {
+            valueSet((Set<?>) value);
+        } else if (value instanceof Iterable<?>) {
+            startArray();
+            for (Object o : (Iterable<?>) value) {
+                value(o);
+            }
+            endArray();
+        } else if (value instanceof Object[]) {
+            startArray();
+            for (Object o : (Object[]) value) {
+                value(o);
+            }
+            endArray();
+        } else if (value instanceof int[]) {
+            startArray();
+            for (int v : (int[]) value) {
+                generator.writeNumber(v);
+            }
+            endArray();
+        } else if (value instanceof long[]) {
+            startArray();
+            for (long v : (long[]) value) {
+                generator.writeNumber(v);
+            }
+            endArray();
+        } else if (value instanceof float[]) {
+            startArray();
+            for (float v : (float[]) value) {
+                generator.writeNumber(v);
+            }
+            endArray();
+        } else if (value instanceof double[]) {
+            startArray();
+            for (double v : (double[]) value) {
+                generator.writeNumber(v);
+            }
+            endArray();
+        } else if (value instanceof boolean[]) {
+            startArray();
+            for (boolean v : (boolean[]) value) {
+                generator.writeBoolean(v);
+            }
+            endArray();
+        } else {
+            generator.writeString(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes already rendered content, encoded in this builder's format, as the next value.
+     */
+    public XContentBuilder rawValue(byte[] value, int offset, int length) throws IOException {
+        generator.writeRawValue(value, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes values whose order carries no meaning, like ids or terms, as an array. In
+     * canonical mode the values are sorted and duplicates are dropped, otherwise they are
+     * written in iteration order.
+     */
+    public XContentBuilder valueSet(Collection<?> values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        startArray();
+        if (canonical) {
+            Object[] sorted = values.toArray();
+            Arrays.sort(sorted, CanonicalOrder.INSTANCE);
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || CanonicalOrder.INSTANCE.compare(sorted[i - 1], sorted[i]) != 0) {
+                    value(sorted[i]);
+                }
+            }
+        } else {
+            for (Object value : values) {
+                value(value);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Same as {@link #valueSet(Collection)} without boxing the values.
+     */
+    public XContentBuilder valueSet(int[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        if (canonical) {
+            values = values.clone();
+            Arrays.sort(values);
+        }
+        startArray();
+        for (int i = 0; i < values.length; i++) {
+            if (canonical == false || i == 0 || values[i - 1] != values[i]) {
+                generator.writeNumber(values[i]);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Same as {@link #valueSet(Collection)} without boxing the values.
+     */
+    public XContentBuilder valueSet(long[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        if (canonical) {
+            values = values.clone();
+            Arrays.sort(values);
+        }
+        startArray();
+        for (int i = 0; i < values.length; i++) {
+            if (canonical == false || i == 0 || values[i - 1] != values[i]) {
+                generator.writeNumber(values[i]);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Same as {@link #valueSet(Collection)} without boxing the values.
+     */
+    public XContentBuilder valueSet(float[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        if (canonical) {
+            values = values.clone();
+            Arrays.sort(values);
+        }
+        startArray();
+        for (int i = 0; i < values.length; i++) {
+            // -0.0 and 0.0 are both written as 0.0, NaNs compare equal
+            if (canonical == false || i == 0 || (values[i - 1] != values[i] && Float.compare(values[i - 1], values[i]) != 0)) {
+                value(values[i]);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Same as {@link #valueSet(Collection)} without boxing the values.
+     */
+    public XContentBuilder valueSet(double[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        if (canonical) {
+            values = values.clone();
+            Arrays.sort(values);
+        }
+        startArray();
+        for (int i = 0; i < values.length; i++) {
+            // -0.0 and 0.0 are both written as 0.0, NaNs compare equal
+            if (canonical == false || i == 0 || (values[i - 1] != values[i] && Double.compare(values[i - 1], values[i]) != 0)) {
+                value(values[i]);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Writes a map as an object, keys are written using their {@link Object#toString()}. In
+     * canonical mode the keys are written in sorted order.
+     */
+    public XContentBuilder map(Map<?, ?> values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        startObject();
+        if (canonical && isSortedByName(values) == false) {
+            TreeMap<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            values = sorted;
+        }
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            field(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return endObject();
+    }
+
+    /**
+     * Whether the map already iterates in the order of the written keys, a sorted map of
+     * numbers puts 10 after 2 while their names sort the other way.
+     */
+    private static boolean isSortedByName(Map<?, ?> values) {
+        if (!(values instanceof SortedMap<?, ?>) || ((SortedMap<?, ?>) values).comparator() != null) {
+            return false;
+        }
+        return values.isEmpty() || ((SortedMap<?, ?>) values).firstKey() instanceof String;
+    }
+
+    void recorder(PreparedQuery.Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Writes a parameter standing for a whole array of values, see {@link PreparedQuery}.
+     */
+    XContentBuilder arrayParameter(PreparedQuery.Parameter parameter) throws IOException {
+        if (recorder == null) {
+            throw new IllegalStateException("parameter [" + parameter.name() + "] can only be rendered through PreparedQuery");
+        }
+        recorder.slot(this, parameter, true);
+        return this;
+    }
+
+    void countQuery(String name) {
+        queryCount++;
+        if (queryCounts != null) {
+            queryCounts.merge(name, 1, Integer::sum);
+        }
+    }
+
+    void countQueriesByName() {
+        queryCounts = new LinkedHashMap<>();
+    }
+
+    Map<String, Integer> queryCounts() {
+        return queryCounts;
+    }
+
+    int queryCount() {
+        return queryCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    /**
+     * Returns the content written so far as a string, only supported for builders created
+     * through {@link #jsonBuilder()}.
+     */
+    public String string() throws IOException {
+        if (contentType() != XContentType.JSON) {
+            throw new IllegalStateException("cannot read [" + contentType() + "] content as a string");
+        }
+        return new String(bytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the content written so far, only supported for builders writing to an
+     * internal buffer such as {@link #jsonBuilder()} or {@link #smileBuilder()}.
+     */
+    public byte[] bytes() throws IOException {
+        if (!(bos instanceof ByteArrayOutputStream)) {
+            throw new IllegalStateException("builder does not write to an internal buffer");
+        }
+        flush();
+        return ((ByteArrayOutputStream) bos).toByteArray();
+    }
+
+    /**
+     * Total order used for canonical set-like values: nulls, then booleans, numbers, strings
+     * and finally anything else by its string form. Integral numbers compare by value
+     * whatever their boxed type, since they render to the same digits.
+     */
+    private static final class CanonicalOrder implements Comparator<Object> {
+
+        static final CanonicalOrder INSTANCE = new CanonicalOrder();
+
+        @Override
+        public int compare(Object o1, Object o2) {
+            int rank = Integer.compare(rank(o1), rank(o2));
+            if (rank != 0 || o1 == null) {
+                return rank;
+            }
+            if (o1 instanceof Boolean) {
+                return ((Boolean) o1).compareTo((Boolean) o2);
+            }
+            if (o1 instanceof String) {
+                return ((String) o1).compareTo((String) o2);
+            }
+            if (o1 instanceof Number) {
+                return compareNumbers((Number) o1, (Number) o2);
+            }
+            int cmp = o1.toString().compareTo(o2.toString());
+            return cmp != 0 ? cmp : o1.getClass().getName().compareTo(o2.getClass().getName());
+        }
+
+        private static int compareNumbers(Number n1, Number n2) {
+            boolean integral1 = isIntegral(n1);
+            boolean integral2 = isIntegral(n2);
+            if (integral1 && integral2) {
+                if (fitsLong(n1) && fitsLong(n2)) {
+                    return Long.compare(n1.longValue(), n2.longValue());
+                }
+                return toBigInteger(n1).compareTo(toBigInteger(n2));
+            }
+            if (integral1 != integral2) {
+                // 5 and 5.0 render differently, keep both and put integers first
+                return integral1 ? -1 : 1;
+            }
+            if (n1 instanceof BigDecimal && n2 instanceof BigDecimal) {
+                int cmp = ((BigDecimal) n1).compareTo((BigDecimal) n2);
+                return cmp != 0 ? cmp : ((BigDecimal) n1).toPlainString().compareTo(((BigDecimal) n2).toPlainString());
+            }
+            double d1 = n1.doubleValue();
+            double d2 = n2.doubleValue();
+            // -0.0 is written as 0.0, so it equals 0.0 here
+            int cmp = d1 == d2 ? 0 : Double.compare(d1, d2);
+            if (cmp != 0) {
+                return cmp;
+            }
+            // 0.1f and 0.1d are different values that may print alike, order them by type
+            return n1.getClass().getName().compareTo(n2.getClass().getName());
+        }
+
+        private static boolean isIntegral(Number n) {
+            return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte
+                    || n instanceof BigInteger;
+        }
+
+        private static boolean fitsLong(Number n) {
+            return !(n instanceof BigInteger) || ((BigInteger) n).bitLength() < 64;
+        }
+
+        private static BigInteger toBigInteger(Number n) {
+            return n instanceof BigInteger ? (BigInteger) n : BigInteger.valueOf(n.longValue());
+        }
+
+        private static int rank(Object o) {
+            if (o == null) {
+                return 0;
+            } else if (o instanceof Boolean) {
+                return 1;
+            } else if (o instanceof Number) {
+                return 2;
+            } else if (o instanceof String) {
+                return 3;
+            }
+            return 4;
+        }
+    }
+
+}
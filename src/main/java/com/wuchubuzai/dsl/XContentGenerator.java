@@ -0,0 +1,66 @@
+package com.wuchubuzai.dsl;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Low level token writer used by {@link XContentBuilder}. Implementations emit
+ * the tokens straight into their output without building an intermediate tree.
+ */
+public interface XContentGenerator extends Closeable, Flushable {
+
+    /**
+     * The format this generator writes.
+     */
+    XContentType contentType();
+
+    /**
+     * Enables pretty printing for the generator, if the format supports it.
+     */
+    void usePrettyPrint();
+
+    boolean isPrettyPrint();
+
+    void writeStartObject() throws IOException;
+
+    void writeEndObject() throws IOException;
+
+    void writeStartArray() throws IOException;
+
+    void writeEndArray() throws IOException;
+
+    void writeFieldName(String name) throws IOException;
+
+    void writeNull() throws IOException;
+
+    void writeBoolean(boolean value) throws IOException;
+
+    void writeNumber(int value) throws IOException;
+
+    void writeNumber(long value) throws IOException;
+
+    void writeNumber(float value) throws IOException;
+
+    void writeNumber(double value) throws IOException;
+
+    /**
+     * Writes an arbitrary precision number (e.g. {@link java.math.BigDecimal}) from its
+     * plain string representation.
+     */
+    void writeNumber(String value) throws IOException;
+
+    void writeString(String value) throws IOException;
+
+    /**
+     * Writes already rendered content as the next value. The bytes must be encoded in
+     * this generator's format, an empty value only writes the separator in front of it.
+     */
+    void writeRawValue(byte[] value, int offset, int length) throws IOException;
+
+    /**
+     * Number of bytes written so far, including those still buffered.
+     */
+    long bytesWritten();
+
+}
@@ -0,0 +1,94 @@
+package com.wuchubuzai.dsl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pull parser reading XContent (ie json) token by token, the read side of
+ * {@link XContentGenerator}.
+ */
+public interface XContentParser extends Closeable {
+
+    enum Token {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        FIELD_NAME,
+        VALUE_STRING,
+        VALUE_NUMBER,
+        VALUE_BOOLEAN,
+        VALUE_NULL;
+
+        public boolean isValue() {
+            return this == VALUE_STRING || this == VALUE_NUMBER || this == VALUE_BOOLEAN || this == VALUE_NULL;
+        }
+    }
+
+    /**
+     * Advances to the next token, returns <code>null</code> once the input is exhausted.
+     */
+    Token nextToken() throws IOException;
+
+    Token currentToken();
+
+    /**
+     * Returns the name of the field the current token belongs to, or <code>null</code>
+     * outside of an object.
+     */
+    String currentName() throws IOException;
+
+    /**
+     * Resolves {@link #currentName()} against the table, returns <code>null</code> if none
+     * of its fields accepts the name. Implementations may avoid creating the name string.
+     */
+    default ParseField currentField(ParseFieldTable table) throws IOException {
+        return table.get(currentName());
+    }
+
+    /**
+     * Returns the text of the current string, number or boolean value.
+     */
+    String text() throws IOException;
+
+    /**
+     * Returns the current value as a {@link String}, {@link Number}, {@link Boolean} or
+     * <code>null</code>.
+     */
+    Object objectText() throws IOException;
+
+    Number numberValue() throws IOException;
+
+    int intValue() throws IOException;
+
+    long longValue() throws IOException;
+
+    float floatValue() throws IOException;
+
+    double doubleValue() throws IOException;
+
+    boolean booleanValue() throws IOException;
+
+    /**
+     * Skips the object or array starting at the current token, leaving the parser on the
+     * matching end token. Does nothing when positioned on a value.
+     */
+    void skipChildren() throws IOException;
+
+    /**
+     * Reads the object starting at the current token into a map.
+     */
+    Map<String, Object> map() throws IOException;
+
+    /**
+     * Reads the array starting at the current token into a list.
+     */
+    List<Object> list() throws IOException;
+
+    int getLineNumber();
+
+    int getColumnNumber();
+
+}
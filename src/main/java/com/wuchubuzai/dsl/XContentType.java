@@ -0,0 +1,74 @@
+package com.wuchubuzai.dsl;
+
+import java.io.OutputStream;
+
+/**
+ * The formats XContent can be rendered into, all of them accepted by Elasticsearch as
+ * request bodies. The binary formats are only more compact for number heavy queries, such
+ * as large terms lists of longs or many range bounds, where a number takes a few bytes
+ * instead of its digits. Strings and field names save at most their quotes, while every
+ * float, such as the <code>boost</code> of each query, takes 5 (CBOR) or 6 (Smile) bytes
+ * instead of the 3 of <code>1.0</code>, so bodies of mostly strings can be larger than
+ * json: measure before switching.
+ */
+public enum XContentType {
+
+    JSON("application/json") {
+        @Override
+        public XContentGenerator createGenerator(OutputStream out, byte[] buffer) {
+            return new JsonXContentGenerator(out, buffer);
+        }
+    },
+
+    SMILE("application/smile") {
+        @Override
+        public XContentGenerator createGenerator(OutputStream out, byte[] buffer) {
+            return new SmileXContentGenerator(out, buffer);
+        }
+    },
+
+    CBOR("application/cbor") {
+        @Override
+        public XContentGenerator createGenerator(OutputStream out, byte[] buffer) {
+            return new CborXContentGenerator(out, buffer);
+        }
+    };
+
+    private final String mediaType;
+
+    XContentType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * The value to send as <code>Content-Type</code> header.
+     */
+    public String mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Creates a generator for this format using the given scratch buffer, see
+     * {@link JsonXContentGenerator#JsonXContentGenerator(OutputStream, byte[])}.
+     */
+    public abstract XContentGenerator createGenerator(OutputStream out, byte[] buffer);
+
+    /**
+     * Resolves a <code>Content-Type</code> header value, ignoring parameters such as the
+     * charset. Returns <code>null</code> for unknown media types.
+     */
+    public static XContentType fromMediaType(String mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        int end = mediaType.indexOf(';');
+        String type = (end == -1 ? mediaType : mediaType.substring(0, end)).trim();
+        for (XContentType contentType : values()) {
+            if (contentType.mediaType.equalsIgnoreCase(type)) {
+                return contentType;
+            }
+        }
+        return null;
+    }
+
+}
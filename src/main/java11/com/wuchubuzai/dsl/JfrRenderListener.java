@@ -0,0 +1,156 @@
+package com.wuchubuzai.dsl;
+
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A {@link RenderListener} recording renders slower than a threshold as
+ * <code>com.wuchubuzai.dsl.Render</code> JDK Flight Recorder events, with the render type,
+ * the number of queries, the depth of the query tree, the rendered bytes, the render time
+ * and the {@link AbstractQueryBuilder#structuralHash() fingerprint} of the query. The
+ * depth and the fingerprint are only computed for recorded renders.
+ * <p>
+ * Renders are recorded from the render time given by the
+ * <code>wuchubuzai.dsl.jfr.threshold</code> system property, 1 ms by default. The event
+ * is enabled in the default and profile settings of Flight Recorder and stamped with the
+ * end of the render, its duration is the <code>renderTime</code> field.
+ *
+ * <pre>
+ * java -Dwuchubuzai.dsl.render.listener=com.wuchubuzai.dsl.JfrRenderListener \
+ *      -Dwuchubuzai.dsl.jfr.threshold=10ms -XX:StartFlightRecording=settings=profile ...
+ * </pre>
+ */
+public final class JfrRenderListener implements RenderListener {
+
+    public static final String THRESHOLD_PROPERTY = "wuchubuzai.dsl.jfr.threshold";
+
+    private final long thresholdNanos;
+
+    public JfrRenderListener() {
+        this.thresholdNanos = parse(System.getProperty(THRESHOLD_PROPERTY, "1ms"));
+    }
+
+    /**
+     * Whether renders are recorded, false before Java 11.
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public void onQuery(String name) {
+    }
+
+    @Override
+    public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        RenderEvent event = new RenderEvent();
+        if (event.isEnabled()) {
+            event.renderTime = nanos;
+            event.type = type;
+            event.queries = queries;
+            event.depth = depth(query);
+            event.bytes = bytes;
+            if (query instanceof AbstractQueryBuilder<?>) {
+                event.fingerprint = Long.toHexString(((AbstractQueryBuilder<?>) query).structuralHash());
+            }
+            event.commit();
+        }
+    }
+
+    static int depth(QueryBuilder query) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            int depth = 0;
+            for (QueryBuilder clause : bool.must()) {
+                depth = Math.max(depth, depth(clause));
+            }
+            for (QueryBuilder clause : bool.filter()) {
+                depth = Math.max(depth, depth(clause));
+            }
+            for (QueryBuilder clause : bool.should()) {
+                depth = Math.max(depth, depth(clause));
+            }
+            for (QueryBuilder clause : bool.mustNot()) {
+                depth = Math.max(depth, depth(clause));
+            }
+            return depth + 1;
+        }
+        return query == null ? 0 : 1;
+    }
+
+    @Name("com.wuchubuzai.dsl.Render")
+    @Label("DSL Render")
+    @Category("Elasticsearch DSL")
+    @Description("A search body or query rendered slower than the threshold")
+    static final class RenderEvent extends Event {
+
+        @Label("Type")
+        @Description("search for a search body, otherwise the name of the query")
+        String type;
+
+        @Label("Queries")
+        int queries;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Render Time")
+        @Timespan
+        long renderTime;
+
+        @Label("Fingerprint")
+        @Description("Structural hash of the query tree, equal queries have equal fingerprints")
+        String fingerprint;
+    }
+
+    /**
+     * Parses a timespan such as <code>10 ms</code> or <code>10ms</code>.
+     */
+    static long parse(String value) {
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.equals("infinity")) {
+            return Long.MAX_VALUE;
+        }
+        int unit = 0;
+        while (unit < trimmed.length() && Character.isDigit(trimmed.charAt(unit))) {
+            unit++;
+        }
+        if (unit == 0) {
+            throw new IllegalArgumentException("cannot parse timespan [" + value + "]");
+        }
+        long amount = Long.parseLong(trimmed.substring(0, unit));
+        switch (trimmed.substring(unit).trim()) {
+            case "ns":
+                return amount;
+            case "us":
+                return amount * 1000L;
+            case "ms":
+                return amount * 1000000L;
+            case "s":
+                return amount * 1000000000L;
+            case "m":
+                return amount * 60000000000L;
+            case "h":
+                return amount * 3600000000000L;
+            case "d":
+                return amount * 86400000000000L;
+            default:
+                throw new IllegalArgumentException("cannot parse timespan [" + value + "]");
+        }
+    }
+
+}
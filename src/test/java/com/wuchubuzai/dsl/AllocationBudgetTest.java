@@ -0,0 +1,159 @@
+package com.wuchubuzai.dsl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checks the bytes allocated per render of a corpus of representative searches against the
+ * budgets in <code>allocation-budgets.properties</code>, so that a change adding garbage to
+ * the render path fails the build. Allocations are read from
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} after the JIT has
+ * compiled the render path, which is when escape analysis removes short lived objects.
+ * <p>
+ * The report lists the bytes per render of each search and of each query type in it,
+ * rendered on its own. When a change lowers allocations, lower the budget to keep the gain.
+ * Run alone with <code>mvn test -Dtest=AllocationBudgetTest</code>.
+ */
+public class AllocationBudgetTest {
+
+	private static final String BUDGETS = "/allocation-budgets.properties";
+	private static final int WARMUP = 20000;
+	private static final int ROUNDS = 5;
+	private static final int RENDERS = 2000;
+
+	public void testAllocationBudgets() throws IOException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			System.out.println("allocation budgets skipped, the JVM does not measure thread allocations");
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		threads.setThreadAllocatedMemoryEnabled(true);
+		Properties budgets = new Properties();
+		try (InputStream in = AllocationBudgetTest.class.getResourceAsStream(BUDGETS)) {
+			if (in == null) {
+				throw new AssertionError("missing " + BUDGETS);
+			}
+			budgets.load(in);
+		}
+
+		List<String> failures = new ArrayList<>();
+		long base = measure(threads, new SearchSourceBuilder());
+		StringBuilder report = new StringBuilder("bytes allocated per render, queries on their own over the [")
+				.append(base).append("] bytes of an empty search\n");
+		for (Map.Entry<String, SearchSourceBuilder> entry : corpus().entrySet()) {
+			String name = entry.getKey();
+			long bytes = measure(threads, entry.getValue());
+			String budget = budgets.getProperty(name);
+			report.append(String.format("%-16s %8d budget %8s%n", name, bytes, budget == null ? "-" : budget));
+			for (Map.Entry<String, Long> part : breakdown(threads, entry.getValue().query(), base).entrySet()) {
+				report.append(String.format("    %-12s %8d%n", part.getKey(), part.getValue()));
+			}
+			if (budget == null) {
+				failures.add("[" + name + "] has no budget, measured [" + bytes + "] bytes");
+			} else if (bytes > Long.parseLong(budget.trim())) {
+				failures.add("[" + name + "] allocates [" + bytes + "] bytes per render, over its budget of [" + budget
+						+ "]");
+			}
+		}
+		System.out.print(report);
+		if (failures.isEmpty() == false) {
+			throw new AssertionError("allocation budgets exceeded, see " + BUDGETS + ":\n  "
+					+ String.join("\n  ", failures));
+		}
+	}
+
+	/**
+	 * Searches of the shapes the library is used for, keyed on the name of their budget.
+	 */
+	private static Map<String, SearchSourceBuilder> corpus() {
+		Map<String, SearchSourceBuilder> corpus = new LinkedHashMap<>();
+		int[] ids = new int[1000];
+		String[] tags = new String[100];
+		String[] docs = new String[100];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = 1000000 + i * 7;
+		}
+		for (int i = 0; i < tags.length; i++) {
+			tags[i] = "tag-" + i;
+			docs[i] = "doc-" + (100000 + i * 13);
+		}
+		corpus.put("term", search(QueryBuilders.termQuery("status", "published")));
+		corpus.put("terms_ints", search(QueryBuilders.termsQuery("id", ids)));
+		corpus.put("terms_strings", search(QueryBuilders.termsQuery("tags", tags)));
+		corpus.put("ids", search(QueryBuilders.idsQuery().addIds(docs)));
+		corpus.put("range", search(QueryBuilders.rangeQuery("timestamp").gte(1514764800000L).lt(1546300800000L)));
+		corpus.put("match", search(QueryBuilders.matchQuery("title", "quick brown fox").operator(Operator.AND)));
+		corpus.put("match_phrase", search(QueryBuilders.matchPhraseQuery("title", "quick brown fox")));
+		corpus.put("multi_match", search(QueryBuilders.multiMatchQuery("elasticsearch query dsl", "title^2", "body")));
+		corpus.put("query_string", search(QueryBuilders.queryStringQuery("title:(quick brown) AND body:fox*")
+				.defaultOperator(Operator.AND).field("title", 2.0f).field("body")));
+		corpus.put("wildcard", search(QueryBuilders.wildcardQuery("tags", "search*")));
+		corpus.put("bool", search(QueryBuilders.boolQuery()
+				.must(QueryBuilders.matchQuery("title", "quick brown fox"))
+				.mustNot(QueryBuilders.termQuery("status", "deleted"))
+				.should(QueryBuilders.prefixQuery("tags", "sea"))
+				.filter(QueryBuilders.existsQuery("author"))
+				.filter(QueryBuilders.rangeQuery("price").gte(10.5d).lte(99.99d))));
+		return corpus;
+	}
+
+	private static SearchSourceBuilder search(QueryBuilder query) {
+		return new SearchSourceBuilder().from(20).size(10).query(query);
+	}
+
+	/**
+	 * Bytes per render of each query type in the tree, each query rendered on its own, over
+	 * the base bytes of rendering a search.
+	 */
+	private static Map<String, Long> breakdown(com.sun.management.ThreadMXBean threads, QueryBuilder query, long base)
+			throws IOException {
+		Map<String, Long> breakdown = new LinkedHashMap<>();
+		if (query instanceof BoolQueryBuilder) {
+			BoolQueryBuilder bool = (BoolQueryBuilder) query;
+			List<QueryBuilder> clauses = new ArrayList<>(bool.must());
+			clauses.addAll(bool.filter());
+			clauses.addAll(bool.should());
+			clauses.addAll(bool.mustNot());
+			for (QueryBuilder clause : clauses) {
+				for (Map.Entry<String, Long> entry : breakdown(threads, clause, base).entrySet()) {
+					breakdown.merge(entry.getKey(), entry.getValue(), Long::sum);
+				}
+			}
+		}
+		breakdown.merge(query.getName(), measure(threads, new SearchSourceBuilder().query(query)) - base, Long::sum);
+		return breakdown;
+	}
+
+	/**
+	 * Lowest average of bytes allocated per render over a few rounds, after a warm up.
+	 */
+	private static long measure(com.sun.management.ThreadMXBean threads, SearchSourceBuilder source)
+			throws IOException {
+		long thread = Thread.currentThread().getId();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+		for (int i = 0; i < WARMUP; i++) {
+			out.reset();
+			source.writeTo(out);
+		}
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < RENDERS; i++) {
+				out.reset();
+				source.writeTo(out);
+			}
+			lowest = Math.min(lowest, (threads.getThreadAllocatedBytes(thread) - before) / RENDERS);
+		}
+		return lowest;
+	}
+
+}
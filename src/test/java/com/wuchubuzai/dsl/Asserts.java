@@ -0,0 +1,76 @@
+package com.wuchubuzai.dsl;
+
+import java.util.Objects;
+
+/**
+ * Assertions of the tests, which surefire runs as plain classes without a test framework.
+ */
+final class Asserts {
+
+	interface ThrowingRunnable {
+		void run() throws Exception;
+	}
+
+	private Asserts() {
+	}
+
+	static void assertEquals(Object expected, Object actual) {
+		if (!Objects.equals(expected, actual)) {
+			throw new AssertionError("expected [" + expected + "] but was [" + actual + "]");
+		}
+	}
+
+	static void assertNotEquals(Object unexpected, Object actual) {
+		if (Objects.equals(unexpected, actual)) {
+			throw new AssertionError("expected anything but [" + actual + "]");
+		}
+	}
+
+	static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	static void assertSame(Object expected, Object actual) {
+		if (expected != actual) {
+			throw new AssertionError("expected the same instance as [" + expected + "] but was [" + actual + "]");
+		}
+	}
+
+	static <T extends Throwable> T expectThrows(Class<T> type, ThrowingRunnable runnable) {
+		try {
+			runnable.run();
+		} catch (Throwable e) {
+			if (type.isInstance(e)) {
+				return type.cast(e);
+			}
+			throw new AssertionError("expected [" + type.getSimpleName() + "] but got [" + e + "]", e);
+		}
+		throw new AssertionError("expected [" + type.getSimpleName() + "] but nothing was thrown");
+	}
+
+	/**
+	 * Bytes as upper case hex pairs separated by spaces, such as <code>3A 29 0A 00</code>.
+	 */
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 3);
+		for (byte b : bytes) {
+			if (hex.length() > 0) {
+				hex.append(' ');
+			}
+			hex.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)));
+			hex.append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Compact json of a query, as it renders inside a search body.
+	 */
+	static String json(QueryBuilder query) {
+		return new String(new SearchSourceBuilder().query(query).toBytes(XContentType.JSON),
+				java.nio.charset.StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.Asserts.hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Golden bytes of the CBOR data items, worked out from RFC 7049.
+ */
+public class CborXContentGeneratorTest {
+
+	interface Writes {
+		void write(XContentGenerator generator) throws IOException;
+	}
+
+	/**
+	 * Renders with the smallest buffer, so longer values are flushed in between.
+	 */
+	private static String cbor(Writes writes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (XContentGenerator generator = new CborXContentGenerator(out, new byte[64])) {
+			writes.write(generator);
+			generator.flush();
+			assertEquals((long) out.size(), generator.bytesWritten());
+		}
+		return hex(out.toByteArray());
+	}
+
+	private static String number(long value) throws IOException {
+		return cbor(generator -> generator.writeNumber(value));
+	}
+
+	private static String number(String value) throws IOException {
+		return cbor(generator -> generator.writeNumber(value));
+	}
+
+	private static String string(String value) throws IOException {
+		return cbor(generator -> generator.writeString(value));
+	}
+
+	private static String ascii(int length) {
+		char[] chars = new char[length];
+		Arrays.fill(chars, 'a');
+		return new String(chars);
+	}
+
+	private static String utf8(String value) {
+		return hex(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void testLiterals() throws IOException {
+		assertEquals("F6", cbor(XContentGenerator::writeNull));
+		assertEquals("F5", cbor(generator -> generator.writeBoolean(true)));
+		assertEquals("F4", cbor(generator -> generator.writeBoolean(false)));
+	}
+
+	public void testContainers() throws IOException {
+		String hex = cbor(generator -> {
+			generator.writeStartObject();
+			generator.writeFieldName("a");
+			generator.writeStartArray();
+			generator.writeNumber(1);
+			generator.writeStartObject();
+			generator.writeEndObject();
+			generator.writeStartArray();
+			generator.writeEndArray();
+			generator.writeEndArray();
+			generator.writeEndObject();
+		});
+		// indefinite lengths closed by breaks
+		assertEquals("BF 61 61 9F 01 BF FF 9F FF FF FF", hex);
+	}
+
+	public void testUnbalancedContainers() throws IOException {
+		CborXContentGenerator generator = new CborXContentGenerator(new ByteArrayOutputStream());
+		expectThrows(IllegalStateException.class, generator::writeEndObject);
+		generator.writeStartObject();
+		generator.writeEndObject();
+		expectThrows(IllegalStateException.class, generator::writeEndArray);
+	}
+
+	public void testUnsignedIntegers() throws IOException {
+		assertEquals("00", number(0));
+		assertEquals("17", number(23));
+		assertEquals("18 18", number(24));
+		assertEquals("18 FF", number(255));
+		assertEquals("19 01 00", number(256));
+		assertEquals("19 FF FF", number(65535));
+		assertEquals("1A 00 01 00 00", number(65536));
+		assertEquals("1A 7F FF FF FF", cbor(generator -> generator.writeNumber(Integer.MAX_VALUE)));
+		assertEquals("1A FF FF FF FF", number(0xFFFFFFFFL));
+		assertEquals("1B 00 00 00 01 00 00 00 00", number(0x100000000L));
+		assertEquals("1B 7F FF FF FF FF FF FF FF", number(Long.MAX_VALUE));
+	}
+
+	public void testNegativeIntegers() throws IOException {
+		// encoded as -1 - n
+		assertEquals("20", number(-1));
+		assertEquals("37", number(-24));
+		assertEquals("38 18", number(-25));
+		assertEquals("38 FF", number(-256));
+		assertEquals("39 01 00", number(-257));
+		assertEquals("3A 7F FF FF FF", cbor(generator -> generator.writeNumber(Integer.MIN_VALUE)));
+		assertEquals("3B 7F FF FF FF FF FF FF FF", number(Long.MIN_VALUE));
+	}
+
+	public void testBigIntegers() throws IOException {
+		assertEquals("18 64", number("100"));
+		assertEquals("18 64", number("1E2"));
+		assertEquals("20", number("-1"));
+		// beyond long but within the 64 bits of the argument
+		assertEquals("1B 80 00 00 00 00 00 00 00", number("9223372036854775808"));
+		assertEquals("1B FF FF FF FF FF FF FF FF", number("18446744073709551615"));
+		assertEquals("3B 80 00 00 00 00 00 00 00", number("-9223372036854775809"));
+		assertEquals("3B FF FF FF FF FF FF FF FF", number("-18446744073709551616"));
+	}
+
+	public void testBignums() throws IOException {
+		// tag 2 and a byte string of 9 bytes
+		assertEquals("C2 49 01 00 00 00 00 00 00 00 00", number("18446744073709551616"));
+		// the sign byte of the two's complement bytes is kept
+		assertEquals("C2 4A 00 80 00 00 00 00 00 00 00 00", number("2361183241434822606848"));
+		// tag 3 holding the magnitude, as Jackson reads it
+		assertEquals("C3 49 01 00 00 00 00 00 00 00 01", number("-18446744073709551617"));
+		assertEquals("C3 4A 00 80 00 00 00 00 00 00 00 00", number("-2361183241434822606848"));
+	}
+
+	public void testDecimalFractions() throws IOException {
+		// tag 4 and an array of exponent and mantissa
+		assertEquals("C4 82 20 0F", number("1.5"));
+		assertEquals("C4 82 20 2E", number("-1.5"));
+		assertEquals("C4 82 21 01", number("0.01"));
+		assertEquals("C4 82 20 C2 49 01 00 00 00 00 00 00 00 00", number("1844674407370955161.6"));
+		expectThrows(NumberFormatException.class, () -> number("1.5.5"));
+	}
+
+	public void testFloats() throws IOException {
+		assertEquals("FA 3F 80 00 00", cbor(generator -> generator.writeNumber(1.0f)));
+		assertEquals("FA C0 00 00 00", cbor(generator -> generator.writeNumber(-2.0f)));
+		assertEquals("FA 7F C0 00 00", cbor(generator -> generator.writeNumber(Float.NaN)));
+		assertEquals("FB 3F F0 00 00 00 00 00 00", cbor(generator -> generator.writeNumber(1.0d)));
+		assertEquals("FB 3F B9 99 99 99 99 99 9A", cbor(generator -> generator.writeNumber(0.1d)));
+		assertEquals("FB FF F0 00 00 00 00 00 00", cbor(generator -> generator.writeNumber(Double.NEGATIVE_INFINITY)));
+	}
+
+	public void testStrings() throws IOException {
+		assertEquals("60", string(""));
+		assertEquals("61 61", string("a"));
+		assertEquals("77 " + utf8(ascii(23)), string(ascii(23)));
+		assertEquals("78 18 " + utf8(ascii(24)), string(ascii(24)));
+		assertEquals("78 FF " + utf8(ascii(255)), string(ascii(255)));
+		assertEquals("79 01 00 " + utf8(ascii(256)), string(ascii(256)));
+		assertEquals("7A 00 01 00 00 " + utf8(ascii(65536)), string(ascii(65536)));
+	}
+
+	public void testUnicodeStrings() throws IOException {
+		// the length counts UTF-8 bytes
+		assertEquals("62 C3 A9", string("\u00e9"));
+		assertEquals("63 E2 82 AC", string("\u20ac"));
+		assertEquals("64 F0 9F 98 80", string("\ud83d\ude00"));
+		// unpaired surrogates are replaced like the JDK encoder does
+		assertEquals("62 61 3F", string("a\ud83d"));
+		assertEquals("62 3F 61", string("\ude00a"));
+	}
+
+	public void testFieldNames() throws IOException {
+		assertEquals("BF 60 F6 65 " + utf8("query") + " 01 78 18 " + utf8(ascii(24)) + " F5 FF", cbor(generator -> {
+			generator.writeStartObject();
+			generator.writeFieldName("");
+			generator.writeNull();
+			generator.writeFieldName("query");
+			generator.writeNumber(1);
+			generator.writeFieldName(ascii(24));
+			generator.writeBoolean(true);
+			generator.writeEndObject();
+		}));
+	}
+
+	public void testRawValueLongerThanBuffer() throws IOException {
+		byte[] raw = new byte[100];
+		Arrays.fill(raw, (byte) 0x41);
+		String hex = cbor(generator -> {
+			generator.writeStartArray();
+			generator.writeRawValue(raw, 10, 80);
+			generator.writeEndArray();
+		});
+		assertEquals("9F " + hex(Arrays.copyOfRange(raw, 10, 90)) + " FF", hex);
+	}
+
+	public void testSearchBody() throws IOException {
+		SearchSourceBuilder source = new SearchSourceBuilder().size(20)
+				.query(QueryBuilders.termQuery("f", "a"));
+		String expected = "BF 64 " + utf8("size") + " 14 65 " + utf8("query") + " BF 64 " + utf8("term")
+				+ " BF 61 66 BF 65 " + utf8("value") + " 61 61 65 " + utf8("boost") + " FA 3F 80 00 00 FF FF FF FF";
+		assertEquals(expected, hex(source.toBytes(XContentType.CBOR)));
+	}
+
+	public void testBufferTooSmall() {
+		expectThrows(IllegalArgumentException.class, () -> new CborXContentGenerator(new ByteArrayOutputStream(), new byte[63]));
+		expectThrows(IllegalArgumentException.class, () -> new CborXContentGenerator(null));
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class IdsQueryBuilderTest {
+
+	public void testSortedWithoutDuplicates() {
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds("b", "a", "b");
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<>(query.ids()));
+		assertEquals(2, query.ids().size());
+		assertEquals("{\"query\":{\"ids\":{\"values\":[\"a\",\"b\"],\"type\":[],\"boost\":1.0}}}", Asserts.json(query));
+	}
+
+	public void testManyIds() {
+		// spans many front coded blocks
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			ids.add(String.format(Locale.ROOT, "doc-%05d", i * 3));
+		}
+		Collections.shuffle(ids, new Random(42));
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds(ids.toArray(new String[0]));
+		assertEquals(new ArrayList<>(new TreeSet<>(ids)), new ArrayList<>(query.ids()));
+		for (String id : ids) {
+			assertTrue("missing " + id, query.ids().contains(id));
+		}
+		for (String absent : Arrays.asList("doc-00001", "doc-0000", "doc-000000", "doc-02998", "doc-99999", "", "a", "z")) {
+			assertTrue("unexpected " + absent, query.ids().contains(absent) == false);
+		}
+		assertTrue("non strings are not contained", query.ids().contains(3) == false);
+	}
+
+	public void testStringOrder() {
+		// surrogates sort below the chars after them, as in String#compareTo
+		List<String> ids = Arrays.asList("\uFFFF", "\uD83D\uDE00", "\u00E9", "a", "ab", "A", "\u0800");
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds(ids.toArray(new String[0]));
+		assertEquals(new ArrayList<>(new TreeSet<>(ids)), new ArrayList<>(query.ids()));
+		for (String id : ids) {
+			assertTrue("missing " + id, query.ids().contains(id));
+		}
+	}
+
+	public void testEscapes() {
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds("a\"b", "c\\d", "\u00E9");
+		assertEquals("{\"query\":{\"ids\":{\"values\":[\"a\\\"b\",\"c\\\\d\",\"\u00E9\"],\"type\":[],\"boost\":1.0}}}",
+				Asserts.json(query));
+	}
+
+	public void testSetContract() {
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds("x", "y", "z");
+		HashSet<String> expected = new HashSet<>(Arrays.asList("z", "y", "x"));
+		assertEquals(expected, query.ids());
+		assertEquals(query.ids(), expected);
+		assertEquals(expected.hashCode(), query.ids().hashCode());
+		expectThrows(UnsupportedOperationException.class, () -> query.ids().add("w"));
+		expectThrows(UnsupportedOperationException.class, () -> query.ids().iterator().remove());
+	}
+
+	public void testAddAfterRead() {
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds("c", "a");
+		assertEquals(Arrays.asList("a", "c"), new ArrayList<>(query.ids()));
+		query.addIds("b", "c");
+		assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(query.ids()));
+	}
+
+	public void testEqualsIgnoresOrder() {
+		IdsQueryBuilder first = new IdsQueryBuilder().addIds("1", "2", "3");
+		IdsQueryBuilder second = new IdsQueryBuilder().addIds("3", "2", "1", "2");
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertEquals(first.structuralHash(), second.freeze().structuralHash());
+	}
+
+	public void testFrozen() {
+		IdsQueryBuilder query = new IdsQueryBuilder().addIds("b", "a").freeze();
+		expectThrows(IllegalStateException.class, () -> query.addIds("c"));
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<>(query.ids()));
+	}
+
+	public void testInvalidIds() {
+		expectThrows(IllegalArgumentException.class, () -> new IdsQueryBuilder().addIds((String[]) null));
+		expectThrows(IllegalArgumentException.class, () -> new IdsQueryBuilder().addIds("a", null));
+	}
+
+	public void testParse() throws Exception {
+		SearchSourceBuilder source = SearchSourceBuilder.fromXContent(
+				new JsonXContentParser("{\"query\":{\"ids\":{\"values\":[\"b\",\"a\",1],\"_name\":\"n\"}}}"));
+		IdsQueryBuilder query = (IdsQueryBuilder) source.query();
+		assertEquals(Arrays.asList("1", "a", "b"), new ArrayList<>(query.ids()));
+		assertEquals("n", query.queryName());
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.nio.charset.StandardCharsets;
+
+public class MultiSearchRequestBuilderTest {
+
+	private static SearchSourceBuilder search(String value) {
+		return new SearchSourceBuilder().query(QueryBuilders.termQuery("f", value));
+	}
+
+	private static String body(String value) {
+		return new String(search(value).toBytes(XContentType.JSON), StandardCharsets.UTF_8);
+	}
+
+	private static String batch(MultiSearchRequestBuilder msearch, int batch) {
+		return new String(msearch.toBytes(batch), StandardCharsets.UTF_8);
+	}
+
+	public void testHeaders() {
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder()
+				.add(search("a"))
+				.add("orders", search("b"))
+				.add(MultiSearchRequestBuilder.Header.builder().indices("x", "y").routing("r").preference("_local").build(),
+						search("c"));
+		assertEquals("{}\n" + body("a") + "\n"
+				+ "{\"index\":\"orders\"}\n" + body("b") + "\n"
+				+ "{\"index\":[\"x\",\"y\"],\"routing\":\"r\",\"preference\":\"_local\"}\n" + body("c") + "\n",
+				batch(msearch, 0));
+		assertEquals(3, msearch.numberOfItems());
+		assertEquals(1, msearch.numberOfBatches());
+		assertEquals(msearch.toBytes(0).length, msearch.size(0));
+	}
+
+	public void testBatchesByItems() {
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().maxItems(2);
+		for (String value : new String[] { "a", "b", "c" }) {
+			msearch.add("i", search(value));
+		}
+		assertEquals(2, msearch.numberOfBatches());
+		assertEquals(2, msearch.itemCount(0));
+		assertEquals(1, msearch.itemCount(1));
+		assertEquals("{\"index\":\"i\"}\n" + body("c") + "\n", batch(msearch, 1));
+	}
+
+	public void testBatchesByBytes() {
+		int item = ("{}\n" + body("a") + "\n").length();
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().maxBytes(2 * item + 1);
+		for (String value : new String[] { "a", "b", "c" }) {
+			msearch.add(search(value));
+		}
+		assertEquals(2, msearch.numberOfBatches());
+		assertEquals("{}\n" + body("a") + "\n{}\n" + body("b") + "\n", batch(msearch, 0));
+		assertEquals("{}\n" + body("c") + "\n", batch(msearch, 1));
+	}
+
+	public void testOversizedItemRejected() {
+		int item = ("{}\n" + body("a") + "\n").length();
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().maxBytes(item);
+		msearch.add(search("a"));
+		expectThrows(IllegalArgumentException.class, () -> msearch.add(search("a much longer value")));
+		assertEquals(1, msearch.numberOfItems());
+		assertEquals(1, msearch.numberOfBatches());
+		assertEquals("{}\n" + body("a") + "\n", batch(msearch, 0));
+		// the rejected search leaves no empty batch behind
+		MultiSearchRequestBuilder empty = new MultiSearchRequestBuilder().maxBytes(10);
+		expectThrows(IllegalArgumentException.class, () -> empty.add(search("a")));
+		assertEquals(0, empty.numberOfBatches());
+	}
+
+	public void testFailedRenderLeavesBodyUnchanged() {
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().maxItems(1);
+		msearch.add(search("a"));
+		SearchSourceBuilder unbound = new SearchSourceBuilder()
+				.query(QueryBuilders.termQuery("f", PreparedQuery.param("value")));
+		expectThrows(IllegalStateException.class, () -> msearch.add("i", unbound));
+		assertEquals(1, msearch.numberOfBatches());
+		expectThrows(IllegalStateException.class, () -> new MultiSearchRequestBuilder().add(unbound));
+		MultiSearchRequestBuilder shared = new MultiSearchRequestBuilder();
+		shared.add(search("a"));
+		expectThrows(IllegalStateException.class, () -> shared.add("i", unbound));
+		shared.add(search("b"));
+		assertEquals("{}\n" + body("a") + "\n{}\n" + body("b") + "\n", batch(shared, 0));
+		assertEquals(2, shared.itemCount(0));
+	}
+
+	public void testLimitsFixedOnceAdded() {
+		MultiSearchRequestBuilder msearch = new MultiSearchRequestBuilder().add(search("a"));
+		expectThrows(IllegalStateException.class, () -> msearch.maxItems(10));
+		expectThrows(IllegalStateException.class, () -> msearch.maxBytes(10));
+		expectThrows(IllegalArgumentException.class, () -> new MultiSearchRequestBuilder().maxItems(0));
+		expectThrows(IllegalArgumentException.class, () -> msearch.toBytes(1));
+	}
+
+}
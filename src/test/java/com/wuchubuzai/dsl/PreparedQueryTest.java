@@ -0,0 +1,32 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PreparedQueryTest {
+
+	public void testScalarParameter() {
+		PreparedQuery prepared = PreparedQuery.compile(QueryBuilders.termQuery("f", PreparedQuery.param("x")));
+		assertEquals("{\"term\":{\"f\":{\"value\":\"a\",\"boost\":1.0}}}", prepared.render("a"));
+	}
+
+	public void testTermsParameterTakesArrays() {
+		PreparedQuery prepared = PreparedQuery.compile(QueryBuilders.termsQuery("f", PreparedQuery.param("x")));
+		assertEquals("{\"terms\":{\"f\":[\"a\",\"b\"],\"boost\":1.0}}", prepared.render(Arrays.asList("a", "b")));
+		assertEquals("{\"terms\":{\"f\":[1,2],\"boost\":1.0}}", prepared.render(new Object[] {new int[] {1, 2}}));
+	}
+
+	public void testTermsParameterRejectsScalars() {
+		PreparedQuery prepared = PreparedQuery.compile(QueryBuilders.termsQuery("f", PreparedQuery.param("x")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		expectThrows(IllegalArgumentException.class, () -> prepared.writeTo(out, "x"));
+		expectThrows(IllegalArgumentException.class, () -> prepared.writeTo(out, Collections.singletonMap("x", 42)));
+		expectThrows(IllegalArgumentException.class, () -> prepared.writeTo(out, (Object) null));
+		assertEquals(0, out.size());
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.idsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchAllQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.rangeQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+
+import com.wuchubuzai.dsl.QueryAnalyzer.Result;
+
+public class QueryAnalyzerTest {
+
+	private static final QueryAnalyzer SINGLE_VALUED = QueryAnalyzer.builder().singleValued("x", "ts").build();
+
+	public void testEmptyQueries() {
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(termsQuery("f", new String[0])));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(idsQuery()));
+		assertEquals(Result.MATCH_ALL, QueryAnalyzer.DEFAULT.analyze(matchAllQuery()));
+		assertEquals(Result.MATCH_ALL, QueryAnalyzer.DEFAULT.analyze(new SearchSourceBuilder()));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(termQuery("f", "a")));
+	}
+
+	public void testRangeBounds() {
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gt(5).lt(5)));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gte(5).lt(5)));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gt(5).lte(5)));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gte(5).lte(5)));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gte(6).lte(5)));
+		// numbers are compared at full precision
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("x").gte(0.1).lte(0.1)));
+	}
+
+	public void testTextPrefixesNotOrdered() {
+		// lte 2018-01 on a date field also accepts 2018-01-15
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("2018-01-15").lte("2018-01")));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("2018-02").lte("2018-01")));
+	}
+
+	public void testZonedDateTimes() {
+		// 05:00Z is after 06:00Z, but the text sorts first
+		RangeQueryBuilder zones = rangeQuery("ts").gte("2020-01-01T10:00:00+05:00").lte("2020-01-01T06:00:00Z");
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(zones));
+		assertEquals(false, RangeAlgebra.isEmpty(zones));
+		RangeQueryBuilder utc = rangeQuery("ts").gte("2020-01-01T10:00:00Z").lte("2020-01-01T06:00:00Z");
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(utc));
+		RangeQueryBuilder local = rangeQuery("ts").gte("2020-01-01T10:00:00").lte("2020-01-01T06:00:00Z");
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(local));
+		// the same instant written in two zones
+		BoolQueryBuilder terms = boolQuery().filter(termQuery("ts", "2020-01-01T10:00:00+05:00"))
+				.filter(termQuery("ts", "2020-01-01T05:00:00Z"));
+		assertEquals(Result.UNKNOWN, SINGLE_VALUED.analyze(terms));
+	}
+
+	public void testDateMath() {
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("now").lte("now-1d")));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("now-1d").lte("now")));
+		// rounding and months have no fixed length
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("now").lte("now/d")));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("now").lte("now-1M")));
+		// date math and dates are not ordered against each other
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("now").lte("2000-01-01")));
+		assertEquals(Result.MATCH_NONE,
+				QueryAnalyzer.DEFAULT.analyze(rangeQuery("ts").gte("2018-01-01||+1d").lte("2018-01-01||")));
+	}
+
+	public void testMultiValuedFields() {
+		// a document with the values 3 and 20 matches both
+		BoolQueryBuilder bool = boolQuery().filter(rangeQuery("x").gt(10)).filter(rangeQuery("x").lt(5));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(bool));
+		assertEquals(Result.MATCH_NONE, SINGLE_VALUED.analyze(bool));
+		BoolQueryBuilder terms = boolQuery().must(termQuery("x", 1)).must(termQuery("x", 2));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(terms));
+		assertEquals(Result.MATCH_NONE, SINGLE_VALUED.analyze(terms));
+		BoolQueryBuilder outside = boolQuery().must(termQuery("x", 1)).filter(rangeQuery("x").gt(1));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(outside));
+		assertEquals(Result.MATCH_NONE, SINGLE_VALUED.analyze(outside));
+	}
+
+	public void testRequiredAndExcluded() {
+		assertEquals(Result.MATCH_NONE,
+				QueryAnalyzer.DEFAULT.analyze(boolQuery().must(termQuery("f", "a")).mustNot(termsQuery("f", "a", "b"))));
+		assertEquals(Result.UNKNOWN,
+				QueryAnalyzer.DEFAULT.analyze(boolQuery().must(termsQuery("f", "a", "c")).mustNot(termQuery("f", "a"))));
+		assertEquals(Result.MATCH_NONE,
+				QueryAnalyzer.DEFAULT.analyze(boolQuery().filter(rangeQuery("x").gte(2).lte(3))
+						.mustNot(rangeQuery("x").gte(1).lte(5))));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(boolQuery().mustNot(matchAllQuery())));
+	}
+
+	public void testShouldClauses() {
+		BoolQueryBuilder none = boolQuery().should(termsQuery("f", new String[0])).should(rangeQuery("x").gt(2).lt(1));
+		assertEquals(Result.MATCH_NONE, QueryAnalyzer.DEFAULT.analyze(none));
+		BoolQueryBuilder all = boolQuery().should(matchAllQuery()).should(termQuery("f", "a"));
+		assertEquals(Result.MATCH_ALL, QueryAnalyzer.DEFAULT.analyze(all));
+		assertEquals(Result.UNKNOWN, QueryAnalyzer.DEFAULT.analyze(all.minimumShouldMatch(2)));
+	}
+
+}
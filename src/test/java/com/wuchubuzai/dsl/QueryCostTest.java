@@ -0,0 +1,306 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertSame;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.queryStringQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.wildcardQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wuchubuzai.dsl.QueryCost.Action;
+import com.wuchubuzai.dsl.QueryCost.Check;
+import com.wuchubuzai.dsl.QueryCost.Report;
+
+public class QueryCostTest {
+
+	private static List<Check> checks(Report report) {
+		List<Check> checks = new ArrayList<>();
+		for (QueryCost.Violation violation : report.violations()) {
+			checks.add(violation.check());
+		}
+		return checks;
+	}
+
+	private static List<Check> checks(Check... checks) {
+		List<Check> list = new ArrayList<>();
+		for (Check check : checks) {
+			list.add(check);
+		}
+		return list;
+	}
+
+	/**
+	 * Estimates a query string on a single field.
+	 */
+	private static Report queryString(String text) {
+		return QueryCost.DEFAULT.estimate(queryStringQuery(text).field("title"));
+	}
+
+	public void testLeafCosts() {
+		assertEquals(1L, QueryCost.DEFAULT.estimate(termQuery("f", "a")).cost());
+		assertEquals(3L, QueryCost.DEFAULT.estimate(termsQuery("f", "a", "b", "c")).cost());
+		assertEquals(2L, QueryCost.DEFAULT.estimate(QueryBuilders.idsQuery().addIds("1", "2")).cost());
+		assertEquals(4L, QueryCost.DEFAULT.estimate(QueryBuilders.rangeQuery("f").gte(1)).cost());
+		assertEquals(2L, QueryCost.DEFAULT.estimate(QueryBuilders.existsQuery("f")).cost());
+		assertEquals(16L, QueryCost.DEFAULT.estimate(QueryBuilders.prefixQuery("f", "ab")).cost());
+		assertEquals(1L, QueryCost.DEFAULT.estimate(QueryBuilders.matchAllQuery()).cost());
+		assertEquals(3L, QueryCost.DEFAULT.estimate(QueryBuilders.matchQuery("f", "quick  brown fox")).cost());
+		assertEquals(4L, QueryCost.DEFAULT.estimate(QueryBuilders.matchPhraseQuery("f", "quick fox")).cost());
+		assertEquals(54L, QueryCost.DEFAULT.estimate(QueryBuilders.matchPhrasePrefixQuery("f", "quick fox")).cost());
+		assertEquals(4L, QueryCost.DEFAULT.estimate(QueryBuilders.multiMatchQuery("quick fox", "title", "body")).cost());
+		// a field pattern counts as many fields
+		assertEquals(34L, QueryCost.DEFAULT.estimate(QueryBuilders.multiMatchQuery("quick fox", "title", "*_text")).cost());
+	}
+
+	public void testBoolCost() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("f", "a")).filter(QueryBuilders.rangeQuery("g").lt(5))
+				.should(boolQuery().mustNot(termQuery("h", "b")));
+		Report report = QueryCost.DEFAULT.estimate(bool);
+		// four clauses, two of them in the nested bool
+		assertEquals(4, report.clauseCount());
+		assertEquals(3L + 1 + 1 + 4 + 1, report.cost());
+		assertEquals(checks(), checks(report));
+	}
+
+	public void testSearchCost() {
+		SearchSourceBuilder source = new SearchSourceBuilder().query(termQuery("f", "a"));
+		// ten hits by default, a tenth of the window is added
+		assertEquals(2L, QueryCost.DEFAULT.estimate(source).cost());
+		assertEquals(11L, QueryCost.DEFAULT.estimate(source.from(50).size(50)).cost());
+		assertEquals(1L, QueryCost.DEFAULT.estimate(new SearchSourceBuilder()).cost());
+	}
+
+	public void testClauseCount() {
+		QueryCost cost = QueryCost.builder().maxClauseCount(2).build();
+		assertEquals(checks(), checks(cost.estimate(boolQuery().must(termQuery("f", "a")).must(termQuery("f", "b")))));
+		BoolQueryBuilder nested = boolQuery().must(termQuery("f", "a")).must(boolQuery().should(termQuery("g", "b")));
+		Report report = cost.estimate(nested);
+		assertEquals(3, report.clauseCount());
+		assertEquals(checks(Check.CLAUSE_COUNT), checks(report));
+		assertEquals(Action.REJECT, report.violations().get(0).action());
+		assertEquals(null, report.violations().get(0).query());
+	}
+
+	public void testTermsCount() {
+		QueryCost cost = QueryCost.builder().maxTermsCount(2).build();
+		TermsQueryBuilder terms = termsQuery("f", "a", "b", "c");
+		Report report = cost.estimate(boolQuery().filter(terms).filter(termsQuery("g", "a", "b")));
+		assertEquals(checks(Check.TERMS_COUNT), checks(report));
+		assertSame(terms, report.violations().get(0).query());
+		assertEquals(checks(Check.TERMS_COUNT), checks(cost.estimate(QueryBuilders.idsQuery().addIds("1", "2", "3"))));
+	}
+
+	public void testResultWindow() {
+		assertEquals(checks(), checks(QueryCost.DEFAULT.estimate(new SearchSourceBuilder().from(9980).size(20))));
+		Report report = QueryCost.DEFAULT.estimate(new SearchSourceBuilder().from(9990).size(20));
+		assertEquals(checks(Check.RESULT_WINDOW), checks(report));
+		// the default size counts
+		assertEquals(checks(Check.RESULT_WINDOW), checks(QueryCost.DEFAULT.estimate(new SearchSourceBuilder().from(9991))));
+	}
+
+	public void testWildcardQuery() {
+		Report trailing = QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*"));
+		assertEquals(64L, trailing.cost());
+		assertEquals(checks(Check.WILDCARD), checks(trailing));
+		Report leading = QueryCost.DEFAULT.estimate(wildcardQuery("f", "*ab"));
+		assertEquals(4096L, leading.cost());
+		assertEquals(checks(Check.LEADING_WILDCARD, Check.WILDCARD), checks(leading));
+		assertEquals(checks(Check.LEADING_WILDCARD, Check.WILDCARD),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "?b"))));
+		// a lone * matches every document with the field, it does not enumerate terms
+		assertEquals(checks(Check.WILDCARD), checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "*"))));
+	}
+
+	public void testTopTermsExpansions() {
+		assertEquals(checks(Check.WILDCARD, Check.EXPANSIONS),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("top_terms_100"))));
+		assertEquals(checks(Check.WILDCARD, Check.EXPANSIONS),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("top_terms_boost_51"))));
+		assertEquals(checks(Check.WILDCARD, Check.EXPANSIONS),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("top_terms_blended_freqs_1000"))));
+		assertEquals(checks(Check.WILDCARD),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("top_terms_50"))));
+		assertEquals(checks(Check.WILDCARD),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("constant_score"))));
+		assertEquals(checks(Check.WILDCARD),
+				checks(QueryCost.DEFAULT.estimate(wildcardQuery("f", "ab*").rewrite("top_terms_many"))));
+	}
+
+	public void testQueryStringTerms() {
+		assertEquals(2L, queryString("quick brown").cost());
+		assertEquals(checks(), checks(queryString("quick brown")));
+		// without fields the query string runs on all fields
+		assertEquals(32L, QueryCost.DEFAULT.estimate(queryStringQuery("quick brown")).cost());
+		assertEquals(2L, QueryCost.DEFAULT.estimate(queryStringQuery("quick brown").defaultField("title")).cost());
+	}
+
+	public void testQueryStringPhrases() {
+		// a phrase is one term, whatever it contains
+		Report phrase = queryString("\"quick *brown /fox~\" dog");
+		assertEquals(2L, phrase.cost());
+		assertEquals(checks(), checks(phrase));
+		// an escaped quote does not close the phrase
+		assertEquals(1L, queryString("\"say \\\"cheese*\\\"\"").cost());
+		assertEquals(1L, queryString("\"unclosed phrase*").cost());
+	}
+
+	public void testQueryStringEscapes() {
+		Report escaped = queryString("a\\*b \\/c\\?");
+		assertEquals(2L, escaped.cost());
+		assertEquals(checks(), checks(escaped));
+	}
+
+	public void testQueryStringWildcards() {
+		Report trailing = queryString("phone*");
+		assertEquals(1L + 64, trailing.cost());
+		assertEquals(checks(Check.WILDCARD), checks(trailing));
+		Report leading = queryString("*phone ?ase");
+		assertEquals(2L + 2 * 64 + 2 * 4096, leading.cost());
+		assertEquals(checks(Check.LEADING_WILDCARD, Check.WILDCARD), checks(leading));
+		// a lone * is an exists query
+		assertEquals(checks(Check.WILDCARD), checks(queryString("title:*")));
+		assertEquals(checks(Check.WILDCARD), checks(queryString("(* AND a)")));
+	}
+
+	public void testQueryStringRegexp() {
+		Report regexp = queryString("/joh?n(ath[oa]n)*/");
+		assertEquals(256L, regexp.cost());
+		assertEquals(checks(Check.REGEXP), checks(regexp));
+		// a slash inside a term is no regular expression
+		assertEquals(checks(), checks(queryString("and/or")));
+		assertEquals(checks(Check.REGEXP, Check.EXPANSIONS),
+				checks(QueryCost.DEFAULT.estimate(queryStringQuery("/a.*/").field("f").maxDeterminizedStates(20000))));
+		// the states limit only matters with a regular expression
+		assertEquals(checks(), checks(QueryCost.DEFAULT.estimate(queryStringQuery("a").field("f").maxDeterminizedStates(20000))));
+	}
+
+	public void testQueryStringFuzzyAndProximity() {
+		Report fuzzy = queryString("quikc~ brwn~1");
+		assertEquals(2L + 2 * 50, fuzzy.cost());
+		assertEquals(checks(Check.FUZZY), checks(fuzzy));
+		// ~ after a phrase is the slop of the phrase
+		Report proximity = queryString("\"quick fox\"~5");
+		assertEquals(1L, proximity.cost());
+		assertEquals(checks(), checks(proximity));
+		Report expansions = QueryCost.DEFAULT.estimate(queryStringQuery("quikc~").field("f").fuzzyMaxExpansions(1000));
+		assertEquals(1L + 1000, expansions.cost());
+		assertEquals(checks(Check.FUZZY, Check.EXPANSIONS), checks(expansions));
+	}
+
+	public void testCost() {
+		QueryCost cost = QueryCost.builder().maxCost(10).build();
+		assertEquals(checks(), checks(cost.estimate(termsQuery("f", "a", "b"))));
+		assertEquals(checks(Check.COST), checks(cost.estimate(wildcardQuery("f", "a*").boost(2))).subList(1, 2));
+		expectThrows(IllegalArgumentException.class, () -> cost.enforce(QueryBuilders.prefixQuery("f", "a")));
+	}
+
+	public void testReport() {
+		QueryBuilder query = queryStringQuery("*phone~").field("title");
+		assertSame(query, QueryCost.DEFAULT.enforce(query));
+		SearchSourceBuilder source = new SearchSourceBuilder().query(query);
+		assertSame(source, QueryCost.DEFAULT.enforce(source));
+		Report report = QueryCost.DEFAULT.estimate(query);
+		assertEquals(checks(Check.LEADING_WILDCARD, Check.WILDCARD, Check.FUZZY), checks(report));
+		assertTrue("only reported", report.has(Action.REPORT) && report.has(Action.REJECT) == false);
+	}
+
+	public void testReject() {
+		QueryCost cost = QueryCost.builder().action(Check.LEADING_WILDCARD, Action.REJECT).build();
+		IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+				() -> cost.enforce(wildcardQuery("f", "*ab")));
+		assertEquals("search rejected: [LEADING_WILDCARD] [wildcard] on [f] starts with a wildcard: [*ab]", e.getMessage());
+		expectThrows(IllegalArgumentException.class,
+				() -> cost.enforce(new SearchSourceBuilder().query(wildcardQuery("f", "*ab"))));
+		e = expectThrows(IllegalArgumentException.class,
+				() -> QueryCost.DEFAULT.enforce(new SearchSourceBuilder().from(10000).size(1)));
+		assertEquals("search rejected: [RESULT_WINDOW] result window is too large, from + size must be less than or "
+				+ "equal to [10000] but was [10001]", e.getMessage());
+	}
+
+	public void testRewriteResultWindow() {
+		QueryCost cost = QueryCost.builder().maxResultWindow(100).action(Check.RESULT_WINDOW, Action.REWRITE).build();
+		SearchSourceBuilder source = new SearchSourceBuilder().query(termQuery("f", "a")).from(90).size(20);
+		SearchSourceBuilder rewritten = cost.enforce(source);
+		assertEquals(90, rewritten.from());
+		assertEquals(10, rewritten.size());
+		assertEquals(termQuery("f", "a"), rewritten.query());
+		// the search itself is left as it was
+		assertEquals(20, source.size());
+		// starting beyond the window cannot be rewritten
+		IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+				() -> cost.enforce(new SearchSourceBuilder().from(150)));
+		assertTrue(e.getMessage(), e.getMessage().startsWith("search rejected after rewrite: [RESULT_WINDOW]"));
+	}
+
+	public void testRewriteClauseCount() {
+		QueryCost cost = QueryCost.builder().maxClauseCount(3).action(Check.CLAUSE_COUNT, Action.REWRITE).build();
+		BoolQueryBuilder bool = boolQuery();
+		for (int i = 0; i < 10; i++) {
+			bool.mustNot(termQuery("f", "v" + i));
+		}
+		QueryBuilder rewritten = cost.enforce(bool);
+		assertEquals(boolQuery().mustNot(termsQuery("f", "v0", "v1", "v2", "v3", "v4", "v5", "v6", "v7", "v8", "v9")),
+				rewritten);
+		assertEquals(10, bool.mustNot().size());
+		SearchSourceBuilder source = cost.enforce(new SearchSourceBuilder().query(bool).size(5));
+		assertEquals(5, source.size());
+		assertEquals(rewritten, source.query());
+		// clauses on different fields cannot be merged
+		BoolQueryBuilder distinct = boolQuery();
+		for (int i = 0; i < 10; i++) {
+			distinct.mustNot(termQuery("f" + i, "v"));
+		}
+		IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> cost.enforce(distinct));
+		assertEquals("search rejected after rewrite: [CLAUSE_COUNT] query has [10] clauses, more than the "
+				+ "[max_clause_count] of [3]", e.getMessage());
+		expectThrows(IllegalArgumentException.class, () -> cost.enforce(new SearchSourceBuilder().query(distinct)));
+	}
+
+	public void testRewriteExpansions() {
+		QueryCost cost = QueryCost.builder().action(Check.EXPANSIONS, Action.REWRITE).build();
+		BoolQueryBuilder bool = boolQuery().must(termQuery("g", "a"))
+				.should(wildcardQuery("f", "ab*").rewrite("top_terms_boost_100").boost(2).queryName("w"))
+				.filter(queryStringQuery("quikc~ /a.*/").field("title").fuzzyMaxExpansions(1000)
+						.maxDeterminizedStates(20000));
+		QueryBuilder rewritten = cost.enforce(bool);
+		BoolQueryBuilder expected = boolQuery().must(termQuery("g", "a"))
+				.should(wildcardQuery("f", "ab*").rewrite("top_terms_boost_50").boost(2).queryName("w"))
+				.filter(queryStringQuery("quikc~ /a.*/").field("title").fuzzyMaxExpansions(50)
+						.maxDeterminizedStates(10000));
+		assertEquals(expected, rewritten);
+		// the query itself is left as it was
+		assertEquals("top_terms_boost_100", ((WildcardQueryBuilder) bool.should().get(0)).rewrite());
+		assertEquals(1000, ((QueryStringQueryBuilder) bool.filter().get(0)).fuzzyMaxExpansions());
+		// a query within the limits is returned as it is
+		QueryBuilder within = wildcardQuery("f", "ab*").rewrite("top_terms_10");
+		assertSame(within, cost.enforce(within));
+	}
+
+	public void testRewriteTopTermsPrefix() {
+		QueryCost cost = QueryCost.builder().maxExpansions(20).action(Check.EXPANSIONS, Action.REWRITE).build();
+		assertEquals(wildcardQuery("f", "ab*").rewrite("top_terms_20"),
+				cost.enforce(wildcardQuery("f", "ab*").rewrite("top_terms_100")));
+		assertEquals(wildcardQuery("f", "ab*").rewrite("top_terms_blended_freqs_20"),
+				cost.enforce(wildcardQuery("f", "ab*").rewrite("top_terms_blended_freqs_100")));
+		// only the number is replaced, however it is written
+		assertEquals(wildcardQuery("f", "ab*").rewrite("top_terms_boost_20"),
+				cost.enforce(wildcardQuery("f", "ab*").rewrite("top_terms_boost_0100")));
+		assertEquals(wildcardQuery("f", "ab*").rewrite("top_terms_boost_20"),
+				cost.enforce(wildcardQuery("f", "ab*").rewrite("top_terms_boost_+100")));
+	}
+
+	public void testInvalidSettings() {
+		expectThrows(IllegalArgumentException.class, () -> QueryCost.builder().maxClauseCount(0));
+		expectThrows(IllegalArgumentException.class, () -> QueryCost.builder().maxCost(0));
+		expectThrows(IllegalArgumentException.class, () -> QueryCost.builder().action(Check.COST, Action.REWRITE));
+		expectThrows(IllegalArgumentException.class, () -> QueryCost.builder().action(Check.COST, null));
+		expectThrows(IllegalArgumentException.class, () -> QueryCost.DEFAULT.estimate((QueryBuilder) null));
+	}
+
+}
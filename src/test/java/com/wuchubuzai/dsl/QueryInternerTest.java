@@ -0,0 +1,58 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertSame;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class QueryInternerTest {
+
+	public void testInternsEqualQueries() {
+		QueryInterner interner = new QueryInterner();
+		TermQueryBuilder first = interner.termQuery("tenant_id", 7);
+		assertSame(first, interner.termQuery("tenant_id", 7));
+		assertTrue("interned queries are frozen", first.isFrozen());
+	}
+
+	public void testTermsVarargsAreCopied() {
+		QueryInterner interner = new QueryInterner();
+		String[] values = { "a", "b" };
+		TermsQueryBuilder query = interner.termsQuery("field", values);
+		values[0] = "EVIL";
+		assertEquals("{\"query\":{\"terms\":{\"field\":[\"a\",\"b\"],\"boost\":1.0}}}", json(query));
+		assertSame(query, interner.termsQuery("field", "a", "b"));
+	}
+
+	public void testIdsVarargsAreCopied() {
+		QueryInterner interner = new QueryInterner();
+		String[] ids = { "1", "2" };
+		IdsQueryBuilder query = interner.idsQuery(ids);
+		ids[0] = "EVIL";
+		assertSame(query, interner.idsQuery("1", "2"));
+	}
+
+	public void testFreezeSnapshotsPrimitiveTerms() {
+		int[] values = { 1, 2, 3 };
+		TermsQueryBuilder frozen = new TermsQueryBuilder("field", values).freeze();
+		values[0] = 42;
+		TermsQueryBuilder fresh = new TermsQueryBuilder("field", new int[] { 1, 2, 3 });
+		assertEquals(fresh, frozen);
+		assertEquals(fresh.hashCode(), frozen.hashCode());
+		assertEquals("{\"query\":{\"terms\":{\"field\":[1,2,3],\"boost\":1.0}}}", json(frozen));
+	}
+
+	public void testFreezeSnapshotsListTerms() {
+		List<Object> values = new ArrayList<>(Arrays.asList("a", "b"));
+		TermsQueryBuilder frozen = new TermsQueryBuilder("field", values).freeze();
+		values.add("c");
+		assertEquals(2, frozen.values().size());
+		TermsQueryBuilder fresh = new TermsQueryBuilder("field", "a", "b");
+		assertEquals(fresh, frozen);
+		assertEquals(fresh.hashCode(), frozen.hashCode());
+	}
+
+}
@@ -0,0 +1,266 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertSame;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.existsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchAllQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.prefixQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.wildcardQuery;
+
+import java.util.Collections;
+
+public class QueryOptimizerTest {
+
+	public void testUnwrapSingleClause() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		assertEquals(termQuery("a", "1"), optimizer.optimize(boolQuery().must(termQuery("a", "1"))));
+		assertEquals(termQuery("a", "1"), optimizer.optimize(boolQuery().should(termQuery("a", "1"))));
+		assertEquals(2L, optimizer.count(QueryOptimizer.Rule.UNWRAP_SINGLE_CLAUSE));
+	}
+
+	public void testSingleFilterUnwrappedOnlyWithoutScores() {
+		// a filter scores zero, its clause would score
+		BoolQueryBuilder bool = boolQuery().filter(termQuery("a", "1"));
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		assertEquals(termQuery("a", "1"), QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testBoostedBoolUnwrappedOnlyWithoutScores() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).boost(2);
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		assertEquals(termQuery("a", "1"), QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testNamedBoolKept() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).queryName("tenant");
+		assertSame(bool, QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testSingleShouldKeptWithMinimumShouldMatch() {
+		BoolQueryBuilder bool = boolQuery().should(termQuery("a", "1")).minimumShouldMatch(2);
+		assertSame(bool, QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testFlattenNestedConjunction() {
+		BoolQueryBuilder bool = boolQuery()
+				.must(boolQuery().must(termQuery("a", "1")).filter(termQuery("b", "2")).mustNot(termQuery("c", "3")))
+				.must(termQuery("d", "4"));
+		QueryBuilder expected = boolQuery().must(termQuery("a", "1")).must(termQuery("d", "4"))
+				.filter(termQuery("b", "2")).mustNot(termQuery("c", "3"));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testNamedAndBoostedInnerBoolsNotFlattened() {
+		BoolQueryBuilder named = boolQuery()
+				.must(boolQuery().must(termQuery("a", "1")).must(termQuery("b", "2")).queryName("inner"))
+				.must(termQuery("d", "4"));
+		assertSame(named, QueryOptimizer.DEFAULT.optimizeFilter(named));
+		BoolQueryBuilder boosted = boolQuery()
+				.must(boolQuery().must(termQuery("a", "1")).must(termQuery("b", "2")).boost(3))
+				.must(termQuery("d", "4"));
+		assertSame(boosted, QueryOptimizer.DEFAULT.optimize(boosted));
+	}
+
+	public void testShouldNotFlattenedWithMinimumShouldMatch() {
+		BoolQueryBuilder bool = boolQuery()
+				.should(boolQuery().should(termQuery("a", "1")).should(termQuery("b", "2")))
+				.should(termQuery("c", "3"))
+				.minimumShouldMatch(2);
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testNegatedDisjunctionSplit() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1"))
+				.mustNot(boolQuery().should(termQuery("b", "2")).should(termQuery("c", "3")));
+		QueryBuilder expected = boolQuery().must(termQuery("a", "1"))
+				.mustNot(termQuery("b", "2")).mustNot(termQuery("c", "3"));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testDuplicateScoringClausesKept() {
+		// repeated must clauses add up their scores
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).must(termQuery("a", "1")).must(termQuery("b", "2"));
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		QueryBuilder expected = boolQuery().must(termQuery("a", "1")).must(termQuery("b", "2"));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testFilterEqualToMustDropped() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).filter(termQuery("a", "1"));
+		assertEquals(termQuery("a", "1"), QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testDuplicateShouldKeptWithMinimumShouldMatch() {
+		BoolQueryBuilder bool = boolQuery().should(termQuery("a", "1")).should(termQuery("a", "1"))
+				.should(termQuery("b", "2")).minimumShouldMatch(2);
+		assertSame(bool, QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testMatchAllDropped() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).filter(matchAllQuery());
+		assertEquals(termQuery("a", "1"), QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testLastRequiredMatchAllKept() {
+		// without a required clause the should clauses would become required
+		BoolQueryBuilder bool = boolQuery().filter(matchAllQuery()).should(termQuery("a", "1"));
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		BoolQueryBuilder named = boolQuery().filter(termQuery("a", "1")).filter(matchAllQuery().queryName("all"));
+		assertSame(named, QueryOptimizer.DEFAULT.optimize(named));
+	}
+
+	public void testMergeTermsWithoutScores() {
+		BoolQueryBuilder bool = boolQuery().should(termQuery("f", "a")).should(termsQuery("f", "b", "c"))
+				.should(termQuery("g", "x"));
+		assertSame(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		QueryBuilder expected = boolQuery().should(termsQuery("f", "a", "b", "c")).should(termQuery("g", "x"));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testMergeTermsInMustNot() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1"))
+				.mustNot(termQuery("f", "a")).mustNot(termQuery("f", "b"));
+		QueryBuilder expected = boolQuery().must(termQuery("a", "1")).mustNot(termsQuery("f", "a", "b"));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testMergeTermsKeepsNamedAndCountedClauses() {
+		BoolQueryBuilder named = boolQuery().should(termQuery("f", "a")).should(termQuery("f", "b").queryName("b"));
+		assertSame(named, QueryOptimizer.DEFAULT.optimizeFilter(named));
+		BoolQueryBuilder counted = boolQuery().should(termQuery("f", "a")).should(termQuery("f", "b"))
+				.should(termQuery("g", "c")).minimumShouldMatch(2);
+		assertSame(counted, QueryOptimizer.DEFAULT.optimizeFilter(counted));
+	}
+
+	public void testKeepsBoostAndNameOfRewrittenBool() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", "1")).must(boolQuery().must(termQuery("b", "2")))
+				.boost(2).queryName("outer");
+		QueryBuilder expected = boolQuery().must(termQuery("a", "1")).must(termQuery("b", "2"))
+				.boost(2).queryName("outer");
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testGivenQueryNotModified() {
+		BoolQueryBuilder inner = boolQuery().must(termQuery("a", "1")).must(termQuery("b", "2"));
+		BoolQueryBuilder bool = boolQuery().must(inner).must(termQuery("a", "1"));
+		String before = Asserts.json(bool);
+		QueryOptimizer.DEFAULT.optimizeFilter(bool);
+		assertEquals(before, Asserts.json(bool));
+	}
+
+	public void testWildcardToPrefix() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		assertEquals(prefixQuery("f", "abc").boost(2).queryName("w"),
+				optimizer.optimize(wildcardQuery("f", "abc*").boost(2).queryName("w")));
+		assertEquals(prefixQuery("f", "abc"), optimizer.optimize(wildcardQuery("f", "abc**")));
+		assertEquals(2L, optimizer.count(QueryOptimizer.Rule.WILDCARD_TO_PREFIX));
+	}
+
+	public void testWildcardToExists() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		assertEquals(existsQuery("f").boost(2).queryName("w"),
+				optimizer.optimize(wildcardQuery("f", "*").boost(2).queryName("w")));
+		assertEquals(existsQuery("f"), optimizer.optimize(wildcardQuery("f", "**")));
+		assertEquals(existsQuery("f"), optimizer.optimize(prefixQuery("f", "")));
+		assertEquals(3L, optimizer.count(QueryOptimizer.Rule.MULTI_TERM_TO_EXISTS));
+		assertEquals(Collections.emptyMap(), optimizer.leadingWildcards());
+	}
+
+	public void testWildcardToTermOnlyWithoutScores() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		WildcardQueryBuilder wildcard = wildcardQuery("f", "abc").boost(2).queryName("w");
+		assertSame(wildcard, optimizer.optimize(wildcard));
+		assertEquals(termQuery("f", "abc").boost(2).queryName("w"), optimizer.optimizeFilter(wildcard));
+		assertEquals(boolQuery().must(wildcard).filter(termQuery("g", "abc")),
+				optimizer.optimize(boolQuery().must(wildcard).filter(wildcardQuery("g", "abc"))));
+		assertEquals(2L, optimizer.count(QueryOptimizer.Rule.WILDCARD_TO_TERM));
+	}
+
+	public void testEscapedWildcards() {
+		assertEquals(termQuery("f", "a*b?"), QueryOptimizer.DEFAULT.optimizeFilter(wildcardQuery("f", "a\\*b\\?")));
+		assertEquals(prefixQuery("f", "a*b"), QueryOptimizer.DEFAULT.optimize(wildcardQuery("f", "a\\*b*")));
+		assertEquals(prefixQuery("f", "a\\"), QueryOptimizer.DEFAULT.optimize(wildcardQuery("f", "a\\\\*")));
+		// a trailing backslash escapes nothing and stands for itself
+		assertEquals(termQuery("f", "ab\\"), QueryOptimizer.DEFAULT.optimizeFilter(wildcardQuery("f", "ab\\")));
+		// an escaped wildcard before the trailing one is part of the prefix, not a leading wildcard
+		QueryOptimizer optimizer = new QueryOptimizer();
+		assertEquals(prefixQuery("f", "*a"), optimizer.optimize(wildcardQuery("f", "\\*a*")));
+		assertEquals(Collections.emptyMap(), optimizer.leadingWildcards());
+	}
+
+	public void testQuestionMarksAndInnerWildcardsKept() {
+		for (String pattern : new String[] { "ab?", "a?c*", "a*c", "a*c*", "?" }) {
+			WildcardQueryBuilder wildcard = wildcardQuery("f", pattern);
+			assertSame(wildcard, QueryOptimizer.DEFAULT.optimize(wildcard));
+			assertSame(wildcard, QueryOptimizer.DEFAULT.optimizeFilter(wildcard));
+		}
+	}
+
+	public void testBooleanRewritesReplaced() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		assertEquals(wildcardQuery("f", "a*c").boost(2).queryName("w"),
+				optimizer.optimize(wildcardQuery("f", "a*c").rewrite("constant_score_boolean").boost(2).queryName("w")));
+		assertEquals(prefixQuery("f", "a"), optimizer.optimize(prefixQuery("f", "a").rewrite("constant_score_boolean")));
+		assertEquals(prefixQuery("f", "a"), optimizer.optimize(wildcardQuery("f", "a*").rewrite("constant_score")));
+		// scoring_boolean scores by term frequency, only replaced where scores are ignored
+		WildcardQueryBuilder scoring = wildcardQuery("f", "a*c").rewrite("scoring_boolean");
+		assertSame(scoring, optimizer.optimize(scoring));
+		assertEquals(wildcardQuery("f", "a*c"), optimizer.optimizeFilter(scoring));
+		assertEquals(prefixQuery("f", "a").rewrite("scoring_boolean"),
+				optimizer.optimize(wildcardQuery("f", "a*").rewrite("scoring_boolean")));
+		assertEquals(prefixQuery("f", "a"), optimizer.optimizeFilter(prefixQuery("f", "a").rewrite("scoring_boolean")));
+		WildcardQueryBuilder topTerms = wildcardQuery("f", "a*c").rewrite("top_terms_10");
+		assertSame(topTerms, optimizer.optimizeFilter(topTerms));
+		assertEquals(4L, optimizer.count(QueryOptimizer.Rule.REWRITE_MODE));
+	}
+
+	public void testTopTermsRewrite() {
+		QueryOptimizer optimizer = QueryOptimizer.builder().topTermsRewrite(10).build();
+		assertEquals(wildcardQuery("f", "*abc").rewrite("top_terms_10").boost(2).queryName("w"),
+				optimizer.optimize(wildcardQuery("f", "*abc").boost(2).queryName("w")));
+		assertEquals(wildcardQuery("f", "?abc").rewrite("top_terms_10"), optimizer.optimize(wildcardQuery("f", "?abc")));
+		// only scoring queries starting with a wildcard without a rewrite of their own
+		WildcardQueryBuilder filter = wildcardQuery("f", "*abc");
+		assertSame(filter, optimizer.optimizeFilter(filter));
+		WildcardQueryBuilder inner = wildcardQuery("f", "ab*c");
+		assertSame(inner, optimizer.optimize(inner));
+		WildcardQueryBuilder rewritten = wildcardQuery("f", "*abc").rewrite("scoring_boolean");
+		assertSame(rewritten, optimizer.optimize(rewritten));
+		assertEquals(2L, optimizer.count(QueryOptimizer.Rule.TOP_TERMS_REWRITE));
+		assertSame(filter, QueryOptimizer.DEFAULT.optimize(filter));
+		expectThrows(IllegalArgumentException.class, () -> QueryOptimizer.builder().topTermsRewrite(-1));
+	}
+
+	public void testLeadingWildcardsCountedOncePerQuery() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		// the nested bool is flattened first, so the wildcard is seen by several passes
+		BoolQueryBuilder bool = boolQuery().must(boolQuery().must(wildcardQuery("f", "*a")).must(termQuery("g", "1")))
+				.should(wildcardQuery("f", "*a")).should(wildcardQuery("g", "*a"));
+		optimizer.optimize(bool);
+		assertTrue("several passes, got " + optimizer.passCount(), optimizer.passCount() > 1);
+		assertEquals(1L, optimizer.leadingWildcards().get("f:*a"));
+		assertEquals(1L, optimizer.leadingWildcards().get("g:*a"));
+		optimizer.optimizeFilter(wildcardQuery("f", "*a"));
+		assertEquals(2L, optimizer.leadingWildcards().get("f:*a"));
+		assertEquals(2, optimizer.leadingWildcards().size());
+	}
+
+	public void testLeadingWildcardsCapped() {
+		QueryOptimizer optimizer = new QueryOptimizer();
+		for (int i = 0; i < 1000; i++) {
+			optimizer.optimize(wildcardQuery("f", "*" + i));
+		}
+		optimizer.optimize(wildcardQuery("f", "*new"));
+		optimizer.optimize(wildcardQuery("f", "*0"));
+		assertEquals(1000, optimizer.leadingWildcards().size());
+		assertEquals(null, optimizer.leadingWildcards().get("f:*new"));
+		// patterns already reported keep counting
+		assertEquals(2L, optimizer.leadingWildcards().get("f:*0"));
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.existsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.idsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchAllQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchPhrasePrefixQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchPhraseQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.matchQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.multiMatchQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.prefixQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.queryStringQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.rangeQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.wildcardQuery;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class QueryParserRegistryTest {
+
+	private static QueryBuilder parse(String json) throws IOException {
+		return QueryParserRegistry.DEFAULT.parseQuery(json);
+	}
+
+	private static SearchSourceBuilder parseSource(String json) throws IOException {
+		return SearchSourceBuilder.fromXContent(new JsonXContentParser(json));
+	}
+
+	private static void assertRejected(String json) {
+		expectThrows(ParsingException.class, () -> parse(json));
+	}
+
+	private static void assertRejected(String json, String message) {
+		ParsingException e = expectThrows(ParsingException.class, () -> parse(json));
+		assertTrue(e.getMessage(), e.getMessage().contains(message));
+	}
+
+	/**
+	 * One query of each registered name, with options away from their defaults. Integral
+	 * values are parsed back as int when they fit, so the queries hold them as such.
+	 */
+	private static List<QueryBuilder> queries() {
+		return Arrays.asList(
+				matchAllQuery().boost(2).queryName("all"),
+				termQuery("f", "a").boost(1.5f).queryName("t"),
+				termQuery("f", 5),
+				termQuery("f", 5000000000L),
+				termQuery("f", true),
+				termsQuery("f", "b", "a").boost(3),
+				termsQuery("f", new int[] { 1, 2 }),
+				idsQuery("t1").addIds("2", "1").queryName("ids"),
+				matchQuery("f", "a b").operator(Operator.AND).analyzer("standard").minimumShouldMatch("2")
+						.zeroTermsQuery(MatchQuery.ZeroTermsQuery.ALL).autoGenerateSynonymsPhraseQuery(false).boost(2),
+				matchPhraseQuery("f", "a b").slop(2).analyzer("standard").queryName("p"),
+				matchPhrasePrefixQuery("f", "a b").slop(1).analyzer("standard"),
+				multiMatchQuery("a b", "f1", "f2").field("f3", 2).type(MultiMatchQueryBuilder.Type.MOST_FIELDS)
+						.operator(Operator.AND).slop(3).minimumShouldMatch("50%").analyzer("standard"),
+				queryStringQuery("a AND b").defaultField("f").defaultOperator(Operator.AND).phraseSlop(2)
+						.allowLeadingWildcard(false).fuzzyMaxExpansions(10).lenient(true).boost(2),
+				queryStringQuery("a").field("f1").field("f2", 3).minimumShouldMatch("1"),
+				rangeQuery("f").gte(1).lt(10).boost(2).queryName("r"),
+				rangeQuery("f").gt("a"),
+				wildcardQuery("f", "a*b?").rewrite("constant_score").boost(2),
+				prefixQuery("f", "ab").rewrite("top_terms_10").queryName("pre"),
+				existsQuery("f").boost(2),
+				boolQuery().must(termQuery("a", "1")).filter(rangeQuery("b").lte(5)).mustNot(existsQuery("c"))
+						.should(matchQuery("d", "x")).should(boolQuery().should(termQuery("e", "y")))
+						.minimumShouldMatch(1).adjustPureNegative(false).boost(2).queryName("bool"));
+	}
+
+	public void testRoundTrip() throws IOException {
+		Set<String> names = new HashSet<>();
+		for (QueryBuilder query : queries()) {
+			QueryBuilder parsed = parse(query.toString());
+			assertEquals(query, parsed);
+			assertEquals(query.hashCode(), parsed.hashCode());
+			assertEquals(query.toString(), parsed.toString());
+			names.add(query.getName());
+		}
+		assertEquals(QueryParserRegistry.DEFAULT.names(), names);
+	}
+
+	public void testRoundTripInSearchSource() throws IOException {
+		SearchSourceBuilder source = new SearchSourceBuilder().from(5).size(10).query(queries().get(queries().size() - 1));
+		SearchSourceBuilder parsed = parseSource(source.toString());
+		assertEquals(source.toString(), parsed.toString());
+	}
+
+	public void testTrailingRootValues() {
+		assertRejected("{\"term\":{\"f\":\"a\"}} {\"term\":{\"f\":\"b\"}}", "unexpected content after the query");
+		assertRejected("{\"term\":{\"f\":\"a\"}}}");
+		assertRejected("{\"term\":{\"f\":\"a\"}} 1");
+		expectThrows(ParsingException.class, () -> parseSource("{\"size\":10} {\"size\":5}"));
+		expectThrows(ParsingException.class, () -> parseSource("{\"size\":10}}"));
+		expectThrows(ParsingException.class, () -> parseSource("{\"query\":{\"match_all\":{}}} x"));
+	}
+
+	public void testLeadingZeros() throws IOException {
+		assertRejected("{\"term\":{\"f\":01}}", "leading zeros");
+		assertRejected("{\"term\":{\"f\":-012}}", "leading zeros");
+		assertRejected("{\"term\":{\"f\":00.5}}", "leading zeros");
+		expectThrows(ParsingException.class, () -> parseSource("{\"size\":010}"));
+		// a single zero is fine, also before a fraction or an exponent
+		assertEquals(termQuery("f", 0), parse("{\"term\":{\"f\":0}}"));
+		assertEquals(termQuery("f", 0), parse("{\"term\":{\"f\":-0}}"));
+		assertEquals(termQuery("f", 0.5), parse("{\"term\":{\"f\":0.5}}"));
+		assertEquals(termQuery("f", 0.0), parse("{\"term\":{\"f\":0e1}}"));
+		assertEquals(termQuery("f", 100), parse("{\"term\":{\"f\":100}}"));
+	}
+
+	public void testUnknownFields() {
+		assertRejected("{\"term\":{\"f\":{\"value\":\"a\",\"case_insensitive\":true}}}", "does not support [case_insensitive]");
+		assertRejected("{\"range\":{\"f\":{\"gte\":1,\"format\":\"x\"}}}", "does not support [format]");
+		assertRejected("{\"match_phrase_prefix\":{\"f\":{\"query\":\"a\",\"max_expansions\":5}}}");
+		assertRejected("{\"term\":{\"f\":\"a\"},\"x\":1}");
+		assertRejected("{\"nope\":{}}", "no [query] registered for [nope]");
+		expectThrows(ParsingException.class, () -> parseSource("{\"unknown\":1}"));
+	}
+
+	public void testWrongTokenTypes() {
+		assertRejected("{\"term\":{\"f\":{\"value\":\"a\",\"boost\":true}}}");
+		assertRejected("{\"match_all\":{\"boost\":null}}");
+		assertRejected("{\"match_phrase\":{\"f\":{\"query\":\"a\",\"slop\":true}}}");
+		assertRejected("{\"terms\":{\"f\":[[1]]}}");
+		assertRejected("{\"ids\":{\"values\":[true]}}");
+		assertRejected("{\"range\":{\"f\":{\"gte\":[1]}}}");
+		assertRejected("{\"bool\":{\"must\":[null]}}");
+		assertRejected("{\"bool\":{\"adjust_pure_negative\":1}}");
+		assertRejected("{\"term\":1}");
+		assertRejected("[]");
+		expectThrows(ParsingException.class, () -> parseSource("{\"size\":true}"));
+		expectThrows(ParsingException.class, () -> parseSource("{\"size\":1.5}"));
+	}
+
+	public void testUnknownOperator() {
+		assertRejected("{\"match\":{\"f\":{\"query\":\"a\",\"operator\":\"xor\"}}}", "unknown operator [xor]");
+		assertRejected("{\"multi_match\":{\"query\":\"a\",\"operator\":\"xor\"}}", "unknown operator [xor]");
+		assertRejected("{\"query_string\":{\"query\":\"a\",\"default_operator\":\"xor\"}}", "unknown operator [xor]");
+	}
+
+	public void testValuesRejectedByBuilders() {
+		// the builders throw IllegalArgumentException, the parser reports the location
+		ParsingException e = expectThrows(ParsingException.class,
+				() -> parse("{\"match_phrase\":{\"f\":{\"query\":\"a\",\"slop\":-1}}}"));
+		assertTrue(e.getMessage(), e.getMessage().startsWith("[match_phrase] "));
+		assertTrue(e.getMessage(), e.getMessage().endsWith(" at [1:46]"));
+		assertTrue(e.getMessage(), e.getCause() instanceof IllegalArgumentException);
+		assertRejected("{\"multi_match\":{\"query\":\"a\",\"type\":\"x\"}}", "unknown type");
+		assertRejected("{\"term\":{}}", "field name is null or empty");
+		assertRejected("{\"term\":{\"f\":{\"boost\":2}}}", "value cannot be null");
+		assertRejected("{\"term\":{\"f\":null}}", "value cannot be null");
+		assertRejected("{\"wildcard\":{\"f\":{}}}", "value cannot be null");
+		assertRejected("{\"prefix\":{\"f\":{}}}", "value cannot be null");
+		assertRejected("{\"exists\":{\"field\":\"\"}}", "field name is null or empty");
+		// also from clauses nested in a bool query, wrapped once
+		e = expectThrows(ParsingException.class, () -> parse("{\"bool\":{\"must\":{\"range\":{}}}}"));
+		assertTrue(e.getMessage(), e.getMessage().startsWith("[range] "));
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.rangeQuery;
+
+import java.util.Arrays;
+
+public class RangeAlgebraTest {
+
+	public void testIntersect() {
+		assertEquals(rangeQuery("x").gte(10).lt(50),
+				RangeAlgebra.intersect(rangeQuery("x").gte(10), rangeQuery("x").lt(50)));
+		assertEquals(rangeQuery("x").gt(10).lte(20),
+				RangeAlgebra.intersect(rangeQuery("x").gte(5).lte(20), rangeQuery("x").gt(10).lte(30)));
+	}
+
+	public void testIntersectEqualBounds() {
+		// an exclusive bound wins over an inclusive one at the same value
+		assertEquals(rangeQuery("x").gt(10).lt(20),
+				RangeAlgebra.intersect(rangeQuery("x").gte(10).lt(20), rangeQuery("x").gt(10).lte(20)));
+		assertEquals(rangeQuery("x").gte(10).lte(20),
+				RangeAlgebra.intersect(rangeQuery("x").gte(10).lte(20), rangeQuery("x").gte(10).lte(20)));
+	}
+
+	public void testIntersectComparesNumbersByValue() {
+		assertEquals(rangeQuery("x").gte(10L).lte(20.5),
+				RangeAlgebra.intersect(rangeQuery("x").gte(10L).lte(30), rangeQuery("x").gte(2.5).lte(20.5)));
+	}
+
+	public void testIntersectEmpty() {
+		RangeQueryBuilder empty = RangeAlgebra.intersect(rangeQuery("x").gt(10), rangeQuery("x").lt(5));
+		assertEquals(true, RangeAlgebra.isEmpty(empty));
+		RangeQueryBuilder touching = RangeAlgebra.intersect(rangeQuery("x").gte(10), rangeQuery("x").lt(10));
+		assertEquals(true, RangeAlgebra.isEmpty(touching));
+		RangeQueryBuilder point = RangeAlgebra.intersect(rangeQuery("x").gte(10), rangeQuery("x").lte(10));
+		assertEquals(false, RangeAlgebra.isEmpty(point));
+	}
+
+	public void testIntersectUnorderedBounds() {
+		assertEquals(null, RangeAlgebra.intersect(rangeQuery("ts").gte("now-1d"), rangeQuery("ts").gte("2018-01-01")));
+		assertEquals(null, RangeAlgebra.intersect(rangeQuery("ts").lte("now/d"), rangeQuery("ts").lte("now")));
+		assertEquals(null,
+				RangeAlgebra.intersect(rangeQuery("x").gte(PreparedQuery.param("from")), rangeQuery("x").gte(10)));
+		assertEquals(rangeQuery("ts").gte("now-1d").lte("now"),
+				RangeAlgebra.intersect(rangeQuery("ts").gte("now-7d").lte("now"), rangeQuery("ts").gte("now-1d")));
+	}
+
+	public void testIntersectDropsBoostAndName() {
+		assertEquals(rangeQuery("x").gte(1).lte(2),
+				RangeAlgebra.intersect(rangeQuery("x").gte(1).boost(2).queryName("a"), rangeQuery("x").lte(2)));
+	}
+
+	public void testUnion() {
+		assertEquals(Arrays.asList(rangeQuery("x").gte(1).lte(8)),
+				RangeAlgebra.union(Arrays.asList(rangeQuery("x").gte(1).lte(5), rangeQuery("x").gte(3).lte(8))));
+		// touching at a bound included by either side
+		assertEquals(Arrays.asList(rangeQuery("x").gte(1).lte(8)),
+				RangeAlgebra.union(Arrays.asList(rangeQuery("x").gte(1).lt(5), rangeQuery("x").gte(5).lte(8))));
+		assertEquals(Arrays.asList(rangeQuery("x").gte(1).lt(8)),
+				RangeAlgebra.union(Arrays.asList(rangeQuery("x").gte(1).lte(5), rangeQuery("x").gt(5).lt(8))));
+	}
+
+	public void testUnionKeepsGaps() {
+		// 5 itself is in neither range
+		RangeQueryBuilder below = rangeQuery("x").gte(1).lt(5);
+		RangeQueryBuilder above = rangeQuery("x").gt(5).lte(8);
+		assertEquals(Arrays.asList(below, above), RangeAlgebra.union(Arrays.asList(below, above)));
+	}
+
+	public void testUnionMergesTransitively() {
+		// the third range bridges the first two
+		assertEquals(Arrays.asList(rangeQuery("x").gte(1).lte(10)),
+				RangeAlgebra.union(Arrays.asList(rangeQuery("x").gte(1).lte(3), rangeQuery("x").gte(7).lte(10),
+						rangeQuery("x").gte(3).lte(7))));
+	}
+
+	public void testUnionUnbounded() {
+		assertEquals(Arrays.asList(rangeQuery("x").gte(1)),
+				RangeAlgebra.union(Arrays.asList(rangeQuery("x").gte(1).lte(5), rangeQuery("x").gte(3))));
+	}
+
+	public void testUnionKeepsUnorderedRanges() {
+		RangeQueryBuilder dates = rangeQuery("ts").gte("2018-01-01").lte("2018-02-01");
+		RangeQueryBuilder math = rangeQuery("ts").gte("now-1d");
+		assertEquals(Arrays.asList(dates, math), RangeAlgebra.union(Arrays.asList(dates, math)));
+	}
+
+	public void testTextOrder() {
+		assertEquals(rangeQuery("ts").gte("2018-02-01").lte("2018-03-01"),
+				RangeAlgebra.intersect(rangeQuery("ts").gte("2018-01-01").lte("2018-03-01"),
+						rangeQuery("ts").gte("2018-02-01")));
+		// a string is not ordered against its own prefixes
+		assertEquals(null, RangeAlgebra.intersect(rangeQuery("ts").lte("2018-01"), rangeQuery("ts").lte("2018-01-15")));
+	}
+
+	public void testDifferentFieldsRejected() {
+		expectThrows(IllegalArgumentException.class,
+				() -> RangeAlgebra.intersect(rangeQuery("x").gte(1), rangeQuery("y").lte(2)));
+		expectThrows(IllegalArgumentException.class, () -> RangeAlgebra.intersect());
+	}
+
+	public void testOptimizerIntersectsSingleValuedFields() {
+		BoolQueryBuilder bool = QueryBuilders.boolQuery().filter(rangeQuery("x").gte(1).lte(10))
+				.filter(rangeQuery("x").gte(5).lte(20)).filter(QueryBuilders.termQuery("f", "a"));
+		// on a multi-valued field each range may be satisfied by another value
+		assertEquals(bool, QueryOptimizer.DEFAULT.optimize(bool));
+		QueryOptimizer optimizer = QueryOptimizer.builder().singleValued("x").build();
+		QueryBuilder expected = QueryBuilders.boolQuery().filter(rangeQuery("x").gte(5).lte(10))
+				.filter(QueryBuilders.termQuery("f", "a"));
+		assertEquals(expected, optimizer.optimize(bool));
+	}
+
+	public void testOptimizerDropsWiderRangesOfMultiValuedFields() {
+		BoolQueryBuilder bool = QueryBuilders.boolQuery().filter(rangeQuery("x").gte(1).lte(10))
+				.filter(rangeQuery("x").gte(2).lte(5));
+		assertEquals(rangeQuery("x").gte(2).lte(5), QueryOptimizer.DEFAULT.optimizeFilter(bool));
+	}
+
+	public void testOptimizerUnionsExcludedRanges() {
+		BoolQueryBuilder bool = QueryBuilders.boolQuery().must(QueryBuilders.termQuery("f", "a"))
+				.mustNot(rangeQuery("x").gte(1).lte(5)).mustNot(rangeQuery("x").gt(5).lte(8));
+		QueryBuilder expected = QueryBuilders.boolQuery().must(QueryBuilders.termQuery("f", "a"))
+				.mustNot(rangeQuery("x").gte(1).lte(8));
+		assertEquals(expected, QueryOptimizer.DEFAULT.optimize(bool));
+	}
+
+	public void testOptimizerKeepsNamedRanges() {
+		BoolQueryBuilder bool = QueryBuilders.boolQuery().filter(rangeQuery("x").gte(1).lte(10))
+				.filter(rangeQuery("x").gte(2).lte(5).queryName("narrow"));
+		QueryOptimizer optimizer = QueryOptimizer.builder().singleValued("x").build();
+		assertEquals(bool, optimizer.optimize(bool));
+	}
+
+	public void testOptimizerRangeToTerm() {
+		assertEquals(QueryBuilders.termQuery("x", 5),
+				QueryOptimizer.DEFAULT.optimizeFilter(rangeQuery("x").gte(5).lte(5)));
+		// a date as upper bound also accepts the rest of the day
+		RangeQueryBuilder day = rangeQuery("ts").gte("2018-01-01").lte("2018-01-01");
+		assertEquals(day, QueryOptimizer.DEFAULT.optimizeFilter(day));
+	}
+
+	public void testOptimizerRangeToTermOnKeywordFields() {
+		// 5 and 5.0 are the same number but different keywords
+		RangeQueryBuilder range = rangeQuery("code").gte(5).lte(5.0);
+		assertEquals(QueryBuilders.termQuery("code", 5), QueryOptimizer.DEFAULT.optimizeFilter(range));
+		QueryOptimizer optimizer = QueryOptimizer.builder().keyword("code").build();
+		assertEquals(range, optimizer.optimizeFilter(range));
+		assertEquals(0L, optimizer.count(QueryOptimizer.Rule.RANGE_TO_TERM));
+		assertEquals(QueryBuilders.termQuery("code", 5), optimizer.optimizeFilter(rangeQuery("code").gte(5).lte(5)));
+		assertEquals(1L, optimizer.count(QueryOptimizer.Rule.RANGE_TO_TERM));
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+public class ReleasableBytesStreamOutputTest {
+
+	private static SearchSourceBuilder search() {
+		String[] values = new String[500];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = "value-" + i;
+		}
+		return new SearchSourceBuilder().size(10).query(QueryBuilders.termsQuery("field", values));
+	}
+
+	private static void assertBytes(byte[] expected, byte[] actual) {
+		assertTrue("bytes differ, expected " + expected.length + " bytes and got " + actual.length,
+				Arrays.equals(expected, actual));
+	}
+
+	/**
+	 * Renders the search into pooled chunks far smaller than the body and reads it back
+	 * through every writeTo of the output.
+	 */
+	private static void checkPooledWrites(boolean direct) throws IOException {
+		SearchSourceBuilder source = search();
+		byte[] expected = source.toBytes(XContentType.JSON);
+		ByteBufferPool pool = new ByteBufferPool(256, 4, direct);
+		for (int round = 0; round < 3; round++) {
+			// later rounds run on recycled chunks
+			try (ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(pool)) {
+				source.writeTo(out);
+				assertEquals((long) expected.length, out.size());
+				assertBytes(expected, out.toByteArray());
+
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				out.writeTo(stream);
+				assertBytes(expected, stream.toByteArray());
+
+				ByteArrayOutputStream channel = new ByteArrayOutputStream();
+				out.writeTo(Channels.newChannel(channel));
+				assertBytes(expected, channel.toByteArray());
+
+				ByteBuffer target = ByteBuffer.allocate(expected.length + 1);
+				target.put((byte) 'x');
+				out.writeTo(target);
+				assertBytes(expected, Arrays.copyOfRange(target.array(), 1, target.position()));
+				// reading does not consume the chunks
+				assertBytes(expected, out.toByteArray());
+			}
+			assertEquals(4, pool.pooled());
+		}
+	}
+
+	public void testHeapChunks() throws IOException {
+		checkPooledWrites(false);
+	}
+
+	public void testDirectChunks() throws IOException {
+		checkPooledWrites(true);
+	}
+
+	public void testResetKeepsStreamOpen() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(16, 8, false);
+		ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(pool);
+		out.write(new byte[40], 0, 40);
+		out.reset();
+		assertEquals(3, pool.pooled());
+		out.write('a');
+		out.write("bc".getBytes("UTF-8"), 0, 2);
+		assertBytes("abc".getBytes("UTF-8"), out.toByteArray());
+		out.close();
+		expectThrows(IllegalStateException.class, () -> out.write('d'));
+	}
+
+	public void testTargetTooSmall() throws IOException {
+		ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(new ByteBufferPool(16, 8, false));
+		out.write(new byte[20], 0, 20);
+		ByteBuffer target = ByteBuffer.allocate(19);
+		expectThrows(BufferOverflowException.class, () -> out.writeTo(target));
+		assertEquals(0, target.position());
+	}
+
+	public void testPoolIgnoresForeignBuffers() {
+		ByteBufferPool pool = new ByteBufferPool(16, 2, false);
+		pool.release(ByteBuffer.allocate(32));
+		pool.release(ByteBuffer.allocateDirect(16));
+		pool.release(ByteBuffer.allocate(16).asReadOnlyBuffer());
+		assertEquals(0, pool.pooled());
+		ByteBuffer chunk = pool.acquire();
+		chunk.put((byte) 1);
+		pool.release(chunk);
+		assertSameCleared(chunk, pool.acquire());
+	}
+
+	private static void assertSameCleared(ByteBuffer expected, ByteBuffer actual) {
+		Asserts.assertSame(expected, actual);
+		assertEquals(0, actual.position());
+		assertEquals(actual.capacity(), actual.limit());
+	}
+
+}
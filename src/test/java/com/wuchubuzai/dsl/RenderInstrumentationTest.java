@@ -0,0 +1,45 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+
+import java.util.List;
+
+public class RenderInstrumentationTest {
+
+	public void testNoListeners() {
+		assertTrue("no listener registered", RenderInstrumentation.load(null).isEmpty());
+		assertTrue("no listener registered", RenderInstrumentation.load("").isEmpty());
+	}
+
+	public void testListenersByName() {
+		List<RenderListener> listeners = RenderInstrumentation.load(" com.wuchubuzai.dsl.RenderStats , com.wuchubuzai.dsl.JfrRenderListener");
+		assertEquals(2, listeners.size());
+		assertEquals(RenderStats.class, listeners.get(0).getClass());
+		assertEquals(JfrRenderListener.class, listeners.get(1).getClass());
+	}
+
+	public void testListenersThatCannotBeCreatedAreSkipped() {
+		// a misspelled class, a class that is no listener and one that fails to configure itself
+		List<RenderListener> listeners = RenderInstrumentation.load("com.wuchubuzai.dsl.RenderStat,java.lang.String,"
+				+ "com.wuchubuzai.dsl.RenderStats," + Misconfigured.class.getName());
+		assertEquals(1, listeners.size());
+		assertEquals(RenderStats.class, listeners.get(0).getClass());
+	}
+
+	public static class Misconfigured implements RenderListener {
+
+		public Misconfigured() {
+			throw new IllegalArgumentException("cannot parse timespan [1 fortnight]");
+		}
+
+		@Override
+		public void onQuery(String name) {
+		}
+
+		@Override
+		public void onRender(String type, QueryBuilder query, int queries, long bytes, long nanos) {
+		}
+	}
+
+}
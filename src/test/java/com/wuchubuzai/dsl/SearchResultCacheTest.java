@@ -0,0 +1,293 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertSame;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SearchResultCacheTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	/**
+	 * Results are the weight of their entry less the size of the key, so every entry weighs
+	 * exactly what the test asks for.
+	 */
+	private SearchResultCache<Long> cache(long maximumWeight) {
+		return SearchResultCache.<Long>builder().maximumWeight(maximumWeight).weigher(result -> result)
+				.expireAfterWrite(10, TimeUnit.SECONDS).ticker(now::get).build();
+	}
+
+	private static SearchSourceBuilder search(String name) {
+		return new SearchSourceBuilder().query(QueryBuilders.termQuery("f", name));
+	}
+
+	private static long result(String name, long weight) {
+		return weight - search(name).canonicalBytes().length;
+	}
+
+	private static void put(SearchResultCache<Long> cache, String name) {
+		cache.put(search(name), result(name, 1));
+	}
+
+	private static boolean contains(SearchResultCache<Long> cache, String name) {
+		return cache.getIfPresent(search(name)) != null;
+	}
+
+	/**
+	 * Fills a cache of 100 entries of weight 1, the last one still in the window of one entry.
+	 */
+	private SearchResultCache<Long> full() {
+		SearchResultCache<Long> cache = cache(100);
+		for (int i = 0; i < 100; i++) {
+			put(cache, "e" + i);
+		}
+		assertEquals(100, cache.size());
+		assertEquals(100L, cache.weightedSize());
+		assertEquals(0L, cache.evictionCount());
+		return cache;
+	}
+
+	public void testHitAndMiss() throws IOException {
+		SearchResultCache<Long> cache = cache(1000);
+		AtomicInteger calls = new AtomicInteger();
+		SearchResultCache.Backend<Long> backend = source -> {
+			calls.incrementAndGet();
+			return 100L;
+		};
+		assertEquals(100L, cache.get(search("a"), backend));
+		assertEquals(100L, cache.get(search("a"), backend));
+		assertEquals(1, calls.get());
+		assertEquals(1L, cache.hitCount());
+		assertEquals(1L, cache.missCount());
+		assertEquals(null, cache.getIfPresent(search("b")));
+		assertEquals(2L, cache.missCount());
+		assertEquals(100L + search("a").canonicalBytes().length, cache.weightedSize());
+	}
+
+	public void testEqualRequestsShareEntry() throws IOException {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(new SearchSourceBuilder().query(QueryBuilders.termsQuery("f", "b", "a")), 1L);
+		assertEquals(1L, cache.getIfPresent(new SearchSourceBuilder().query(QueryBuilders.termsQuery("f", "a", "b"))));
+	}
+
+	public void testProtectedEntriesOutliveProbation() {
+		SearchResultCache<Long> cache = full();
+		// e0 is promoted from probation to protected, e99 is read in the window
+		assertTrue("e0 cached", contains(cache, "e0"));
+		assertTrue("e99 cached", contains(cache, "e99"));
+		assertTrue("e99 cached", contains(cache, "e99"));
+		// pushes e99 out of the window, it is requested more often than e1, the least recently
+		// used entry on probation, and takes its place; e0, older than e1, is protected
+		put(cache, "n");
+		assertEquals(1L, cache.evictionCount());
+		assertEquals(100, cache.size());
+		assertTrue("e1 evicted", contains(cache, "e1") == false);
+		assertTrue("e0 protected", contains(cache, "e0"));
+		assertTrue("e99 admitted", contains(cache, "e99"));
+		assertTrue("n in the window", contains(cache, "n"));
+	}
+
+	public void testSketchRejectsColdCandidate() {
+		SearchResultCache<Long> cache = full();
+		// e99 leaves the window but is not requested more often than e0
+		put(cache, "n");
+		assertEquals(1L, cache.evictionCount());
+		assertEquals(100, cache.size());
+		assertEquals(100L, cache.weightedSize());
+		assertTrue("e99 rejected", contains(cache, "e99") == false);
+		assertTrue("e0 kept", contains(cache, "e0"));
+		assertTrue("n in the window", contains(cache, "n"));
+	}
+
+	public void testScanDoesNotFlushHotEntries() {
+		SearchResultCache<Long> cache = cache(100);
+		for (int i = 0; i < 50; i++) {
+			put(cache, "hot" + i);
+		}
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 50; i++) {
+				assertTrue("hot" + i + " cached", contains(cache, "hot" + i));
+			}
+		}
+		for (int page = 0; page < 1000; page++) {
+			put(cache, "page" + page);
+		}
+		assertTrue("at most 100 entries, found " + cache.size(), cache.size() <= 100);
+		assertTrue("weight within bounds", cache.weightedSize() <= cache.maximumWeight());
+		assertEquals((long) 50 + 1000 - cache.size(), cache.evictionCount());
+		for (int i = 0; i < 50; i++) {
+			assertTrue("hot" + i + " flushed", contains(cache, "hot" + i));
+		}
+	}
+
+	public void testHeavierThanMaximumWeight() throws IOException {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(search("a"), result("a", 10));
+		// replacing an entry with one that cannot be cached drops the old one
+		cache.put(search("a"), result("a", 1001));
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.weightedSize());
+		assertEquals(1L, cache.evictionCount());
+		// a search whose result cannot be cached still returns it
+		long heavy = result("b", 2000);
+		assertEquals(heavy, cache.get(search("b"), source -> heavy));
+		assertEquals(null, cache.getIfPresent(search("b")));
+		assertEquals(2L, cache.evictionCount());
+	}
+
+	public void testExpireAfterWrite() {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(search("a"), 1L);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10) - 1);
+		assertEquals(1L, cache.getIfPresent(search("a")));
+		now.incrementAndGet();
+		assertEquals(null, cache.getIfPresent(search("a")));
+		assertEquals(1L, cache.expirationCount());
+		assertEquals(1L, cache.missCount());
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.weightedSize());
+		assertEquals(0L, cache.evictionCount());
+	}
+
+	public void testTimeToLivePerEntry() {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(search("short"), 1L, 1, TimeUnit.SECONDS);
+		cache.put(search("long"), 2L, 1, TimeUnit.MINUTES);
+		cache.put(search("default"), 3L);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(null, cache.getIfPresent(search("short")));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertEquals(null, cache.getIfPresent(search("default")));
+		assertEquals(2L, cache.getIfPresent(search("long")));
+		assertEquals(2L, cache.expirationCount());
+		expectThrows(IllegalArgumentException.class, () -> cache.put(search("a"), 1L, 0, TimeUnit.SECONDS));
+	}
+
+	public void testCleanUp() {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(search("a"), 1L);
+		cache.put(search("b"), 2L);
+		cache.put(search("c"), 3L, 1, TimeUnit.MINUTES);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		cache.cleanUp();
+		assertEquals(2L, cache.expirationCount());
+		assertEquals(1, cache.size());
+		assertEquals(3L + search("c").canonicalBytes().length, cache.weightedSize());
+	}
+
+	public void testInvalidate() {
+		SearchResultCache<Long> cache = cache(1000);
+		cache.put(search("a"), 1L);
+		cache.put(search("b"), 2L);
+		cache.invalidate(search("a"));
+		cache.invalidate(search("missing"));
+		assertEquals(null, cache.getIfPresent(search("a")));
+		assertEquals(2L, cache.getIfPresent(search("b")));
+		assertEquals(2L + search("b").canonicalBytes().length, cache.weightedSize());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.weightedSize());
+		assertEquals(0L, cache.evictionCount());
+		assertEquals(0L, cache.expirationCount());
+	}
+
+	public void testInvalidArguments() {
+		expectThrows(IllegalArgumentException.class, () -> SearchResultCache.<Long>builder().maximumWeight(0));
+		expectThrows(IllegalArgumentException.class, () -> SearchResultCache.<Long>builder().build());
+		expectThrows(IllegalArgumentException.class, () -> SearchResultCache.<Long>builder().maximumWeight(1).build());
+		SearchResultCache<Long> cache = cache(1000);
+		expectThrows(IllegalArgumentException.class, () -> cache.put(search("a"), null));
+		expectThrows(IllegalArgumentException.class, () -> cache.put(search("a"), -1000L));
+		expectThrows(IllegalArgumentException.class, () -> cache.getIfPresent(null));
+	}
+
+	/**
+	 * Starts searches for the same request on several threads while the backend blocks, and
+	 * lets the backend finish once every thread missed the cache.
+	 */
+	private static List<Future<Long>> concurrentMisses(SearchResultCache<Long> cache, SearchResultCache.Backend<Long> backend,
+			CountDownLatch release, ExecutorService executor, int threads) throws InterruptedException {
+		List<Future<Long>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(() -> cache.get(search("a"), backend)));
+		}
+		// the first search is still running, so every miss waits for it
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (cache.missCount() < threads) {
+			assertTrue("only " + cache.missCount() + " searches started", System.nanoTime() - deadline < 0);
+			Thread.sleep(1);
+		}
+		release.countDown();
+		return futures;
+	}
+
+	public void testConcurrentMissesShareBackendCall() throws Exception {
+		SearchResultCache<Long> cache = cache(1000);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Long result = 42L;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Long>> futures = concurrentMisses(cache, source -> {
+				calls.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				return result;
+			}, release, executor, 4);
+			for (Future<Long> future : futures) {
+				assertSame(result, future.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(result, cache.getIfPresent(search("a")));
+	}
+
+	public void testConcurrentMissesShareBackendFailure() throws Exception {
+		SearchResultCache<Long> cache = cache(1000);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		IOException failure = new IOException("backend down");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Long>> futures = concurrentMisses(cache, source -> {
+				calls.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				throw failure;
+			}, release, executor, 4);
+			for (Future<Long> future : futures) {
+				ExecutionException e = expectThrows(ExecutionException.class,
+						() -> future.get(10, TimeUnit.SECONDS));
+				assertSame(failure, e.getCause());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(0, cache.size());
+		// the failure is not cached, the next search runs again
+		assertEquals(7L, cache.get(search("a"), source -> 7L));
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+public class SearchSourceBuilderTest {
+
+	private static SearchSourceBuilder largeSearch() {
+		String[] values = new String[4000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = "value-" + i;
+		}
+		return new SearchSourceBuilder().size(10).query(QueryBuilders.termsQuery("field", values));
+	}
+
+	public void testWriteToByteBuffer() throws IOException {
+		SearchSourceBuilder source = new SearchSourceBuilder().from(5).size(10).query(QueryBuilders.termQuery("a", "b"));
+		byte[] expected = source.toBytes(XContentType.JSON);
+		ByteBuffer target = ByteBuffer.allocate(1024);
+		target.put((byte) 'x');
+		assertEquals(expected.length, source.writeTo(target));
+		assertEquals(1 + expected.length, target.position());
+	}
+
+	public void testWriteToByteBufferOverflowResetsPosition() {
+		SearchSourceBuilder source = largeSearch();
+		int length = source.toBytes(XContentType.JSON).length;
+		// large enough for several flushed chunks, too small for the whole body
+		ByteBuffer target = ByteBuffer.allocate(length - 100);
+		target.put((byte) 'x');
+		expectThrows(BufferOverflowException.class, () -> source.writeTo(target));
+		assertEquals(1, target.position());
+	}
+
+	public void testParseRejectsNegativeFromAndSize() {
+		expectThrows(ParsingException.class,
+				() -> SearchSourceBuilder.fromXContent(new JsonXContentParser("{\"from\":-5}")));
+		expectThrows(ParsingException.class,
+				() -> SearchSourceBuilder.fromXContent(new JsonXContentParser("{\"size\":-1}")));
+	}
+
+	public void testParseFromAndSize() throws IOException {
+		SearchSourceBuilder source = SearchSourceBuilder.fromXContent(new JsonXContentParser("{\"from\":5,\"size\":0}"));
+		assertEquals(5, source.from());
+		assertEquals(0, source.size());
+	}
+
+}
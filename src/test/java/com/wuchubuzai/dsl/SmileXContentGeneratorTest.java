@@ -0,0 +1,222 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.Asserts.hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Golden bytes of the Smile tokens, worked out from the Smile format specification.
+ */
+public class SmileXContentGeneratorTest {
+
+	private static final String HEADER = "3A 29 0A 00";
+
+	interface Writes {
+		void write(XContentGenerator generator) throws IOException;
+	}
+
+	/**
+	 * Renders with the smallest buffer, so longer values are flushed in between, and returns
+	 * the bytes after the header.
+	 */
+	private static String smile(Writes writes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (XContentGenerator generator = new SmileXContentGenerator(out, new byte[64])) {
+			writes.write(generator);
+			generator.flush();
+			assertEquals((long) out.size(), generator.bytesWritten());
+		}
+		String hex = hex(out.toByteArray());
+		assertEquals(HEADER, hex.substring(0, HEADER.length()));
+		return hex.substring(HEADER.length()).trim();
+	}
+
+	private static String string(String value) throws IOException {
+		return smile(generator -> generator.writeString(value));
+	}
+
+	private static String fieldName(String name) throws IOException {
+		return smile(generator -> generator.writeFieldName(name));
+	}
+
+	private static String number(String value) throws IOException {
+		return smile(generator -> generator.writeNumber(value));
+	}
+
+	/**
+	 * A value of the given number of UTF-8 bytes, ASCII or starting with a two byte char.
+	 */
+	private static String text(int bytes, boolean unicode) {
+		char[] chars = new char[unicode ? bytes - 1 : bytes];
+		Arrays.fill(chars, 'a');
+		if (unicode) {
+			chars[0] = '\u00e9';
+		}
+		return new String(chars);
+	}
+
+	private static String utf8(String value) {
+		return hex(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void testHeaderOnly() throws IOException {
+		assertEquals("", smile(generator -> { }));
+	}
+
+	public void testLiterals() throws IOException {
+		assertEquals("21", smile(XContentGenerator::writeNull));
+		assertEquals("23", smile(generator -> generator.writeBoolean(true)));
+		assertEquals("22", smile(generator -> generator.writeBoolean(false)));
+	}
+
+	public void testContainers() throws IOException {
+		String hex = smile(generator -> {
+			generator.writeStartObject();
+			generator.writeFieldName("a");
+			generator.writeStartArray();
+			generator.writeNumber(1);
+			generator.writeStartObject();
+			generator.writeEndObject();
+			generator.writeStartArray();
+			generator.writeEndArray();
+			generator.writeEndArray();
+			generator.writeEndObject();
+		});
+		assertEquals("FA 80 61 F8 C2 FA FB F8 F9 F9 FB", hex);
+	}
+
+	public void testUnbalancedContainers() throws IOException {
+		SmileXContentGenerator generator = new SmileXContentGenerator(new ByteArrayOutputStream());
+		expectThrows(IllegalStateException.class, generator::writeEndObject);
+		generator.writeStartArray();
+		generator.writeEndArray();
+		expectThrows(IllegalStateException.class, generator::writeEndArray);
+	}
+
+	public void testSmallInts() throws IOException {
+		// zigzag encoded into the token
+		assertEquals("C0", smile(generator -> generator.writeNumber(0)));
+		assertEquals("C1", smile(generator -> generator.writeNumber(-1)));
+		assertEquals("C2", smile(generator -> generator.writeNumber(1)));
+		assertEquals("DE", smile(generator -> generator.writeNumber(15)));
+		assertEquals("DF", smile(generator -> generator.writeNumber(-16)));
+	}
+
+	public void testInts() throws IOException {
+		// zigzag encoded 7 bit groups, the last one of 6 bits with the high bit set
+		assertEquals("24 A0", smile(generator -> generator.writeNumber(16)));
+		assertEquals("24 A1", smile(generator -> generator.writeNumber(-17)));
+		assertEquals("24 01 80", smile(generator -> generator.writeNumber(32)));
+		assertEquals("24 03 88", smile(generator -> generator.writeNumber(100)));
+		assertEquals("24 1F 7F 7F 7F BE", smile(generator -> generator.writeNumber(Integer.MAX_VALUE)));
+		assertEquals("24 1F 7F 7F 7F BF", smile(generator -> generator.writeNumber(Integer.MIN_VALUE)));
+	}
+
+	public void testLongs() throws IOException {
+		// longs in the int range are written as ints
+		assertEquals("C2", smile(generator -> generator.writeNumber(1L)));
+		assertEquals("24 1F 7F 7F 7F BE", smile(generator -> generator.writeNumber((long) Integer.MAX_VALUE)));
+		assertEquals("25 20 00 00 00 80", smile(generator -> generator.writeNumber(Integer.MAX_VALUE + 1L)));
+		assertEquals("25 20 00 00 00 81", smile(generator -> generator.writeNumber(Integer.MIN_VALUE - 1L)));
+		assertEquals("25 03 7F 7F 7F 7F 7F 7F 7F 7F BE", smile(generator -> generator.writeNumber(Long.MAX_VALUE)));
+		assertEquals("25 03 7F 7F 7F 7F 7F 7F 7F 7F BF", smile(generator -> generator.writeNumber(Long.MIN_VALUE)));
+	}
+
+	public void testBigIntegers() throws IOException {
+		assertEquals("24 03 88", number("100"));
+		assertEquals("C1", number("-1"));
+		assertEquals("C2", number("1E0"));
+		assertEquals("24 03 88", number("1E2"));
+		assertEquals("25 03 7F 7F 7F 7F 7F 7F 7F 7F BF", number("-9223372036854775808"));
+		// length 9 of the two's complement bytes 00 80 00 .. 00, then 7 bit groups
+		assertEquals("26 89 00 20 00 00 00 00 00 00 00 00 00", number("9223372036854775808"));
+		// FF 7F FF .. FF
+		assertEquals("26 89 7F 5F 7F 7F 7F 7F 7F 7F 7F 7F 03", number("-9223372036854775809"));
+	}
+
+	public void testBigDecimals() throws IOException {
+		// zigzag scale, length 1 and 0F as 7 bit groups
+		assertEquals("2A 82 81 07 01", number("1.5"));
+		// unscaled -15 is F1
+		assertEquals("2A 82 81 78 01", number("-1.5"));
+		assertEquals("2A 84 81 00 01", number("0.01"));
+		expectThrows(NumberFormatException.class, () -> number("1.5.5"));
+	}
+
+	public void testFloats() throws IOException {
+		// 32 bits as five 7 bit groups
+		assertEquals("28 03 7C 00 00 00", smile(generator -> generator.writeNumber(1.0f)));
+		assertEquals("28 0C 00 00 00 00", smile(generator -> generator.writeNumber(-2.0f)));
+		assertEquals("28 07 7E 00 00 00", smile(generator -> generator.writeNumber(Float.NaN)));
+	}
+
+	public void testDoubles() throws IOException {
+		// 64 bits as ten 7 bit groups, the first holding the sign bit
+		assertEquals("29 00 3F 78 00 00 00 00 00 00 00", smile(generator -> generator.writeNumber(1.0d)));
+		assertEquals("29 01 40 00 00 00 00 00 00 00 00", smile(generator -> generator.writeNumber(-2.0d)));
+		assertEquals("29 00 00 00 00 00 00 00 00 00 00", smile(generator -> generator.writeNumber(0.0d)));
+	}
+
+	public void testAsciiStrings() throws IOException {
+		assertEquals("20", string(""));
+		assertEquals("40 61", string("a"));
+		assertEquals("5F " + utf8(text(32, false)), string(text(32, false)));
+		assertEquals("60 " + utf8(text(33, false)), string(text(33, false)));
+		assertEquals("7F " + utf8(text(64, false)), string(text(64, false)));
+		assertEquals("E0 " + utf8(text(65, false)) + " FC", string(text(65, false)));
+		assertEquals("E0 " + utf8(text(200, false)) + " FC", string(text(200, false)));
+	}
+
+	public void testUnicodeStrings() throws IOException {
+		assertEquals("80 C3 A9", string("\u00e9"));
+		assertEquals("9F " + utf8(text(33, true)), string(text(33, true)));
+		assertEquals("A0 " + utf8(text(34, true)), string(text(34, true)));
+		assertEquals("BE " + utf8(text(64, true)), string(text(64, true)));
+		assertEquals("E4 " + utf8(text(65, true)) + " FC", string(text(65, true)));
+		assertEquals("81 E2 82 AC", string("\u20ac"));
+		assertEquals("82 F0 9F 98 80", string("\ud83d\ude00"));
+		// an unpaired surrogate is replaced like the JDK encoder does
+		assertEquals("41 61 3F", string("a\ud83d"));
+	}
+
+	public void testFieldNames() throws IOException {
+		assertEquals("20", fieldName(""));
+		assertEquals("80 61", fieldName("a"));
+		assertEquals("84 " + utf8("query"), fieldName("query"));
+		assertEquals("BF " + utf8(text(64, false)), fieldName(text(64, false)));
+		assertEquals("34 " + utf8(text(65, false)) + " FC", fieldName(text(65, false)));
+		assertEquals("C0 C3 A9", fieldName("\u00e9"));
+		assertEquals("F6 " + utf8(text(56, true)), fieldName(text(56, true)));
+		assertEquals("34 " + utf8(text(57, true)) + " FC", fieldName(text(57, true)));
+	}
+
+	public void testRawValueLongerThanBuffer() throws IOException {
+		byte[] raw = new byte[100];
+		Arrays.fill(raw, (byte) 0x41);
+		String hex = smile(generator -> {
+			generator.writeStartArray();
+			generator.writeRawValue(raw, 10, 80);
+			generator.writeEndArray();
+		});
+		assertEquals("F8 " + hex(Arrays.copyOfRange(raw, 10, 90)) + " F9", hex);
+	}
+
+	public void testSearchBody() throws IOException {
+		SearchSourceBuilder source = new SearchSourceBuilder().size(20)
+				.query(QueryBuilders.termQuery("f", "a"));
+		String expected = HEADER + " FA 83 " + utf8("size") + " 24 A8 84 " + utf8("query") + " FA 83 " + utf8("term")
+				+ " FA 80 66 FA 84 " + utf8("value") + " 40 61 84 " + utf8("boost") + " 28 03 7C 00 00 00 FB FB FB FB";
+		assertEquals(expected, hex(source.toBytes(XContentType.SMILE)));
+	}
+
+	public void testBufferTooSmall() {
+		expectThrows(IllegalArgumentException.class, () -> new SmileXContentGenerator(new ByteArrayOutputStream(), new byte[63]));
+		expectThrows(IllegalArgumentException.class, () -> new SmileXContentGenerator(null));
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.rangeQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+
+import java.util.BitSet;
+
+public class TermsCompressorTest {
+
+	private static int[] run(int from, int to) {
+		int[] values = new int[to - from + 1];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = from + i;
+		}
+		return values;
+	}
+
+	private static int[] concat(int[]... arrays) {
+		int length = 0;
+		for (int[] array : arrays) {
+			length += array.length;
+		}
+		int[] all = new int[length];
+		int next = 0;
+		for (int[] array : arrays) {
+			System.arraycopy(array, 0, all, next, array.length);
+			next += array.length;
+		}
+		return all;
+	}
+
+	public void testNoValues() {
+		assertEquals(termsQuery("id", new int[0]), TermsCompressor.DEFAULT.compress("id", new int[0]));
+	}
+
+	public void testScatteredValuesStayTerms() {
+		// sorted, duplicates dropped
+		assertEquals(termsQuery("id", new int[] { 1, 2, 3, 7 }), TermsCompressor.DEFAULT.compress("id", 3, 7, 1, 2, 3));
+	}
+
+	public void testShortRunsStayTerms() {
+		// a range costs more than a lookup of each of 4 values, and 20 short values take fewer bytes than one
+		assertEquals(termsQuery("id", run(1, 4)), TermsCompressor.DEFAULT.compress("id", run(1, 4)));
+		assertEquals(termsQuery("id", run(1, 20)), TermsCompressor.DEFAULT.compress("id", run(1, 20)));
+	}
+
+	public void testRunBecomesRange() {
+		assertEquals(rangeQuery("id").gte(1).lte(1000), TermsCompressor.DEFAULT.compress("id", run(1, 1000)));
+	}
+
+	public void testRunsAndResidualValues() {
+		QueryBuilder expected = boolQuery().should(rangeQuery("id").gte(1).lte(1000))
+				.should(termsQuery("id", new int[] { 5000, 7000 }));
+		assertEquals(expected, TermsCompressor.DEFAULT.compress("id", concat(new int[] { 7000, 5000 }, run(1, 1000))));
+	}
+
+	public void testRendersSmall() {
+		int[] values = run(1000, 250000);
+		values[500] = 1000;
+		values[90000] = 1000;
+		String json = Asserts.json(TermsCompressor.DEFAULT.compress("id", values));
+		assertTrue("rendered " + json.length() + " chars", json.length() < 1000);
+	}
+
+	public void testLongs() {
+		long[] values = new long[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = Long.MAX_VALUE - i;
+		}
+		assertEquals(rangeQuery("id").gte(Long.MAX_VALUE - 999).lte(Long.MAX_VALUE),
+				TermsCompressor.DEFAULT.compress("id", values));
+		// the given array is not sorted in place
+		assertEquals(Long.MAX_VALUE, values[0]);
+	}
+
+	public void testNegativeValues() {
+		assertEquals(rangeQuery("id").gte(-1000).lte(-1), TermsCompressor.DEFAULT.compress("id", run(-1000, -1)));
+		assertEquals(rangeQuery("id").gte(-500).lte(500), TermsCompressor.DEFAULT.compress("id", run(-500, 500)));
+	}
+
+	public void testBitSet() {
+		BitSet bits = new BitSet();
+		bits.set(10, 2001);
+		bits.set(5000);
+		QueryBuilder expected = boolQuery().should(rangeQuery("id").gte(10).lte(2000))
+				.should(termsQuery("id", new int[] { 5000 }));
+		assertEquals(expected, TermsCompressor.DEFAULT.compress("id", bits));
+		bits.clear();
+		bits.set(Integer.MAX_VALUE - 999, Integer.MAX_VALUE);
+		bits.set(Integer.MAX_VALUE);
+		assertEquals(rangeQuery("id").gte(Integer.MAX_VALUE - 999).lte(Integer.MAX_VALUE),
+				TermsCompressor.DEFAULT.compress("id", bits));
+	}
+
+	public void testClauseCountKeepsLargestSavings() {
+		int[] values = concat(run(0, 999), run(10000, 10099), run(20000, 29999));
+		TermsCompressor compressor = TermsCompressor.builder().maxClauseCount(2).build();
+		QueryBuilder expected = boolQuery().should(rangeQuery("id").gte(20000).lte(29999))
+				.should(termsQuery("id", concat(run(0, 999), run(10000, 10099))));
+		assertEquals(expected, compressor.compress("id", values));
+		TermsCompressor single = TermsCompressor.builder().maxClauseCount(1).build();
+		assertEquals(termsQuery("id", values), single.compress("id", values));
+	}
+
+	public void testClauseCountWithoutResidual() {
+		int[] values = concat(run(0, 999), run(2000, 2999));
+		TermsCompressor compressor = TermsCompressor.builder().maxClauseCount(2).build();
+		QueryBuilder expected = boolQuery().should(rangeQuery("id").gte(0).lte(999))
+				.should(rangeQuery("id").gte(2000).lte(2999));
+		assertEquals(expected, compressor.compress("id", values));
+	}
+
+	public void testInvalidArguments() {
+		expectThrows(IllegalArgumentException.class, () -> TermsCompressor.DEFAULT.compress("", 1, 2));
+		expectThrows(IllegalArgumentException.class, () -> TermsCompressor.DEFAULT.compress("id", (int[]) null));
+		expectThrows(IllegalArgumentException.class, () -> TermsCompressor.builder().maxClauseCount(0));
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertSame;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.Asserts.expectThrows;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+public class TermsSplitterTest {
+
+	private static String[] values(int count) {
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = "value-" + i;
+		}
+		return values;
+	}
+
+	private static List<Object> requiredTerms(SearchSourceBuilder request) {
+		return ((TermsQueryBuilder) ((BoolQueryBuilder) request.query()).filter().get(0)).values();
+	}
+
+	public void testSmallQueryNotSplit() {
+		TermsQueryBuilder terms = termsQuery("f", "a", "b");
+		assertSame(terms, TermsSplitter.DEFAULT.split(terms));
+		BoolQueryBuilder bool = boolQuery().filter(terms);
+		assertSame(bool, TermsSplitter.DEFAULT.split(bool));
+	}
+
+	public void testSplitAtTermsCount() {
+		TermsSplitter splitter = TermsSplitter.builder().maxTermsCount(2).build();
+		TermsQueryBuilder terms = termsQuery("f", "a", "b", "c", "d", "e").boost(2).queryName("ids");
+		QueryBuilder expected = boolQuery()
+				.should(termsQuery("f", "a", "b")).should(termsQuery("f", "c", "d")).should(termsQuery("f", "e"))
+				.boost(2).queryName("ids");
+		assertEquals(expected, splitter.split(terms));
+	}
+
+	public void testSplitAtClauseBytes() {
+		// each value takes 6 bytes and a separator
+		TermsSplitter splitter = TermsSplitter.builder().maxClauseBytes(14).build();
+		QueryBuilder expected = boolQuery()
+				.should(termsQuery("f", "aaaa", "bbbb")).should(termsQuery("f", "cccc", "dddd"));
+		assertEquals(expected, splitter.split(termsQuery("f", "aaaa", "bbbb", "cccc", "dddd")));
+		// one value above the cap is a chunk of its own
+		QueryBuilder oversized = boolQuery()
+				.should(termsQuery("f", "a")).should(termsQuery("f", "0123456789abcdef")).should(termsQuery("f", "b"));
+		assertEquals(oversized, splitter.split(termsQuery("f", "a", "0123456789abcdef", "b")));
+	}
+
+	public void testSplitPrimitiveTerms() {
+		TermsSplitter splitter = TermsSplitter.builder().maxTermsCount(2).build();
+		QueryBuilder expected = boolQuery()
+				.should(termsQuery("f", new int[] { 1, 2 })).should(termsQuery("f", new int[] { 3 }));
+		QueryBuilder split = splitter.split(termsQuery("f", new int[] { 1, 2, 3 }));
+		assertEquals(expected, split);
+		assertEquals("{\"query\":{\"bool\":{\"should\":[{\"terms\":{\"f\":[1,2],\"boost\":1.0}},"
+				+ "{\"terms\":{\"f\":[3],\"boost\":1.0}}],\"adjust_pure_negative\":true,\"boost\":1.0}}}",
+				Asserts.json(split));
+	}
+
+	public void testSplitInsideBool() {
+		TermsSplitter splitter = TermsSplitter.builder().maxTermsCount(2).build();
+		BoolQueryBuilder bool = boolQuery().filter(termsQuery("f", "a", "b", "c")).must(termQuery("g", "x"));
+		QueryBuilder expected = boolQuery().must(termQuery("g", "x"))
+				.filter(boolQuery().should(termsQuery("f", "a", "b")).should(termsQuery("f", "c")));
+		assertEquals(expected, splitter.split(bool));
+		// the given query is not modified
+		assertEquals(termsQuery("f", "a", "b", "c"), bool.filter().get(0));
+	}
+
+	public void testTooManyClauses() {
+		TermsSplitter splitter = TermsSplitter.builder().maxTermsCount(1).maxClauseCount(2).build();
+		expectThrows(IllegalArgumentException.class, () -> splitter.split(termsQuery("f", "a", "b", "c")));
+	}
+
+	public void testParameterNotSplit() {
+		TermsSplitter splitter = TermsSplitter.builder().maxTermsCount(1).build();
+		TermsQueryBuilder terms = termsQuery("f", PreparedQuery.param("ids"));
+		assertSame(terms, splitter.split(terms));
+	}
+
+	public void testSmallRequestNotSplit() {
+		SearchSourceBuilder source = new SearchSourceBuilder().query(termsQuery("f", "a", "b"));
+		assertEquals(Arrays.asList(source), TermsSplitter.DEFAULT.split(source));
+	}
+
+	public void testSplitRequestAtRequestBytes() {
+		String[] values = values(1000);
+		SearchSourceBuilder source = new SearchSourceBuilder().from(5).size(10)
+				.query(boolQuery().filter(termsQuery("f", values)).filter(termQuery("tenant", "t")));
+		TermsSplitter splitter = TermsSplitter.builder().maxRequestBytes(4000).build();
+		List<SearchSourceBuilder> requests = splitter.split(source);
+		assertTrue("expected several requests, got " + requests.size(), requests.size() > 1);
+		List<Object> all = new ArrayList<>();
+		for (SearchSourceBuilder request : requests) {
+			int length = request.toBytes(XContentType.JSON).length;
+			assertTrue("request of " + length + " bytes", length <= 4000);
+			// every request asks for the whole first page
+			assertEquals(0, request.from());
+			assertEquals(15, request.size());
+			assertEquals(termQuery("tenant", "t"), ((BoolQueryBuilder) request.query()).filter().get(1));
+			all.addAll(requiredTerms(request));
+		}
+		assertEquals(Arrays.asList((Object[]) values), all);
+	}
+
+	public void testSplitRequestAlsoSplitsClauses() {
+		SearchSourceBuilder source = new SearchSourceBuilder()
+				.query(boolQuery().filter(termsQuery("f", values(1000))));
+		TermsSplitter splitter = TermsSplitter.builder().maxRequestBytes(4000).maxTermsCount(100).build();
+		for (SearchSourceBuilder request : splitter.split(source)) {
+			assertTrue("request of " + request.toBytes(XContentType.JSON).length + " bytes",
+					request.toBytes(XContentType.JSON).length <= 4000);
+			QueryBuilder clause = ((BoolQueryBuilder) request.query()).filter().get(0);
+			if (clause instanceof BoolQueryBuilder) {
+				for (QueryBuilder chunk : ((BoolQueryBuilder) clause).should()) {
+					assertTrue("chunk too large", ((TermsQueryBuilder) chunk).values().size() <= 100);
+				}
+			} else {
+				assertTrue("chunk too large", ((TermsQueryBuilder) clause).values().size() <= 100);
+			}
+		}
+	}
+
+	public void testRequestWithoutTermsToSplit() {
+		SearchSourceBuilder source = new SearchSourceBuilder().query(termQuery("f", String.join("", values(1000))));
+		TermsSplitter splitter = TermsSplitter.builder().maxRequestBytes(4000).build();
+		expectThrows(IllegalArgumentException.class, () -> splitter.split(source));
+		// optional terms queries cannot be split across requests
+		SearchSourceBuilder optional = new SearchSourceBuilder().query(boolQuery().should(termsQuery("f", values(1000))));
+		expectThrows(IllegalArgumentException.class, () -> splitter.split(optional));
+	}
+
+	public void testMergeHitsDropsDuplicates() {
+		// a document with values in two partitions is a hit of both requests
+		List<List<String>> hits = Arrays.asList(Arrays.asList("a", "c", "d"), Arrays.asList("b", "c", "e"));
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e"),
+				TermsSplitter.mergeHits(hits, Comparator.<String>naturalOrder(), Function.identity(), 0, 10));
+		assertEquals(Arrays.asList("c", "d"),
+				TermsSplitter.mergeHits(hits, Comparator.<String>naturalOrder(), Function.identity(), 2, 2));
+	}
+
+	public void testSearchMergesSplitRequests() throws Exception {
+		SearchSourceBuilder source = new SearchSourceBuilder().size(3)
+				.query(boolQuery().filter(termsQuery("f", values(1000))));
+		TermsSplitter splitter = TermsSplitter.builder().maxRequestBytes(4000).build();
+		List<SearchSourceBuilder> seen = new ArrayList<>();
+		List<Object> hits = splitter.search(source, request -> {
+			synchronized (seen) {
+				seen.add(request);
+			}
+			List<Object> values = new ArrayList<>(requiredTerms(request));
+			values.add("value-0");
+			return values;
+		}, (results, from, size) -> TermsSplitter.mergeHits(results,
+				Comparator.comparing(Object::toString), Function.identity(), from, size), Runnable::run);
+		assertTrue("expected several requests, got " + seen.size(), seen.size() > 1);
+		assertEquals(Arrays.<Object>asList("value-0", "value-1", "value-10"), hits);
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.wuchubuzai.dsl;
+
+import static com.wuchubuzai.dsl.Asserts.assertEquals;
+import static com.wuchubuzai.dsl.Asserts.assertNotEquals;
+import static com.wuchubuzai.dsl.Asserts.assertTrue;
+import static com.wuchubuzai.dsl.QueryBuilders.boolQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.idsQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termQuery;
+import static com.wuchubuzai.dsl.QueryBuilders.termsQuery;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class XContentBuilderTest {
+
+	private static String canonical(QueryBuilder query) {
+		return new String(new SearchSourceBuilder().query(query).canonicalBytes(), StandardCharsets.UTF_8);
+	}
+
+	private static String canonical(Object value) throws IOException {
+		return XContentBuilder.jsonBuilder().canonical().value(value).string();
+	}
+
+	/**
+	 * Checks that two equal trees render the same canonical bytes, and that these are the
+	 * expected json.
+	 */
+	private static void assertSameCanonical(String expected, QueryBuilder query, QueryBuilder other) {
+		assertEquals(query, other);
+		assertEquals(query.hashCode(), other.hashCode());
+		assertSameBytes(expected, query, other);
+	}
+
+	private static void assertSameBytes(String expected, QueryBuilder query, QueryBuilder other) {
+		byte[] bytes = new SearchSourceBuilder().query(query).canonicalBytes();
+		byte[] otherBytes = new SearchSourceBuilder().query(other).canonicalBytes();
+		assertTrue(new String(bytes, StandardCharsets.UTF_8) + " differs from " + new String(otherBytes, StandardCharsets.UTF_8),
+				Arrays.equals(bytes, otherBytes));
+		assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	public void testShuffledIds() {
+		assertSameCanonical("{\"query\":{\"ids\":{\"values\":[\"1\",\"2\",\"3\"],\"type\":[],\"boost\":1.0}}}",
+				idsQuery().addIds("3", "1", "2", "1"), idsQuery().addIds("2", "3").addIds("1"));
+	}
+
+	public void testShuffledTerms() {
+		String expected = "{\"query\":{\"terms\":{\"f\":[\"a\",\"b\",\"c\"],\"boost\":1.0}}}";
+		assertSameBytes(expected, termsQuery("f", "c", "a", "b", "a"), termsQuery("f", "b", "c", "a"));
+		// the order is kept without canonical rendering
+		assertNotEquals(Asserts.json(termsQuery("f", "c", "a", "b")), Asserts.json(termsQuery("f", "a", "b", "c")));
+		assertSameBytes("{\"query\":{\"terms\":{\"f\":[1,2,3],\"boost\":1.0}}}",
+				termsQuery("f", new int[] { 3, 1, 2, 3 }), termsQuery("f", new long[] { 2, 1, 3 }));
+	}
+
+	public void testPrimitiveAndBoxedTermsRenderAlike() {
+		assertSameCanonical("{\"query\":{\"terms\":{\"f\":[-1,2,3],\"boost\":1.0}}}",
+				termsQuery("f", new int[] { 3, -1, 2, 3 }), termsQuery("f", Arrays.asList(3, -1, 2, 3)));
+		assertSameCanonical("{\"query\":{\"terms\":{\"f\":[-5000000000,2,3],\"boost\":1.0}}}",
+				termsQuery("f", new long[] { 3, 2, -5000000000L, 2 }), termsQuery("f", Arrays.asList(3L, 2L, -5000000000L, 2L)));
+		assertSameCanonical("{\"query\":{\"terms\":{\"f\":[0.0,1.5],\"boost\":1.0}}}",
+				termsQuery("f", new double[] { 1.5, -0.0, 0.0, 1.5 }), termsQuery("f", Arrays.asList(1.5, -0.0, 0.0, 1.5)));
+		assertSameCanonical("{\"query\":{\"terms\":{\"f\":[0.0,1.5],\"boost\":1.0}}}",
+				termsQuery("f", new float[] { 1.5f, 0.0f, -0.0f }), termsQuery("f", Arrays.asList(1.5f, 0.0f, -0.0f)));
+	}
+
+	public void testMixedNumbers() {
+		BigInteger big = new BigInteger("18446744073709551616");
+		String expected = "{\"query\":{\"terms\":{\"f\":[-18446744073709551616,-1,3,4,5,18446744073709551616],\"boost\":1.0}}}";
+		// integral values compare by value whatever their type, equal ones are written once
+		assertSameBytes(expected,
+				termsQuery("f", Arrays.<Object>asList(5L, 3, BigInteger.valueOf(4), 3L, big, -1, big.negate(), (short) 5)),
+				termsQuery("f", Arrays.<Object>asList(big.negate(), BigInteger.valueOf(-1), big, (byte) 4, 5, 3L)));
+		// 1 and 1.0 render differently, integers come first
+		assertSameBytes("{\"query\":{\"terms\":{\"f\":[1,2,1.0,1.5,2.5],\"boost\":1.0}}}",
+				termsQuery("f", Arrays.<Object>asList(2.5, 1, 1.5f, 2L, 1.0)),
+				termsQuery("f", Arrays.<Object>asList(1.0, 2L, 2.5, 1.5f, BigInteger.ONE)));
+		assertSameBytes("{\"query\":{\"terms\":{\"f\":[0.5,1.50,2.5],\"boost\":1.0}}}",
+				termsQuery("f", Arrays.<Object>asList(new BigDecimal("1.50"), 2.5, new BigDecimal("0.5"))),
+				termsQuery("f", Arrays.<Object>asList(new BigDecimal("0.5"), new BigDecimal("1.50"), 2.5)));
+	}
+
+	public void testLongBoundaries() {
+		BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+		BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+		String expected = "{\"query\":{\"terms\":{\"f\":[-9223372036854775809,-9223372036854775808,9223372036854775807,"
+				+ "9223372036854775808],\"boost\":1.0}}}";
+		assertSameBytes(expected,
+				termsQuery("f", Arrays.<Object>asList(max.add(BigInteger.ONE), Long.MAX_VALUE, min, min.subtract(BigInteger.ONE))),
+				termsQuery("f", Arrays.<Object>asList(Long.MIN_VALUE, max, min.subtract(BigInteger.ONE), max.add(BigInteger.ONE), max)));
+	}
+
+	public void testMixedTypes() {
+		assertSameBytes("{\"query\":{\"terms\":{\"f\":[false,true,1,\"1\",\"a\"],\"boost\":1.0}}}",
+				termsQuery("f", Arrays.<Object>asList("a", 1, true, "1", false, true)),
+				termsQuery("f", Arrays.<Object>asList(true, "1", false, 1L, "a")));
+	}
+
+	public void testEqualBoolTrees() {
+		BoolQueryBuilder bool = boolQuery().must(termQuery("a", 1)).filter(idsQuery().addIds("b", "a"))
+				.should(termsQuery("c", new int[] { 2, 1 })).boost(2);
+		BoolQueryBuilder other = boolQuery().must(termQuery("a", 1)).filter(idsQuery().addIds("a", "b"))
+				.should(termsQuery("c", Arrays.asList(2, 1))).boost(2);
+		assertEquals(bool, other);
+		assertEquals(canonical(bool), canonical(other));
+		assertTrue(canonical(bool), canonical(bool).contains("\"c\":[1,2]"));
+	}
+
+	public void testMapKeysSorted() throws IOException {
+		Map<String, Object> hash = new HashMap<>();
+		Map<String, Object> linked = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			hash.put("k" + i, i);
+			linked.put("k" + (19 - i), 19 - i);
+		}
+		assertEquals(hash, linked);
+		assertEquals(canonical(hash), canonical(linked));
+		assertEquals(canonical(hash), canonical(new TreeMap<>(hash)));
+		assertTrue(canonical(hash), canonical(hash).startsWith("{\"k0\":0,\"k1\":1,\"k10\":10,"));
+		assertNotEquals(XContentBuilder.jsonBuilder().value(hash).string(), XContentBuilder.jsonBuilder().value(linked).string());
+	}
+
+	public void testSortedMapOfNumbersSortedByName() throws IOException {
+		Map<Integer, String> sorted = new TreeMap<>();
+		Map<Integer, String> hash = new HashMap<>();
+		for (int i : new int[] { 2, 10, 1 }) {
+			sorted.put(i, "v" + i);
+			hash.put(i, "v" + i);
+		}
+		assertEquals("{\"1\":\"v1\",\"10\":\"v10\",\"2\":\"v2\"}", canonical(sorted));
+		assertEquals(canonical(sorted), canonical(hash));
+		assertEquals(canonical(Collections.emptyMap()), canonical(new TreeMap<>()));
+	}
+
+	public void testNestedMapsAndSets() throws IOException {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("z", new LinkedHashSet<>(Arrays.asList("b", "a")));
+		map.put("a", Collections.singletonMap("y", Arrays.asList("b", "a")));
+		Map<String, Object> other = new HashMap<>();
+		other.put("a", new HashMap<>(Collections.singletonMap("y", Arrays.asList("b", "a"))));
+		other.put("z", new LinkedHashSet<>(Arrays.asList("a", "b", "a")));
+		assertEquals(map, other);
+		// lists keep their order, sets do not
+		assertEquals("{\"a\":{\"y\":[\"b\",\"a\"]},\"z\":[\"a\",\"b\"]}", canonical(map));
+		assertEquals(canonical(map), canonical(other));
+	}
+
+	public void testNegativeZero() throws IOException {
+		assertEquals("0.0", canonical(-0.0));
+		assertEquals("0.0", canonical(-0.0f));
+		assertEquals("-0.0", XContentBuilder.jsonBuilder().value(-0.0).string());
+	}
+
+}